@@ -1,9 +1,14 @@
 package com.example.ragservice.controller;
 
 import com.example.ragservice.dto.*;
+import com.example.ragservice.model.DeadLetterEntry;
+import com.example.ragservice.model.IngestionCheckpoint;
 import com.example.ragservice.service.DirectoryScanService;
+import com.example.ragservice.service.DirectoryWatchService;
 import com.example.ragservice.service.CsvStreamingService;
+import com.example.ragservice.service.DeadLetterService;
 import com.example.ragservice.service.DocumentExtractionService;
+import com.example.ragservice.service.IngestionJobScheduler;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
@@ -11,10 +16,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -28,12 +36,21 @@ public class DocumentScanController {
     @Autowired
     private DirectoryScanService directoryScanService;
     
+    @Autowired
+    private DirectoryWatchService directoryWatchService;
+    
     @Autowired
     private CsvStreamingService csvStreamingService;
     
     @Autowired
     private DocumentExtractionService documentExtractionService;
     
+    @Autowired
+    private DeadLetterService deadLetterService;
+    
+    @Autowired
+    private IngestionJobScheduler jobScheduler;
+    
     /**
      * Start a directory scan operation
      */
@@ -74,6 +91,26 @@ public class DocumentScanController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * Stream the progress of a directory scan operation as Server-Sent Events
+     */
+    @GetMapping(value = "/directory-scan/{scanId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream directory scan progress", 
+               description = "Pushes status changes and new errors as Server-Sent Events until the operation has finished")
+    public ResponseEntity<SseEmitter> streamDirectoryScanProgress(@PathVariable String scanId) {
+        
+        try {
+            SseEmitter emitter = directoryScanService.streamProgress(scanId);
+            if (emitter == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(emitter);
+        } catch (IllegalStateException e) {
+            logger.warn("Rejected progress subscriber for directory scan {}: {}", scanId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+    
     /**
      * Cancel a directory scan operation
      */
@@ -96,18 +133,140 @@ public class DocumentScanController {
         }
     }
     
+    /**
+     * Delete the documents of files an incremental scan found deleted
+     */
+    @PostMapping("/directory-scan/{scanId}/apply-deletions")
+    @Operation(summary = "Apply scan deletions",
+               description = "Deletes the documents of files that a completed incremental scan found deleted from an index")
+    public ResponseEntity<Map<String, Object>> applyDirectoryScanDeletions(@PathVariable String scanId,
+                                                                           @RequestParam String indexName) {
+        
+        try {
+            int deleted = directoryScanService.applyDeletions(scanId, indexName);
+            
+            Map<String, Object> result = new HashMap<>();
+            result.put("scan_id", scanId);
+            result.put("index_name", indexName);
+            result.put("documents_deleted", deleted);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Cannot apply deletions of scan {}: {}", scanId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Failed to apply deletions of scan {}", scanId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
     /**
      * List all active directory scan operations
      */
     @GetMapping("/directory-scan")
     @Operation(summary = "List active directory scans", 
-               description = "Lists all currently active directory scan operations")
+               description = "Lists running directory scans and recently finished ones that are still retained")
     public ResponseEntity<Map<String, DirectoryScanResponse>> listActiveDirectoryScans() {
         
         Map<String, DirectoryScanResponse> activeScans = directoryScanService.getActiveScanOperations();
         return ResponseEntity.ok(activeScans);
     }
     
+    /**
+     * Start watching a directory and indexing its changes
+     */
+    @PostMapping("/directory-watch")
+    @Operation(summary = "Start directory watch", 
+               description = "Watches a directory and continuously upserts changed files into an index and deletes removed ones")
+    public ResponseEntity<DirectoryWatchResponse> startDirectoryWatch(
+            @Valid @RequestBody DirectoryWatchRequest request) {
+        
+        logger.info("Starting directory watch for path: {}", request.getDirectoryPath());
+        
+        try {
+            DirectoryWatchResponse response = directoryWatchService.startWatch(request);
+            return ResponseEntity.accepted().body(response);
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid directory watch request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            logger.warn("Rejected directory watch: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (Exception e) {
+            logger.error("Failed to start directory watch", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    /**
+     * Get the status of a directory watch
+     */
+    @GetMapping("/directory-watch/{watchId}")
+    @Operation(summary = "Get directory watch status", 
+               description = "Retrieves the counters and status of a directory watch")
+    public ResponseEntity<DirectoryWatchResponse> getDirectoryWatchStatus(@PathVariable String watchId) {
+        
+        DirectoryWatchResponse response = directoryWatchService.getWatchStatus(watchId);
+        
+        if (response == null) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * Stream the progress of a directory watch as Server-Sent Events
+     */
+    @GetMapping(value = "/directory-watch/{watchId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream directory watch progress", 
+               description = "Pushes counter changes and new errors as Server-Sent Events until the watch has stopped")
+    public ResponseEntity<SseEmitter> streamDirectoryWatchProgress(@PathVariable String watchId) {
+        
+        try {
+            SseEmitter emitter = directoryWatchService.streamProgress(watchId);
+            if (emitter == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(emitter);
+        } catch (IllegalStateException e) {
+            logger.warn("Rejected progress subscriber for directory watch {}: {}", watchId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+    
+    /**
+     * Stop a directory watch
+     */
+    @DeleteMapping("/directory-watch/{watchId}")
+    @Operation(summary = "Stop directory watch", 
+               description = "Stops a running directory watch")
+    public ResponseEntity<Map<String, Object>> stopDirectoryWatch(@PathVariable String watchId) {
+        
+        boolean stopped = directoryWatchService.stopWatch(watchId);
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("watch_id", watchId);
+        result.put("stopped", stopped);
+        
+        if (stopped) {
+            logger.info("Directory watch stopped: {}", watchId);
+            return ResponseEntity.ok(result);
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    /**
+     * List directory watches
+     */
+    @GetMapping("/directory-watch")
+    @Operation(summary = "List directory watches", 
+               description = "Lists running directory watches and recently stopped ones that are still retained")
+    public ResponseEntity<Map<String, DirectoryWatchResponse>> listDirectoryWatches() {
+        
+        return ResponseEntity.ok(directoryWatchService.getWatches());
+    }
+    
     /**
      * Start a CSV streaming operation
      */
@@ -131,6 +290,49 @@ public class DocumentScanController {
         }
     }
     
+    /**
+     * Start an NDJSON (JSON Lines) streaming operation
+     */
+    @PostMapping("/ndjson-streaming")
+    @Operation(summary = "Start NDJSON streaming", 
+               description = "Streams a JSON Lines file for indexing. Its status is tracked with the CSV streaming endpoints.")
+    public ResponseEntity<CsvStreamingResponse> startNdjsonStreaming(
+            @Valid @RequestBody NdjsonStreamingRequest request) {
+        
+        logger.info("Starting NDJSON streaming for file: {}", request.getFilePath());
+        
+        try {
+            CsvStreamingResponse response = csvStreamingService.startNdjsonStreaming(request);
+            return ResponseEntity.accepted().body(response);
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid NDJSON streaming request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Failed to start NDJSON streaming", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    /**
+     * Start streaming the block files of a directory scan
+     */
+    @PostMapping("/block-streaming")
+    @Operation(summary = "Start block file streaming", 
+               description = "Streams the block files a directory scan wrote with output_format \"blocks\" for indexing. Its status is tracked with the CSV streaming endpoints.")
+    public ResponseEntity<CsvStreamingResponse> startBlockStreaming(
+            @Valid @RequestBody BlockStreamingRequest request) {
+        
+        logger.info("Starting block file streaming for file: {}", request.getFilePath());
+        
+        try {
+            CsvStreamingResponse response = csvStreamingService.startBlockStreaming(request);
+            return ResponseEntity.accepted().body(response);
+        } catch (Exception e) {
+            logger.error("Failed to start block file streaming", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
     /**
      * Get the status of a CSV streaming operation
      */
@@ -148,6 +350,26 @@ public class DocumentScanController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * Stream the progress of a CSV streaming operation as Server-Sent Events
+     */
+    @GetMapping(value = "/csv-streaming/{streamId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream CSV streaming progress", 
+               description = "Pushes status changes and new errors as Server-Sent Events until the operation has finished")
+    public ResponseEntity<SseEmitter> streamCsvStreamingProgress(@PathVariable String streamId) {
+        
+        try {
+            SseEmitter emitter = csvStreamingService.streamProgress(streamId);
+            if (emitter == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(emitter);
+        } catch (IllegalStateException e) {
+            logger.warn("Rejected progress subscriber for CSV streaming {}: {}", streamId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+    
     /**
      * Cancel a CSV streaming operation
      */
@@ -170,12 +392,102 @@ public class DocumentScanController {
         }
     }
     
+    /**
+     * Resume an interrupted CSV streaming operation from its last checkpoint
+     */
+    @PostMapping("/csv-streaming/{streamId}/resume")
+    @Operation(summary = "Resume CSV streaming", 
+               description = "Continues an interrupted CSV streaming operation after its last acknowledged batch")
+    public ResponseEntity<CsvStreamingResponse> resumeCsvStreaming(@PathVariable String streamId) {
+        
+        try {
+            CsvStreamingResponse response = csvStreamingService.resumeStream(streamId);
+            return ResponseEntity.accepted().body(response);
+        } catch (IllegalArgumentException e) {
+            logger.error("Cannot resume CSV stream {}: {}", streamId, e.getMessage());
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            logger.error("Cannot resume CSV stream {}: {}", streamId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (Exception e) {
+            logger.error("Failed to resume CSV stream {}", streamId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    /**
+     * List checkpoints of CSV streaming operations that can be resumed
+     */
+    @GetMapping("/csv-streaming/checkpoints")
+    @Operation(summary = "List resumable CSV streams", 
+               description = "Lists checkpoints of CSV streaming operations that did not complete")
+    public ResponseEntity<List<IngestionCheckpoint>> listCsvStreamingCheckpoints() {
+        return ResponseEntity.ok(csvStreamingService.getResumableStreams());
+    }
+    
+    /**
+     * List documents that failed ingestion and were dead-lettered
+     */
+    @GetMapping("/dead-letters")
+    @Operation(summary = "List dead-lettered documents", 
+               description = "Lists documents that failed ingestion, optionally filtered by status (PENDING or EXHAUSTED)")
+    public ResponseEntity<List<DeadLetterEntry>> listDeadLetters(@RequestParam(required = false) String status) {
+        
+        try {
+            return ResponseEntity.ok(deadLetterService.list(status));
+        } catch (Exception e) {
+            logger.error("Failed to read dead-letter file", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    /**
+     * Retry dead-lettered documents now instead of waiting for the scheduled retry
+     */
+    @PostMapping("/dead-letters/retry")
+    @Operation(summary = "Retry dead-lettered documents", 
+               description = "Replays pending dead-lettered documents; with ignoreBackoff=true also those still waiting for their backoff")
+    public ResponseEntity<Map<String, Object>> retryDeadLetters(@RequestParam(defaultValue = "false") boolean ignoreBackoff) {
+        
+        try {
+            DeadLetterService.RetrySummary summary = deadLetterService.retry(ignoreBackoff);
+            if (summary == null) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            }
+            
+            Map<String, Object> result = new HashMap<>();
+            result.put("attempted", summary.getAttempted());
+            result.put("resolved", summary.getResolved());
+            result.put("rescheduled", summary.getRescheduled());
+            result.put("exhausted", summary.getExhausted());
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            logger.error("Failed to retry dead-lettered documents", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    /**
+     * List queued and running ingestion jobs
+     */
+    @GetMapping("/jobs")
+    @Operation(summary = "List scheduled jobs", 
+               description = "Lists running and queued directory scans and streams in the order they will start")
+    public ResponseEntity<Map<String, Object>> listScheduledJobs() {
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("capacity", jobScheduler.getCapacity());
+        result.put("running_weight", jobScheduler.getRunningWeight());
+        result.put("jobs", jobScheduler.getJobs());
+        return ResponseEntity.ok(result);
+    }
+    
     /**
      * List all active CSV streaming operations
      */
     @GetMapping("/csv-streaming")
     @Operation(summary = "List active CSV streams", 
-               description = "Lists all currently active CSV streaming operations")
+               description = "Lists running CSV and NDJSON streams and recently finished ones that are still retained")
     public ResponseEntity<Map<String, CsvStreamingResponse>> listActiveCsvStreams() {
         
         Map<String, CsvStreamingResponse> activeStreams = csvStreamingService.getActiveStreamOperations();
@@ -2,6 +2,7 @@ package com.example.ragservice.controller;
 
 import com.example.ragservice.dto.CsvUploadRequest;
 import com.example.ragservice.dto.CsvFileIngestionRequest;
+import com.example.ragservice.dto.CsvUploadResponse;
 import com.example.ragservice.dto.DocumentIngestionRequest;
 import com.example.ragservice.dto.EnhancedSearchResponse;
 import com.example.ragservice.dto.SearchRequest;
@@ -11,6 +12,7 @@ import com.example.ragservice.dto.SimpleQuerySummarizationRequest;
 import com.example.ragservice.dto.SummarizationRequest;
 import com.example.ragservice.dto.SummarizationResponse;
 import com.example.ragservice.model.Document;
+import com.example.ragservice.model.IngestionCheckpoint;
 import com.example.ragservice.model.SearchResult;
 import com.example.ragservice.service.CsvProcessingService;
 import com.example.ragservice.service.SemanticSummarizationService;
@@ -20,10 +22,13 @@ import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -140,11 +145,74 @@ public class RagController {
         }
     }
     
+    /**
+     * Ingest documents from a raw {@code text/csv} request body, parsed and indexed while it is received
+     */
+    @PostMapping(value = "/documents/csv", consumes = "text/csv")
+    public ResponseEntity<CsvUploadResponse> ingestCsvStream(InputStream body,
+                                                             @RequestParam String indexName,
+                                                             @RequestParam(defaultValue = "content") String contentColumnName,
+                                                             @RequestParam(defaultValue = "doc_id") String docIdColumnName,
+                                                             @RequestParam(required = false) String source,
+                                                             @RequestParam(required = false) Integer batchSize) {
+        return streamCsvUpload(body, indexName, contentColumnName, docIdColumnName, source, batchSize);
+    }
+    
+    /**
+     * Ingest documents from a multipart CSV upload. The servlet container spools the part to disk,
+     * from where it is parsed and indexed in a single pass.
+     */
+    @PostMapping(value = "/documents/csv", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<CsvUploadResponse> ingestCsvMultipart(@RequestParam("file") MultipartFile file,
+                                                                @RequestParam String indexName,
+                                                                @RequestParam(defaultValue = "content") String contentColumnName,
+                                                                @RequestParam(defaultValue = "doc_id") String docIdColumnName,
+                                                                @RequestParam(required = false) String source,
+                                                                @RequestParam(required = false) Integer batchSize) {
+        try (InputStream inputStream = file.getInputStream()) {
+            return streamCsvUpload(inputStream, indexName, contentColumnName, docIdColumnName,
+                                   source != null ? source : file.getOriginalFilename(), batchSize);
+        } catch (IOException e) {
+            logger.error("Failed to read uploaded CSV file {}", file.getOriginalFilename(), e);
+            return ResponseEntity.internalServerError().body(failedUpload(indexName, e.getMessage()));
+        }
+    }
+    
+    private ResponseEntity<CsvUploadResponse> streamCsvUpload(InputStream inputStream, String indexName, String contentColumnName,
+                                                              String docIdColumnName, String source, Integer batchSize) {
+        try {
+            CsvUploadResponse response = csvProcessingService.ingestCsvStream(
+                inputStream, indexName, contentColumnName, docIdColumnName, source, batchSize);
+            if (!response.isSuccess()) {
+                return ResponseEntity.badRequest().body(response);
+            }
+            
+            logger.info("Successfully streamed {} documents from CSV into index {}", 
+                       response.getDocumentsIndexed(), indexName);
+            return ResponseEntity.ok(response);
+            
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid CSV upload: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(failedUpload(indexName, e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Failed to ingest streamed CSV documents", e);
+            return ResponseEntity.internalServerError().body(failedUpload(indexName, e.getMessage()));
+        }
+    }
+    
+    private CsvUploadResponse failedUpload(String indexName, String message) {
+        CsvUploadResponse response = new CsvUploadResponse(false, 0, indexName, null);
+        response.setMessage(message);
+        return response;
+    }
+    
     /**
      * Ingest documents from CSV file (streaming)
      */
     @PostMapping("/documents/csv/file")
     public ResponseEntity<?> ingestCsvFile(@Valid @RequestBody CsvFileIngestionRequest request) {
+        // Reported on failure as well, so the job can be resumed from its checkpoint
+        String jobId = csvProcessingService.generateJobId();
         try {
             Path csvFile = Paths.get(request.getCsvFilePath());
             
@@ -166,22 +234,15 @@ public class RagController {
             // Get file size for progress reporting
             long fileSize = Files.size(csvFile);
             
-            logger.info("Starting CSV file ingestion: {} (size: {} bytes)", 
-                       request.getCsvFilePath(), fileSize);
+            logger.info("Starting CSV file ingestion job {}: {} (size: {} bytes)", 
+                       jobId, request.getCsvFilePath(), fileSize);
             
             // Process CSV file in streaming fashion
-            int documentsIngested = csvProcessingService.ingestCsvFile(
-                request.getCsvFilePath(),
-                request.getIndexName(),
-                request.getContentColumnName(),
-                request.getDocIdColumnName(),
-                request.getSource(),
-                request.getBatchSize(),
-                request.getMaxRecords()
-            );
+            int documentsIngested = csvProcessingService.ingestCsvFile(request, jobId);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
+            response.put("jobId", jobId);
             response.put("documentsIngested", documentsIngested);
             response.put("indexName", request.getIndexName());
             response.put("filePath", request.getCsvFilePath());
@@ -196,11 +257,47 @@ public class RagController {
             logger.error("Failed to ingest CSV file: {}", request.getCsvFilePath(), e);
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
+            response.put("jobId", jobId);
+            response.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    /**
+     * Resume an interrupted CSV file ingestion from its last checkpoint
+     */
+    @PostMapping("/documents/csv/file/{jobId}/resume")
+    public ResponseEntity<?> resumeCsvFileIngestion(@PathVariable String jobId) {
+        try {
+            int documentsIngested = csvProcessingService.resumeCsvFileIngestion(jobId);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("jobId", jobId);
+            response.put("documentsIngested", documentsIngested);
+            
+            logger.info("Resumed CSV ingestion job {} ingested {} documents", jobId, documentsIngested);
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            logger.error("Failed to resume CSV ingestion job: {}", jobId, e);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("jobId", jobId);
             response.put("error", e.getMessage());
             return ResponseEntity.badRequest().body(response);
         }
     }
     
+    /**
+     * List CSV file ingestion jobs that can be resumed
+     */
+    @GetMapping("/documents/csv/file/checkpoints")
+    public ResponseEntity<List<IngestionCheckpoint>> listCsvFileCheckpoints() {
+        return ResponseEntity.ok(csvProcessingService.getResumableJobs());
+    }
+    
     /**
      * Search documents using vector similarity
      */
@@ -0,0 +1,92 @@
+package com.example.ragservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Min;
+
+/**
+ * Request to stream the block files of a directory scan, written with output_format "blocks".
+ * The documents keep the IDs and metadata the scan gave them.
+ */
+public class BlockStreamingRequest {
+    
+    // The scan's block_output_path; its shards are found next to it
+    @NotBlank(message = "File path is required")
+    @JsonProperty("file_path")
+    private String filePath;
+    
+    @JsonProperty("batch_size")
+    @Min(value = 1, message = "Batch size must be at least 1")
+    private int batchSize = 100;
+    
+    @JsonProperty("index_name")
+    private String indexName;
+    
+    @JsonProperty("embedding_workers")
+    @Min(value = 1, message = "Embedding workers must be at least 1")
+    private Integer embeddingWorkers;
+    
+    // Adjust the batch size to embedding and bulk latency, starting at batch_size
+    @JsonProperty("adaptive_batching")
+    private Boolean adaptiveBatching;
+    
+    // Streams with a higher priority leave the job queue first
+    @JsonProperty("priority")
+    private Integer priority;
+    
+    public BlockStreamingRequest() {}
+    
+    public BlockStreamingRequest(String filePath, String indexName) {
+        this.filePath = filePath;
+        this.indexName = indexName;
+    }
+    
+    // Getters and setters
+    public String getFilePath() {
+        return filePath;
+    }
+    
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+    
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+    
+    public String getIndexName() {
+        return indexName;
+    }
+    
+    public void setIndexName(String indexName) {
+        this.indexName = indexName;
+    }
+    
+    public Integer getEmbeddingWorkers() {
+        return embeddingWorkers;
+    }
+    
+    public void setEmbeddingWorkers(Integer embeddingWorkers) {
+        this.embeddingWorkers = embeddingWorkers;
+    }
+    
+    public Boolean getAdaptiveBatching() {
+        return adaptiveBatching;
+    }
+    
+    public void setAdaptiveBatching(Boolean adaptiveBatching) {
+        this.adaptiveBatching = adaptiveBatching;
+    }
+    
+    public Integer getPriority() {
+        return priority;
+    }
+    
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+}
@@ -22,6 +22,8 @@ public class CsvFileIngestionRequest {
     
     @Min(value = 1, message = "Max records must be at least 1")
     private Integer maxRecords;
+    
+    private Boolean parallelParsing;
 
     public CsvFileIngestionRequest() {}
 
@@ -95,4 +97,12 @@ public class CsvFileIngestionRequest {
     public void setMaxRecords(Integer maxRecords) {
         this.maxRecords = maxRecords;
     }
+    
+    public Boolean getParallelParsing() {
+        return parallelParsing;
+    }
+    
+    public void setParallelParsing(Boolean parallelParsing) {
+        this.parallelParsing = parallelParsing;
+    }
 }
@@ -20,6 +20,10 @@ public class CsvStreamingRequest {
     @JsonProperty("metadata_columns")
     private String[] metadataColumns;
     
+    // Rows with a value in this column are indexed under that ID; others get one from the file and record number
+    @JsonProperty("id_column")
+    private String idColumn = "doc_id";
+    
     @JsonProperty("skip_header")
     private boolean skipHeader = true;
     
@@ -35,6 +39,21 @@ public class CsvStreamingRequest {
     @JsonProperty("index_name")
     private String indexName;
     
+    @JsonProperty("embedding_workers")
+    @Min(value = 1, message = "Embedding workers must be at least 1")
+    private Integer embeddingWorkers;
+    
+    @JsonProperty("parallel_parsing")
+    private Boolean parallelParsing;
+    
+    // Adjust the batch size to embedding and bulk latency, starting at batch_size
+    @JsonProperty("adaptive_batching")
+    private Boolean adaptiveBatching;
+    
+    // Streams with a higher priority leave the job queue first
+    @JsonProperty("priority")
+    private Integer priority;
+    
     public CsvStreamingRequest() {}
     
     public CsvStreamingRequest(String csvFilePath, String indexName) {
@@ -67,6 +86,14 @@ public class CsvStreamingRequest {
         this.textColumn = textColumn;
     }
     
+    public String getIdColumn() {
+        return idColumn;
+    }
+    
+    public void setIdColumn(String idColumn) {
+        this.idColumn = idColumn;
+    }
+    
     public String[] getMetadataColumns() {
         return metadataColumns;
     }
@@ -114,4 +141,36 @@ public class CsvStreamingRequest {
     public void setIndexName(String indexName) {
         this.indexName = indexName;
     }
+    
+    public Integer getEmbeddingWorkers() {
+        return embeddingWorkers;
+    }
+    
+    public void setEmbeddingWorkers(Integer embeddingWorkers) {
+        this.embeddingWorkers = embeddingWorkers;
+    }
+    
+    public Boolean getParallelParsing() {
+        return parallelParsing;
+    }
+    
+    public void setParallelParsing(Boolean parallelParsing) {
+        this.parallelParsing = parallelParsing;
+    }
+    
+    public Boolean getAdaptiveBatching() {
+        return adaptiveBatching;
+    }
+    
+    public void setAdaptiveBatching(Boolean adaptiveBatching) {
+        this.adaptiveBatching = adaptiveBatching;
+    }
+    
+    public Integer getPriority() {
+        return priority;
+    }
+    
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
 }
@@ -5,7 +5,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import java.time.LocalDateTime;
 import java.util.List;
 
-public class CsvStreamingResponse {
+public class CsvStreamingResponse implements TrackedJobResponse {
     
     @JsonProperty("stream_id")
     private String streamId;
@@ -34,6 +34,15 @@ public class CsvStreamingResponse {
     @JsonProperty("progress_percentage")
     private double progressPercentage;
     
+    @JsonProperty("bytes_processed")
+    private long bytesProcessed;
+    
+    @JsonProperty("total_bytes")
+    private long totalBytes;
+    
+    @JsonProperty("resumed_from_record")
+    private Long resumedFromRecord;
+    
     @JsonProperty("start_time")
     private LocalDateTime startTime;
     
@@ -46,6 +55,34 @@ public class CsvStreamingResponse {
     @JsonProperty("processing_rate_per_second")
     private double processingRatePerSecond;
     
+    @JsonProperty("records_embedded")
+    private long recordsEmbedded;
+    
+    @JsonProperty("parse_rate_per_second")
+    private double parseRatePerSecond;
+    
+    @JsonProperty("embedding_rate_per_second")
+    private double embeddingRatePerSecond;
+    
+    @JsonProperty("indexing_rate_per_second")
+    private double indexingRatePerSecond;
+    
+    @JsonProperty("embedding_time_ms")
+    private long embeddingTimeMs;
+    
+    @JsonProperty("indexing_time_ms")
+    private long indexingTimeMs;
+    
+    @JsonProperty("embedding_workers")
+    private int embeddingWorkers;
+    
+    // Size of the next batch; changes while the stream runs with adaptive batching
+    @JsonProperty("batch_size")
+    private int batchSize;
+    
+    @JsonProperty("adaptive_batching")
+    private boolean adaptiveBatching;
+    
     @JsonProperty("index_name")
     private String indexName;
     
@@ -137,6 +174,30 @@ public class CsvStreamingResponse {
         this.progressPercentage = progressPercentage;
     }
     
+    public long getBytesProcessed() {
+        return bytesProcessed;
+    }
+    
+    public void setBytesProcessed(long bytesProcessed) {
+        this.bytesProcessed = bytesProcessed;
+    }
+    
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+    
+    public void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+    
+    public Long getResumedFromRecord() {
+        return resumedFromRecord;
+    }
+    
+    public void setResumedFromRecord(Long resumedFromRecord) {
+        this.resumedFromRecord = resumedFromRecord;
+    }
+    
     public LocalDateTime getStartTime() {
         return startTime;
     }
@@ -169,6 +230,78 @@ public class CsvStreamingResponse {
         this.processingRatePerSecond = processingRatePerSecond;
     }
     
+    public long getRecordsEmbedded() {
+        return recordsEmbedded;
+    }
+    
+    public void setRecordsEmbedded(long recordsEmbedded) {
+        this.recordsEmbedded = recordsEmbedded;
+    }
+    
+    public double getParseRatePerSecond() {
+        return parseRatePerSecond;
+    }
+    
+    public void setParseRatePerSecond(double parseRatePerSecond) {
+        this.parseRatePerSecond = parseRatePerSecond;
+    }
+    
+    public double getEmbeddingRatePerSecond() {
+        return embeddingRatePerSecond;
+    }
+    
+    public void setEmbeddingRatePerSecond(double embeddingRatePerSecond) {
+        this.embeddingRatePerSecond = embeddingRatePerSecond;
+    }
+    
+    public double getIndexingRatePerSecond() {
+        return indexingRatePerSecond;
+    }
+    
+    public void setIndexingRatePerSecond(double indexingRatePerSecond) {
+        this.indexingRatePerSecond = indexingRatePerSecond;
+    }
+    
+    public long getEmbeddingTimeMs() {
+        return embeddingTimeMs;
+    }
+    
+    public void setEmbeddingTimeMs(long embeddingTimeMs) {
+        this.embeddingTimeMs = embeddingTimeMs;
+    }
+    
+    public long getIndexingTimeMs() {
+        return indexingTimeMs;
+    }
+    
+    public void setIndexingTimeMs(long indexingTimeMs) {
+        this.indexingTimeMs = indexingTimeMs;
+    }
+    
+    public int getEmbeddingWorkers() {
+        return embeddingWorkers;
+    }
+    
+    public void setEmbeddingWorkers(int embeddingWorkers) {
+        this.embeddingWorkers = embeddingWorkers;
+    }
+    
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+    
+    public boolean isAdaptiveBatching() {
+        return adaptiveBatching;
+    }
+    
+    public void setAdaptiveBatching(boolean adaptiveBatching) {
+        this.adaptiveBatching = adaptiveBatching;
+    }
+    
     public String getIndexName() {
         return indexName;
     }
@@ -1,8 +1,10 @@
 package com.example.ragservice.dto;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
 
 import java.util.List;
 
@@ -15,6 +17,15 @@ public class DirectoryScanRequest {
     @JsonProperty("output_csv_path")
     private String outputCsvPath;
     
+    // "csv" or "blocks", compressed block files the ingestion side reads without parsing; defaults to document.processing.directory-scan.output-format
+    @JsonProperty("output_format")
+    @Pattern(regexp = "csv|blocks", message = "Output format must be csv or blocks")
+    private String outputFormat;
+    
+    // Block output: the block file, or the name its shards are derived from; a CSV file is then only written if output_csv_path is set
+    @JsonProperty("block_output_path")
+    private String blockOutputPath;
+    
     @JsonProperty("supported_extensions")
     private List<String> supportedExtensions = List.of("pdf", "txt", "docx", "doc", "rtf", "html", "xml");
     
@@ -24,6 +35,42 @@ public class DirectoryScanRequest {
     @JsonProperty("max_files")
     private Integer maxFiles;
     
+    // Scans with a higher priority leave the job queue first
+    @JsonProperty("priority")
+    private Integer priority;
+    
+    // Files extracted in parallel; defaults to document.processing.directory-scan.extraction-workers
+    @JsonProperty("extraction_workers")
+    private Integer extractionWorkers;
+    
+    // Write the CSV in discovery order even though files finish out of order
+    @JsonProperty("ordered_output")
+    private Boolean orderedOutput;
+    
+    // Only extract files that changed since the last incremental scan of the directory
+    @JsonProperty("incremental")
+    private Boolean incremental;
+    
+    // Extract only the first of several files with the same content; defaults to document.processing.directory-scan.deduplicate
+    @JsonProperty("deduplicate")
+    private Boolean deduplicate;
+    
+    // Extract the supported files inside zip, tar and tar.gz archives; defaults to document.processing.directory-scan.archives.enabled
+    @JsonProperty("scan_archives")
+    private Boolean scanArchives;
+    
+    // Index the extracted documents directly; a CSV file is then only written if output_csv_path is set
+    @JsonProperty("index_name")
+    private String indexName;
+    
+    @JsonProperty("batch_size")
+    @Min(value = 1, message = "Batch size must be at least 1")
+    private Integer batchSize;
+    
+    @JsonProperty("embedding_workers")
+    @Min(value = 1, message = "Embedding workers must be at least 1")
+    private Integer embeddingWorkers;
+    
     public DirectoryScanRequest() {}
     
     public DirectoryScanRequest(String directoryPath, String outputCsvPath) {
@@ -71,4 +118,92 @@ public class DirectoryScanRequest {
     public void setMaxFiles(Integer maxFiles) {
         this.maxFiles = maxFiles;
     }
+    
+    public Integer getPriority() {
+        return priority;
+    }
+    
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+    
+    public Integer getExtractionWorkers() {
+        return extractionWorkers;
+    }
+    
+    public void setExtractionWorkers(Integer extractionWorkers) {
+        this.extractionWorkers = extractionWorkers;
+    }
+    
+    public Boolean getOrderedOutput() {
+        return orderedOutput;
+    }
+    
+    public void setOrderedOutput(Boolean orderedOutput) {
+        this.orderedOutput = orderedOutput;
+    }
+    
+    public Boolean getIncremental() {
+        return incremental;
+    }
+    
+    public void setIncremental(Boolean incremental) {
+        this.incremental = incremental;
+    }
+    
+    public Boolean getDeduplicate() {
+        return deduplicate;
+    }
+    
+    public void setDeduplicate(Boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+    
+    public String getOutputFormat() {
+        return outputFormat;
+    }
+    
+    public void setOutputFormat(String outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+    
+    public String getBlockOutputPath() {
+        return blockOutputPath;
+    }
+    
+    public void setBlockOutputPath(String blockOutputPath) {
+        this.blockOutputPath = blockOutputPath;
+    }
+    
+    public Boolean getScanArchives() {
+        return scanArchives;
+    }
+    
+    public void setScanArchives(Boolean scanArchives) {
+        this.scanArchives = scanArchives;
+    }
+    
+    public String getIndexName() {
+        return indexName;
+    }
+    
+    public void setIndexName(String indexName) {
+        this.indexName = indexName;
+    }
+    
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+    
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
+    
+    public Integer getEmbeddingWorkers() {
+        return embeddingWorkers;
+    }
+    
+    public void setEmbeddingWorkers(Integer embeddingWorkers) {
+        this.embeddingWorkers = embeddingWorkers;
+    }
 }
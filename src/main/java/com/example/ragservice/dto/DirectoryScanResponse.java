@@ -5,7 +5,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import java.time.LocalDateTime;
 import java.util.List;
 
-public class DirectoryScanResponse {
+public class DirectoryScanResponse implements TrackedJobResponse {
     
     @JsonProperty("scan_id")
     private String scanId;
@@ -22,9 +22,57 @@ public class DirectoryScanResponse {
     @JsonProperty("total_files_found")
     private int totalFilesFound;
     
+    // Files found so far; total_files_found is set once discovery has finished
+    @JsonProperty("files_discovered")
+    private int filesDiscovered;
+    
+    // Incremental scans: files skipped because they did not change, re-extracted, and gone since the last scan
+    @JsonProperty("files_unchanged")
+    private int filesUnchanged;
+    
+    @JsonProperty("files_modified")
+    private int filesModified;
+    
+    @JsonProperty("files_deleted")
+    private int filesDeleted;
+    
+    // Files larger than document.processing.extraction.max-file-size, when those are skipped, and archive entries beyond the archive limits
+    @JsonProperty("files_skipped")
+    private int filesSkipped;
+    
+    // Deduplicating scans: files not extracted because an earlier file has the same content
+    @JsonProperty("files_duplicate")
+    private int filesDuplicate;
+    
+    // Scans of archives: archives read; their entries count as files
+    @JsonProperty("archives_read")
+    private int archivesRead;
+    
     @JsonProperty("csv_output_path")
     private String csvOutputPath;
     
+    // Block output: the block files written, one per shard
+    @JsonProperty("block_output_files")
+    private List<String> blockOutputFiles;
+    
+    // Scans that index directly: the index and the documents embedded and indexed so far
+    @JsonProperty("index_name")
+    private String indexName;
+    
+    @JsonProperty("documents_indexed")
+    private long documentsIndexed;
+    
+    @JsonProperty("documents_index_failed")
+    private long documentsIndexFailed;
+    
+    // Incremental scans: JSON lines with the added, modified and deleted files
+    @JsonProperty("changes_output_path")
+    private String changesOutputPath;
+    
+    // Deduplicating scans: JSON lines with the paths of each duplicated file's copies
+    @JsonProperty("duplicates_output_path")
+    private String duplicatesOutputPath;
+    
     @JsonProperty("start_time")
     private LocalDateTime startTime;
     
@@ -40,6 +88,9 @@ public class DirectoryScanResponse {
     @JsonProperty("processed_extensions")
     private List<String> processedExtensions;
     
+    @JsonProperty("extraction_lanes")
+    private List<ExtractionLaneStats> extractionLanes;
+    
     public DirectoryScanResponse() {}
     
     public DirectoryScanResponse(String scanId, String status) {
@@ -89,6 +140,38 @@ public class DirectoryScanResponse {
         this.totalFilesFound = totalFilesFound;
     }
     
+    public int getFilesDiscovered() {
+        return filesDiscovered;
+    }
+    
+    public void setFilesDiscovered(int filesDiscovered) {
+        this.filesDiscovered = filesDiscovered;
+    }
+    
+    public int getFilesUnchanged() {
+        return filesUnchanged;
+    }
+    
+    public void setFilesUnchanged(int filesUnchanged) {
+        this.filesUnchanged = filesUnchanged;
+    }
+    
+    public int getFilesModified() {
+        return filesModified;
+    }
+    
+    public void setFilesModified(int filesModified) {
+        this.filesModified = filesModified;
+    }
+    
+    public int getFilesDeleted() {
+        return filesDeleted;
+    }
+    
+    public void setFilesDeleted(int filesDeleted) {
+        this.filesDeleted = filesDeleted;
+    }
+    
     public String getCsvOutputPath() {
         return csvOutputPath;
     }
@@ -97,6 +180,78 @@ public class DirectoryScanResponse {
         this.csvOutputPath = csvOutputPath;
     }
     
+    public List<String> getBlockOutputFiles() {
+        return blockOutputFiles;
+    }
+    
+    public void setBlockOutputFiles(List<String> blockOutputFiles) {
+        this.blockOutputFiles = blockOutputFiles;
+    }
+    
+    public String getIndexName() {
+        return indexName;
+    }
+    
+    public void setIndexName(String indexName) {
+        this.indexName = indexName;
+    }
+    
+    public long getDocumentsIndexed() {
+        return documentsIndexed;
+    }
+    
+    public void setDocumentsIndexed(long documentsIndexed) {
+        this.documentsIndexed = documentsIndexed;
+    }
+    
+    public long getDocumentsIndexFailed() {
+        return documentsIndexFailed;
+    }
+    
+    public void setDocumentsIndexFailed(long documentsIndexFailed) {
+        this.documentsIndexFailed = documentsIndexFailed;
+    }
+    
+    public int getFilesSkipped() {
+        return filesSkipped;
+    }
+    
+    public void setFilesSkipped(int filesSkipped) {
+        this.filesSkipped = filesSkipped;
+    }
+    
+    public int getFilesDuplicate() {
+        return filesDuplicate;
+    }
+    
+    public void setFilesDuplicate(int filesDuplicate) {
+        this.filesDuplicate = filesDuplicate;
+    }
+    
+    public int getArchivesRead() {
+        return archivesRead;
+    }
+    
+    public void setArchivesRead(int archivesRead) {
+        this.archivesRead = archivesRead;
+    }
+    
+    public String getDuplicatesOutputPath() {
+        return duplicatesOutputPath;
+    }
+    
+    public void setDuplicatesOutputPath(String duplicatesOutputPath) {
+        this.duplicatesOutputPath = duplicatesOutputPath;
+    }
+    
+    public String getChangesOutputPath() {
+        return changesOutputPath;
+    }
+    
+    public void setChangesOutputPath(String changesOutputPath) {
+        this.changesOutputPath = changesOutputPath;
+    }
+    
     public LocalDateTime getStartTime() {
         return startTime;
     }
@@ -136,4 +291,12 @@ public class DirectoryScanResponse {
     public void setProcessedExtensions(List<String> processedExtensions) {
         this.processedExtensions = processedExtensions;
     }
+    
+    public List<ExtractionLaneStats> getExtractionLanes() {
+        return extractionLanes;
+    }
+    
+    public void setExtractionLanes(List<ExtractionLaneStats> extractionLanes) {
+        this.extractionLanes = extractionLanes;
+    }
 }
@@ -0,0 +1,112 @@
+package com.example.ragservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+
+import java.util.List;
+
+public class DirectoryWatchRequest {
+    
+    @NotBlank(message = "Directory path is required")
+    @JsonProperty("directory_path")
+    private String directoryPath;
+    
+    @JsonProperty("index_name")
+    private String indexName;
+    
+    @JsonProperty("supported_extensions")
+    private List<String> supportedExtensions = List.of("pdf", "txt", "docx", "doc", "rtf", "html", "xml");
+    
+    @JsonProperty("recursive")
+    private boolean recursive = true;
+    
+    // Quiet time after the last change to a file before it is indexed; defaults to document.processing.watch.debounce-ms
+    @JsonProperty("debounce_ms")
+    @Min(value = 0, message = "Debounce must not be negative")
+    private Long debounceMs;
+    
+    // Compare directory listings instead of using file system events, e.g. on network file systems
+    @JsonProperty("polling")
+    private Boolean polling;
+    
+    @JsonProperty("poll_interval_ms")
+    @Min(value = 100, message = "Poll interval must be at least 100 ms")
+    private Long pollIntervalMs;
+    
+    // Index the files already in the directory when the watch starts
+    @JsonProperty("initial_sync")
+    private boolean initialSync;
+    
+    public DirectoryWatchRequest() {}
+    
+    public DirectoryWatchRequest(String directoryPath, String indexName) {
+        this.directoryPath = directoryPath;
+        this.indexName = indexName;
+    }
+    
+    // Getters and setters
+    public String getDirectoryPath() {
+        return directoryPath;
+    }
+    
+    public void setDirectoryPath(String directoryPath) {
+        this.directoryPath = directoryPath;
+    }
+    
+    public String getIndexName() {
+        return indexName;
+    }
+    
+    public void setIndexName(String indexName) {
+        this.indexName = indexName;
+    }
+    
+    public List<String> getSupportedExtensions() {
+        return supportedExtensions;
+    }
+    
+    public void setSupportedExtensions(List<String> supportedExtensions) {
+        this.supportedExtensions = supportedExtensions;
+    }
+    
+    public boolean isRecursive() {
+        return recursive;
+    }
+    
+    public void setRecursive(boolean recursive) {
+        this.recursive = recursive;
+    }
+    
+    public Long getDebounceMs() {
+        return debounceMs;
+    }
+    
+    public void setDebounceMs(Long debounceMs) {
+        this.debounceMs = debounceMs;
+    }
+    
+    public Boolean getPolling() {
+        return polling;
+    }
+    
+    public void setPolling(Boolean polling) {
+        this.polling = polling;
+    }
+    
+    public Long getPollIntervalMs() {
+        return pollIntervalMs;
+    }
+    
+    public void setPollIntervalMs(Long pollIntervalMs) {
+        this.pollIntervalMs = pollIntervalMs;
+    }
+    
+    public boolean isInitialSync() {
+        return initialSync;
+    }
+    
+    public void setInitialSync(boolean initialSync) {
+        this.initialSync = initialSync;
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.ragservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class DirectoryWatchResponse implements TrackedJobResponse {
+    
+    @JsonProperty("watch_id")
+    private String watchId;
+    
+    @JsonProperty("status")
+    private String status;
+    
+    @JsonProperty("directory_path")
+    private String directoryPath;
+    
+    @JsonProperty("index_name")
+    private String indexName;
+    
+    // "events" for file system notifications, "polling" for compared listings
+    @JsonProperty("mode")
+    private String mode;
+    
+    @JsonProperty("directories_watched")
+    private int directoriesWatched;
+    
+    @JsonProperty("events_received")
+    private long eventsReceived;
+    
+    // Changed files waiting for the debounce time to pass
+    @JsonProperty("pending_changes")
+    private int pendingChanges;
+    
+    @JsonProperty("files_indexed")
+    private long filesIndexed;
+    
+    // Changed files whose content turned out to be the same as when they were indexed
+    @JsonProperty("files_unchanged")
+    private long filesUnchanged;
+    
+    @JsonProperty("files_deleted")
+    private long filesDeleted;
+    
+    @JsonProperty("files_failed")
+    private long filesFailed;
+    
+    @JsonProperty("last_change_applied")
+    private LocalDateTime lastChangeApplied;
+    
+    @JsonProperty("start_time")
+    private LocalDateTime startTime;
+    
+    @JsonProperty("end_time")
+    private LocalDateTime endTime;
+    
+    @JsonProperty("errors")
+    private List<String> errors;
+    
+    public DirectoryWatchResponse() {}
+    
+    public DirectoryWatchResponse(String watchId, String status) {
+        this.watchId = watchId;
+        this.status = status;
+        this.startTime = LocalDateTime.now();
+    }
+    
+    // Getters and setters
+    public String getWatchId() {
+        return watchId;
+    }
+    
+    public void setWatchId(String watchId) {
+        this.watchId = watchId;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public String getDirectoryPath() {
+        return directoryPath;
+    }
+    
+    public void setDirectoryPath(String directoryPath) {
+        this.directoryPath = directoryPath;
+    }
+    
+    public String getIndexName() {
+        return indexName;
+    }
+    
+    public void setIndexName(String indexName) {
+        this.indexName = indexName;
+    }
+    
+    public String getMode() {
+        return mode;
+    }
+    
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+    
+    public int getDirectoriesWatched() {
+        return directoriesWatched;
+    }
+    
+    public void setDirectoriesWatched(int directoriesWatched) {
+        this.directoriesWatched = directoriesWatched;
+    }
+    
+    public long getEventsReceived() {
+        return eventsReceived;
+    }
+    
+    public void setEventsReceived(long eventsReceived) {
+        this.eventsReceived = eventsReceived;
+    }
+    
+    public int getPendingChanges() {
+        return pendingChanges;
+    }
+    
+    public void setPendingChanges(int pendingChanges) {
+        this.pendingChanges = pendingChanges;
+    }
+    
+    public long getFilesIndexed() {
+        return filesIndexed;
+    }
+    
+    public void setFilesIndexed(long filesIndexed) {
+        this.filesIndexed = filesIndexed;
+    }
+    
+    public long getFilesUnchanged() {
+        return filesUnchanged;
+    }
+    
+    public void setFilesUnchanged(long filesUnchanged) {
+        this.filesUnchanged = filesUnchanged;
+    }
+    
+    public long getFilesDeleted() {
+        return filesDeleted;
+    }
+    
+    public void setFilesDeleted(long filesDeleted) {
+        this.filesDeleted = filesDeleted;
+    }
+    
+    public long getFilesFailed() {
+        return filesFailed;
+    }
+    
+    public void setFilesFailed(long filesFailed) {
+        this.filesFailed = filesFailed;
+    }
+    
+    public LocalDateTime getLastChangeApplied() {
+        return lastChangeApplied;
+    }
+    
+    public void setLastChangeApplied(LocalDateTime lastChangeApplied) {
+        this.lastChangeApplied = lastChangeApplied;
+    }
+    
+    public LocalDateTime getStartTime() {
+        return startTime;
+    }
+    
+    public void setStartTime(LocalDateTime startTime) {
+        this.startTime = startTime;
+    }
+    
+    public LocalDateTime getEndTime() {
+        return endTime;
+    }
+    
+    public void setEndTime(LocalDateTime endTime) {
+        this.endTime = endTime;
+    }
+    
+    public List<String> getErrors() {
+        return errors;
+    }
+    
+    public void setErrors(List<String> errors) {
+        this.errors = errors;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.ragservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Throughput of one extraction lane of a directory scan
+ */
+public class ExtractionLaneStats {
+    
+    // "fast" for files below document.processing.directory-scan.heavy-file-size, "heavy" for the others
+    @JsonProperty("lane")
+    private String lane;
+    
+    @JsonProperty("workers")
+    private int workers;
+    
+    @JsonProperty("files_extracted")
+    private long filesExtracted;
+    
+    @JsonProperty("bytes_extracted")
+    private long bytesExtracted;
+    
+    // Files waiting for the lane to have room
+    @JsonProperty("files_waiting")
+    private int filesWaiting;
+    
+    // Time spent extracting, summed over the lane's workers
+    @JsonProperty("extraction_ms")
+    private long extractionMs;
+    
+    // Measured from the lane's first file to its last finished one
+    @JsonProperty("files_per_second")
+    private double filesPerSecond;
+    
+    @JsonProperty("bytes_per_second")
+    private double bytesPerSecond;
+    
+    public ExtractionLaneStats() {}
+    
+    public ExtractionLaneStats(String lane, int workers) {
+        this.lane = lane;
+        this.workers = workers;
+    }
+    
+    public String getLane() {
+        return lane;
+    }
+    
+    public void setLane(String lane) {
+        this.lane = lane;
+    }
+    
+    public int getWorkers() {
+        return workers;
+    }
+    
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+    
+    public long getFilesExtracted() {
+        return filesExtracted;
+    }
+    
+    public void setFilesExtracted(long filesExtracted) {
+        this.filesExtracted = filesExtracted;
+    }
+    
+    public long getBytesExtracted() {
+        return bytesExtracted;
+    }
+    
+    public void setBytesExtracted(long bytesExtracted) {
+        this.bytesExtracted = bytesExtracted;
+    }
+    
+    public int getFilesWaiting() {
+        return filesWaiting;
+    }
+    
+    public void setFilesWaiting(int filesWaiting) {
+        this.filesWaiting = filesWaiting;
+    }
+    
+    public long getExtractionMs() {
+        return extractionMs;
+    }
+    
+    public void setExtractionMs(long extractionMs) {
+        this.extractionMs = extractionMs;
+    }
+    
+    public double getFilesPerSecond() {
+        return filesPerSecond;
+    }
+    
+    public void setFilesPerSecond(double filesPerSecond) {
+        this.filesPerSecond = filesPerSecond;
+    }
+    
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+    
+    public void setBytesPerSecond(double bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+}
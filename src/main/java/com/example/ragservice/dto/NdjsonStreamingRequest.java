@@ -0,0 +1,127 @@
+package com.example.ragservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Min;
+
+/**
+ * Request to stream a JSON Lines file, one JSON object per line. Fields are selected
+ * with JSON pointers (RFC 6901), e.g. "/body/text".
+ */
+public class NdjsonStreamingRequest {
+    
+    @NotBlank(message = "File path is required")
+    @JsonProperty("file_path")
+    private String filePath;
+    
+    @JsonProperty("batch_size")
+    @Min(value = 1, message = "Batch size must be at least 1")
+    private int batchSize = 100;
+    
+    @NotBlank(message = "Text pointer is required")
+    @JsonProperty("text_pointer")
+    private String textPointer = "/text";
+    
+    // Without an ID pointer, IDs are derived from the file and line number
+    @JsonProperty("id_pointer")
+    private String idPointer;
+    
+    // Without a metadata pointer, every field except the text and ID becomes metadata
+    @JsonProperty("metadata_pointer")
+    private String metadataPointer;
+    
+    @JsonProperty("index_name")
+    private String indexName;
+    
+    @JsonProperty("embedding_workers")
+    @Min(value = 1, message = "Embedding workers must be at least 1")
+    private Integer embeddingWorkers;
+    
+    // Adjust the batch size to embedding and bulk latency, starting at batch_size
+    @JsonProperty("adaptive_batching")
+    private Boolean adaptiveBatching;
+    
+    // Streams with a higher priority leave the job queue first
+    @JsonProperty("priority")
+    private Integer priority;
+    
+    public NdjsonStreamingRequest() {}
+    
+    public NdjsonStreamingRequest(String filePath, String indexName) {
+        this.filePath = filePath;
+        this.indexName = indexName;
+    }
+    
+    // Getters and setters
+    public String getFilePath() {
+        return filePath;
+    }
+    
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+    
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+    
+    public String getTextPointer() {
+        return textPointer;
+    }
+    
+    public void setTextPointer(String textPointer) {
+        this.textPointer = textPointer;
+    }
+    
+    public String getIdPointer() {
+        return idPointer;
+    }
+    
+    public void setIdPointer(String idPointer) {
+        this.idPointer = idPointer;
+    }
+    
+    public String getMetadataPointer() {
+        return metadataPointer;
+    }
+    
+    public void setMetadataPointer(String metadataPointer) {
+        this.metadataPointer = metadataPointer;
+    }
+    
+    public String getIndexName() {
+        return indexName;
+    }
+    
+    public void setIndexName(String indexName) {
+        this.indexName = indexName;
+    }
+    
+    public Integer getEmbeddingWorkers() {
+        return embeddingWorkers;
+    }
+    
+    public void setEmbeddingWorkers(Integer embeddingWorkers) {
+        this.embeddingWorkers = embeddingWorkers;
+    }
+    
+    public Boolean getAdaptiveBatching() {
+        return adaptiveBatching;
+    }
+    
+    public void setAdaptiveBatching(Boolean adaptiveBatching) {
+        this.adaptiveBatching = adaptiveBatching;
+    }
+    
+    public Integer getPriority() {
+        return priority;
+    }
+    
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.ragservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+
+/**
+ * A queued or running ingestion job as seen by the job scheduler
+ */
+public class ScheduledJobInfo {
+    
+    @JsonProperty("job_id")
+    private String jobId;
+    
+    @JsonProperty("type")
+    private String type;
+    
+    // QUEUED or RUNNING; a job that yielded its time slice is QUEUED again
+    @JsonProperty("state")
+    private String state;
+    
+    @JsonProperty("priority")
+    private int priority;
+    
+    @JsonProperty("weight")
+    private int weight;
+    
+    // 1-based position among the queued jobs, null while running
+    @JsonProperty("queue_position")
+    private Integer queuePosition;
+    
+    @JsonProperty("submitted_at")
+    private LocalDateTime submittedAt;
+    
+    @JsonProperty("started_at")
+    private LocalDateTime startedAt;
+    
+    // Number of times the job gave its capacity to a waiting job
+    @JsonProperty("time_slices")
+    private int timeSlices;
+    
+    public ScheduledJobInfo() {}
+    
+    public ScheduledJobInfo(String jobId, String type, String state) {
+        this.jobId = jobId;
+        this.type = type;
+        this.state = state;
+    }
+    
+    public String getJobId() {
+        return jobId;
+    }
+    
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+    
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    public String getState() {
+        return state;
+    }
+    
+    public void setState(String state) {
+        this.state = state;
+    }
+    
+    public int getPriority() {
+        return priority;
+    }
+    
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+    
+    public int getWeight() {
+        return weight;
+    }
+    
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+    
+    public Integer getQueuePosition() {
+        return queuePosition;
+    }
+    
+    public void setQueuePosition(Integer queuePosition) {
+        this.queuePosition = queuePosition;
+    }
+    
+    public LocalDateTime getSubmittedAt() {
+        return submittedAt;
+    }
+    
+    public void setSubmittedAt(LocalDateTime submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+    
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+    
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+    
+    public int getTimeSlices() {
+        return timeSlices;
+    }
+    
+    public void setTimeSlices(int timeSlices) {
+        this.timeSlices = timeSlices;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.ragservice.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Status of an asynchronous job (directory scan or stream) as kept by the job registry
+ */
+public interface TrackedJobResponse {
+    
+    String getStatus();
+    
+    void setStatus(String status);
+    
+    LocalDateTime getEndTime();
+    
+    void setEndTime(LocalDateTime endTime);
+    
+    List<String> getErrors();
+    
+    void setErrors(List<String> errors);
+}
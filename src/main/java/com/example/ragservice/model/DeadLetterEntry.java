@@ -0,0 +1,140 @@
+package com.example.ragservice.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.time.Instant;
+
+/**
+ * A document that could not be ingested, as stored in the dead-letter file. Each state
+ * change is appended as a new line; the latest line of an entry ID is its current state.
+ */
+public class DeadLetterEntry {
+    
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_RESOLVED = "RESOLVED";
+    public static final String STATUS_EXHAUSTED = "EXHAUSTED";
+    
+    @JsonProperty("entry_id")
+    private String entryId;
+    
+    @JsonProperty("job_id")
+    private String jobId;
+    
+    @JsonProperty("index_name")
+    private String indexName;
+    
+    @JsonProperty("status")
+    private String status;
+    
+    @JsonProperty("error_class")
+    private String errorClass;
+    
+    @JsonProperty("error_message")
+    private String errorMessage;
+    
+    // Number of ingestion attempts that failed so far, including the original one
+    @JsonProperty("attempts")
+    private int attempts;
+    
+    @JsonProperty("first_failed_at")
+    private Instant firstFailedAt;
+    
+    @JsonProperty("last_failed_at")
+    private Instant lastFailedAt;
+    
+    @JsonProperty("next_attempt_at")
+    private Instant nextAttemptAt;
+    
+    // Stored without its embedding, which is generated again on retry
+    @JsonProperty("document")
+    private Document document;
+    
+    public DeadLetterEntry() {}
+    
+    public String getEntryId() {
+        return entryId;
+    }
+    
+    public void setEntryId(String entryId) {
+        this.entryId = entryId;
+    }
+    
+    public String getJobId() {
+        return jobId;
+    }
+    
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+    
+    public String getIndexName() {
+        return indexName;
+    }
+    
+    public void setIndexName(String indexName) {
+        this.indexName = indexName;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public String getErrorClass() {
+        return errorClass;
+    }
+    
+    public void setErrorClass(String errorClass) {
+        this.errorClass = errorClass;
+    }
+    
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+    
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+    
+    public int getAttempts() {
+        return attempts;
+    }
+    
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+    
+    public Instant getFirstFailedAt() {
+        return firstFailedAt;
+    }
+    
+    public void setFirstFailedAt(Instant firstFailedAt) {
+        this.firstFailedAt = firstFailedAt;
+    }
+    
+    public Instant getLastFailedAt() {
+        return lastFailedAt;
+    }
+    
+    public void setLastFailedAt(Instant lastFailedAt) {
+        this.lastFailedAt = lastFailedAt;
+    }
+    
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+    
+    public void setNextAttemptAt(Instant nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+    
+    public Document getDocument() {
+        return document;
+    }
+    
+    public void setDocument(Document document) {
+        this.document = document;
+    }
+}
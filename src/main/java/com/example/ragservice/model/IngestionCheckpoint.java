@@ -0,0 +1,169 @@
+package com.example.ragservice.model;
+
+import com.example.ragservice.dto.CsvFileIngestionRequest;
+import com.example.ragservice.dto.CsvStreamingRequest;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.time.Instant;
+
+/**
+ * Durable progress of a CSV ingestion job. Everything before {@code byteOffset}
+ * (record {@code recordNumber} and earlier) has been confirmed by OpenSearch or
+ * has failed permanently, so a resumed job continues from there.
+ */
+public class IngestionCheckpoint {
+    
+    public static final String TYPE_CSV_FILE = "CSV_FILE";
+    public static final String TYPE_CSV_STREAM = "CSV_STREAM";
+    
+    @JsonProperty("job_id")
+    private String jobId;
+    
+    @JsonProperty("job_type")
+    private String jobType;
+    
+    @JsonProperty("csv_file_path")
+    private String csvFilePath;
+    
+    @JsonProperty("file_size")
+    private long fileSize;
+    
+    @JsonProperty("file_last_modified")
+    private long fileLastModified;
+    
+    // -1 when the file is read by a parser that cannot report byte positions
+    @JsonProperty("byte_offset")
+    private long byteOffset;
+    
+    @JsonProperty("record_number")
+    private long recordNumber;
+    
+    @JsonProperty("last_acknowledged_batch")
+    private long lastAcknowledgedBatch = -1;
+    
+    @JsonProperty("documents_indexed")
+    private long documentsIndexed;
+    
+    @JsonProperty("documents_failed")
+    private long documentsFailed;
+    
+    @JsonProperty("updated_at")
+    private Instant updatedAt;
+    
+    @JsonProperty("file_request")
+    private CsvFileIngestionRequest fileRequest;
+    
+    @JsonProperty("streaming_request")
+    private CsvStreamingRequest streamingRequest;
+    
+    public IngestionCheckpoint() {}
+    
+    public IngestionCheckpoint(String jobId, String jobType, String csvFilePath) {
+        this.jobId = jobId;
+        this.jobType = jobType;
+        this.csvFilePath = csvFilePath;
+    }
+    
+    public String getJobId() {
+        return jobId;
+    }
+    
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+    
+    public String getJobType() {
+        return jobType;
+    }
+    
+    public void setJobType(String jobType) {
+        this.jobType = jobType;
+    }
+    
+    public String getCsvFilePath() {
+        return csvFilePath;
+    }
+    
+    public void setCsvFilePath(String csvFilePath) {
+        this.csvFilePath = csvFilePath;
+    }
+    
+    public long getFileSize() {
+        return fileSize;
+    }
+    
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+    
+    public long getFileLastModified() {
+        return fileLastModified;
+    }
+    
+    public void setFileLastModified(long fileLastModified) {
+        this.fileLastModified = fileLastModified;
+    }
+    
+    public long getByteOffset() {
+        return byteOffset;
+    }
+    
+    public void setByteOffset(long byteOffset) {
+        this.byteOffset = byteOffset;
+    }
+    
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+    
+    public void setRecordNumber(long recordNumber) {
+        this.recordNumber = recordNumber;
+    }
+    
+    public long getLastAcknowledgedBatch() {
+        return lastAcknowledgedBatch;
+    }
+    
+    public void setLastAcknowledgedBatch(long lastAcknowledgedBatch) {
+        this.lastAcknowledgedBatch = lastAcknowledgedBatch;
+    }
+    
+    public long getDocumentsIndexed() {
+        return documentsIndexed;
+    }
+    
+    public void setDocumentsIndexed(long documentsIndexed) {
+        this.documentsIndexed = documentsIndexed;
+    }
+    
+    public long getDocumentsFailed() {
+        return documentsFailed;
+    }
+    
+    public void setDocumentsFailed(long documentsFailed) {
+        this.documentsFailed = documentsFailed;
+    }
+    
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+    
+    public CsvFileIngestionRequest getFileRequest() {
+        return fileRequest;
+    }
+    
+    public void setFileRequest(CsvFileIngestionRequest fileRequest) {
+        this.fileRequest = fileRequest;
+    }
+    
+    public CsvStreamingRequest getStreamingRequest() {
+        return streamingRequest;
+    }
+    
+    public void setStreamingRequest(CsvStreamingRequest streamingRequest) {
+        this.streamingRequest = streamingRequest;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.ragservice.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The files an incremental directory scan has extracted, by path. A later scan of the same
+ * directory skips files whose size and modification time (or content hash) are unchanged.
+ */
+public class ScanManifest {
+    
+    public static final String CHANGE_ADDED = "added";
+    public static final String CHANGE_MODIFIED = "modified";
+    public static final String CHANGE_DELETED = "deleted";
+    // Touched but with the same content; not written to the change log
+    public static final String CHANGE_UNCHANGED = "unchanged";
+    
+    @JsonProperty("directory_path")
+    private String directoryPath;
+    
+    @JsonProperty("last_scan_id")
+    private String lastScanId;
+    
+    @JsonProperty("updated_at")
+    private Instant updatedAt;
+    
+    @JsonProperty("files")
+    private Map<String, FileEntry> files = new LinkedHashMap<>();
+    
+    public ScanManifest() {}
+    
+    public ScanManifest(String directoryPath) {
+        this.directoryPath = directoryPath;
+    }
+    
+    public String getDirectoryPath() {
+        return directoryPath;
+    }
+    
+    public void setDirectoryPath(String directoryPath) {
+        this.directoryPath = directoryPath;
+    }
+    
+    public String getLastScanId() {
+        return lastScanId;
+    }
+    
+    public void setLastScanId(String lastScanId) {
+        this.lastScanId = lastScanId;
+    }
+    
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+    
+    public Map<String, FileEntry> getFiles() {
+        return files;
+    }
+    
+    public void setFiles(Map<String, FileEntry> files) {
+        this.files = files;
+    }
+    
+    /**
+     * State of one file when it was last extracted
+     */
+    public static class FileEntry {
+        
+        @JsonProperty("size")
+        private long size;
+        
+        @JsonProperty("last_modified")
+        private long lastModified;
+        
+        @JsonProperty("content_hash")
+        private String contentHash;
+        
+        @JsonProperty("document_id")
+        private String documentId;
+        
+        // CSV or block file the extracted text was written to
+        @JsonProperty("output_csv_path")
+        private String outputCsvPath;
+        
+        @JsonProperty("scan_id")
+        private String scanId;
+        
+        // Archives: the documents of their entries; document_id is the archive's own and not indexed
+        @JsonProperty("entry_document_ids")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private List<String> entryDocumentIds;
+        
+        public FileEntry() {}
+        
+        public FileEntry(long size, long lastModified, String contentHash, String documentId,
+                         String outputCsvPath, String scanId) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.documentId = documentId;
+            this.outputCsvPath = outputCsvPath;
+            this.scanId = scanId;
+        }
+        
+        public long getSize() {
+            return size;
+        }
+        
+        public void setSize(long size) {
+            this.size = size;
+        }
+        
+        public long getLastModified() {
+            return lastModified;
+        }
+        
+        public void setLastModified(long lastModified) {
+            this.lastModified = lastModified;
+        }
+        
+        public String getContentHash() {
+            return contentHash;
+        }
+        
+        public void setContentHash(String contentHash) {
+            this.contentHash = contentHash;
+        }
+        
+        public String getDocumentId() {
+            return documentId;
+        }
+        
+        public void setDocumentId(String documentId) {
+            this.documentId = documentId;
+        }
+        
+        public String getOutputCsvPath() {
+            return outputCsvPath;
+        }
+        
+        public void setOutputCsvPath(String outputCsvPath) {
+            this.outputCsvPath = outputCsvPath;
+        }
+        
+        public String getScanId() {
+            return scanId;
+        }
+        
+        public void setScanId(String scanId) {
+            this.scanId = scanId;
+        }
+        
+        public List<String> getEntryDocumentIds() {
+            return entryDocumentIds;
+        }
+        
+        public void setEntryDocumentIds(List<String> entryDocumentIds) {
+            this.entryDocumentIds = entryDocumentIds;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.ragservice.service;
+
+import org.opensearch.OpenSearchStatusException;
+import org.opensearch.client.ResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Chooses the batch size of an {@link IngestionPipeline} with additive increase and
+ * multiplicative decrease (AIMD).
+ * <p>
+ * A pipeline embeds and bulk indexes the same batches, so one size is controlled by the
+ * feedback of both stages. After a full-size batch was embedded and indexed within the
+ * target latencies, the size grows by a fixed increment. A stage that is slower than its
+ * target, answers 429 or times out shrinks the size by the decrease factor. Batches that
+ * were sealed before a decrease were already in flight and do not shrink it again.
+ */
+public class AdaptiveBatchSizer {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveBatchSizer.class);
+    
+    private static final int TOO_MANY_REQUESTS = 429;
+    
+    private final int minSize;
+    private final int maxSize;
+    private final int increment;
+    private final double decreaseFactor;
+    private final long embeddingTargetMs;
+    private final long indexingTargetMs;
+    
+    private volatile int currentSize;
+    private long nextSequence;
+    private long decreasedBefore;
+    private long increases;
+    private long decreases;
+    
+    public AdaptiveBatchSizer(int initialSize, int minSize, int maxSize, int increment, double decreaseFactor,
+                              long embeddingTargetMs, long indexingTargetMs) {
+        this.minSize = Math.max(1, minSize);
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.increment = Math.max(1, increment);
+        this.decreaseFactor = decreaseFactor > 0 && decreaseFactor < 1 ? decreaseFactor : 0.5;
+        this.embeddingTargetMs = embeddingTargetMs;
+        this.indexingTargetMs = indexingTargetMs;
+        this.currentSize = Math.min(this.maxSize, Math.max(this.minSize, initialSize));
+    }
+    
+    /**
+     * @return the size of the next batch to seal
+     */
+    public int getCurrentSize() {
+        return currentSize;
+    }
+    
+    public synchronized long getIncreases() {
+        return increases;
+    }
+    
+    public synchronized long getDecreases() {
+        return decreases;
+    }
+    
+    /**
+     * Called on the producing thread when a batch is sealed
+     */
+    synchronized void batchSealed(long sequence) {
+        nextSequence = sequence + 1;
+    }
+    
+    /**
+     * Called when a batch was embedded. A slow embedding request shrinks the batch size.
+     */
+    synchronized void embeddingCompleted(long sequence, long latencyMs) {
+        if (latencyMs > embeddingTargetMs) {
+            decrease(sequence, "embedding took " + latencyMs + "ms");
+        }
+    }
+    
+    /**
+     * Called when the bulk request of a batch was answered
+     *
+     * @param throttled whether OpenSearch rejected documents of the batch with 429
+     */
+    synchronized void indexingCompleted(long sequence, int size, long embeddingMs, long indexingMs, boolean throttled) {
+        if (throttled) {
+            decrease(sequence, "bulk request was throttled");
+        } else if (indexingMs > indexingTargetMs) {
+            decrease(sequence, "bulk request took " + indexingMs + "ms");
+        } else if (sequence >= decreasedBefore && size >= currentSize && embeddingMs <= embeddingTargetMs
+                && currentSize < maxSize) {
+            // Only a full batch sealed since the last decrease shows that the current size is handled within the targets
+            currentSize = Math.min(maxSize, currentSize + increment);
+            increases++;
+        }
+    }
+    
+    /**
+     * Called when embedding or bulk indexing failed for a whole batch. Only overload
+     * failures change the size; others say nothing about it.
+     */
+    synchronized void batchFailed(long sequence, Exception cause) {
+        if (isOverload(cause)) {
+            decrease(sequence, cause.getClass().getSimpleName() + ": " + cause.getMessage());
+        }
+    }
+    
+    private void decrease(long sequence, String reason) {
+        if (sequence < decreasedBefore || currentSize <= minSize) {
+            return;
+        }
+        int previous = currentSize;
+        currentSize = Math.max(minSize, (int) (currentSize * decreaseFactor));
+        decreasedBefore = nextSequence;
+        decreases++;
+        logger.debug("Batch size reduced from {} to {} after batch {}: {}", previous, currentSize, sequence, reason);
+    }
+    
+    /**
+     * Whether a failure means the embedding model or the cluster is overloaded: a 429
+     * response or a timeout anywhere in the cause chain
+     */
+    static boolean isOverload(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException || cause instanceof TimeoutException) {
+                return true;
+            }
+            if (cause instanceof OpenSearchStatusException statusException
+                    && statusException.status().getStatus() == TOO_MANY_REQUESTS) {
+                return true;
+            }
+            if (cause instanceof ResponseException responseException
+                    && responseException.getResponse().getStatusLine().getStatusCode() == TOO_MANY_REQUESTS) {
+                return true;
+            }
+            if (cause instanceof RestClientResponseException restClientException
+                    && restClientException.getStatusCode().value() == TOO_MANY_REQUESTS) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.ragservice.service;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+/**
+ * Extracts the documents in a zip, tar or gzipped tar archive while reading it, without
+ * unpacking it to disk. Each supported entry is streamed into the
+ * {@link DocumentExtractionService}; archives inside the archive are read the same way, up to
+ * a maximum depth. The location of an entry is the archive's path, "!/" and the entry's name,
+ * repeated for nested archives, e.g. {@code /docs/bundle.zip!/2023/report.tar.gz!/report.pdf}.
+ * <p>
+ * An entry larger than the maximum entry size is skipped, as are entries beyond the maximum
+ * number of entries. Once the entries of an archive, nested ones included, have been
+ * decompressed to more than the maximum total size, the rest of the archive is skipped, which
+ * also stops archives that decompress to far more than their own size.
+ */
+final class ArchiveReader {
+    
+    static final String ENTRY_SEPARATOR = "!/";
+    
+    private static final List<String> ARCHIVE_SUFFIXES = List.of(".zip", ".tar", ".tar.gz", ".tgz");
+    
+    private final DocumentExtractionService extractionService;
+    private final Predicate<String> supported;
+    private final int maxDepth;
+    private final long maxEntrySize;
+    private final long maxTotalSize;
+    private final int maxEntries;
+    
+    /**
+     * @param supported whether an entry is extracted, by its name
+     * @param maxDepth levels of archives read; 1 = archives inside the archive are skipped
+     * @param maxEntrySize entries that decompress to more bytes are skipped; 0 = no limit
+     * @param maxTotalSize the archive is not read further once its entries decompressed to more bytes; 0 = no limit
+     * @param maxEntries supported entries read per archive, nested ones included; 0 = no limit
+     */
+    ArchiveReader(DocumentExtractionService extractionService, Predicate<String> supported, int maxDepth,
+                  long maxEntrySize, long maxTotalSize, int maxEntries) {
+        this.extractionService = extractionService;
+        this.supported = supported;
+        this.maxDepth = Math.max(1, maxDepth);
+        this.maxEntrySize = maxEntrySize;
+        this.maxTotalSize = maxTotalSize;
+        this.maxEntries = maxEntries;
+    }
+    
+    /**
+     * Whether a file is read as an archive, by its name
+     */
+    static boolean isArchive(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        return ARCHIVE_SUFFIXES.stream().anyMatch(name::endsWith);
+    }
+    
+    /**
+     * Reads an archive and extracts its supported entries
+     *
+     * @return the entries in the order they are stored, with their document or the reason they
+     *         were not extracted; an archive that cannot be read to the end ends with an entry
+     *         for the archive itself that carries the failure
+     */
+    List<Entry> read(Path archive) {
+        String location = archive.toString();
+        List<Entry> entries = new ArrayList<>();
+        Budget budget = new Budget();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(archive))) {
+            read(in, archive.getFileName().toString(), location, location, 1, budget, entries);
+        } catch (IOException | LimitExceededException e) {
+            entries.add(new Entry(location, null, e));
+        }
+        return entries;
+    }
+    
+    private void read(InputStream in, String name, String archivePath, String location, int depth, Budget budget,
+                      List<Entry> entries) throws IOException, LimitExceededException {
+        ArchiveInputStream archive = open(name, in);
+        ArchiveEntry archiveEntry;
+        while ((archiveEntry = archive.getNextEntry()) != null) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while reading archive: " + archivePath);
+            }
+            if (archiveEntry.isDirectory() || !archive.canReadEntryData(archiveEntry)) {
+                continue;
+            }
+            String entryName = entryName(archiveEntry.getName());
+            boolean nested = entryName != null && isArchive(entryName);
+            if (entryName == null || !nested && !supported.test(entryName)) {
+                continue;
+            }
+            String entryLocation = location + ENTRY_SEPARATOR + entryName;
+            
+            if (maxEntries > 0 && ++budget.entries > maxEntries) {
+                throw new LimitExceededException(String.format(
+                    "Archive has more than %d entries, the rest is skipped: %s", maxEntries, archivePath));
+            }
+            if (nested && depth >= maxDepth) {
+                entries.add(new Entry(entryLocation, null, new LimitExceededException(String.format(
+                    "Archive is nested deeper than %d levels: %s", maxDepth, entryLocation))));
+                continue;
+            }
+            long size = archiveEntry.getSize();
+            if (maxEntrySize > 0 && size > maxEntrySize) {
+                entries.add(new Entry(entryLocation, null, entryTooLarge(entryLocation)));
+                continue;
+            }
+            
+            EntryInputStream entryStream = new EntryInputStream(archive, budget, archivePath, entryLocation);
+            if (nested) {
+                try {
+                    read(new BufferedInputStream(entryStream), entryName, archivePath, entryLocation, depth + 1, budget, entries);
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException e) {
+                    // The archive this one is in is read on unless it exceeded the total size
+                    if (entryStream.limitExceeded != null && !entryStream.tooLarge) {
+                        throw entryStream.limitExceeded;
+                    }
+                    entries.add(new Entry(entryLocation, null, entryStream.limitExceeded != null ? entryStream.limitExceeded : e));
+                }
+            } else {
+                entries.add(extract(entryStream, archivePath, entryName, entryLocation, size));
+            }
+        }
+    }
+    
+    private Entry extract(EntryInputStream entryStream, String archivePath, String entryName, String entryLocation,
+                          long size) throws IOException, LimitExceededException {
+        DocumentExtractionService.ExtractedDocument document;
+        try {
+            document = extractionService.extractText(entryStream, entryLocation, size);
+        } catch (DocumentExtractionService.DocumentExtractionException e) {
+            if (entryStream.limitExceeded == null) {
+                if (e.getCause() instanceof TimeoutException) {
+                    // The abandoned extraction may still be reading the archive
+                    throw new IOException("Stopped reading the archive after an entry timed out: " + entryLocation, e);
+                }
+                return new Entry(entryLocation, null, e);
+            }
+            document = null;
+        }
+        
+        // Checked after a successful extraction too, as parsers may end quietly when the data stops
+        if (entryStream.limitExceeded != null) {
+            if (!entryStream.tooLarge) {
+                throw entryStream.limitExceeded;
+            }
+            return new Entry(entryLocation, null, entryStream.limitExceeded);
+        }
+        document.getMetadata().put("file_size", String.valueOf(entryStream.bytesRead));
+        document.getMetadata().put("archive_path", archivePath);
+        document.getMetadata().put("archive_entry", entryName);
+        return new Entry(entryLocation, document, null);
+    }
+    
+    private LimitExceededException entryTooLarge(String entryLocation) {
+        return new LimitExceededException(String.format(
+            "Archive entry exceeds the maximum size of %d bytes: %s", maxEntrySize, entryLocation));
+    }
+    
+    private static ArchiveInputStream open(String name, InputStream in) throws IOException {
+        String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        if (lowerCaseName.endsWith(".zip")) {
+            return new ZipArchiveInputStream(in, "UTF-8", true, true);
+        }
+        if (lowerCaseName.endsWith(".tar.gz") || lowerCaseName.endsWith(".tgz")) {
+            return new TarArchiveInputStream(new GzipCompressorInputStream(in, true));
+        }
+        return new TarArchiveInputStream(in);
+    }
+    
+    /**
+     * The entry's name as a relative path, or null if it would leave the archive
+     */
+    static String entryName(String name) {
+        String entryName = name.replace('\\', '/');
+        while (entryName.startsWith("/")) {
+            entryName = entryName.substring(1);
+        }
+        for (String segment : entryName.split("/")) {
+            if (segment.equals("..")) {
+                return null;
+            }
+        }
+        return entryName.isEmpty() ? null : entryName;
+    }
+    
+    /**
+     * An entry of an archive: its document, or the reason it has none
+     */
+    record Entry(String location, DocumentExtractionService.ExtractedDocument document, Exception error) {
+    }
+    
+    /**
+     * An entry skipped because of the archive limits
+     */
+    static class LimitExceededException extends DocumentExtractionService.DocumentExtractionException {
+        LimitExceededException(String message) {
+            super(message);
+        }
+    }
+    
+    /**
+     * What one top-level archive has used of the limits so far
+     */
+    private static final class Budget {
+        private long bytesRead;
+        private int entries;
+    }
+    
+    /**
+     * The data of one entry. Stops with a {@link LimitExceededException} as its cause once the
+     * entry or the archive has been decompressed to more than its limit, and leaves the
+     * archive open when closed.
+     */
+    private final class EntryInputStream extends FilterInputStream {
+        private final Budget budget;
+        private final String archivePath;
+        private final String entryLocation;
+        private long bytesRead;
+        private LimitExceededException limitExceeded;
+        // The entry itself was too large, rather than the archive
+        private boolean tooLarge;
+        
+        private EntryInputStream(InputStream archive, Budget budget, String archivePath, String entryLocation) {
+            super(archive);
+            this.budget = budget;
+            this.archivePath = archivePath;
+            this.entryLocation = entryLocation;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            checkLimits();
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            checkLimits();
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes are decompressed all the same
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+        
+        @Override
+        public void close() {
+            // The archive is read on after this entry
+        }
+        
+        private void count(long bytes) throws IOException {
+            bytesRead += bytes;
+            budget.bytesRead += bytes;
+            checkLimits();
+        }
+        
+        private void checkLimits() throws IOException {
+            if (limitExceeded == null) {
+                if (maxEntrySize > 0 && bytesRead > maxEntrySize) {
+                    limitExceeded = entryTooLarge(entryLocation);
+                    tooLarge = true;
+                } else if (maxTotalSize > 0 && budget.bytesRead > maxTotalSize) {
+                    limitExceeded = new LimitExceededException(String.format(
+                        "Archive decompresses to more than %d bytes, the rest is skipped: %s", maxTotalSize, archivePath));
+                }
+            }
+            if (limitExceeded != null) {
+                throw new IOException(limitExceeded.getMessage(), limitExceeded);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.ragservice.service;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects file change events of a directory watch until a file has been quiet for the
+ * debounce time, so a burst of events from one save or copy is applied once. A file that
+ * keeps changing is applied after the maximum delay anyway. Times are {@link System#nanoTime()}
+ * values passed in by the caller. Not thread-safe; owned by the watch thread.
+ */
+final class ChangeDebouncer {
+    
+    private final long debounceNanos;
+    private final long maxDelayNanos;
+    
+    // In order of the first change
+    private final Map<Path, long[]> pending = new LinkedHashMap<>();
+    
+    ChangeDebouncer(long debounceMs, long maxDelayMs) {
+        this.debounceNanos = Math.max(0, debounceMs) * 1_000_000;
+        this.maxDelayNanos = Math.max(debounceMs, maxDelayMs) * 1_000_000;
+    }
+    
+    /**
+     * Notes a change of a file
+     */
+    void record(Path file, long nowNanos) {
+        long[] times = pending.get(file);
+        if (times == null) {
+            pending.put(file, new long[] {nowNanos, nowNanos});
+        } else {
+            times[1] = nowNanos;
+        }
+    }
+    
+    /**
+     * Removes and returns the files that are due: quiet for the debounce time, or first
+     * changed longer than the maximum delay ago
+     */
+    List<Path> takeDue(long nowNanos) {
+        List<Path> due = new ArrayList<>();
+        Iterator<Map.Entry<Path, long[]>> entries = pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Path, long[]> entry = entries.next();
+            long[] times = entry.getValue();
+            if (nowNanos - times[1] >= debounceNanos || nowNanos - times[0] >= maxDelayNanos) {
+                due.add(entry.getKey());
+                entries.remove();
+            }
+        }
+        return due;
+    }
+    
+    /**
+     * Time until the next file is due, or -1 if nothing is pending
+     */
+    long nanosUntilNextDue(long nowNanos) {
+        long next = -1;
+        for (long[] times : pending.values()) {
+            long dueAt = Math.min(times[1] + debounceNanos, times[0] + maxDelayNanos);
+            long wait = Math.max(0, dueAt - nowNanos);
+            if (next < 0 || wait < next) {
+                next = wait;
+            }
+        }
+        return next;
+    }
+    
+    int size() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.model.Document;
+import com.example.ragservice.model.IngestionCheckpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Advances a job's checkpoint as its batches are acknowledged.
+ * <p>
+ * The reading thread reports the position after every record it consumes. When a batch
+ * is sealed, that position is remembered for it: every record up to there is either in
+ * this batch, in an earlier one, or was skipped. Batches can complete out of order, so
+ * the checkpoint only moves to the position of a batch once it and all batches before
+ * it have been acknowledged by OpenSearch. A batch that failed as a whole stops the
+ * checkpoint for the rest of the run, so a resume starts again at that batch. The
+ * checkpoint is written to disk at most once per configured interval.
+ */
+class CheckpointTracker implements IngestionPipeline.BatchListener {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointTracker.class);
+    
+    private final CsvCheckpointService checkpointService;
+    private final IngestionCheckpoint checkpoint;
+    private final long sequenceBase;
+    
+    // Position after the last consumed record, owned by the reading thread
+    private long consumedRecordNumber;
+    private long consumedByteOffset;
+    
+    private final Map<Long, Position> sealedBatches = new HashMap<>();
+    private final Set<Long> completedBatches = new HashSet<>();
+    private long nextSequence;
+    private boolean stalled;
+    private long lastSaveMillis;
+    private boolean dirty;
+    
+    /**
+     * @param checkpoint checkpoint to advance; a resumed job passes the one it resumed from
+     */
+    CheckpointTracker(CsvCheckpointService checkpointService, IngestionCheckpoint checkpoint) {
+        this.checkpointService = checkpointService;
+        this.checkpoint = checkpoint;
+        // Keep batch numbers increasing across resumes of the same job
+        this.sequenceBase = checkpoint.getLastAcknowledgedBatch() + 1;
+        this.consumedRecordNumber = checkpoint.getRecordNumber();
+        this.consumedByteOffset = checkpoint.getByteOffset();
+        this.lastSaveMillis = System.currentTimeMillis();
+    }
+    
+    /**
+     * Records that everything up to {@code recordNumber} has been read
+     *
+     * @param nextByteOffset byte offset of the following record, or -1 if unknown
+     */
+    void recordConsumed(long recordNumber, long nextByteOffset) {
+        consumedRecordNumber = recordNumber;
+        consumedByteOffset = nextByteOffset;
+    }
+    
+    @Override
+    public synchronized void onBatchSealed(long sequence) {
+        if (!stalled) {
+            sealedBatches.put(sequence, new Position(consumedRecordNumber, consumedByteOffset));
+        }
+    }
+    
+    @Override
+    public synchronized void onBatchIndexed(long sequence, VectorStoreService.BulkIndexResult result) {
+        batchAcknowledged(sequence, result.getSuccessCount(), result.getFailureCount());
+    }
+    
+    @Override
+    public synchronized void onBatchFailed(long sequence, List<Document> documents, Exception cause) {
+        if (!stalled) {
+            logger.warn("Checkpoint of job {} stops before batch {}, which failed: {}",
+                       checkpoint.getJobId(), sequenceBase + sequence, cause.getMessage());
+            stalled = true;
+            sealedBatches.clear();
+            completedBatches.clear();
+        }
+    }
+    
+    /**
+     * Marks a batch as written. Documents rejected individually by the bulk request count
+     * as failed; they would be rejected again on a resume.
+     */
+    synchronized void batchAcknowledged(long sequence, int indexed, int failed) {
+        if (stalled) {
+            return;
+        }
+        checkpoint.setDocumentsIndexed(checkpoint.getDocumentsIndexed() + indexed);
+        checkpoint.setDocumentsFailed(checkpoint.getDocumentsFailed() + failed);
+        completedBatches.add(sequence);
+        
+        while (completedBatches.remove(nextSequence)) {
+            Position position = sealedBatches.remove(nextSequence);
+            checkpoint.setRecordNumber(position.recordNumber());
+            checkpoint.setByteOffset(position.byteOffset());
+            checkpoint.setLastAcknowledgedBatch(sequenceBase + nextSequence);
+            nextSequence++;
+            dirty = true;
+        }
+        
+        if (dirty && System.currentTimeMillis() - lastSaveMillis >= checkpointService.getIntervalMillis()) {
+            save();
+        }
+    }
+    
+    /**
+     * Writes the current checkpoint if it advanced since the last write
+     */
+    synchronized void flush() {
+        if (dirty) {
+            save();
+        }
+    }
+    
+    synchronized IngestionCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+    
+    private void save() {
+        try {
+            checkpointService.save(checkpoint);
+            dirty = false;
+        } catch (IOException e) {
+            // A missed checkpoint only means more work is repeated on resume
+            logger.warn("Failed to save checkpoint of job {}: {}", checkpoint.getJobId(), e.getMessage());
+        }
+        lastSaveMillis = System.currentTimeMillis();
+    }
+    
+    private record Position(long recordNumber, long byteOffset) {}
+}
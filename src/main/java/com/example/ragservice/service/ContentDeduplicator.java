@@ -0,0 +1,247 @@
+package com.example.ragservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the files of a directory scan whose content is identical to a file found earlier in
+ * the scan. Files are only hashed once another file of the same size has been found, and each
+ * file is hashed at most once. The original is the first copy in discovery order whose
+ * extraction succeeded, so repeated scans pick the same one however the extraction threads
+ * are scheduled, and content is not left out because the file chosen could not be read.
+ * <p>
+ * Files are registered by the scan's dispatch thread in discovery order; the copies it
+ * returns are checked by the extraction threads, which report whether they extracted them.
+ */
+final class ContentDeduplicator {
+    
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    
+    // Files registered so far per size
+    private final Map<Long, SameSize> filesBySize = new HashMap<>();
+    private final Map<Path, CompletableFuture<String>> hashes = new ConcurrentHashMap<>();
+    private final AtomicLong filesHashed = new AtomicLong();
+    
+    /**
+     * Registers the next file found by the scan
+     */
+    synchronized Copy register(Path file, long size) {
+        SameSize sameSize = filesBySize.computeIfAbsent(size, s -> new SameSize());
+        Copy copy = new Copy(file, sameSize, sameSize.files.size());
+        sameSize.files.add(copy);
+        return copy;
+    }
+    
+    /**
+     * Registers a file with a content hash known from an earlier scan
+     */
+    Copy register(Path file, long size, String contentHash) {
+        if (contentHash != null) {
+            hashes.putIfAbsent(file, CompletableFuture.completedFuture(contentHash));
+        }
+        return register(file, size);
+    }
+    
+    long getFilesHashed() {
+        return filesHashed.get();
+    }
+    
+    /**
+     * Groups the files of a size by hash in discovery order, up to the given position. Files
+     * are hashed outside the lock, so extraction threads hash different files at the same time.
+     */
+    private void group(SameSize sameSize, int end) throws IOException {
+        while (true) {
+            int index;
+            Copy next;
+            synchronized (this) {
+                index = sameSize.grouped;
+                if (index >= end) {
+                    return;
+                }
+                next = sameSize.files.get(index);
+            }
+            String hash;
+            try {
+                hash = hash(next.file);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                // An unreadable file fails on its own and is no original
+                hash = null;
+            }
+            synchronized (this) {
+                // Another thread may have grouped the file meanwhile
+                if (sameSize.grouped == index) {
+                    if (hash != null) {
+                        sameSize.byHash.computeIfAbsent(hash, h -> new ArrayList<>(1)).add(next);
+                    }
+                    sameSize.grouped++;
+                }
+            }
+        }
+    }
+    
+    /**
+     * The index-th file with the given hash, if it was registered before the given position
+     */
+    private synchronized Copy sameContent(SameSize sameSize, String hash, int index, int before) {
+        List<Copy> copies = sameSize.byHash.get(hash);
+        if (copies == null || index >= copies.size() || copies.get(index).position >= before) {
+            return null;
+        }
+        return copies.get(index);
+    }
+    
+    /**
+     * SHA-256 of the file content, computed on first use
+     */
+    String hash(Path file) throws IOException {
+        CompletableFuture<String> hash = new CompletableFuture<>();
+        CompletableFuture<String> existing = hashes.putIfAbsent(file, hash);
+        if (existing == null) {
+            try {
+                hash.complete(ScanManifestService.contentHash(file));
+                filesHashed.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                hash.completeExceptionally(e);
+                throw e;
+            }
+            return hash.join();
+        }
+        
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the hash of " + file);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to hash " + file + ": " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+    
+    /**
+     * Writes the duplicates a scan found, one JSON object per line: the original's document ID
+     * and path, and the paths of its copies
+     *
+     * @param duplicatePaths the copies by the path of their original
+     */
+    static void write(Path file, Map<String, String> documentIds, Map<String, List<String>> duplicatePaths) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, List<String>> entry : duplicatePaths.entrySet()) {
+                ObjectNode line = objectMapper.createObjectNode();
+                line.put("doc_id", documentIds.get(entry.getKey()));
+                line.put("path", entry.getKey());
+                entry.getValue().forEach(line.putArray("duplicate_paths")::add);
+                out.write(objectMapper.writeValueAsString(line));
+                out.newLine();
+            }
+        }
+    }
+    
+    /**
+     * Duplicates file of a scan that writes its CSV file to the given path
+     */
+    static Path pathFor(String outputCsvPath) {
+        String base = outputCsvPath.endsWith(".csv")
+            ? outputCsvPath.substring(0, outputCsvPath.length() - ".csv".length())
+            : outputCsvPath;
+        return Path.of(base + ".duplicates.jsonl");
+    }
+    
+    /**
+     * The files of one size in discovery order. The files before the first one not grouped yet
+     * are grouped by hash, so a copy finds its original without comparing it with every earlier file.
+     */
+    private static final class SameSize {
+        private final List<Copy> files = new ArrayList<>(1);
+        private final Map<String, List<Copy>> byHash = new HashMap<>();
+        private int grouped;
+    }
+    
+    /**
+     * A registered file and the files of the same size registered before it
+     */
+    final class Copy {
+        private final Path file;
+        private final SameSize sameSize;
+        private final int position;
+        // Whether the file was extracted, which makes it the original of later copies
+        private final CompletableFuture<Boolean> extraction = new CompletableFuture<>();
+        
+        private Copy(Path file, SameSize sameSize, int position) {
+            this.file = file;
+            this.sameSize = sameSize;
+            this.position = position;
+        }
+        
+        /**
+         * Whether no earlier file has the same size, so the file cannot be a copy
+         */
+        boolean isFirstOfSize() {
+            return position == 0;
+        }
+        
+        String hash() throws IOException {
+            return ContentDeduplicator.this.hash(file);
+        }
+        
+        /**
+         * Records whether the file was extracted; every registered file that is not skipped must
+         * report this once, as later copies wait for it
+         *
+         * @param succeeded false if the extraction failed or the file is a copy itself
+         */
+        void extracted(boolean succeeded) {
+            extraction.complete(succeeded);
+        }
+        
+        /**
+         * Compares the file with the earlier files of the same size, hashing them if needed, and
+         * waits for the extraction of the earlier files with the same content
+         *
+         * @return the first earlier file with the same content that was extracted, or null if
+         *         there is none and this file has to be extracted
+         */
+        Path findOriginal() throws IOException {
+            if (isFirstOfSize()) {
+                return null;
+            }
+            String hash = hash();
+            group(sameSize, position);
+            Copy candidate;
+            for (int i = 0; (candidate = sameContent(sameSize, hash, i, position)) != null; i++) {
+                if (candidate.awaitExtraction()) {
+                    return candidate.file;
+                }
+            }
+            return null;
+        }
+        
+        private boolean awaitExtraction() throws InterruptedIOException {
+            try {
+                return extraction.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the extraction of " + file);
+            } catch (ExecutionException e) {
+                return false;
+            }
+        }
+    }
+}
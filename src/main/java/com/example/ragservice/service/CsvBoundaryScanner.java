@@ -0,0 +1,186 @@
+package com.example.ragservice.service;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Byte-level scanner that locates CSV record boundaries without parsing fields.
+ * <p>
+ * A record ends at a line feed that is not inside a quoted field. Whether a byte is
+ * quoted only depends on the parity of the (unescaped) quote characters before it, so
+ * a range can be scanned without knowing its starting state: the scanner reports the
+ * first boundary for both possible starting states together with the quote parity of
+ * the whole range, and the caller resolves the real state once the preceding ranges
+ * are known. Doubled quotes ({@code ""}) toggle twice and therefore need no special
+ * handling. Only single-byte (ASCII) quote and escape characters are supported.
+ */
+final class CsvBoundaryScanner {
+    
+    static final int NONE = -1;
+    
+    private static final byte LF = '\n';
+    
+    private final int quote;
+    private final int escape;
+    
+    /**
+     * @param quote quote character, or null if the format does not quote fields
+     * @param escape escape character, or null if the format has none
+     */
+    CsvBoundaryScanner(Character quote, Character escape) {
+        this.quote = quote != null ? quote : NONE;
+        this.escape = escape != null ? escape : NONE;
+    }
+    
+    /**
+     * Whether boundaries can be found at byte level for the given characters
+     */
+    static boolean supports(Character quote, Character escape) {
+        return (quote == null || quote < 0x80) && (escape == null || escape < 0x80);
+    }
+    
+    /**
+     * Scans {@code buffer[from, to)}.
+     *
+     * @param precededByEscape whether the byte before {@code from} is an (unescaped) escape character
+     */
+    RangeScan scan(ByteBuffer buffer, int from, int to, boolean precededByEscape) {
+        boolean escaped = precededByEscape;
+        boolean odd = false;
+        int boundaryIfOutside = NONE;
+        int boundaryIfInside = NONE;
+        
+        for (int i = from; i < to; i++) {
+            int b = buffer.get(i) & 0xFF;
+            if (escaped) {
+                escaped = false;
+                continue;
+            }
+            if (b == escape) {
+                escaped = true;
+            } else if (b == quote) {
+                odd = !odd;
+            } else if (b == LF) {
+                // With an even quote count so far the line feed is quoted only if the range started quoted
+                if (!odd && boundaryIfOutside == NONE) {
+                    boundaryIfOutside = i + 1;
+                } else if (odd && boundaryIfInside == NONE) {
+                    boundaryIfInside = i + 1;
+                }
+            }
+        }
+        
+        return new RangeScan(odd, boundaryIfOutside, boundaryIfInside, escaped);
+    }
+    
+    /**
+     * Finds the first record boundary in {@code buffer[from, to)} for a known starting state.
+     *
+     * @return the offset just after the terminating line feed, or {@link #NONE}
+     */
+    int findBoundary(ByteBuffer buffer, int from, int to, boolean inQuotes) {
+        boolean escaped = false;
+        boolean quoted = inQuotes;
+        
+        for (int i = from; i < to; i++) {
+            int b = buffer.get(i) & 0xFF;
+            if (escaped) {
+                escaped = false;
+            } else if (b == escape) {
+                escaped = true;
+            } else if (b == quote) {
+                quoted = !quoted;
+            } else if (b == LF && !quoted) {
+                return i + 1;
+            }
+        }
+        return NONE;
+    }
+    
+    /**
+     * Guesses whether {@code buffer[from, to)} starts inside a quoted field, for ranges
+     * taken from the middle of a file.
+     * <p>
+     * In well-formed CSV an opening quote follows a delimiter or line break and a closing
+     * quote is followed by one. The range is read under both starting states and the state
+     * under which fewer quotes break that rule wins. Adjacent quote pairs are skipped since
+     * they are either an escaped quote or an empty field.
+     */
+    boolean likelyStartsInQuotes(ByteBuffer buffer, int from, int to, int delimiter) {
+        boolean quotedIfOutside = false;
+        int violationsIfOutside = 0;
+        int violationsIfInside = 0;
+        
+        for (int i = from; i < to; i++) {
+            int b = buffer.get(i) & 0xFF;
+            if (b == escape) {
+                i++;
+                continue;
+            }
+            if (b != quote) {
+                continue;
+            }
+            if (i + 1 < to && (buffer.get(i + 1) & 0xFF) == quote) {
+                i++;
+                continue;
+            }
+            
+            boolean validOpening = i == from || isFieldEnd(buffer.get(i - 1) & 0xFF, delimiter);
+            boolean validClosing = i + 1 == to || isFieldEnd(buffer.get(i + 1) & 0xFF, delimiter);
+            if (quotedIfOutside) {
+                violationsIfOutside += validClosing ? 0 : 1;
+                violationsIfInside += validOpening ? 0 : 1;
+            } else {
+                violationsIfOutside += validOpening ? 0 : 1;
+                violationsIfInside += validClosing ? 0 : 1;
+            }
+            quotedIfOutside = !quotedIfOutside;
+        }
+        return violationsIfInside < violationsIfOutside;
+    }
+    
+    private static boolean isFieldEnd(int b, int delimiter) {
+        return b == delimiter || b == LF || b == '\r';
+    }
+    
+    /**
+     * Counts the records that end in {@code buffer[from, to)} for a known starting state.
+     * A trailing record without a line feed is not counted.
+     */
+    RecordCount countRecords(ByteBuffer buffer, int from, int to, boolean inQuotes) {
+        boolean escaped = false;
+        boolean quoted = inQuotes;
+        int records = 0;
+        int lastBoundary = from;
+        
+        for (int i = from; i < to; i++) {
+            int b = buffer.get(i) & 0xFF;
+            if (escaped) {
+                escaped = false;
+            } else if (b == escape) {
+                escaped = true;
+            } else if (b == quote) {
+                quoted = !quoted;
+            } else if (b == LF && !quoted) {
+                records++;
+                lastBoundary = i + 1;
+            }
+        }
+        return new RecordCount(records, lastBoundary);
+    }
+    
+    /**
+     * Result of scanning one range
+     *
+     * @param oddQuotes whether the range contains an odd number of toggling quotes
+     * @param boundaryIfOutside first boundary if the range starts outside quotes
+     * @param boundaryIfInside first boundary if the range starts inside quotes
+     * @param endsEscaped whether the last byte of the range escapes the first byte of the next one
+     */
+    record RangeScan(boolean oddQuotes, int boundaryIfOutside, int boundaryIfInside, boolean endsEscaped) {}
+    
+    /**
+     * @param records number of complete records
+     * @param lastBoundary offset just after the last complete record, or the start offset if there is none
+     */
+    record RecordCount(int records, int lastBoundary) {}
+}
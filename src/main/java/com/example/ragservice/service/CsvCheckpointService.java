@@ -0,0 +1,172 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.model.IngestionCheckpoint;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Stores ingestion checkpoints as one JSON file per job. Files are replaced atomically,
+ * so a crash while writing leaves the previous checkpoint intact.
+ */
+@Service
+public class CsvCheckpointService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CsvCheckpointService.class);
+    
+    // Job IDs end up in file names and arrive from request paths on resume
+    private static final Pattern JOB_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
+    
+    @Value("${document.processing.csv.checkpoint.enabled:true}")
+    private boolean enabled = true;
+    
+    @Value("${document.processing.csv.checkpoint.directory:./data/checkpoints}")
+    private String directory = "./data/checkpoints";
+    
+    @Value("${document.processing.csv.checkpoint.interval-seconds:30}")
+    private long intervalSeconds = 30;
+    
+    private final ObjectMapper objectMapper;
+    
+    public CsvCheckpointService() {
+        this.objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Minimum time between two checkpoint writes of the same job
+     */
+    public long getIntervalMillis() {
+        return intervalSeconds * 1000;
+    }
+    
+    /**
+     * Creates the checkpoint of a new job, recording the file it reads so a resume can
+     * detect that the file was replaced in the meantime
+     */
+    public IngestionCheckpoint createCheckpoint(String jobId, String jobType, Path csvFile) throws IOException {
+        validateJobId(jobId);
+        IngestionCheckpoint checkpoint = new IngestionCheckpoint(jobId, jobType, csvFile.toString());
+        checkpoint.setFileSize(Files.size(csvFile));
+        checkpoint.setFileLastModified(Files.getLastModifiedTime(csvFile).toMillis());
+        return checkpoint;
+    }
+    
+    /**
+     * Persists a checkpoint, replacing the previous one of the same job
+     */
+    public void save(IngestionCheckpoint checkpoint) throws IOException {
+        validateJobId(checkpoint.getJobId());
+        checkpoint.setUpdatedAt(Instant.now());
+        
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        Path target = checkpointFile(checkpoint.getJobId());
+        Path temp = Files.createTempFile(dir, checkpoint.getJobId(), ".tmp");
+        try {
+            objectMapper.writeValue(temp.toFile(), checkpoint);
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        
+        logger.debug("Saved checkpoint for job {}: record {}, byte offset {}",
+                    checkpoint.getJobId(), checkpoint.getRecordNumber(), checkpoint.getByteOffset());
+    }
+    
+    public Optional<IngestionCheckpoint> load(String jobId) throws IOException {
+        validateJobId(jobId);
+        Path file = checkpointFile(jobId);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        return Optional.of(objectMapper.readValue(file.toFile(), IngestionCheckpoint.class));
+    }
+    
+    /**
+     * Lists stored checkpoints, optionally restricted to one job type
+     */
+    public List<IngestionCheckpoint> list(String jobType) {
+        List<IngestionCheckpoint> checkpoints = new ArrayList<>();
+        Path dir = Paths.get(directory);
+        if (!Files.isDirectory(dir)) {
+            return checkpoints;
+        }
+        
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.json")) {
+            for (Path file : files) {
+                try {
+                    IngestionCheckpoint checkpoint = objectMapper.readValue(file.toFile(), IngestionCheckpoint.class);
+                    if (jobType == null || jobType.equals(checkpoint.getJobType())) {
+                        checkpoints.add(checkpoint);
+                    }
+                } catch (IOException e) {
+                    logger.warn("Ignoring unreadable checkpoint file {}: {}", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to list checkpoints in {}", dir, e);
+        }
+        return checkpoints;
+    }
+    
+    public void delete(String jobId) {
+        validateJobId(jobId);
+        try {
+            Files.deleteIfExists(checkpointFile(jobId));
+        } catch (IOException e) {
+            logger.warn("Failed to delete checkpoint of job {}", jobId, e);
+        }
+    }
+    
+    /**
+     * Fails if the file was modified after the checkpoint was created, since byte offsets
+     * and record numbers would no longer point at the same data
+     */
+    public void verifyUnchanged(IngestionCheckpoint checkpoint) throws IOException {
+        Path csvFile = Paths.get(checkpoint.getCsvFilePath());
+        if (!Files.exists(csvFile)) {
+            throw new IllegalStateException("CSV file of job " + checkpoint.getJobId() + " no longer exists: " + csvFile);
+        }
+        if (Files.size(csvFile) != checkpoint.getFileSize()
+                || Files.getLastModifiedTime(csvFile).toMillis() != checkpoint.getFileLastModified()) {
+            throw new IllegalStateException("CSV file " + csvFile + " changed since job " + checkpoint.getJobId()
+                + " was checkpointed; it has to be ingested again from the start");
+        }
+    }
+    
+    private Path checkpointFile(String jobId) {
+        return Paths.get(directory).resolve(jobId + ".json");
+    }
+    
+    private void validateJobId(String jobId) {
+        if (jobId == null || !JOB_ID_PATTERN.matcher(jobId).matches()) {
+            throw new IllegalArgumentException("Invalid job ID: " + jobId);
+        }
+    }
+}
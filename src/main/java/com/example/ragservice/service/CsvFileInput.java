@@ -0,0 +1,107 @@
+package com.example.ragservice.service;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens a CSV file for sequential reading, decompressing gzip, zstd and bzip2 files on the
+ * fly. The codec is detected from the magic bytes at the start of the file, not from its
+ * name. Bytes are counted before decompression, so {@link #getBytesRead()} is a position
+ * in the file on disk and can be compared to its size for progress.
+ */
+final class CsvFileInput implements Closeable {
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    enum Codec {
+        NONE, GZIP, ZSTD, BZIP2
+    }
+    
+    private final Codec codec;
+    private final CountingInputStream fileStream;
+    private final InputStream stream;
+    
+    private CsvFileInput(Codec codec, CountingInputStream fileStream, InputStream stream) {
+        this.codec = codec;
+        this.fileStream = fileStream;
+        this.stream = stream;
+    }
+    
+    static CsvFileInput open(Path file) throws IOException {
+        Codec codec = detect(file);
+        CountingInputStream fileStream = new CountingInputStream(
+            new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+        try {
+            InputStream stream = switch (codec) {
+                // Both read concatenated members, as written by pigz or by appending compressed files
+                case GZIP -> new GZIPInputStream(fileStream, BUFFER_SIZE);
+                case BZIP2 -> new BZip2CompressorInputStream(fileStream, true);
+                case ZSTD -> new ZstdCompressorInputStream(fileStream);
+                case NONE -> fileStream;
+            };
+            return new CsvFileInput(codec, fileStream, stream);
+        } catch (IOException | RuntimeException e) {
+            fileStream.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Detects the compression of a file from its first bytes
+     */
+    static Codec detect(Path file) throws IOException {
+        byte[] magic = new byte[4];
+        int length;
+        try (InputStream in = Files.newInputStream(file)) {
+            length = in.readNBytes(magic, 0, magic.length);
+        }
+        
+        if (length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+            return Codec.GZIP;
+        }
+        if (length >= 4 && (magic[0] & 0xff) == 0x28 && (magic[1] & 0xff) == 0xb5
+                && (magic[2] & 0xff) == 0x2f && (magic[3] & 0xff) == 0xfd) {
+            return Codec.ZSTD;
+        }
+        // "BZh" followed by the block size digit
+        if (length >= 4 && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h' && magic[3] >= '1' && magic[3] <= '9') {
+            return Codec.BZIP2;
+        }
+        return Codec.NONE;
+    }
+    
+    Codec getCodec() {
+        return codec;
+    }
+    
+    boolean isCompressed() {
+        return codec != Codec.NONE;
+    }
+    
+    /**
+     * @return the decompressed content
+     */
+    InputStream getStream() {
+        return stream;
+    }
+    
+    /**
+     * @return the number of bytes read from the file on disk so far
+     */
+    long getBytesRead() {
+        return fileStream.getCount();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+}
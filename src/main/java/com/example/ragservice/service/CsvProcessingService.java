@@ -1,16 +1,24 @@
 package com.example.ragservice.service;
 
+import com.example.ragservice.dto.CsvFileIngestionRequest;
+import com.example.ragservice.dto.CsvUploadResponse;
 import com.example.ragservice.model.Document;
+import com.example.ragservice.model.IngestionCheckpoint;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -28,6 +36,24 @@ public class CsvProcessingService {
     @Autowired
     private VectorStoreService vectorStoreService;
     
+    @Autowired
+    private EmbeddingService embeddingService;
+    
+    @Autowired
+    private ParallelCsvReaderFactory parallelCsvReaderFactory;
+    
+    @Autowired
+    private CsvCheckpointService csvCheckpointService;
+    
+    @Autowired
+    private DeadLetterService deadLetterService;
+    
+    @Value("${document.processing.csv.embedding-workers:4}")
+    private int embeddingWorkers = 4;
+    
+    @Value("${document.processing.csv.queue-capacity:8}")
+    private int queueCapacity = 8;
+    
     /**
      * Parse CSV content and convert to Document objects
      * @param csvContent The CSV content as string
@@ -140,6 +166,86 @@ public class CsvProcessingService {
         return documents;
     }
     
+    /**
+     * Ingest CSV data from a stream in a single pass. Records are parsed as they arrive and
+     * handed to an {@link IngestionPipeline} for batched embedding and bulk indexing, so memory
+     * use does not grow with the size of the upload.
+     * @param inputStream UTF-8 encoded CSV data with a header row; not closed by this method
+     * @param indexName Target index name
+     * @param contentColumnName Column containing the main content
+     * @param docIdColumnName Column containing document IDs (optional)
+     * @param source Source identifier
+     * @param batchSize Number of documents per embedding and bulk request (optional)
+     * @return Number of documents indexed and the CSV headers
+     */
+    public CsvUploadResponse ingestCsvStream(InputStream inputStream, String indexName, String contentColumnName,
+                                             String docIdColumnName, String source, Integer batchSize) throws IOException {
+        int effectiveBatchSize = (batchSize != null && batchSize > 0) ? batchSize : 100;
+        String jobId = generateJobId();
+        
+        // Do not close the parser, which would close the caller's stream
+        CSVParser csvParser = CSVFormat.DEFAULT
+            .withFirstRecordAsHeader()
+            .withIgnoreHeaderCase()
+            .withTrim()
+            .parse(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        
+        List<String> headerNames = csvParser.getHeaderNames();
+        logger.info("Streaming CSV upload {} into index {} with headers: {}", jobId, indexName, headerNames);
+        String effectiveDocIdColumn = validateFileColumns(headerNames, contentColumnName, docIdColumnName);
+        
+        vectorStoreService.createIndex(indexName);
+        IngestionPipeline.BatchListener listener = deadLetterService != null
+            ? deadLetterService.batchListener(jobId, indexName, null) : null;
+        IngestionPipeline pipeline = new IngestionPipeline(jobId, indexName, embeddingService, vectorStoreService,
+            effectiveBatchSize, embeddingWorkers, queueCapacity, listener);
+        
+        long skipped = 0;
+        try {
+            for (CSVRecord record : csvParser) {
+                Document document;
+                try {
+                    document = createFileDocument(record, headerNames, contentColumnName, effectiveDocIdColumn, source, null);
+                } catch (Exception e) {
+                    logger.error("Error processing CSV record {}: {}", record.getRecordNumber(), e.getMessage());
+                    skipped++;
+                    continue;
+                }
+                if (document == null) {
+                    logger.debug("Skipping record {} with empty content", record.getRecordNumber());
+                    skipped++;
+                    continue;
+                }
+                
+                if (document.getId() == null) {
+                    document.setId(UUID.randomUUID().toString());
+                }
+                document.getMetadata().put("csv_record_number", (int) record.getRecordNumber());
+                pipeline.submit(document);
+            }
+            pipeline.finish();
+        } catch (InterruptedException e) {
+            pipeline.cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("CSV upload " + jobId + " was interrupted");
+        } catch (IOException | RuntimeException e) {
+            pipeline.cancel();
+            throw e;
+        }
+        
+        IngestionPipeline.PipelineStats stats = pipeline.getStats();
+        logger.info("Completed CSV upload {}: {} documents indexed, {} failed, {} records skipped", 
+                   jobId, stats.getDocumentsIndexed(), stats.getDocumentsFailed(), skipped);
+        
+        CsvUploadResponse response = new CsvUploadResponse(stats.getDocumentsSubmitted() > 0, 
+            (int) stats.getDocumentsIndexed(), indexName, headerNames);
+        response.setMessage(stats.getDocumentsSubmitted() > 0
+            ? String.format("%d documents indexed, %d failed, %d records skipped",
+                            stats.getDocumentsIndexed(), stats.getDocumentsFailed(), skipped)
+            : "No documents found in CSV");
+        return response;
+    }
+    
     /**
      * Ingest CSV file in streaming fashion for large files
      * @param csvFilePath Path to the CSV file
@@ -154,157 +260,411 @@ public class CsvProcessingService {
     public int ingestCsvFile(String csvFilePath, String indexName, String contentColumnName, 
                             String docIdColumnName, String source, Integer batchSize, Integer maxRecords) 
                             throws IOException {
-        Path csvFile = Paths.get(csvFilePath);
+        return ingestCsvFile(csvFilePath, indexName, contentColumnName, docIdColumnName, source, batchSize, maxRecords, null);
+    }
+    
+    /**
+     * Ingest CSV file in streaming fashion for large files
+     * @param csvFilePath Path to the CSV file
+     * @param indexName Target index name
+     * @param contentColumnName Column containing the main content
+     * @param docIdColumnName Column containing document IDs (optional)
+     * @param source Source identifier
+     * @param batchSize Number of documents to process in each batch
+     * @param maxRecords Maximum number of records to process (optional)
+     * @param parallelParsing Whether to parse the file on multiple threads (null decides by file size)
+     * @return Number of documents successfully ingested
+     */
+    public int ingestCsvFile(String csvFilePath, String indexName, String contentColumnName, 
+                            String docIdColumnName, String source, Integer batchSize, Integer maxRecords,
+                            Boolean parallelParsing) throws IOException {
+        CsvFileIngestionRequest request = new CsvFileIngestionRequest(csvFilePath, indexName, contentColumnName, docIdColumnName, source);
+        request.setBatchSize(batchSize);
+        request.setMaxRecords(maxRecords);
+        request.setParallelParsing(parallelParsing);
+        return ingestCsvFile(request, generateJobId());
+    }
+    
+    /**
+     * Ingest CSV file as a resumable job. Progress is checkpointed under the job ID while the
+     * file is ingested, so an interrupted job can be continued with {@link #resumeCsvFileIngestion(String)}.
+     * The checkpoint is removed once the job completes.
+     * @param request The ingestion parameters
+     * @param jobId ID of the job, see {@link #generateJobId()}
+     * @return Number of documents successfully ingested
+     */
+    public int ingestCsvFile(CsvFileIngestionRequest request, String jobId) throws IOException {
+        Path csvFile = Paths.get(request.getCsvFilePath());
         if (!Files.exists(csvFile)) {
-            throw new IllegalArgumentException("CSV file not found: " + csvFilePath);
+            throw new IllegalArgumentException("CSV file not found: " + request.getCsvFilePath());
         }
         
         if (!Files.isReadable(csvFile)) {
-            throw new IllegalArgumentException("CSV file is not readable: " + csvFilePath);
+            throw new IllegalArgumentException("CSV file is not readable: " + request.getCsvFilePath());
         }
         
-        int totalIngested = 0;
-        int currentBatch = 0;
-        List<Document> batch = new ArrayList<>();
+        IngestionCheckpoint checkpoint = null;
+        if (csvCheckpointService != null && csvCheckpointService.isEnabled()) {
+            checkpoint = csvCheckpointService.createCheckpoint(jobId, IngestionCheckpoint.TYPE_CSV_FILE, csvFile);
+            checkpoint.setFileRequest(request);
+            csvCheckpointService.save(checkpoint);
+        }
+        
+        return runFileIngestion(jobId, request, checkpoint);
+    }
+    
+    /**
+     * Resume an interrupted CSV file ingestion job from its last checkpoint. Records up to the
+     * checkpoint are not read again.
+     * @param jobId ID of the interrupted job
+     * @return Number of documents ingested by the resumed run
+     */
+    public int resumeCsvFileIngestion(String jobId) throws IOException {
+        if (csvCheckpointService == null || !csvCheckpointService.isEnabled()) {
+            throw new IllegalStateException("Ingestion checkpoints are disabled");
+        }
+        
+        IngestionCheckpoint checkpoint = csvCheckpointService.load(jobId)
+            .orElseThrow(() -> new IllegalArgumentException("No checkpoint found for job: " + jobId));
+        if (!IngestionCheckpoint.TYPE_CSV_FILE.equals(checkpoint.getJobType()) || checkpoint.getFileRequest() == null) {
+            throw new IllegalArgumentException("Job " + jobId + " is not a CSV file ingestion job");
+        }
+        csvCheckpointService.verifyUnchanged(checkpoint);
+        
+        logger.info("Resuming CSV ingestion job {} after record {} (byte offset {})", 
+                   jobId, checkpoint.getRecordNumber(), checkpoint.getByteOffset());
+        return runFileIngestion(jobId, checkpoint.getFileRequest(), checkpoint);
+    }
+    
+    /**
+     * Checkpoints of CSV file ingestion jobs that did not complete
+     */
+    public List<IngestionCheckpoint> getResumableJobs() {
+        if (csvCheckpointService == null) {
+            return List.of();
+        }
+        return csvCheckpointService.list(IngestionCheckpoint.TYPE_CSV_FILE);
+    }
+    
+    public String generateJobId() {
+        return "csv_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
+    }
+    
+    private int runFileIngestion(String jobId, CsvFileIngestionRequest request, IngestionCheckpoint checkpoint) throws IOException {
+        Path csvFile = Paths.get(request.getCsvFilePath());
         
         // Use default batch size if not specified
-        int effectiveBatchSize = (batchSize != null && batchSize > 0) ? batchSize : 100;
+        int effectiveBatchSize = (request.getBatchSize() != null && request.getBatchSize() > 0) ? request.getBatchSize() : 100;
+        
+        CSVFormat csvFormat = CSVFormat.DEFAULT
+            .withFirstRecordAsHeader()
+            .withIgnoreHeaderCase()
+            .withTrim();
+        
+        CheckpointTracker tracker = checkpoint != null ? new CheckpointTracker(csvCheckpointService, checkpoint) : null;
+        FileBatcher batcher = new FileBatcher(jobId, request.getIndexName(), effectiveBatchSize, tracker);
         
-        logger.info("Starting streaming CSV ingestion: file={}, index={}, batchSize={}, maxRecords={}", 
-                   csvFilePath, indexName, effectiveBatchSize, maxRecords);
+        try {
+            // Compressed files have no byte offsets to seek to and are decompressed while they are parsed
+            CsvFileInput.Codec codec = CsvFileInput.detect(csvFile);
+            if (parallelCsvReaderFactory != null && codec == CsvFileInput.Codec.NONE && ParallelCsvReader.supports(csvFormat)) {
+                boolean parallel = parallelCsvReaderFactory.shouldUse(csvFile, csvFormat, request.getParallelParsing());
+                ParallelCsvReader reader = parallelCsvReaderFactory.create(csvFile, csvFormat, parallel);
+                logger.info("Starting CSV ingestion: file={}, index={}, batchSize={}, maxRecords={}, threads={}", 
+                           csvFile, request.getIndexName(), effectiveBatchSize, request.getMaxRecords(),
+                           parallel ? parallelCsvReaderFactory.getParallelism() : 1);
+                ingestWithReader(reader, request, checkpoint, tracker, batcher);
+            } else {
+                logger.info("Starting streaming CSV ingestion: file={}, compression={}, index={}, batchSize={}, maxRecords={}", 
+                           csvFile, codec, request.getIndexName(), effectiveBatchSize, request.getMaxRecords());
+                ingestSequentially(csvFile, csvFormat, request, checkpoint, tracker, batcher);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error reading CSV file: {}", csvFile, e);
+            if (tracker != null) {
+                tracker.flush();
+            }
+            throw e;
+        }
         
-        try (CSVParser csvParser = CSVFormat.DEFAULT
-                .withFirstRecordAsHeader()
-                .withIgnoreHeaderCase()
-                .withTrim()
-                .parse(Files.newBufferedReader(csvFile))) {
+        if (checkpoint != null) {
+            csvCheckpointService.delete(checkpoint.getJobId());
+        }
+        return batcher.totalIngested;
+    }
+    
+    /**
+     * Reads the file with a {@link ParallelCsvReader}, which reports byte offsets and can
+     * therefore start directly at a checkpoint
+     */
+    private void ingestWithReader(ParallelCsvReader reader, CsvFileIngestionRequest request, IngestionCheckpoint checkpoint,
+                                  CheckpointTracker tracker, FileBatcher batcher) throws IOException {
+        String csvFilePath = request.getCsvFilePath();
+        Integer maxRecords = request.getMaxRecords();
+        
+        List<String> headerNames = reader.readHeaderNames();
+        logger.info("CSV headers: {}", headerNames);
+        String effectiveDocIdColumn = validateFileColumns(headerNames, request.getContentColumnName(), request.getDocIdColumnName());
+        
+        // Checkpoints without a byte offset come from a sequential parse and cannot be seeked to
+        boolean seek = checkpoint != null && checkpoint.getByteOffset() > 0;
+        long startOffset = seek ? checkpoint.getByteOffset() : 0;
+        long recordsBefore = seek ? checkpoint.getRecordNumber() : 0;
+        
+        long recordCount;
+        try {
+            recordCount = reader.read(startOffset, recordsBefore,
+                record -> createFileDocument(record, headerNames, request.getContentColumnName(), effectiveDocIdColumn,
+                                             request.getSource(), csvFilePath),
+                parsed -> {
+                    if (maxRecords != null && parsed.getRecordNumber() > maxRecords) {
+                        logger.info("Reached maximum record limit: {}", maxRecords);
+                        return false;
+                    }
+                    
+                    if (tracker != null) {
+                        tracker.recordConsumed(parsed.getRecordNumber(), parsed.getNextByteOffset());
+                    }
+                    
+                    if (parsed.getError() != null) {
+                        logger.error("Error processing CSV record {}: {}", parsed.getRecordNumber(), parsed.getError().getMessage());
+                    } else if (parsed.getValue() == null) {
+                        logger.debug("Skipping record {} with empty content", parsed.getRecordNumber());
+                    } else {
+                        assignRecordIdentity(parsed.getValue(), csvFilePath, parsed.getRecordNumber());
+                        batcher.add(parsed.getValue());
+                    }
+                    return true;
+                });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("CSV ingestion was interrupted for file: " + csvFilePath);
+        }
+        
+        // Process any remaining documents in the final batch
+        batcher.flush();
+        
+        logger.info("Completed CSV ingestion: read {} records in {} batches, {} documents ingested", 
+                   recordCount, batcher.batchCount, batcher.totalIngested);
+    }
+    
+    /**
+     * Reads the file with a plain {@link CSVParser}, for compressed files and for formats whose
+     * quotes cannot be located at byte level. A resumed job skips the records up to its checkpoint.
+     */
+    private void ingestSequentially(Path csvFile, CSVFormat csvFormat, CsvFileIngestionRequest request,
+                                    IngestionCheckpoint checkpoint, CheckpointTracker tracker, FileBatcher batcher) throws IOException {
+        String csvFilePath = request.getCsvFilePath();
+        Integer maxRecords = request.getMaxRecords();
+        long resumeAfter = checkpoint != null ? checkpoint.getRecordNumber() : 0;
+        
+        try (CsvFileInput input = CsvFileInput.open(csvFile);
+             CSVParser csvParser = csvFormat.parse(new InputStreamReader(input.getStream(), StandardCharsets.UTF_8))) {
             
             logger.info("CSV headers: {}", csvParser.getHeaderNames());
             
-            // Validate that the content column exists
-            if (!csvParser.getHeaderNames().contains(contentColumnName)) {
-                throw new IllegalArgumentException("Content column '" + contentColumnName + "' not found in CSV headers: " + csvParser.getHeaderNames());
-            }
-            
-            // Validate that the document ID column exists if specified
-            boolean hasDocIdColumn = docIdColumnName != null && !docIdColumnName.trim().isEmpty();
-            if (hasDocIdColumn && !csvParser.getHeaderNames().contains(docIdColumnName)) {
-                logger.warn("Document ID column '{}' not found in CSV headers: {}. Will generate UUIDs instead.", docIdColumnName, csvParser.getHeaderNames());
-                hasDocIdColumn = false;
-            }
+            String effectiveDocIdColumn = validateFileColumns(csvParser.getHeaderNames(), request.getContentColumnName(), 
+                                                              request.getDocIdColumnName());
             
-            int recordCount = 0;
+            long recordCount = 0;
             for (CSVRecord record : csvParser) {
+                long recordNumber = record.getRecordNumber();
+                
                 // Check if we've reached the max records limit
-                if (maxRecords != null && recordCount >= maxRecords) {
+                if (maxRecords != null && recordNumber > maxRecords) {
                     logger.info("Reached maximum record limit: {}", maxRecords);
                     break;
                 }
                 
+                if (recordNumber <= resumeAfter) {
+                    continue;
+                }
+                recordCount++;
+                
+                if (tracker != null) {
+                    tracker.recordConsumed(recordNumber, -1);
+                }
+                
                 try {
-                    String content = record.get(contentColumnName);
-                    if (content == null || content.trim().isEmpty()) {
-                        logger.debug("Skipping record {} with empty content", recordCount + 1);
-                        recordCount++;
+                    Document document = createFileDocument(record, csvParser.getHeaderNames(), request.getContentColumnName(),
+                                                           effectiveDocIdColumn, request.getSource(), csvFilePath);
+                    if (document == null) {
+                        logger.debug("Skipping record {} with empty content", recordNumber);
                         continue;
                     }
                     
-                    // Determine document ID
-                    String documentId;
-                    if (hasDocIdColumn) {
-                        String csvDocId = record.get(docIdColumnName);
-                        if (csvDocId != null && !csvDocId.trim().isEmpty()) {
-                            documentId = csvDocId.trim();
-                        } else {
-                            documentId = UUID.randomUUID().toString();
-                        }
-                    } else {
-                        documentId = UUID.randomUUID().toString();
-                    }
-                    
-                    // Create metadata from all other columns (excluding content and doc_id)
-                    Map<String, Object> metadata = new HashMap<>();
-                    for (String header : csvParser.getHeaderNames()) {
-                        if (!header.equals(contentColumnName) && (!hasDocIdColumn || !header.equals(docIdColumnName))) {
-                            String value = record.get(header);
-                            if (value != null && !value.trim().isEmpty()) {
-                                metadata.put(header, value.trim());
-                            }
-                        }
-                    }
-                    
-                    // Add record metadata
-                    metadata.put("csv_record_number", recordCount + 1);
-                    metadata.put("csv_file_path", csvFilePath);
-                    if (hasDocIdColumn) {
-                        metadata.put("original_doc_id", documentId);
-                    }
-                    
-                    Document document = new Document(
-                        documentId,
-                        content.trim(),
-                        metadata
-                    );
-                    
-                    if (source != null && !source.trim().isEmpty()) {
-                        document.setSource(source.trim());
-                    }
-                    
-                    batch.add(document);
-                    recordCount++;
-                    
-                    // Process batch when it reaches the specified size
-                    if (batch.size() >= effectiveBatchSize) {
-                        int batchIngested = processBatch(indexName, batch, currentBatch);
-                        totalIngested += batchIngested;
-                        batch.clear();
-                        currentBatch++;
-                        
-                        // Log progress
-                        if (currentBatch % 10 == 0) {
-                            logger.info("Processed {} batches, {} documents ingested so far", currentBatch, totalIngested);
-                        }
-                    }
+                    assignRecordIdentity(document, csvFilePath, recordNumber);
+                    batcher.add(document);
                     
                 } catch (Exception e) {
-                    logger.error("Error processing CSV record {}: {}", recordCount + 1, e.getMessage(), e);
-                    recordCount++;
+                    logger.error("Error processing CSV record {}: {}", recordNumber, e.getMessage(), e);
                     // Continue processing other records
                 }
             }
             
             // Process any remaining documents in the final batch
-            if (!batch.isEmpty()) {
-                int batchIngested = processBatch(indexName, batch, currentBatch);
-                totalIngested += batchIngested;
-                currentBatch++;
-            }
+            batcher.flush();
             
             logger.info("Completed streaming CSV ingestion: processed {} records in {} batches, {} documents ingested", 
-                       recordCount, currentBatch, totalIngested);
-            
-        } catch (IOException e) {
-            logger.error("Error reading CSV file: {}", csvFilePath, e);
-            throw e;
+                       recordCount, batcher.batchCount, batcher.totalIngested);
+        }
+    }
+    
+    /**
+     * Sets the record number and, for rows without an ID of their own, an ID derived from the
+     * file and record number, so a resumed or repeated ingestion overwrites instead of duplicating
+     */
+    private void assignRecordIdentity(Document document, String csvFilePath, long recordNumber) {
+        if (document.getId() == null) {
+            document.setId(UUID.nameUUIDFromBytes((csvFilePath + "#" + recordNumber).getBytes(StandardCharsets.UTF_8)).toString());
+        }
+        document.getMetadata().put("csv_record_number", (int) recordNumber);
+    }
+    
+    /**
+     * Validate the content and document ID columns of a CSV file
+     * @return the document ID column to use, or null if IDs should be generated
+     */
+    private String validateFileColumns(List<String> headerNames, String contentColumnName, String docIdColumnName) {
+        // Validate that the content column exists
+        if (!headerNames.contains(contentColumnName)) {
+            throw new IllegalArgumentException("Content column '" + contentColumnName + "' not found in CSV headers: " + headerNames);
         }
         
-        return totalIngested;
+        // Validate that the document ID column exists if specified
+        boolean hasDocIdColumn = docIdColumnName != null && !docIdColumnName.trim().isEmpty();
+        if (hasDocIdColumn && !headerNames.contains(docIdColumnName)) {
+            logger.warn("Document ID column '{}' not found in CSV headers: {}. Will generate UUIDs instead.", docIdColumnName, headerNames);
+            return null;
+        }
+        return hasDocIdColumn ? docIdColumnName : null;
     }
     
-    private int processBatch(String indexName, List<Document> batch, int batchNumber) {
+    /**
+     * Create a document from a CSV file record. The caller adds the record number to the metadata
+     * and the ID unless the record has one.
+     * @return the document, or null if the record has no content
+     */
+    private Document createFileDocument(CSVRecord record, List<String> headerNames, String contentColumnName,
+                                        String docIdColumnName, String source, String csvFilePath) {
+        String content = record.get(contentColumnName);
+        if (content == null || content.trim().isEmpty()) {
+            return null;
+        }
+        
+        boolean hasDocIdColumn = docIdColumnName != null;
+        
+        // Determine document ID
+        String documentId = null;
+        if (hasDocIdColumn) {
+            String csvDocId = record.get(docIdColumnName);
+            if (csvDocId != null && !csvDocId.trim().isEmpty()) {
+                documentId = csvDocId.trim();
+            }
+        }
+        
+        // Create metadata from all other columns (excluding content and doc_id)
+        Map<String, Object> metadata = new HashMap<>();
+        for (String header : headerNames) {
+            if (!header.equals(contentColumnName) && (!hasDocIdColumn || !header.equals(docIdColumnName))) {
+                String value = record.get(header);
+                if (value != null && !value.trim().isEmpty()) {
+                    metadata.put(header, value.trim());
+                }
+            }
+        }
+        
+        // Add record metadata
+        if (csvFilePath != null) {
+            metadata.put("csv_file_path", csvFilePath);
+        }
+        if (documentId != null) {
+            metadata.put("original_doc_id", documentId);
+        }
+        
+        Document document = new Document(
+            documentId,
+            content.trim(),
+            metadata
+        );
+        
+        if (source != null && !source.trim().isEmpty()) {
+            document.setSource(source.trim());
+        }
+        
+        return document;
+    }
+    
+    private int processBatch(String jobId, String indexName, List<Document> batch, int batchNumber, CheckpointTracker tracker) {
+        if (tracker != null) {
+            tracker.onBatchSealed(batchNumber);
+        }
         try {
             logger.debug("Processing batch {} with {} documents", batchNumber, batch.size());
-            vectorStoreService.storeDocuments(indexName, batch);
-            logger.debug("Successfully processed batch {} with {} documents", batchNumber, batch.size());
-            return batch.size();
+            VectorStoreService.BulkIndexResult result = vectorStoreService.storeDocuments(indexName, batch);
+            if (result.getFailureCount() > 0 && deadLetterService != null) {
+                deadLetterService.recordFailures(jobId, indexName, result.getFailures());
+            }
+            logger.debug("Processed batch {}: {} documents stored, {} failed", batchNumber, result.getSuccessCount(), result.getFailureCount());
+            if (tracker != null) {
+                tracker.batchAcknowledged(batchNumber, result.getSuccessCount(), result.getFailureCount());
+            }
+            return result.getSuccessCount();
         } catch (Exception e) {
             logger.error("Failed to process batch {} with {} documents: {}", batchNumber, batch.size(), e.getMessage(), e);
-            // For now, we'll return 0 for failed batches
-            // In a production system, you might want to retry or store failed documents separately
+            // Dead-lettered documents are retried on their own, so the checkpoint can move past them
+            boolean deadLettered = deadLetterService != null && deadLetterService.recordFailures(jobId, indexName, batch, e);
+            if (tracker != null) {
+                if (deadLettered) {
+                    tracker.batchAcknowledged(batchNumber, 0, batch.size());
+                } else {
+                    tracker.onBatchFailed(batchNumber, batch, e);
+                }
+            }
             return 0;
         }
     }
     
+    /**
+     * Collects the documents of a file ingestion into batches and stores each full batch
+     */
+    private class FileBatcher {
+        private final String jobId;
+        private final String indexName;
+        private final int batchSize;
+        private final CheckpointTracker tracker;
+        private List<Document> batch = new ArrayList<>();
+        private int batchCount;
+        private int totalIngested;
+        
+        FileBatcher(String jobId, String indexName, int batchSize, CheckpointTracker tracker) {
+            this.jobId = jobId;
+            this.indexName = indexName;
+            this.batchSize = batchSize;
+            this.tracker = tracker;
+        }
+        
+        void add(Document document) {
+            batch.add(document);
+            if (batch.size() >= batchSize) {
+                flush();
+                
+                // Log progress
+                if (batchCount % 10 == 0) {
+                    logger.info("Processed {} batches, {} documents ingested so far", batchCount, totalIngested);
+                }
+            }
+        }
+        
+        void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            totalIngested += processBatch(jobId, indexName, batch, batchCount++, tracker);
+            batch = new ArrayList<>();
+        }
+    }
+    
     /**
      * Validate CSV content format
      * @param csvContent The CSV content to validate
@@ -0,0 +1,164 @@
+package com.example.ragservice.service;
+
+import org.apache.commons.csv.CSVFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Estimates the number of records in a CSV file from a few samples instead of reading it.
+ * <p>
+ * Samples of a fixed size are taken at evenly spaced offsets. Records are counted with
+ * {@link CsvBoundaryScanner}, so quoted fields spanning several lines count once. Every
+ * sample but the first starts in the middle of a record, possibly inside quotes: its
+ * starting state is guessed from the quote placement and it skips to the next boundary.
+ * The average record size of all samples is then extrapolated to the whole file. Files
+ * no larger than the combined samples are counted exactly.
+ * <p>
+ * Compressed files cannot be read at arbitrary offsets. For them, the records of a
+ * decompressed prefix of the same total size are counted, and the compression ratio is
+ * measured over the first few megabytes of the file to extrapolate from there.
+ */
+final class CsvRecordCountEstimator {
+    
+    private static final int HEADER_PROBE_BYTES = 64 * 1024;
+    
+    // Decoders read ahead by up to a buffer (128KB for zstd), so the compression ratio is
+    // measured over a much longer stretch of the compressed file than that
+    private static final long RATIO_SPAN_BYTES = 2L * 1024 * 1024;
+    
+    private final CsvBoundaryScanner scanner;
+    private final int delimiter;
+    private final boolean skipHeader;
+    private final int sampleCount;
+    private final int sampleSize;
+    
+    CsvRecordCountEstimator(CSVFormat format, int sampleCount, int sampleSize) {
+        // Multi-byte quotes cannot be located in raw bytes; such files are estimated by counting lines
+        this.scanner = ParallelCsvReader.supports(format)
+            ? new CsvBoundaryScanner(format.getQuoteCharacter(), format.getEscapeCharacter())
+            : new CsvBoundaryScanner(null, null);
+        this.delimiter = format.getDelimiter();
+        this.skipHeader = ParallelCsvReader.hasHeaderRecord(format);
+        this.sampleCount = Math.max(1, sampleCount);
+        this.sampleSize = Math.max(1024, sampleSize);
+    }
+    
+    /**
+     * @return the estimated number of data records, not counting the header
+     */
+    long estimate(Path file) throws IOException {
+        if (CsvFileInput.detect(file) != CsvFileInput.Codec.NONE) {
+            return estimateCompressed(file);
+        }
+        
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long dataStart = skipHeader ? headerEnd(channel, fileSize) : 0;
+            long dataLength = fileSize - dataStart;
+            if (dataLength <= 0) {
+                return 0;
+            }
+            
+            if (dataLength <= (long) sampleCount * sampleSize) {
+                return countExactly(channel, dataStart, (int) dataLength);
+            }
+            return extrapolate(channel, dataStart, dataLength);
+        }
+    }
+    
+    private long estimateCompressed(Path file) throws IOException {
+        int prefixSize = (int) Math.min((long) sampleCount * sampleSize, Integer.MAX_VALUE - 8);
+        byte[] prefix;
+        boolean complete;
+        double expansion = 0;
+        try (CsvFileInput input = CsvFileInput.open(file)) {
+            InputStream stream = input.getStream();
+            prefix = stream.readNBytes(prefixSize);
+            complete = prefix.length < prefixSize;
+            
+            if (!complete) {
+                long decompressedBytes = prefix.length;
+                byte[] scratch = new byte[64 * 1024];
+                int n;
+                while (input.getBytesRead() < RATIO_SPAN_BYTES && (n = stream.read(scratch)) != -1) {
+                    decompressedBytes += n;
+                }
+                expansion = decompressedBytes / (double) input.getBytesRead();
+            }
+        }
+        
+        ByteBuffer buffer = ByteBuffer.wrap(prefix);
+        int dataStart = 0;
+        if (skipHeader) {
+            int boundary = scanner.findBoundary(buffer, 0, prefix.length, false);
+            dataStart = boundary != CsvBoundaryScanner.NONE ? boundary : prefix.length;
+        }
+        if (dataStart >= prefix.length) {
+            return complete ? 0 : 1;
+        }
+        
+        CsvBoundaryScanner.RecordCount count = scanner.countRecords(buffer, dataStart, prefix.length, false);
+        if (complete) {
+            return count.records() + (count.lastBoundary() < prefix.length ? 1 : 0);
+        }
+        if (count.records() == 0) {
+            return 1;
+        }
+        
+        // Records per decompressed byte, times decompressed bytes per compressed byte, times the file size
+        double recordsPerByte = count.records() / (double) (count.lastBoundary() - dataStart);
+        return Math.round(recordsPerByte * expansion * Files.size(file));
+    }
+    
+    private long headerEnd(FileChannel channel, long fileSize) throws IOException {
+        int probe = (int) Math.min(fileSize, HEADER_PROBE_BYTES);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, probe);
+        int boundary = scanner.findBoundary(buffer, 0, probe, false);
+        return boundary != CsvBoundaryScanner.NONE ? boundary : probe;
+    }
+    
+    private long countExactly(FileChannel channel, long dataStart, int dataLength) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, dataStart, dataLength);
+        CsvBoundaryScanner.RecordCount count = scanner.countRecords(buffer, 0, dataLength, false);
+        
+        // The last record may not be terminated by a line feed
+        return count.records() + (count.lastBoundary() < dataLength ? 1 : 0);
+    }
+    
+    private long extrapolate(FileChannel channel, long dataStart, long dataLength) throws IOException {
+        long stride = sampleCount > 1 ? (dataLength - sampleSize) / (sampleCount - 1) : 0;
+        long sampledRecords = 0;
+        long sampledBytes = 0;
+        
+        for (int i = 0; i < sampleCount; i++) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, dataStart + i * stride, sampleSize);
+            
+            // Only the first sample is known to start at a record boundary
+            int from = 0;
+            if (i > 0) {
+                boolean inQuotes = scanner.likelyStartsInQuotes(buffer, 0, sampleSize, delimiter);
+                from = scanner.findBoundary(buffer, 0, sampleSize, inQuotes);
+                if (from == CsvBoundaryScanner.NONE) {
+                    continue;
+                }
+            }
+            
+            CsvBoundaryScanner.RecordCount count = scanner.countRecords(buffer, from, sampleSize, false);
+            sampledRecords += count.records();
+            sampledBytes += count.lastBoundary() - from;
+        }
+        
+        if (sampledRecords == 0) {
+            // Records are larger than a sample; all that is known is that there is at least one
+            return 1;
+        }
+        return Math.round(dataLength * (double) sampledRecords / sampledBytes);
+    }
+}
@@ -1,39 +1,154 @@
 package com.example.ragservice.service;
 
+import com.example.ragservice.dto.BlockStreamingRequest;
 import com.example.ragservice.dto.CsvStreamingRequest;
 import com.example.ragservice.dto.CsvStreamingResponse;
+import com.example.ragservice.dto.NdjsonStreamingRequest;
+import com.example.ragservice.model.Document;
+import com.example.ragservice.model.IngestionCheckpoint;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.FileReader;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class CsvStreamingService {
     
     private static final Logger logger = LoggerFactory.getLogger(CsvStreamingService.class);
     
+    private static final int NDJSON_BUFFER_SIZE = 64 * 1024;
+    
     @Value("${document.processing.csv.batch-size:100}")
     private int defaultBatchSize;
     
     @Value("${document.processing.csv.max-record-size:1048576}")
     private int maxRecordSize; // 1MB default
     
-    // Store active streaming operations
-    private final Map<String, CsvStreamingResponse> activeStreamOperations = new ConcurrentHashMap<>();
+    @Value("${document.processing.csv.embedding-workers:4}")
+    private int defaultEmbeddingWorkers;
+    
+    @Value("${document.processing.csv.queue-capacity:8}")
+    private int queueCapacity;
+    
+    @Value("${document.processing.csv.estimate.sample-count:8}")
+    private int estimateSampleCount = 8;
+    
+    @Value("${document.processing.csv.estimate.sample-size-kb:512}")
+    private int estimateSampleSizeKb = 512;
+    
+    @Value("${document.processing.csv.adaptive-batching.enabled:false}")
+    private boolean adaptiveBatchingEnabled = false;
+    
+    @Value("${document.processing.csv.adaptive-batching.min-batch-size:10}")
+    private int adaptiveMinBatchSize = 10;
+    
+    @Value("${document.processing.csv.adaptive-batching.max-batch-size:1000}")
+    private int adaptiveMaxBatchSize = 1000;
+    
+    @Value("${document.processing.csv.adaptive-batching.increment:10}")
+    private int adaptiveIncrement = 10;
+    
+    @Value("${document.processing.csv.adaptive-batching.decrease-factor:0.5}")
+    private double adaptiveDecreaseFactor = 0.5;
+    
+    @Value("${document.processing.csv.adaptive-batching.embedding-target-ms:10000}")
+    private long adaptiveEmbeddingTargetMs = 10000;
+    
+    @Value("${document.processing.csv.adaptive-batching.indexing-target-ms:2000}")
+    private long adaptiveIndexingTargetMs = 2000;
+    
+    @Value("${rag.default-index-name:documents}")
+    private String defaultIndexName;
+    
+    @Value("${document.processing.csv.cleanup-completed-streams-after-hours:12}")
+    private long cleanupCompletedStreamsAfterHours = 12;
+    
+    @Value("${document.processing.jobs.registry.persistence-enabled:true}")
+    private boolean registryPersistenceEnabled = true;
+    
+    @Value("${document.processing.jobs.registry.directory:./data/jobs}")
+    private String registryDirectory = "./data/jobs";
+    
+    @Value("${document.processing.jobs.registry.max-finished-jobs:200}")
+    private int maxFinishedJobs = 200;
+    
+    @Value("${document.processing.jobs.registry.max-errors-per-job:20}")
+    private int maxErrorsPerJob = 20;
+    
+    @Autowired
+    private EmbeddingService embeddingService;
+    
+    @Autowired
+    private VectorStoreService vectorStoreService;
+    
+    @Autowired
+    private ParallelCsvReaderFactory parallelCsvReaderFactory;
+    
+    @Autowired
+    private CsvCheckpointService csvCheckpointService;
+    
+    @Autowired
+    private DeadLetterService deadLetterService;
+    
+    @Autowired
+    private IngestionJobScheduler jobScheduler;
+    
+    @Autowired
+    private JobProgressService jobProgressService;
+    
+    // Running streams and, for a while, finished ones
+    private JobRegistry<CsvStreamingResponse> streamRegistry;
+    
+    // Ingestion pipelines of running streams, kept so cancellation can stop in-flight batches
+    private final Map<String, IngestionPipeline> activePipelines = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    void initStreamRegistry() {
+        streamRegistry = new JobRegistry<>("stream", CsvStreamingResponse.class,
+            registryPersistenceEnabled ? Paths.get(registryDirectory, "streams.json") : null,
+            Duration.ofHours(cleanupCompletedStreamsAfterHours), maxFinishedJobs, maxErrorsPerJob, jobScheduler::isActive);
+        streamRegistry.load(CsvStreamingResponse::getStreamId);
+    }
+    
+    /**
+     * Compacts and evicts finished streams and persists the stream registry
+     */
+    @Scheduled(fixedDelayString = "${document.processing.jobs.registry.sweep-interval-seconds:60}",
+               initialDelayString = "${document.processing.jobs.registry.sweep-interval-seconds:60}",
+               timeUnit = TimeUnit.SECONDS)
+    public void sweepStreamRegistry() {
+        streamRegistry.sweep();
+    }
+    
+    @PreDestroy
+    void saveStreamRegistry() {
+        streamRegistry.sweep();
+    }
     
     /**
      * Starts a CSV streaming operation asynchronously
@@ -43,33 +158,135 @@ public class CsvStreamingService {
      */
     public CsvStreamingResponse startCsvStreaming(CsvStreamingRequest request) {
         String streamId = generateStreamId();
-        CsvStreamingResponse response = new CsvStreamingResponse(streamId, "STARTED", request.getIndexName());
+        CsvStreamingResponse response = new CsvStreamingResponse(streamId, "QUEUED", request.getIndexName());
         
-        activeStreamOperations.put(streamId, response);
+        streamRegistry.register(streamId, response);
         
-        // Start the streaming asynchronously
-        CompletableFuture.runAsync(() -> performCsvStreaming(streamId, request));
+        // Runs once the job scheduler has capacity for it
+        jobScheduler.submit(streamId, "csv-stream", priorityOf(request.getPriority()), streamWeight(request.getEmbeddingWorkers()),
+            job -> performCsvStreaming(streamId, request, null, job));
         
         return response;
     }
     
     /**
-     * Gets the status of an active streaming operation
+     * Starts streaming a JSON Lines file asynchronously. The stream shares the batching, embedding
+     * and bulk indexing pipeline of CSV streams and is tracked, listed and cancelled like them.
+     *
+     * @param request the streaming request
+     * @return the streaming response with initial status
+     */
+    public CsvStreamingResponse startNdjsonStreaming(NdjsonStreamingRequest request) {
+        // Invalid pointers are rejected before the stream is registered
+        NdjsonDocumentMapper mapper = new NdjsonDocumentMapper(request.getTextPointer(), request.getIdPointer(),
+            request.getMetadataPointer(), maxRecordSize);
+        
+        String streamId = generateStreamId();
+        CsvStreamingResponse response = new CsvStreamingResponse(streamId, "QUEUED", request.getIndexName());
+        
+        streamRegistry.register(streamId, response);
+        
+        jobScheduler.submit(streamId, "ndjson-stream", priorityOf(request.getPriority()), streamWeight(request.getEmbeddingWorkers()),
+            job -> performNdjsonStreaming(streamId, request, mapper, job));
+        
+        return response;
+    }
+    
+    /**
+     * Starts streaming the block files of a directory scan asynchronously. The blocks are
+     * decompressed ahead of the pipeline on several threads; the stream is tracked, listed and
+     * cancelled like CSV streams.
+     *
+     * @param request the streaming request
+     * @return the streaming response with initial status
+     */
+    public CsvStreamingResponse startBlockStreaming(BlockStreamingRequest request) {
+        String streamId = generateStreamId();
+        CsvStreamingResponse response = new CsvStreamingResponse(streamId, "QUEUED", request.getIndexName());
+        
+        streamRegistry.register(streamId, response);
+        
+        jobScheduler.submit(streamId, "block-stream", priorityOf(request.getPriority()), streamWeight(request.getEmbeddingWorkers()),
+            job -> performBlockStreaming(streamId, request, job));
+        
+        return response;
+    }
+    
+    /**
+     * Resumes an interrupted streaming operation from its last checkpoint, keeping its stream ID.
+     * Records up to the checkpoint are not read again.
+     *
+     * @param streamId the stream ID of the interrupted operation
+     * @return the streaming response with initial status
+     */
+    public CsvStreamingResponse resumeStream(String streamId) throws IOException {
+        if (!csvCheckpointService.isEnabled()) {
+            throw new IllegalStateException("Ingestion checkpoints are disabled");
+        }
+        
+        IngestionCheckpoint checkpoint = csvCheckpointService.load(streamId)
+            .orElseThrow(() -> new IllegalArgumentException("No checkpoint found for stream: " + streamId));
+        if (!IngestionCheckpoint.TYPE_CSV_STREAM.equals(checkpoint.getJobType()) || checkpoint.getStreamingRequest() == null) {
+            throw new IllegalArgumentException("Job " + streamId + " is not a CSV streaming operation");
+        }
+        
+        CsvStreamingResponse current = streamRegistry.get(streamId);
+        if (current != null && ("QUEUED".equals(current.getStatus()) || "PROCESSING".equals(current.getStatus()))) {
+            throw new IllegalStateException("Stream " + streamId + " is still running");
+        }
+        csvCheckpointService.verifyUnchanged(checkpoint);
+        
+        CsvStreamingRequest request = checkpoint.getStreamingRequest();
+        CsvStreamingResponse response = new CsvStreamingResponse(streamId, "QUEUED", request.getIndexName());
+        response.setResumedFromRecord(checkpoint.getRecordNumber());
+        streamRegistry.register(streamId, response);
+        
+        logger.info("Resuming CSV stream {} after record {} (byte offset {})", 
+            streamId, checkpoint.getRecordNumber(), checkpoint.getByteOffset());
+        jobScheduler.submit(streamId, "csv-stream", priorityOf(request.getPriority()), streamWeight(request.getEmbeddingWorkers()),
+            job -> performCsvStreaming(streamId, request, checkpoint, job));
+        
+        return response;
+    }
+    
+    /**
+     * Lists checkpoints of streaming operations that did not complete and can be resumed
+     */
+    public List<IngestionCheckpoint> getResumableStreams() {
+        return csvCheckpointService.list(IngestionCheckpoint.TYPE_CSV_STREAM);
+    }
+    
+    /**
+     * Gets the status of a running or recently finished streaming operation. Finished streams
+     * are kept as compact copies until they are evicted.
      *
      * @param streamId the stream ID
      * @return the current streaming status
      */
     public CsvStreamingResponse getStreamStatus(String streamId) {
-        return activeStreamOperations.get(streamId);
+        return streamRegistry.get(streamId);
+    }
+    
+    /**
+     * Opens a Server-Sent Events stream with the progress of a streaming operation
+     *
+     * @param streamId the stream ID
+     * @return the event stream, or null if the stream is unknown
+     */
+    public SseEmitter streamProgress(String streamId) {
+        if (streamRegistry.get(streamId) == null) {
+            return null;
+        }
+        return jobProgressService.subscribe(streamId, () -> streamRegistry.get(streamId));
     }
     
     /**
-     * Lists all active streaming operations
+     * Lists running streaming operations and the finished ones that have not been evicted yet
      *
-     * @return map of active streams
+     * @return map of streams by stream ID
      */
     public Map<String, CsvStreamingResponse> getActiveStreamOperations() {
-        return new HashMap<>(activeStreamOperations);
+        return streamRegistry.snapshot();
     }
     
     /**
@@ -79,12 +296,19 @@ public class CsvStreamingService {
      * @return true if cancelled, false if not found
      */
     public boolean cancelStream(String streamId) {
-        CsvStreamingResponse response = activeStreamOperations.get(streamId);
-        if (response != null && !"COMPLETED".equals(response.getStatus()) && !"FAILED".equals(response.getStatus())) {
+        CsvStreamingResponse response = streamRegistry.get(streamId);
+        if (response != null && !JobRegistry.isFinished(response.getStatus())) {
             response.setStatus("CANCELLED");
             response.setEndTime(LocalDateTime.now());
             response.setDurationMs(System.currentTimeMillis() - 
                 response.getStartTime().atZone(java.time.ZoneOffset.UTC).toInstant().toEpochMilli());
+            
+            // A queued stream never starts; a paused one wakes up and stops
+            jobScheduler.cancel(streamId);
+            IngestionPipeline pipeline = activePipelines.get(streamId);
+            if (pipeline != null) {
+                pipeline.cancel();
+            }
             return true;
         }
         return false;
@@ -98,24 +322,35 @@ public class CsvStreamingService {
      * @return estimated number of records
      */
     public long estimateRecordCount(String csvFilePath, boolean skipHeader) {
+        CSVFormat csvFormat = skipHeader ? CSVFormat.DEFAULT.withFirstRecordAsHeader() : CSVFormat.DEFAULT;
+        return estimateRecordCount(csvFilePath, csvFormat);
+    }
+    
+    /**
+     * Estimates the number of records in a CSV file by sampling a few regions of it.
+     * Quoted fields spanning several lines are counted as one record.
+     *
+     * @param csvFilePath path to the CSV file
+     * @param csvFormat format of the file, including whether it has a header row
+     * @return estimated number of records, or -1 if unknown
+     */
+    public long estimateRecordCount(String csvFilePath, CSVFormat csvFormat) {
         try {
-            long fileSize = Files.size(Paths.get(csvFilePath));
-            long lineCount = Files.lines(Paths.get(csvFilePath)).count();
-            
-            if (skipHeader && lineCount > 0) {
-                lineCount--;
-            }
-            
-            return lineCount;
+            CsvRecordCountEstimator estimator = new CsvRecordCountEstimator(csvFormat, estimateSampleCount, estimateSampleSizeKb * 1024);
+            return estimator.estimate(Paths.get(csvFilePath));
         } catch (IOException e) {
             logger.warn("Failed to estimate record count for file: {}", csvFilePath, e);
             return -1; // Unknown count
         }
     }
     
-    private void performCsvStreaming(String streamId, CsvStreamingRequest request) {
-        CsvStreamingResponse response = activeStreamOperations.get(streamId);
+    private void performCsvStreaming(String streamId, CsvStreamingRequest request, IngestionCheckpoint resumeFrom,
+                                     IngestionJobScheduler.Job job) {
+        CsvStreamingResponse response = streamRegistry.get(streamId);
         long startTime = System.currentTimeMillis();
+        if ("CANCELLED".equals(response.getStatus())) {
+            return;
+        }
         
         try {
             response.setStatus("PROCESSING");
@@ -125,54 +360,238 @@ public class CsvStreamingService {
                 throw new IllegalArgumentException("CSV file does not exist: " + request.getCsvFilePath());
             }
             
-            // Estimate total records
-            long estimatedRecords = estimateRecordCount(request.getCsvFilePath(), request.isSkipHeader());
+            // Estimate total records from samples; progress itself is tracked by bytes read
+            response.setTotalBytes(Files.size(Paths.get(request.getCsvFilePath())));
+            long estimatedRecords = estimateRecordCount(request.getCsvFilePath(), createCsvFormat(request));
             if (estimatedRecords > 0) {
                 response.setTotalRecords(estimatedRecords);
             }
             
+            // A new stream gets a checkpoint right away so it can be resumed even if it dies early
+            IngestionCheckpoint checkpoint = resumeFrom;
+            if (checkpoint == null && csvCheckpointService.isEnabled()) {
+                checkpoint = csvCheckpointService.createCheckpoint(streamId, IngestionCheckpoint.TYPE_CSV_STREAM,
+                    Paths.get(request.getCsvFilePath()));
+                checkpoint.setStreamingRequest(request);
+                csvCheckpointService.save(checkpoint);
+            }
+            
             // Process CSV file in batches
-            processCsvInBatches(streamId, request);
+            processCsvInBatches(streamId, request, checkpoint, job);
             
             // Update final status
-            CsvStreamingResponse finalResponse = activeStreamOperations.get(streamId);
+            CsvStreamingResponse finalResponse = streamRegistry.get(streamId);
             if ("CANCELLED".equals(finalResponse.getStatus())) {
                 return;
             }
             
-            finalResponse.setStatus("COMPLETED");
-            finalResponse.setEndTime(LocalDateTime.now());
-            long duration = System.currentTimeMillis() - startTime;
-            finalResponse.setDurationMs(duration);
-            
-            // Calculate processing rate
-            if (duration > 0) {
-                double rate = (finalResponse.getRecordsProcessed() * 1000.0) / duration;
-                finalResponse.setProcessingRatePerSecond(rate);
+            if (checkpoint != null) {
+                csvCheckpointService.delete(streamId);
             }
             
-            logger.info("CSV streaming completed. Stream ID: {}, Records processed: {}, Duration: {}ms", 
-                streamId, finalResponse.getRecordsProcessed(), duration);
+            markCompleted(finalResponse, startTime);
+            logger.info("CSV streaming completed. Stream ID: {}, Records processed: {}, Records indexed: {}, Duration: {}ms", 
+                streamId, finalResponse.getRecordsProcessed(), finalResponse.getRecordsIndexed(), finalResponse.getDurationMs());
             
         } catch (Exception e) {
             logger.error("CSV streaming failed. Stream ID: {}", streamId, e);
-            response.setStatus("FAILED");
-            response.setEndTime(LocalDateTime.now());
-            response.setDurationMs(System.currentTimeMillis() - startTime);
+            markFailed(response, startTime, e);
+        }
+    }
+    
+    private void performNdjsonStreaming(String streamId, NdjsonStreamingRequest request, NdjsonDocumentMapper mapper,
+                                        IngestionJobScheduler.Job job) {
+        CsvStreamingResponse response = streamRegistry.get(streamId);
+        long startTime = System.currentTimeMillis();
+        if ("CANCELLED".equals(response.getStatus())) {
+            return;
+        }
+        
+        try {
+            response.setStatus("PROCESSING");
+            
+            Path file = Paths.get(request.getFilePath());
+            if (!Files.exists(file)) {
+                throw new IllegalArgumentException("NDJSON file does not exist: " + request.getFilePath());
+            }
+            // JSON Lines has no record count to estimate cheaply; progress is tracked by bytes read
+            response.setTotalBytes(Files.size(file));
+            
+            runPipeline(streamId, resolveIndexName(request.getIndexName()), request.getBatchSize(), request.getEmbeddingWorkers(),
+                        request.getAdaptiveBatching(), null, job,
+                        (pipeline, counters) -> readNdjson(file, mapper, response, pipeline, counters));
             
-            List<String> errors = response.getErrors();
-            if (errors == null) {
-                errors = new ArrayList<>();
-                response.setErrors(errors);
+            if ("CANCELLED".equals(response.getStatus())) {
+                return;
             }
-            errors.add("Streaming failed: " + e.getMessage());
+            
+            markCompleted(response, startTime);
+            logger.info("NDJSON streaming completed. Stream ID: {}, Records processed: {}, Records indexed: {}, Duration: {}ms", 
+                streamId, response.getRecordsProcessed(), response.getRecordsIndexed(), response.getDurationMs());
+            
+        } catch (Exception e) {
+            logger.error("NDJSON streaming failed. Stream ID: {}", streamId, e);
+            markFailed(response, startTime, e);
+        }
+    }
+    
+    private void performBlockStreaming(String streamId, BlockStreamingRequest request, IngestionJobScheduler.Job job) {
+        CsvStreamingResponse response = streamRegistry.get(streamId);
+        long startTime = System.currentTimeMillis();
+        if ("CANCELLED".equals(response.getStatus())) {
+            return;
         }
+        
+        try {
+            response.setStatus("PROCESSING");
+            
+            List<Path> files = DocumentBlockReader.outputFiles(Paths.get(request.getFilePath()));
+            
+            runPipeline(streamId, resolveIndexName(request.getIndexName()), request.getBatchSize(), request.getEmbeddingWorkers(),
+                        request.getAdaptiveBatching(), null, job,
+                        (pipeline, counters) -> readBlocks(files, response, pipeline, counters));
+            
+            if ("CANCELLED".equals(response.getStatus())) {
+                return;
+            }
+            
+            markCompleted(response, startTime);
+            logger.info("Block streaming completed. Stream ID: {}, Records processed: {}, Records indexed: {}, Duration: {}ms", 
+                streamId, response.getRecordsProcessed(), response.getRecordsIndexed(), response.getDurationMs());
+            
+        } catch (Exception e) {
+            logger.error("Block streaming failed. Stream ID: {}", streamId, e);
+            markFailed(response, startTime, e);
+        }
+    }
+    
+    private void markCompleted(CsvStreamingResponse response, long startTime) {
+        response.setProgressPercentage(100.0);
+        response.setEndTime(LocalDateTime.now());
+        long duration = System.currentTimeMillis() - startTime;
+        response.setDurationMs(duration);
+        
+        // Calculate processing rate
+        if (duration > 0) {
+            double rate = (response.getRecordsIndexed() * 1000.0) / duration;
+            response.setProcessingRatePerSecond(rate);
+        }
+        // The status comes last, as a finished stream is compacted by the registry
+        response.setStatus("COMPLETED");
+    }
+    
+    private void markFailed(CsvStreamingResponse response, long startTime, Exception e) {
+        response.setEndTime(LocalDateTime.now());
+        response.setDurationMs(System.currentTimeMillis() - startTime);
+        
+        List<String> errors = response.getErrors();
+        if (errors == null) {
+            errors = new ArrayList<>();
+            response.setErrors(errors);
+        }
+        errors.add("Streaming failed: " + e.getMessage());
+        response.setStatus("FAILED");
+    }
+    
+    private void processCsvInBatches(String streamId, CsvStreamingRequest request, IngestionCheckpoint checkpoint,
+                                     IngestionJobScheduler.Job job) throws IOException, InterruptedException {
+        CsvStreamingResponse response = streamRegistry.get(streamId);
+        
+        CSVFormat csvFormat = createCsvFormat(request);
+        
+        // The checkpoint only advances once the batches before it have been bulk indexed or dead-lettered
+        CheckpointTracker tracker = checkpoint != null ? new CheckpointTracker(csvCheckpointService, checkpoint) : null;
+        Path csvFile = Paths.get(request.getCsvFilePath());
+        
+        runPipeline(streamId, resolveIndexName(request.getIndexName()), request.getBatchSize(), request.getEmbeddingWorkers(),
+                    request.getAdaptiveBatching(), tracker, job, (pipeline, counters) -> {
+            // Compressed files have no byte offsets to seek to and are decompressed while they are parsed
+            CsvFileInput.Codec codec = CsvFileInput.detect(csvFile);
+            if (codec == CsvFileInput.Codec.NONE && ParallelCsvReader.supports(csvFormat)) {
+                boolean parallel = parallelCsvReaderFactory.shouldUse(csvFile, csvFormat, request.getParallelParsing());
+                if (parallel) {
+                    logger.info("Parsing CSV file {} in parallel with {} threads", csvFile, parallelCsvReaderFactory.getParallelism());
+                }
+                readCsvWithReader(parallelCsvReaderFactory.create(csvFile, csvFormat, parallel), checkpoint,
+                    request, response, pipeline, counters);
+            } else {
+                if (codec != CsvFileInput.Codec.NONE) {
+                    logger.info("Decompressing {} CSV file {} while parsing", codec, csvFile);
+                }
+                readCsvSequentially(csvFormat, checkpoint, request, response, pipeline, counters);
+            }
+        });
     }
     
-    private void processCsvInBatches(String streamId, CsvStreamingRequest request) throws IOException {
-        CsvStreamingResponse response = activeStreamOperations.get(streamId);
+    /**
+     * Feeds the records of a stream through an ingestion pipeline and publishes the final counts.
+     * Shared by the CSV and NDJSON streams, which only differ in how records are read.
+     */
+    private void runPipeline(String streamId, String indexName, int batchSize, Integer requestedWorkers,
+                             Boolean requestedAdaptiveBatching, CheckpointTracker tracker, IngestionJobScheduler.Job job,
+                             StreamReader reader) throws IOException, InterruptedException {
+        CsvStreamingResponse response = streamRegistry.get(streamId);
+        
+        int embeddingWorkers = requestedWorkers != null ? requestedWorkers : defaultEmbeddingWorkers;
+        boolean adaptiveBatching = requestedAdaptiveBatching != null ? requestedAdaptiveBatching : adaptiveBatchingEnabled;
+        response.setIndexName(indexName);
+        response.setEmbeddingWorkers(embeddingWorkers);
+        response.setAdaptiveBatching(adaptiveBatching);
+        response.setBatchSize(batchSize);
+        
+        vectorStoreService.createIndex(indexName);
+        
+        // The requested batch size is where adaptive batching starts
+        AdaptiveBatchSizer batchSizer = adaptiveBatching
+            ? new AdaptiveBatchSizer(batchSize, adaptiveMinBatchSize, adaptiveMaxBatchSize, adaptiveIncrement,
+                                     adaptiveDecreaseFactor, adaptiveEmbeddingTargetMs, adaptiveIndexingTargetMs)
+            : null;
+        IngestionPipeline pipeline = new IngestionPipeline(streamId, indexName, embeddingService, vectorStoreService,
+            batchSize, embeddingWorkers, queueCapacity, deadLetterService.batchListener(streamId, indexName, tracker), batchSizer);
+        activePipelines.put(streamId, pipeline);
+        
+        StreamCounters counters = new StreamCounters(tracker, batchSize, job);
+        List<String> warnings = new ArrayList<>();
+        
+        boolean finished = false;
+        try {
+            reader.read(pipeline, counters);
+            
+            if (!"CANCELLED".equals(response.getStatus())) {
+                pipeline.finish();
+                finished = true;
+            }
+            
+        } finally {
+            // A cancelled or failed stream stops the pipeline's workers, which would otherwise wait for batches forever
+            if (!finished) {
+                pipeline.cancel();
+            }
+            activePipelines.remove(streamId);
+            if (tracker != null) {
+                tracker.flush();
+            }
+        }
+        
+        if (counters.recordsSkipped > 0) {
+            warnings.add("Skipped " + counters.recordsSkipped + " records with empty text");
+        }
+        
+        // Update final counts
+        IngestionPipeline.PipelineStats stats = pipeline.getStats();
+        updateProgress(response, stats, counters);
+        if (batchSizer != null) {
+            logger.info("Stream {} finished with adaptive batch size {} ({} increases, {} decreases)",
+                       streamId, batchSizer.getCurrentSize(), batchSizer.getIncreases(), batchSizer.getDecreases());
+        }
         
-        // Configure CSV format
+        List<String> errors = new ArrayList<>(counters.parseErrors);
+        errors.addAll(stats.getErrors());
+        response.setErrors(errors);
+        response.setWarnings(warnings);
+    }
+    
+    private CSVFormat createCsvFormat(CsvStreamingRequest request) {
         CSVFormat csvFormat = CSVFormat.DEFAULT
             .withDelimiter(request.getDelimiter())
             .withQuote(request.getQuoteCharacter())
@@ -181,79 +600,280 @@ public class CsvStreamingService {
         if (request.isSkipHeader()) {
             csvFormat = csvFormat.withFirstRecordAsHeader();
         }
+        return csvFormat;
+    }
+    
+    /**
+     * Reads with a plain {@link CSVParser}, for compressed files and for formats whose quotes cannot
+     * be located at byte level. A resumed stream skips the records up to its checkpoint.
+     */
+    private void readCsvSequentially(CSVFormat csvFormat, IngestionCheckpoint checkpoint, CsvStreamingRequest request,
+                                     CsvStreamingResponse response, IngestionPipeline pipeline, StreamCounters counters)
+                                     throws IOException, InterruptedException {
+        long resumeAfter = checkpoint != null ? checkpoint.getRecordNumber() : 0;
         
-        AtomicLong recordsProcessed = new AtomicLong(0);
-        AtomicLong recordsIndexed = new AtomicLong(0);
-        AtomicLong recordsFailed = new AtomicLong(0);
-        AtomicLong batchCount = new AtomicLong(0);
-        
-        List<String> errors = new ArrayList<>();
-        List<String> warnings = new ArrayList<>();
+        try (CsvFileInput input = CsvFileInput.open(Paths.get(request.getCsvFilePath()));
+             CSVParser csvParser = new CSVParser(new InputStreamReader(input.getStream(), StandardCharsets.UTF_8), csvFormat)) {
+            
+            for (CSVRecord record : csvParser) {
+                if ("CANCELLED".equals(response.getStatus())) {
+                    break;
+                }
+                
+                // Bytes of the file on disk, compressed or not. Read-ahead of the decoders makes this
+                // slightly ahead of the parser, which is fine for progress.
+                counters.bytesConsumed = input.getBytesRead();
+                
+                if (record.getRecordNumber() <= resumeAfter) {
+                    continue;
+                }
+                counters.recordConsumed(record.getRecordNumber(), -1);
+                
+                Document document;
+                try {
+                    document = processCsvRecord(record, request);
+                } catch (Exception e) {
+                    recordParseFailure(counters, record.getRecordNumber(), e);
+                    continue;
+                }
+                
+                if (!submitCsvRecord(document, record.getRecordNumber(), request, response, pipeline, counters)) {
+                    break;
+                }
+            }
+            counters.bytesConsumed = input.getBytesRead();
+        }
+    }
+    
+    /**
+     * Reads with a {@link ParallelCsvReader}, which reports byte offsets and can therefore
+     * start directly at a checkpoint
+     */
+    private void readCsvWithReader(ParallelCsvReader reader, IngestionCheckpoint checkpoint, CsvStreamingRequest request,
+                                   CsvStreamingResponse response, IngestionPipeline pipeline, StreamCounters counters)
+                                   throws IOException, InterruptedException {
+        // Checkpoints without a byte offset come from a sequential parse and cannot be seeked to
+        boolean seek = checkpoint != null && checkpoint.getByteOffset() > 0;
+        long startOffset = seek ? checkpoint.getByteOffset() : 0;
+        long recordsBefore = seek ? checkpoint.getRecordNumber() : 0;
+        counters.bytesConsumed = startOffset;
         
-        try (FileReader fileReader = new FileReader(request.getCsvFilePath());
-             CSVParser csvParser = new CSVParser(fileReader, csvFormat)) {
+        // Records are mapped on the reader's threads and arrive here in file order
+        reader.read(startOffset, recordsBefore, record -> processCsvRecord(record, request), parsed -> {
+            if ("CANCELLED".equals(response.getStatus())) {
+                return false;
+            }
             
-            List<Map<String, Object>> batch = new ArrayList<>();
+            counters.bytesConsumed = parsed.getNextByteOffset();
+            counters.recordConsumed(parsed.getRecordNumber(), parsed.getNextByteOffset());
             
-            for (CSVRecord record : csvParser) {
+            if (parsed.getError() != null) {
+                recordParseFailure(counters, parsed.getRecordNumber(), parsed.getError());
+                return true;
+            }
+            
+            return submitCsvRecord(parsed.getValue(), parsed.getRecordNumber(), request, response, pipeline, counters);
+        });
+    }
+    
+    /**
+     * Reads a JSON Lines file one line at a time. Each line is parsed on its own, so a malformed
+     * line only fails that record. Blank lines are ignored but still counted, which keeps the
+     * record number equal to the line number.
+     */
+    private void readNdjson(Path file, NdjsonDocumentMapper mapper, CsvStreamingResponse response,
+                            IngestionPipeline pipeline, StreamCounters counters) throws IOException, InterruptedException {
+        String filePath = file.toString();
+        
+        try (CsvFileInput input = CsvFileInput.open(file);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(input.getStream(), StandardCharsets.UTF_8), NDJSON_BUFFER_SIZE)) {
+            
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
                 if ("CANCELLED".equals(response.getStatus())) {
                     break;
                 }
+                lineNumber++;
+                counters.bytesConsumed = input.getBytesRead();
                 
+                if (line.isBlank()) {
+                    continue;
+                }
+                
+                Document document;
                 try {
-                    Map<String, Object> documentData = processCsvRecord(record, request);
-                    if (documentData != null) {
-                        batch.add(documentData);
-                        recordsProcessed.incrementAndGet();
-                    }
-                    
-                    // Process batch when it reaches the batch size
-                    if (batch.size() >= request.getBatchSize()) {
-                        long indexed = processBatch(batch, request, streamId);
-                        recordsIndexed.addAndGet(indexed);
-                        recordsFailed.addAndGet(batch.size() - indexed);
-                        batchCount.incrementAndGet();
-                        
-                        batch.clear();
-                        
-                        // Update progress
-                        updateProgress(response, recordsProcessed.get(), recordsIndexed.get(), 
-                            recordsFailed.get(), batchCount.get());
-                    }
-                    
+                    document = mapper.map(line);
                 } catch (Exception e) {
-                    recordsFailed.incrementAndGet();
-                    String errorMsg = "Failed to process record " + record.getRecordNumber() + ": " + e.getMessage();
-                    logger.debug(errorMsg);
-                    
-                    if (errors.size() < 100) { // Limit error collection
-                        errors.add(errorMsg);
+                    recordParseFailure(counters, lineNumber, e);
+                    continue;
+                }
+                
+                if (document != null) {
+                    // Records without an ID field get one derived from their position, like CSV records
+                    if (document.getId() == null) {
+                        document.setId(generateDocumentId(filePath, lineNumber));
                     }
+                    document.setSource(filePath);
+                    document.getMetadata().put("ndjson_file_path", filePath);
+                    document.getMetadata().put("ndjson_line_number", lineNumber);
+                }
+                
+                if (!submitRecord(document, response, pipeline, counters)) {
+                    break;
                 }
             }
-            
-            // Process remaining records in the last batch
-            if (!batch.isEmpty() && !"CANCELLED".equals(response.getStatus())) {
-                long indexed = processBatch(batch, request, streamId);
-                recordsIndexed.addAndGet(indexed);
-                recordsFailed.addAndGet(batch.size() - indexed);
-                batchCount.incrementAndGet();
+            counters.bytesConsumed = input.getBytesRead();
+        }
+    }
+    
+    /**
+     * Reads the block files of a scan. Blocks are decompressed and decoded on a pool of threads,
+     * a few blocks ahead of the pipeline, and handed over in the order the scan wrote them, the
+     * shards taking turns block by block.
+     */
+    private void readBlocks(List<Path> files, CsvStreamingResponse response, IngestionPipeline pipeline,
+                            StreamCounters counters) throws IOException, InterruptedException {
+        List<DocumentBlockReader> readers = new ArrayList<>();
+        int threads = parallelCsvReaderFactory.getParallelism();
+        ExecutorService decoders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "block-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            long totalRecords = 0;
+            long totalBytes = 0;
+            int maxBlocks = 0;
+            for (Path file : files) {
+                DocumentBlockReader reader = new DocumentBlockReader(file);
+                readers.add(reader);
+                totalRecords += reader.getRecordCount();
+                totalBytes += Files.size(file);
+                maxBlocks = Math.max(maxBlocks, reader.getBlockCount());
             }
+            // Block files know their record count, so nothing is estimated
+            response.setTotalRecords(totalRecords);
+            response.setTotalBytes(totalBytes);
             
-            // Update final counts
-            response.setRecordsProcessed(recordsProcessed.get());
-            response.setRecordsIndexed(recordsIndexed.get());
-            response.setRecordsFailed(recordsFailed.get());
-            response.setBatchCount(batchCount.get());
-            response.setErrors(errors);
-            response.setWarnings(warnings);
+            List<int[]> blocks = new ArrayList<>();
+            for (int block = 0; block < maxBlocks; block++) {
+                for (int shard = 0; shard < readers.size(); shard++) {
+                    if (block < readers.get(shard).getBlockCount()) {
+                        blocks.add(new int[] {shard, block});
+                    }
+                }
+            }
             
+            Deque<Future<List<DocumentBlockReader.Record>>> ahead = new ArrayDeque<>();
+            int next = 0;
+            for (int[] block : blocks) {
+                while (next < blocks.size() && ahead.size() < 2 * threads) {
+                    DocumentBlockReader reader = readers.get(blocks.get(next)[0]);
+                    int blockNumber = blocks.get(next)[1];
+                    ahead.add(decoders.submit(() -> reader.readBlock(blockNumber)));
+                    next++;
+                }
+                List<DocumentBlockReader.Record> records;
+                try {
+                    records = ahead.remove().get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                }
+                
+                for (DocumentBlockReader.Record record : records) {
+                    if ("CANCELLED".equals(response.getStatus())) {
+                        return;
+                    }
+                    Document document = new DocumentExtractionService.ExtractedDocument(record.text(), record.metadata())
+                        .toDocument(record.documentId(), record.path(), maxRecordSize);
+                    if (!submitRecord(document, response, pipeline, counters)) {
+                        return;
+                    }
+                }
+                DocumentBlockReader reader = readers.get(block[0]);
+                counters.bytesConsumed += reader.getBlockSize(block[1]);
+            }
+            counters.bytesConsumed = totalBytes;
+        } finally {
+            decoders.shutdownNow();
+            for (DocumentBlockReader reader : readers) {
+                reader.close();
+            }
         }
     }
     
-    private Map<String, Object> processCsvRecord(CSVRecord record, CsvStreamingRequest request) {
-        Map<String, Object> documentData = new HashMap<>();
+    private boolean submitCsvRecord(Document document, long recordNumber, CsvStreamingRequest request, CsvStreamingResponse response,
+                                    IngestionPipeline pipeline, StreamCounters counters) throws InterruptedException {
+        if (document != null) {
+            assignRecordIdentity(document, request.getCsvFilePath(), recordNumber);
+        }
+        return submitRecord(document, response, pipeline, counters);
+    }
+    
+    /**
+     * Hands a parsed document to the pipeline
+     *
+     * @return false if the pipeline no longer accepts documents
+     */
+    private boolean submitRecord(Document document, CsvStreamingResponse response,
+                                 IngestionPipeline pipeline, StreamCounters counters) throws InterruptedException {
+        if (document == null) {
+            counters.recordsSkipped++;
+            return true;
+        }
+        
+        if (!pipeline.submit(document)) {
+            return false;
+        }
+        
+        // Refresh the visible progress once per batch handed to the pipeline
+        if (++counters.recordsSubmitted % counters.batchSize == 0) {
+            updateProgress(response, pipeline.getStats(), counters);
+            yieldTimeSlice(response, counters.job);
+        }
+        return true;
+    }
+    
+    /**
+     * Lets a waiting job run if this stream has used up its time slice. The pipeline drains the
+     * batches already handed to it while the stream is paused.
+     */
+    private void yieldTimeSlice(CsvStreamingResponse response, IngestionJobScheduler.Job job) throws InterruptedException {
+        if (job != null && job.yieldSlice(() -> response.setStatus("QUEUED")) && "QUEUED".equals(response.getStatus())) {
+            response.setStatus("PROCESSING");
+        }
+    }
+    
+    /**
+     * Streams that ask for more embedding workers than the default take a larger share of the scheduler capacity
+     */
+    private int streamWeight(Integer requestedWorkers) {
+        int workers = requestedWorkers != null ? requestedWorkers : defaultEmbeddingWorkers;
+        int defaultWorkers = Math.max(1, defaultEmbeddingWorkers);
+        return Math.max(1, (workers + defaultWorkers - 1) / defaultWorkers);
+    }
+    
+    private int priorityOf(Integer priority) {
+        return priority != null ? priority : 0;
+    }
+    
+    private void recordParseFailure(StreamCounters counters, long recordNumber, Exception e) {
+        counters.parseFailures++;
+        String errorMsg = "Failed to process record " + recordNumber + ": " + e.getMessage();
+        logger.debug(errorMsg);
         
+        if (counters.parseErrors.size() < 100) { // Limit error collection
+            counters.parseErrors.add(errorMsg);
+        }
+    }
+    
+    /**
+     * Builds the document for a record. The record number, and the ID unless the ID column
+     * has one, are assigned by {@link #assignRecordIdentity} once the record's position in
+     * the file is known.
+     */
+    private Document processCsvRecord(CSVRecord record, CsvStreamingRequest request) {
         // Get the text content
         String textContent = record.get(request.getTextColumn());
         if (textContent == null || textContent.trim().isEmpty()) {
@@ -266,12 +886,8 @@ public class CsvStreamingService {
             textContent = textContent.substring(0, maxRecordSize);
         }
         
-        documentData.put("text", textContent);
-        documentData.put("record_number", record.getRecordNumber());
-        
-        // Add metadata columns
+        Map<String, Object> metadata = new HashMap<>();
         if (request.getMetadataColumns() != null) {
-            Map<String, Object> metadata = new HashMap<>();
             for (String metadataColumn : request.getMetadataColumns()) {
                 try {
                     String value = record.get(metadataColumn);
@@ -283,65 +899,113 @@ public class CsvStreamingService {
                     logger.debug("Metadata column '{}' not found in record {}", metadataColumn, record.getRecordNumber());
                 }
             }
-            documentData.put("metadata", metadata);
+        } else {
+            // Without an explicit selection every column except the text becomes metadata
+            for (Map.Entry<String, String> column : record.toMap().entrySet()) {
+                if (!column.getKey().equals(request.getTextColumn()) && column.getValue() != null) {
+                    metadata.put(column.getKey(), column.getValue());
+                }
+            }
         }
         
-        // Add all available columns as metadata
-        Map<String, Object> allColumns = new HashMap<>();
-        for (String header : record.getParser().getHeaderNames()) {
-            try {
-                String value = record.get(header);
-                if (value != null) {
-                    allColumns.put(header, value);
-                }
-            } catch (IllegalArgumentException e) {
-                // Skip if column not accessible
+        metadata.put("csv_file_path", request.getCsvFilePath());
+        
+        String documentId = null;
+        String idColumn = request.getIdColumn();
+        if (idColumn != null && record.isMapped(idColumn)) {
+            String value = record.get(idColumn);
+            if (value != null && !value.trim().isEmpty()) {
+                documentId = value.trim();
             }
+            metadata.remove(idColumn);
         }
-        documentData.put("all_columns", allColumns);
         
-        return documentData;
+        Document document = new Document(documentId, textContent.trim(), metadata);
+        document.setSource(request.getCsvFilePath());
+        return document;
     }
     
-    private long processBatch(List<Map<String, Object>> batch, CsvStreamingRequest request, String streamId) {
-        // This is a placeholder for actual indexing logic
-        // In a real implementation, you would integrate with your search engine (OpenSearch, Elasticsearch, etc.)
-        
-        logger.debug("Processing batch of {} documents for stream {}", batch.size(), streamId);
-        
-        // Simulate some processing time and potential failures
-        try {
-            Thread.sleep(10); // Simulate processing delay
-            
-            // Simulate 95% success rate
-            long successful = (long) (batch.size() * 0.95);
-            return successful;
-            
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return 0;
+    private void assignRecordIdentity(Document document, String csvFilePath, long recordNumber) {
+        if (document.getId() == null) {
+            document.setId(generateDocumentId(csvFilePath, recordNumber));
         }
+        document.getMetadata().put("csv_record_number", recordNumber);
     }
     
-    private void updateProgress(CsvStreamingResponse response, long processed, long indexed, 
-                              long failed, long batchCount) {
-        response.setRecordsProcessed(processed);
-        response.setRecordsIndexed(indexed);
-        response.setRecordsFailed(failed);
-        response.setBatchCount(batchCount);
+    /**
+     * Document IDs are derived from the file and record number so re-streaming a file
+     * overwrites the documents it indexed before instead of duplicating them
+     */
+    private String generateDocumentId(String csvFilePath, long recordNumber) {
+        return UUID.nameUUIDFromBytes((csvFilePath + "#" + recordNumber).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+    
+    private String resolveIndexName(String indexName) {
+        if (indexName == null || indexName.trim().isEmpty()) {
+            return defaultIndexName;
+        }
+        return indexName.trim();
+    }
+    
+    private void updateProgress(CsvStreamingResponse response, IngestionPipeline.PipelineStats stats, StreamCounters counters) {
+        response.setRecordsProcessed(stats.getDocumentsSubmitted());
+        response.setRecordsEmbedded(stats.getDocumentsEmbedded());
+        response.setRecordsIndexed(stats.getDocumentsIndexed());
+        response.setRecordsFailed(stats.getDocumentsFailed() + counters.parseFailures);
+        response.setBatchCount(stats.getBatchesIndexed());
+        response.setCurrentBatch(stats.getBatchesSubmitted());
+        response.setBatchSize(stats.getBatchSize());
+        response.setBytesProcessed(counters.bytesConsumed);
         
-        // Calculate progress percentage
-        if (response.getTotalRecords() > 0) {
-            double progress = (processed * 100.0) / response.getTotalRecords();
+        // Progress follows the position in the file, which is exact unlike the estimated record count
+        if (response.getTotalBytes() > 0) {
+            double progress = (counters.bytesConsumed * 100.0) / response.getTotalBytes();
             response.setProgressPercentage(Math.min(100.0, progress));
         }
         
-        // Update processing rate
-        long elapsed = System.currentTimeMillis() - 
-            response.getStartTime().atZone(java.time.ZoneOffset.UTC).toInstant().toEpochMilli();
-        if (elapsed > 0) {
-            double rate = (processed * 1000.0) / elapsed;
-            response.setProcessingRatePerSecond(rate);
+        // Per-stage throughput over the lifetime of the pipeline
+        response.setProcessingRatePerSecond(stats.rate(stats.getDocumentsIndexed()));
+        response.setParseRatePerSecond(stats.rate(stats.getDocumentsSubmitted()));
+        response.setEmbeddingRatePerSecond(stats.rate(stats.getDocumentsEmbedded()));
+        response.setIndexingRatePerSecond(stats.rate(stats.getDocumentsIndexed()));
+        response.setEmbeddingTimeMs(stats.getEmbeddingTimeMs());
+        response.setIndexingTimeMs(stats.getIndexingTimeMs());
+    }
+    
+    /**
+     * Reads the records of a stream and submits them to its pipeline
+     */
+    @FunctionalInterface
+    private interface StreamReader {
+        void read(IngestionPipeline pipeline, StreamCounters counters) throws IOException, InterruptedException;
+    }
+    
+    /**
+     * Per-stream record accounting shared by the read paths
+     */
+    private static class StreamCounters {
+        private final CheckpointTracker tracker;
+        private final int batchSize;
+        private final IngestionJobScheduler.Job job;
+        private long recordsSubmitted;
+        private long recordsSkipped;
+        private long parseFailures;
+        private long bytesConsumed;
+        private final List<String> parseErrors = new ArrayList<>();
+        
+        StreamCounters(CheckpointTracker tracker, int batchSize, IngestionJobScheduler.Job job) {
+            this.tracker = tracker;
+            this.batchSize = batchSize;
+            this.job = job;
+        }
+        
+        /**
+         * Reports a record to the checkpoint tracker before it is submitted, skipped or counted as failed
+         */
+        void recordConsumed(long recordNumber, long nextByteOffset) {
+            if (tracker != null) {
+                tracker.recordConsumed(recordNumber, nextByteOffset);
+            }
         }
     }
     
@@ -0,0 +1,462 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.model.DeadLetterEntry;
+import com.example.ragservice.model.Document;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps documents that failed ingestion in an append-only JSON lines file and replays
+ * them with exponential backoff.
+ * <p>
+ * Every state change of an entry is appended as a new line, so a crash never loses an
+ * entry that was already written. After each retry pass the file is compacted to the
+ * latest state of the entries that are not resolved yet.
+ */
+@Service
+public class DeadLetterService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterService.class);
+    
+    private static final String DEAD_LETTER_FILE = "dead-letter.jsonl";
+    private static final int RETRY_BATCH_SIZE = 100;
+    
+    @Autowired
+    private EmbeddingService embeddingService;
+    
+    @Autowired
+    private VectorStoreService vectorStoreService;
+    
+    @Value("${document.processing.dead-letter.enabled:true}")
+    private boolean enabled = true;
+    
+    @Value("${document.processing.dead-letter.directory:./data/dead-letter}")
+    private String directory = "./data/dead-letter";
+    
+    @Value("${document.processing.dead-letter.retry.enabled:true}")
+    private boolean retryEnabled = true;
+    
+    @Value("${document.processing.dead-letter.retry.max-attempts:5}")
+    private int maxAttempts = 5;
+    
+    @Value("${document.processing.dead-letter.retry.initial-backoff-seconds:30}")
+    private long initialBackoffSeconds = 30;
+    
+    @Value("${document.processing.dead-letter.retry.max-backoff-minutes:60}")
+    private long maxBackoffMinutes = 60;
+    
+    private final ObjectMapper objectMapper;
+    
+    // Serializes appends and compaction of the dead-letter file
+    private final Object fileLock = new Object();
+    private final AtomicBoolean retryRunning = new AtomicBoolean();
+    
+    public DeadLetterService() {
+        this.objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Dead-letters the documents of a batch that failed as a whole
+     *
+     * @return true if the documents were written and will be retried
+     */
+    public boolean recordFailures(String jobId, String indexName, List<Document> documents, Exception cause) {
+        List<DeadLetterEntry> entries = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            entries.add(newEntry(jobId, indexName, document, cause.getClass().getName(), cause.getMessage()));
+        }
+        return appendNewEntries(jobId, entries);
+    }
+    
+    /**
+     * Dead-letters the documents rejected individually by a bulk request
+     *
+     * @return true if the documents were written and will be retried
+     */
+    public boolean recordFailures(String jobId, String indexName, List<VectorStoreService.BulkItemFailure> failures) {
+        List<DeadLetterEntry> entries = new ArrayList<>(failures.size());
+        for (VectorStoreService.BulkItemFailure failure : failures) {
+            entries.add(newEntry(jobId, indexName, failure.getDocument(), failure.getErrorClass(), failure.getMessage()));
+        }
+        return appendNewEntries(jobId, entries);
+    }
+    
+    /**
+     * Wraps the batch listener of a pipeline so that failed documents are dead-lettered before
+     * the delegate hears about them. A batch that failed as a whole but was dead-lettered is
+     * reported to the delegate as indexed with every document failed, so a checkpoint can move
+     * past it.
+     *
+     * @param delegate listener to forward to, may be null
+     */
+    public IngestionPipeline.BatchListener batchListener(String jobId, String indexName, IngestionPipeline.BatchListener delegate) {
+        if (!enabled) {
+            return delegate;
+        }
+        return new IngestionPipeline.BatchListener() {
+            @Override
+            public void onBatchSealed(long sequence) {
+                if (delegate != null) {
+                    delegate.onBatchSealed(sequence);
+                }
+            }
+            
+            @Override
+            public void onBatchIndexed(long sequence, VectorStoreService.BulkIndexResult result) {
+                if (result.getFailureCount() > 0) {
+                    recordFailures(jobId, indexName, result.getFailures());
+                }
+                if (delegate != null) {
+                    delegate.onBatchIndexed(sequence, result);
+                }
+            }
+            
+            @Override
+            public void onBatchFailed(long sequence, List<Document> documents, Exception cause) {
+                boolean deadLettered = recordFailures(jobId, indexName, documents, cause);
+                if (delegate == null) {
+                    return;
+                }
+                if (deadLettered) {
+                    List<VectorStoreService.BulkItemFailure> failures = new ArrayList<>(documents.size());
+                    for (Document document : documents) {
+                        failures.add(new VectorStoreService.BulkItemFailure(document, cause.getMessage(), 0, cause.getClass().getName()));
+                    }
+                    delegate.onBatchIndexed(sequence, new VectorStoreService.BulkIndexResult(0, failures));
+                } else {
+                    delegate.onBatchFailed(sequence, documents, cause);
+                }
+            }
+        };
+    }
+    
+    /**
+     * Lists the current state of the dead-lettered documents
+     *
+     * @param status only return entries with this status, or all unresolved entries if null
+     */
+    public List<DeadLetterEntry> list(String status) throws IOException {
+        List<DeadLetterEntry> result = new ArrayList<>();
+        for (DeadLetterEntry entry : readLatestStates().values()) {
+            if (status == null || status.equalsIgnoreCase(entry.getStatus())) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Retries the entries whose backoff has expired. Runs on the configured retry interval.
+     */
+    @Scheduled(fixedDelayString = "${document.processing.dead-letter.retry.interval-seconds:60}",
+               initialDelayString = "${document.processing.dead-letter.retry.interval-seconds:60}",
+               timeUnit = TimeUnit.SECONDS)
+    public void retryDueEntries() {
+        if (!enabled || !retryEnabled) {
+            return;
+        }
+        try {
+            retry(false);
+        } catch (Exception e) {
+            logger.error("Dead-letter retry pass failed", e);
+        }
+    }
+    
+    /**
+     * Replays pending dead-lettered documents. Documents that fail again are rescheduled with
+     * exponential backoff until the maximum number of attempts is reached.
+     *
+     * @param ignoreBackoff retry every pending entry, not only those that are due
+     * @return number of entries per outcome, or null if another retry pass is running
+     */
+    public RetrySummary retry(boolean ignoreBackoff) throws IOException {
+        if (!retryRunning.compareAndSet(false, true)) {
+            return null;
+        }
+        try {
+            Instant now = Instant.now();
+            Map<String, List<DeadLetterEntry>> dueByIndex = new LinkedHashMap<>();
+            for (DeadLetterEntry entry : readLatestStates().values()) {
+                if (DeadLetterEntry.STATUS_PENDING.equals(entry.getStatus())
+                        && (ignoreBackoff || entry.getNextAttemptAt() == null || !entry.getNextAttemptAt().isAfter(now))) {
+                    dueByIndex.computeIfAbsent(entry.getIndexName(), k -> new ArrayList<>()).add(entry);
+                }
+            }
+            
+            RetrySummary summary = new RetrySummary();
+            if (dueByIndex.isEmpty()) {
+                return summary;
+            }
+            
+            for (Map.Entry<String, List<DeadLetterEntry>> group : dueByIndex.entrySet()) {
+                List<DeadLetterEntry> entries = group.getValue();
+                for (int start = 0; start < entries.size(); start += RETRY_BATCH_SIZE) {
+                    List<DeadLetterEntry> chunk = entries.subList(start, Math.min(entries.size(), start + RETRY_BATCH_SIZE));
+                    append(retryChunk(group.getKey(), chunk, summary));
+                }
+            }
+            compact();
+            
+            logger.info("Dead-letter retry: {} attempted, {} resolved, {} rescheduled, {} exhausted",
+                       summary.getAttempted(), summary.getResolved(), summary.getRescheduled(), summary.getExhausted());
+            return summary;
+        } finally {
+            retryRunning.set(false);
+        }
+    }
+    
+    private List<DeadLetterEntry> retryChunk(String indexName, List<DeadLetterEntry> chunk, RetrySummary summary) {
+        List<Document> documents = new ArrayList<>(chunk.size());
+        for (DeadLetterEntry entry : chunk) {
+            documents.add(entry.getDocument());
+        }
+        summary.attempted += chunk.size();
+        
+        Map<Document, VectorStoreService.BulkItemFailure> failures = new IdentityHashMap<>();
+        Exception batchFailure = null;
+        try {
+            vectorStoreService.createIndex(indexName);
+            embedMissing(documents);
+            for (VectorStoreService.BulkItemFailure failure : vectorStoreService.bulkIndexDocuments(indexName, documents).getFailures()) {
+                failures.put(failure.getDocument(), failure);
+            }
+        } catch (Exception e) {
+            logger.warn("Retry of {} dead-lettered documents for index {} failed: {}", chunk.size(), indexName, e.getMessage());
+            batchFailure = e;
+        }
+        
+        Instant now = Instant.now();
+        List<DeadLetterEntry> updates = new ArrayList<>(chunk.size());
+        for (DeadLetterEntry entry : chunk) {
+            VectorStoreService.BulkItemFailure failure = failures.get(entry.getDocument());
+            if (batchFailure == null && failure == null) {
+                entry.setStatus(DeadLetterEntry.STATUS_RESOLVED);
+                entry.setNextAttemptAt(null);
+                summary.resolved++;
+            } else {
+                if (batchFailure != null) {
+                    entry.setErrorClass(batchFailure.getClass().getName());
+                    entry.setErrorMessage(batchFailure.getMessage());
+                } else {
+                    entry.setErrorClass(failure.getErrorClass());
+                    entry.setErrorMessage(failure.getMessage());
+                }
+                entry.setAttempts(entry.getAttempts() + 1);
+                entry.setLastFailedAt(now);
+                if (entry.getAttempts() >= maxAttempts) {
+                    entry.setStatus(DeadLetterEntry.STATUS_EXHAUSTED);
+                    entry.setNextAttemptAt(null);
+                    summary.exhausted++;
+                } else {
+                    entry.setNextAttemptAt(now.plus(backoff(entry.getAttempts())));
+                    summary.rescheduled++;
+                }
+            }
+            // Never write embeddings to the file
+            entry.getDocument().setEmbedding(null);
+            updates.add(entry);
+        }
+        return updates;
+    }
+    
+    private void embedMissing(List<Document> documents) {
+        List<Document> pending = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (Document document : documents) {
+            if (document.getEmbedding() == null || document.getEmbedding().isEmpty()) {
+                pending.add(document);
+                texts.add(document.getContent());
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        
+        List<List<Double>> embeddings = embeddingService.generateEmbeddings(texts);
+        if (embeddings.size() != pending.size()) {
+            throw new IllegalStateException("Expected " + pending.size() + " embeddings but received " + embeddings.size());
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            pending.get(i).setEmbedding(embeddings.get(i));
+        }
+    }
+    
+    /**
+     * Delay before the next attempt after {@code attempts} failed ones: the initial backoff,
+     * doubled for every further failure, capped at the maximum backoff
+     */
+    Duration backoff(int attempts) {
+        long seconds = initialBackoffSeconds << Math.min(Math.max(attempts - 1, 0), 30);
+        return Duration.ofSeconds(Math.min(seconds, TimeUnit.MINUTES.toSeconds(maxBackoffMinutes)));
+    }
+    
+    private DeadLetterEntry newEntry(String jobId, String indexName, Document document, String errorClass, String errorMessage) {
+        Instant now = Instant.now();
+        
+        // Copy without the embedding, which is large and regenerated on retry
+        Document copy = new Document(document.getId(), document.getContent(), document.getMetadata());
+        copy.setSource(document.getSource());
+        copy.setTimestamp(document.getTimestamp());
+        
+        DeadLetterEntry entry = new DeadLetterEntry();
+        entry.setEntryId(UUID.randomUUID().toString());
+        entry.setJobId(jobId);
+        entry.setIndexName(indexName);
+        entry.setStatus(DeadLetterEntry.STATUS_PENDING);
+        entry.setErrorClass(errorClass);
+        entry.setErrorMessage(errorMessage);
+        entry.setAttempts(1);
+        entry.setFirstFailedAt(now);
+        entry.setLastFailedAt(now);
+        entry.setNextAttemptAt(now.plus(backoff(1)));
+        entry.setDocument(copy);
+        return entry;
+    }
+    
+    private boolean appendNewEntries(String jobId, List<DeadLetterEntry> entries) {
+        if (!enabled || entries.isEmpty()) {
+            return false;
+        }
+        try {
+            append(entries);
+            logger.info("Dead-lettered {} documents of job {}", entries.size(), jobId);
+            return true;
+        } catch (IOException e) {
+            logger.error("Failed to dead-letter {} documents of job {}: {}", entries.size(), jobId, e.getMessage());
+            return false;
+        }
+    }
+    
+    private void append(List<DeadLetterEntry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        synchronized (fileLock) {
+            Path file = deadLetterFile();
+            Files.createDirectories(file.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (DeadLetterEntry entry : entries) {
+                    writer.write(objectMapper.writeValueAsString(entry));
+                    writer.newLine();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Folds the file into the latest state of every entry that is not resolved
+     */
+    private Map<String, DeadLetterEntry> readLatestStates() throws IOException {
+        Map<String, DeadLetterEntry> latest = new LinkedHashMap<>();
+        synchronized (fileLock) {
+            Path file = deadLetterFile();
+            if (!Files.exists(file)) {
+                return latest;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        DeadLetterEntry entry = objectMapper.readValue(line, DeadLetterEntry.class);
+                        latest.put(entry.getEntryId(), entry);
+                    } catch (IOException e) {
+                        // A line cut short by a crash during an append
+                        logger.warn("Skipping unreadable dead-letter line: {}", e.getMessage());
+                    }
+                }
+            }
+        }
+        latest.values().removeIf(entry -> DeadLetterEntry.STATUS_RESOLVED.equals(entry.getStatus()));
+        return latest;
+    }
+    
+    private void compact() throws IOException {
+        synchronized (fileLock) {
+            Map<String, DeadLetterEntry> latest = readLatestStates();
+            Path file = deadLetterFile();
+            Path temp = Files.createTempFile(file.getParent(), DEAD_LETTER_FILE, ".tmp");
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    for (DeadLetterEntry entry : latest.values()) {
+                        writer.write(objectMapper.writeValueAsString(entry));
+                        writer.newLine();
+                    }
+                }
+                try {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+    
+    private Path deadLetterFile() {
+        return Paths.get(directory).resolve(DEAD_LETTER_FILE);
+    }
+    
+    /**
+     * Outcome of a retry pass
+     */
+    public static class RetrySummary {
+        private int attempted;
+        private int resolved;
+        private int rescheduled;
+        private int exhausted;
+        
+        public int getAttempted() {
+            return attempted;
+        }
+        
+        public int getResolved() {
+            return resolved;
+        }
+        
+        public int getRescheduled() {
+            return rescheduled;
+        }
+        
+        public int getExhausted() {
+            return exhausted;
+        }
+    }
+}
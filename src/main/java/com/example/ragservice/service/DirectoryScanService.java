@@ -2,34 +2,186 @@ package com.example.ragservice.service;
 
 import com.example.ragservice.dto.DirectoryScanRequest;
 import com.example.ragservice.dto.DirectoryScanResponse;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
+import com.example.ragservice.model.Document;
+import com.example.ragservice.model.ScanManifest;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 @Service
 public class DirectoryScanService {
     
     private static final Logger logger = LoggerFactory.getLogger(DirectoryScanService.class);
     
+    // Marks the end of the discovered files; compared by identity
+    private static final DiscoveredFile END_OF_DISCOVERY = new DiscoveredFile(Paths.get(""), 0, 0);
+    
+    private static final long DISCOVERY_POLL_MS = 100;
+    
+    // Directories listed in parallel per traversal thread before their files are handed on
+    private static final int DISCOVERY_CHUNK_PER_THREAD = 4;
+    
     @Autowired
     private DocumentExtractionService documentExtractionService;
     
-    // Store active scan operations
-    private final Map<String, DirectoryScanResponse> activeScanOperations = new ConcurrentHashMap<>();
+    @Autowired
+    private IngestionJobScheduler jobScheduler;
+    
+    @Autowired
+    private JobProgressService jobProgressService;
+    
+    @Autowired
+    private ScanManifestService scanManifestService;
+    
+    @Autowired
+    private VectorStoreService vectorStoreService;
+    
+    @Autowired
+    private EmbeddingService embeddingService;
+    
+    @Autowired
+    private DeadLetterService deadLetterService;
+    
+    @Value("${document.processing.directory-scan.extraction-workers:0}")
+    private int defaultExtractionWorkers = 0; // 0 = number of available processors
+    
+    @Value("${document.processing.directory-scan.extraction-queue-capacity:0}")
+    private int extractionQueueCapacity = 0; // 0 = twice the number of workers
+    
+    @Value("${document.processing.directory-scan.discovery-threads:0}")
+    private int discoveryThreads = 0; // 0 = number of available processors
+    
+    @Value("${document.processing.directory-scan.discovery-queue-capacity:10000}")
+    private int discoveryQueueCapacity = 10000;
+    
+    @Value("${document.processing.directory-scan.ordered-output:true}")
+    private boolean orderedOutput = true;
+    
+    @Value("${document.processing.directory-scan.csv-flush-interval-ms:1000}")
+    private long csvFlushIntervalMs = 1000;
+    
+    @Value("${document.processing.directory-scan.csv-flush-bytes:1048576}")
+    private long csvFlushBytes = 1048576;
+    
+    // "csv", or "blocks" for compressed block files with the CSV file only written on request
+    @Value("${document.processing.directory-scan.output-format:csv}")
+    private String outputFormat = "csv";
+    
+    // Uncompressed bytes of a block of the block files
+    @Value("${document.processing.directory-scan.blocks.block-size:1048576}")
+    private int blockSize = 1048576;
+    
+    // Block files written and compressed in parallel per scan
+    @Value("${document.processing.directory-scan.blocks.shards:1}")
+    private int blockShards = 1;
+    
+    // Files of at least this size are extracted by the heavy lane's own, fewer threads; 0 = one lane for all files
+    @Value("${document.processing.directory-scan.heavy-file-size:10485760}")
+    private long heavyFileSize = 10485760;
+    
+    @Value("${document.processing.directory-scan.heavy-workers:2}")
+    private int heavyWorkers = 2;
+    
+    // Ordered output holds heavy results back until discovery ends; past this many characters of their
+    // text, the heavy lane starts no more extractions
+    @Value("${document.processing.directory-scan.heavy-held-back-chars:67108864}")
+    private long heavyHeldBackChars = 67108864;
+    
+    @Value("${document.processing.directory-scan.deduplicate:false}")
+    private boolean deduplicate = false;
+    
+    // Zip and tar archives are read without unpacking them to disk; requests can override
+    @Value("${document.processing.directory-scan.archives.enabled:false}")
+    private boolean scanArchives = false;
+    
+    @Value("${document.processing.directory-scan.archives.max-depth:3}")
+    private int archiveMaxDepth = 3;
+    
+    @Value("${document.processing.directory-scan.archives.max-entry-size:104857600}")
+    private long archiveMaxEntrySize = 104857600;
+    
+    // Bytes an archive, nested archives included, may decompress to before the rest of it is skipped
+    @Value("${document.processing.directory-scan.archives.max-total-size:1073741824}")
+    private long archiveMaxTotalSize = 1073741824;
+    
+    @Value("${document.processing.directory-scan.archives.max-entries:10000}")
+    private int archiveMaxEntries = 10000;
+    
+    // Scans that index directly use the pipeline settings of CSV streams
+    @Value("${document.processing.csv.batch-size:100}")
+    private int defaultBatchSize = 100;
+    
+    @Value("${document.processing.csv.embedding-workers:4}")
+    private int defaultEmbeddingWorkers = 4;
+    
+    @Value("${document.processing.csv.queue-capacity:8}")
+    private int queueCapacity = 8;
+    
+    @Value("${document.processing.csv.max-record-size:1048576}")
+    private int maxRecordSize = 1048576;
+    
+    @Value("${document.processing.directory-scan.cleanup-completed-scans-after-hours:24}")
+    private long cleanupCompletedScansAfterHours = 24;
+    
+    @Value("${document.processing.jobs.registry.persistence-enabled:true}")
+    private boolean registryPersistenceEnabled = true;
+    
+    @Value("${document.processing.jobs.registry.directory:./data/jobs}")
+    private String registryDirectory = "./data/jobs";
+    
+    @Value("${document.processing.jobs.registry.max-finished-jobs:200}")
+    private int maxFinishedJobs = 200;
+    
+    @Value("${document.processing.jobs.registry.max-errors-per-job:20}")
+    private int maxErrorsPerJob = 20;
+    
+    // Running scans and, for a while, finished ones
+    private JobRegistry<DirectoryScanResponse> scanRegistry;
+    
+    @PostConstruct
+    void initScanRegistry() {
+        scanRegistry = new JobRegistry<>("directory scan", DirectoryScanResponse.class,
+            registryPersistenceEnabled ? Paths.get(registryDirectory, "directory-scans.json") : null,
+            Duration.ofHours(cleanupCompletedScansAfterHours), maxFinishedJobs, maxErrorsPerJob, jobScheduler::isActive);
+        scanRegistry.load(DirectoryScanResponse::getScanId);
+    }
+    
+    /**
+     * Compacts and evicts finished scans and persists the scan registry
+     */
+    @Scheduled(fixedDelayString = "${document.processing.jobs.registry.sweep-interval-seconds:60}",
+               initialDelayString = "${document.processing.jobs.registry.sweep-interval-seconds:60}",
+               timeUnit = TimeUnit.SECONDS)
+    public void sweepScanRegistry() {
+        scanRegistry.sweep();
+    }
+    
+    @PreDestroy
+    void saveScanRegistry() {
+        scanRegistry.sweep();
+    }
     
     /**
      * Starts a directory scan operation asynchronously
@@ -39,33 +191,49 @@ public class DirectoryScanService {
      */
     public DirectoryScanResponse startDirectoryScan(DirectoryScanRequest request) {
         String scanId = generateScanId();
-        DirectoryScanResponse response = new DirectoryScanResponse(scanId, "STARTED");
+        DirectoryScanResponse response = new DirectoryScanResponse(scanId, "QUEUED");
         
-        activeScanOperations.put(scanId, response);
+        scanRegistry.register(scanId, response);
         
-        // Start the scan asynchronously
-        CompletableFuture.runAsync(() -> performDirectoryScan(scanId, request));
+        // Runs once the job scheduler has capacity for it
+        int priority = request.getPriority() != null ? request.getPriority() : 0;
+        jobScheduler.submit(scanId, "directory-scan", priority, scanWeight(request.getExtractionWorkers()),
+            job -> performDirectoryScan(scanId, request, job));
         
         return response;
     }
     
     /**
-     * Gets the status of an active scan operation
+     * Gets the status of a running or recently finished scan operation. Finished scans are
+     * kept as compact copies until they are evicted.
      *
      * @param scanId the scan ID
      * @return the current scan status
      */
     public DirectoryScanResponse getScanStatus(String scanId) {
-        return activeScanOperations.get(scanId);
+        return scanRegistry.get(scanId);
     }
     
     /**
-     * Lists all active scan operations
+     * Opens a Server-Sent Events stream with the progress of a scan operation
      *
-     * @return map of active scans
+     * @param scanId the scan ID
+     * @return the event stream, or null if the scan is unknown
+     */
+    public SseEmitter streamProgress(String scanId) {
+        if (scanRegistry.get(scanId) == null) {
+            return null;
+        }
+        return jobProgressService.subscribe(scanId, () -> scanRegistry.get(scanId));
+    }
+    
+    /**
+     * Lists running scan operations and the finished ones that have not been evicted yet
+     *
+     * @return map of scans by scan ID
      */
     public Map<String, DirectoryScanResponse> getActiveScanOperations() {
-        return new HashMap<>(activeScanOperations);
+        return scanRegistry.snapshot();
     }
     
     /**
@@ -75,19 +243,47 @@ public class DirectoryScanService {
      * @return true if cancelled, false if not found
      */
     public boolean cancelScan(String scanId) {
-        DirectoryScanResponse response = activeScanOperations.get(scanId);
-        if (response != null && !"COMPLETED".equals(response.getStatus()) && !"FAILED".equals(response.getStatus())) {
+        DirectoryScanResponse response = scanRegistry.get(scanId);
+        if (response != null && !JobRegistry.isFinished(response.getStatus())) {
             response.setStatus("CANCELLED");
             response.setEndTime(LocalDateTime.now());
             response.setDurationMs(System.currentTimeMillis() - response.getStartTime().atZone(java.time.ZoneOffset.UTC).toInstant().toEpochMilli());
+            // A queued scan never starts; a paused one wakes up and stops
+            jobScheduler.cancel(scanId);
             return true;
         }
         return false;
     }
     
-    private void performDirectoryScan(String scanId, DirectoryScanRequest request) {
-        DirectoryScanResponse response = activeScanOperations.get(scanId);
+    /**
+     * Deletes the documents of the files an incremental scan found deleted from an index
+     *
+     * @param scanId the scan ID
+     * @param indexName the index the scan's CSV file was streamed into
+     * @return the number of documents deleted
+     */
+    public int applyDeletions(String scanId, String indexName) throws IOException {
+        DirectoryScanResponse response = scanRegistry.get(scanId);
+        if (response == null) {
+            throw new IllegalArgumentException("Unknown scan: " + scanId);
+        }
+        if (!"COMPLETED".equals(response.getStatus()) || response.getChangesOutputPath() == null) {
+            throw new IllegalArgumentException("Scan " + scanId + " is not a completed incremental scan");
+        }
+        
+        List<String> documentIds = ScanChangeLog.deletedDocumentIds(Paths.get(response.getChangesOutputPath()));
+        int deleted = vectorStoreService.deleteDocuments(indexName, documentIds);
+        logger.info("Applied deletions of scan {} to index {}: {} of {} documents deleted",
+            scanId, indexName, deleted, documentIds.size());
+        return deleted;
+    }
+    
+    private void performDirectoryScan(String scanId, DirectoryScanRequest request, IngestionJobScheduler.Job job) {
+        DirectoryScanResponse response = scanRegistry.get(scanId);
         long startTime = System.currentTimeMillis();
+        if ("CANCELLED".equals(response.getStatus())) {
+            return;
+        }
         
         try {
             response.setStatus("SCANNING");
@@ -97,43 +293,88 @@ public class DirectoryScanService {
                 throw new IllegalArgumentException("Invalid directory path: " + request.getDirectoryPath());
             }
             
-            // Determine output CSV path
+            String indexName = request.getIndexName() != null && !request.getIndexName().trim().isEmpty()
+                ? request.getIndexName().trim() : null;
+            response.setIndexName(indexName);
+            
+            // Determine output CSV path; scans that index directly or write block files only write one on request
+            boolean blocks = "blocks".equals(request.getOutputFormat() != null ? request.getOutputFormat() : outputFormat);
             String outputCsvPath = request.getOutputCsvPath();
             if (outputCsvPath == null || outputCsvPath.trim().isEmpty()) {
-                outputCsvPath = directoryPath.toString() + "/extracted_documents_" + scanId + ".csv";
+                outputCsvPath = indexName == null && !blocks
+                    ? directoryPath.toString() + "/extracted_documents_" + scanId + ".csv" : null;
             }
             response.setCsvOutputPath(outputCsvPath);
+            String blockOutputPath = null;
+            if (blocks) {
+                blockOutputPath = request.getBlockOutputPath();
+                if (blockOutputPath == null || blockOutputPath.trim().isEmpty()) {
+                    blockOutputPath = indexName == null
+                        ? directoryPath.toString() + "/extracted_documents_" + scanId + DocumentBlockWriter.EXTENSION : null;
+                }
+            }
+            // The file the change log, the duplicates file and the manifest refer to
+            String outputPath = outputCsvPath != null ? outputCsvPath : blockOutputPath;
             
-            // Find all supported files
-            List<Path> supportedFiles = findSupportedFiles(directoryPath, request);
-            response.setTotalFilesFound(supportedFiles.size());
+            IncrementalScan incremental = null;
+            if (Boolean.TRUE.equals(request.getIncremental())) {
+                incremental = new IncrementalScan(scanId, outputPath, scanManifestService.load(directoryPath));
+                if (outputPath != null) {
+                    response.setChangesOutputPath(ScanChangeLog.pathFor(outputPath).toString());
+                }
+            }
             
-            if (supportedFiles.isEmpty()) {
-                response.setStatus("COMPLETED");
-                response.setEndTime(LocalDateTime.now());
-                response.setDurationMs(System.currentTimeMillis() - startTime);
-                return;
+            IngestionPipeline pipeline = null;
+            if (indexName != null) {
+                vectorStoreService.createIndex(indexName);
+                int batchSize = request.getBatchSize() != null ? request.getBatchSize() : defaultBatchSize;
+                int embeddingWorkers = request.getEmbeddingWorkers() != null ? request.getEmbeddingWorkers() : defaultEmbeddingWorkers;
+                IndexedDocuments indexedDocuments = null;
+                if (incremental != null) {
+                    // A cancelled scan only keeps the manifest entries of files whose documents reached the index
+                    indexedDocuments = new IndexedDocuments();
+                    incremental.indexedDocuments = indexedDocuments;
+                }
+                pipeline = new IngestionPipeline(scanId, indexName, embeddingService, vectorStoreService, batchSize,
+                    embeddingWorkers, queueCapacity, deadLetterService.batchListener(scanId, indexName, indexedDocuments));
             }
             
-            // Process files and write to CSV
-            processFilesToCsv(scanId, supportedFiles, outputCsvPath, request);
+            // Discover files while extracting the ones already found
+            processFiles(scanId, directoryPath, outputCsvPath, blockOutputPath, request, job, incremental, pipeline);
             
             // Update final status
-            DirectoryScanResponse finalResponse = activeScanOperations.get(scanId);
+            DirectoryScanResponse finalResponse = scanRegistry.get(scanId);
+            if ("FAILED".equals(finalResponse.getStatus())) {
+                // The manifest is not saved, so the next scan extracts these files again
+                finalResponse.setEndTime(LocalDateTime.now());
+                finalResponse.setDurationMs(System.currentTimeMillis() - startTime);
+                return;
+            }
+            if (incremental != null) {
+                // A cancelled scan keeps the files it wrote; the rest are extracted next time
+                incremental.manifest.setLastScanId(scanId);
+                scanManifestService.save(incremental.manifest);
+            }
             if ("CANCELLED".equals(finalResponse.getStatus())) {
+                if (finalResponse.getEndTime() == null) {
+                    // Interrupted rather than cancelled through the API
+                    finalResponse.setEndTime(LocalDateTime.now());
+                    finalResponse.setDurationMs(System.currentTimeMillis() - startTime);
+                }
                 return;
             }
             
-            finalResponse.setStatus("COMPLETED");
+            // The status comes last, as a finished scan is compacted by the registry
             finalResponse.setEndTime(LocalDateTime.now());
             finalResponse.setDurationMs(System.currentTimeMillis() - startTime);
+            finalResponse.setStatus("COMPLETED");
             
-            logger.info("Directory scan completed. Scan ID: {}, Files processed: {}, Files failed: {}", 
-                scanId, finalResponse.getFilesProcessed(), finalResponse.getFilesFailed());
+            logger.info("Directory scan completed. Scan ID: {}, Files processed: {}, Files failed: {}, Files unchanged: {}, Files deleted: {}", 
+                scanId, finalResponse.getFilesProcessed(), finalResponse.getFilesFailed(),
+                finalResponse.getFilesUnchanged(), finalResponse.getFilesDeleted());
             
         } catch (Exception e) {
             logger.error("Directory scan failed. Scan ID: {}", scanId, e);
-            response.setStatus("FAILED");
             response.setEndTime(LocalDateTime.now());
             response.setDurationMs(System.currentTimeMillis() - startTime);
             
@@ -143,173 +384,334 @@ public class DirectoryScanService {
                 response.setErrors(errors);
             }
             errors.add("Scan failed: " + e.getMessage());
+            response.setStatus("FAILED");
         }
     }
     
-    private List<Path> findSupportedFiles(Path directoryPath, DirectoryScanRequest request) throws IOException {
-        List<Path> supportedFiles = new ArrayList<>();
+    private Traversal discoverSupportedFiles(Path directoryPath, DirectoryScanRequest request, FileSink sink)
+            throws IOException, InterruptedException {
+        Predicate<String> supportedFile = supportedFile(request);
+        Predicate<String> discovered = scanArchives(request)
+            ? supportedFile.or(ArchiveReader::isArchive)
+            : supportedFile;
+        
+        Integer maxFiles = request.getMaxFiles();
+        
+        // Use breadth-first traversal for better performance with large directory structures
+        return findSupportedFilesBreadthFirst(directoryPath, discovered, request.isRecursive(), maxFiles, sink);
+    }
+    
+    /**
+     * Whether a file is extracted, by its name
+     */
+    private Predicate<String> supportedFile(DirectoryScanRequest request) {
         Set<String> supportedExtensions = new HashSet<>();
         
         // Convert extensions to lowercase for case-insensitive comparison
         for (String ext : request.getSupportedExtensions()) {
             supportedExtensions.add(ext.toLowerCase());
         }
-        
-        Integer maxFiles = request.getMaxFiles();
-        
-        // Use breadth-first traversal for better performance with large directory structures
-        return findSupportedFilesBreadthFirst(directoryPath, supportedExtensions, request.isRecursive(), maxFiles);
+        return fileName -> supportedExtensions.contains(documentExtractionService.getFileExtension(fileName).toLowerCase());
+    }
+    
+    private boolean scanArchives(DirectoryScanRequest request) {
+        return request.getScanArchives() != null ? request.getScanArchives() : scanArchives;
     }
     
     /**
-     * Breadth-first directory traversal to find supported files
-     * This approach processes directories level by level, which is more memory efficient
-     * and provides better performance characteristics for large directory structures
+     * Breadth-first directory traversal to find supported files.
+     * <p>
+     * Each directory is read once, and the attributes of an entry are read at most once (not
+     * at all for files with an unsupported extension when the scan is not recursive). The
+     * directories of a level are listed in parallel chunks on a work-stealing pool, which
+     * matters on network file systems where listing a directory is slow. The files of a chunk
+     * are handed to the sink in directory order once the chunk is listed, so the files are
+     * found in the same order as by a sequential breadth-first walk. Directories reached
+     * twice through symbolic links are recognized by their file key and walked once.
+     *
+     * @return the number of files found, and whether every file of the directory was found
      */
-    private List<Path> findSupportedFilesBreadthFirst(Path startDir, Set<String> supportedExtensions, 
-                                                     boolean recursive, Integer maxFiles) throws IOException {
-        List<Path> supportedFiles = new ArrayList<>();
-        Queue<Path> directoriesToProcess = new LinkedList<>();
-        Set<Path> visitedDirectories = new HashSet<>();
+    private Traversal findSupportedFilesBreadthFirst(Path startDir, Predicate<String> supportedFile, boolean recursive,
+                                               Integer maxFiles, FileSink sink) throws IOException, InterruptedException {
+        Set<Object> visitedDirectories = ConcurrentHashMap.newKeySet();
+        visitedDirectories.add(directoryKey(startDir, Files.readAttributes(startDir, BasicFileAttributes.class)));
         
-        directoriesToProcess.offer(startDir);
-        visitedDirectories.add(startDir);
+        int threads = discoveryThreads > 0 ? discoveryThreads : Runtime.getRuntime().availableProcessors();
+        int chunkSize = Math.max(1, threads * DISCOVERY_CHUNK_PER_THREAD);
+        ForkJoinPool pool = new ForkJoinPool(threads);
         
         int fileCount = 0;
         int directoriesProcessed = 0;
-        
-        while (!directoriesToProcess.isEmpty() && (maxFiles == null || fileCount < maxFiles)) {
-            Path currentDir = directoriesToProcess.poll();
-            directoriesProcessed++;
-            
-            // Log progress for large operations
-            if (directoriesProcessed % 100 == 0) {
-                logger.debug("Processed {} directories, found {} files", directoriesProcessed, fileCount);
-            }
-            
-            try (DirectoryStream<Path> stream = Files.newDirectoryStream(currentDir)) {
-                // First pass: collect files from current directory
-                for (Path entry : stream) {
-                    if (maxFiles != null && fileCount >= maxFiles) {
-                        break;
-                    }
+        boolean complete = true;
+        try {
+            List<Path> level = List.of(startDir);
+            while (!level.isEmpty() && (maxFiles == null || fileCount < maxFiles)) {
+                List<Path> nextLevel = new ArrayList<>();
+                
+                for (int from = 0; from < level.size() && (maxFiles == null || fileCount < maxFiles); from += chunkSize) {
+                    List<Path> chunk = level.subList(from, Math.min(level.size(), from + chunkSize));
+                    List<DirectoryListing> listings = chunk.size() == 1
+                        ? List.of(listDirectory(chunk.get(0), supportedFile, recursive, visitedDirectories))
+                        : pool.submit(() -> chunk.parallelStream()
+                            .map(dir -> listDirectory(dir, supportedFile, recursive, visitedDirectories))
+                            .toList()).get();
                     
-                    if (Files.isRegularFile(entry)) {
-                        String extension = documentExtractionService.getFileExtension(entry.toString());
-                        if (supportedExtensions.contains(extension.toLowerCase())) {
-                            supportedFiles.add(entry);
+                    for (DirectoryListing listing : listings) {
+                        complete &= listing.complete();
+                        for (DiscoveredFile file : listing.files()) {
+                            if (maxFiles != null && fileCount >= maxFiles) {
+                                break;
+                            }
+                            sink.accept(file);
                             fileCount++;
                         }
+                        nextLevel.addAll(listing.subdirectories());
                     }
-                }
-                
-                // Second pass: collect subdirectories if recursive
-                if (recursive && (maxFiles == null || fileCount < maxFiles)) {
-                    try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(currentDir)) {
-                        for (Path entry : dirStream) {
-                            if (Files.isDirectory(entry) && !visitedDirectories.contains(entry)) {
-                                // Avoid infinite loops with symbolic links
-                                try {
-                                    Path realPath = entry.toRealPath();
-                                    if (!visitedDirectories.contains(realPath)) {
-                                        directoriesToProcess.offer(entry);
-                                        visitedDirectories.add(entry);
-                                        visitedDirectories.add(realPath);
-                                    }
-                                } catch (IOException e) {
-                                    // Handle broken symlinks gracefully
-                                    logger.debug("Skipping directory due to IO error: {}", entry, e);
-                                }
-                            }
-                        }
+                    
+                    directoriesProcessed += chunk.size();
+                    // Log progress for large operations
+                    if (directoriesProcessed / 100 != (directoriesProcessed - chunk.size()) / 100) {
+                        logger.debug("Processed {} directories, found {} files", directoriesProcessed, fileCount);
                     }
                 }
                 
-            } catch (IOException e) {
-                logger.warn("Failed to read directory: {}", currentDir, e);
-                // Continue with other directories instead of failing entirely
+                level = nextLevel;
             }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Directory traversal failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
         }
         
         logger.info("Breadth-first scan completed: {} directories processed, {} files found", 
                    directoriesProcessed, fileCount);
         
-        return supportedFiles;
+        // Files beyond max_files were not looked at
+        return new Traversal(fileCount, complete && (maxFiles == null || fileCount < maxFiles));
     }
     
-    private void processFilesToCsv(String scanId, List<Path> files, String outputCsvPath, DirectoryScanRequest request) {
-        DirectoryScanResponse response = activeScanOperations.get(scanId);
+    /**
+     * Reads one directory in a single pass. Runs on the traversal pool.
+     */
+    private DirectoryListing listDirectory(Path directory, Predicate<String> supportedFile, boolean recursive,
+                                           Set<Object> visitedDirectories) {
+        List<DiscoveredFile> files = new ArrayList<>();
+        List<Path> subdirectories = new ArrayList<>();
+        boolean complete = true;
         
-        try (FileWriter fileWriter = new FileWriter(outputCsvPath);
-             CSVPrinter csvPrinter = new CSVPrinter(fileWriter, CSVFormat.DEFAULT
-                 .withHeader("path", "file_name", "file_path", "file_size", "content_type", "text", "metadata"))) {
-            
-            AtomicInteger processed = new AtomicInteger(0);
-            AtomicInteger failed = new AtomicInteger(0);
-            AtomicLong totalSize = new AtomicLong(0);
-            
-            Set<String> processedExtensions = new HashSet<>();
-            List<String> errors = new ArrayList<>();
-            
-            for (Path filePath : files) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                boolean supported = supportedFile.test(entry.getFileName().toString());
+                if (!supported && !recursive) {
+                    continue; // Neither a candidate file nor a directory to descend into
+                }
+                
+                BasicFileAttributes attributes;
+                try {
+                    // Follows symbolic links, like the scan always did
+                    attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    // Handle broken symlinks gracefully
+                    logger.debug("Skipping entry due to IO error: {}", entry, e);
+                    continue;
+                }
+                
+                if (attributes.isRegularFile()) {
+                    if (supported) {
+                        files.add(new DiscoveredFile(entry, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    }
+                } else if (attributes.isDirectory() && recursive) {
+                    // Avoid infinite loops with symbolic links
+                    if (visitedDirectories.add(directoryKey(entry, attributes))) {
+                        subdirectories.add(entry);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read directory: {}", directory, e);
+            // Continue with other directories instead of failing entirely
+            complete = false;
+        }
+        return new DirectoryListing(files, subdirectories, complete);
+    }
+    
+    /**
+     * Identifies a directory independently of the path it was reached through: its file key
+     * (device and inode on Unix), or its real path where the file system has no file keys
+     */
+    private Object directoryKey(Path directory, BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        if (fileKey != null) {
+            return fileKey;
+        }
+        try {
+            return directory.toRealPath().toString();
+        } catch (IOException e) {
+            return directory.toAbsolutePath().normalize().toString();
+        }
+    }
+    
+    private record DiscoveredFile(Path path, long size, long lastModified) {
+    }
+    
+    /**
+     * @param complete false if the directory could not be read to the end
+     */
+    private record DirectoryListing(List<DiscoveredFile> files, List<Path> subdirectories, boolean complete) {
+    }
+    
+    /**
+     * @param complete false if files may exist that were not found, so missing files are not deleted ones
+     */
+    private record Traversal(int filesFound, boolean complete) {
+    }
+    
+    /**
+     * Extracts the discovered files and writes them to the CSV file, the block files, the index, or several
+     *
+     * @param outputCsvPath the CSV file, or null if the scan writes none
+     * @param blockOutputPath the block file, or null if the scan writes none
+     * @param pipeline the pipeline into the scan's index, or null if the scan only writes files;
+     *                 finished or cancelled by this method
+     */
+    private void processFiles(String scanId, Path directoryPath, String outputCsvPath, String blockOutputPath,
+                              DirectoryScanRequest request, IngestionJobScheduler.Job job, IncrementalScan incremental,
+                              IngestionPipeline pipeline) {
+        DirectoryScanResponse response = scanRegistry.get(scanId);
+        int workers = extractionWorkers(request.getExtractionWorkers());
+        boolean ordered = request.getOrderedOutput() != null ? request.getOrderedOutput() : orderedOutput;
+        // Results held back for ordering count against the window, which bounds memory
+        int window = Math.max(workers, extractionQueueCapacity > 0 ? extractionQueueCapacity : 2 * workers);
+        
+        int heavy = Math.max(1, heavyWorkers);
+        ExtractionLanes lanes = new ExtractionLanes(scanId, workers, window, heavy, 2 * heavy, heavyFileSize,
+            heavyHeldBackChars);
+        ScanProgress progress = new ScanProgress(response, incremental, pipeline);
+        boolean indexed = false;
+        ContentDeduplicator deduplicator = (request.getDeduplicate() != null ? request.getDeduplicate() : deduplicate)
+            ? new ContentDeduplicator() : null;
+        ArchiveReader archiveReader = scanArchives(request)
+            ? new ArchiveReader(documentExtractionService, supportedFile(request), archiveMaxDepth, archiveMaxEntrySize,
+                archiveMaxTotalSize, archiveMaxEntries)
+            : null;
+        
+        Discovery discovery = new Discovery(directoryPath, request, response, Math.max(1, discoveryQueueCapacity));
+        Thread discoveryThread = new Thread(discovery, "scan-discovery-" + scanId);
+        discoveryThread.setDaemon(true);
+        discoveryThread.start();
+        
+        try (ScanCsvWriter writer = new ScanCsvWriter(outputCsvPath != null ? new FileWriter(outputCsvPath) : null,
+                                                      openBlockWriter(response, blockOutputPath), ordered,
+                                                      csvFlushIntervalMs, csvFlushBytes);
+             ScanChangeLog changeLog = response.getChangesOutputPath() != null
+                 ? new ScanChangeLog(Paths.get(response.getChangesOutputPath()), scanId) : null) {
+            if (incremental != null) {
+                incremental.changeLog = changeLog;
+            }
+            while (true) {
+                // Let a waiting job run once this scan has used up its time slice
+                if (job != null && job.yieldSlice(() -> response.setStatus("QUEUED")) && "QUEUED".equals(response.getStatus())) {
+                    response.setStatus("SCANNING");
+                }
                 if ("CANCELLED".equals(response.getStatus())) {
                     break;
                 }
                 
-                try {
-                    DocumentExtractionService.ExtractedDocument document = 
-                        documentExtractionService.extractText(filePath);
-                    
-                    // Add file extension to processed set
-                    String extension = documentExtractionService.getFileExtension(filePath.toString());
-                    processedExtensions.add(extension.toLowerCase());
-                    
-                    // Write to CSV
-                    Map<String, String> metadata = document.getMetadata();
-                    String metadataJson = convertMetadataToJson(metadata);
-                    
-                    csvPrinter.printRecord(
-                        filePath.toString(),
-                        metadata.get("file_name"),
-                        metadata.get("file_path"),
-                        metadata.get("file_size"),
-                        metadata.get("content_type"),
-                        document.getText(),
-                        metadataJson
-                    );
-                    
-                    // Flush immediately to enable real-time progress viewing
-                    csvPrinter.flush();
-                    
-                    totalSize.addAndGet(Long.parseLong(metadata.get("file_size")));
-                    processed.incrementAndGet();
-                    
-                    logger.info("Successfully processed file {}/{}: {}", 
-                               processed.get(), files.size(), filePath.getFileName());
-                    
-                } catch (Exception e) {
-                    logger.warn("Failed to extract text from file: {}", filePath, e);
-                    failed.incrementAndGet();
-                    errors.add("Failed to process " + filePath + ": " + e.getMessage());
+                // Wait for results while the window of the fast lane is full
+                while (lanes.isFastFull()) {
+                    write(lanes.take(), writer, progress, lanes);
                 }
                 
-                // Update progress
-                response.setFilesProcessed(processed.get());
-                response.setFilesFailed(failed.get());
-                response.setProcessedExtensions(new ArrayList<>(processedExtensions));
+                // Keep writing results while discovery is slower than extraction
+                DiscoveredFile discovered;
+                while ((discovered = discovery.files.poll(DISCOVERY_POLL_MS, TimeUnit.MILLISECONDS)) == null) {
+                    writeCompleted(lanes, writer, progress);
+                    writer.flushIfDue();
+                    if ("CANCELLED".equals(response.getStatus())) {
+                        break;
+                    }
+                }
+                if (discovered == null || discovered == END_OF_DISCOVERY) {
+                    break;
+                }
                 
-                if (errors.size() <= 10) { // Limit error list size
-                    response.setErrors(errors);
+                ScanManifest.FileEntry previous = null;
+                boolean unchanged = false;
+                if (incremental != null) {
+                    previous = incremental.see(discovered);
+                    unchanged = previous != null && previous.getSize() == discovered.size()
+                        && previous.getLastModified() == discovered.lastModified();
+                }
+                ContentDeduplicator.Copy copy = null;
+                if (deduplicator != null) {
+                    copy = deduplicator.register(discovered.path(), discovered.size(), unchanged ? previous.getContentHash() : null);
+                }
+                // An unchanged file is still compared with earlier files of its size, as it may be a copy of one
+                if (unchanged && (copy == null || copy.isFirstOfSize())) {
+                    if (copy != null) {
+                        // Extracted by an earlier scan, so it is the original of later copies
+                        copy.extracted(true);
+                    }
+                    progress.recordUnchanged();
+                    continue;
                 }
+                
+                DiscoveredFile file = discovered;
+                ScanManifest.FileEntry manifestEntry = previous;
+                ContentDeduplicator.Copy fileCopy = copy;
+                lanes.submit(file.size(), sequence -> () -> extract(sequence, file, incremental, manifestEntry, fileCopy,
+                    archiveReader));
+                
+                writeCompleted(lanes, writer, progress);
+                writer.flushIfDue();
             }
             
-            csvPrinter.flush();
+            // The heavy files follow the others in ordered output
+            write(writer.continueAt(lanes.getFastSequenceEnd(), ExtractionLanes.HEAVY_SEQUENCE_BASE), progress, lanes);
+            while (!lanes.isIdle() && !"CANCELLED".equals(response.getStatus())) {
+                write(lanes.take(), writer, progress, lanes);
+            }
+            response.setExtractionLanes(lanes.getStats());
             
-            logger.info("CSV file created: {}, Total files processed: {}, Total size: {} bytes", 
-                outputCsvPath, processed.get(), totalSize.get());
+            if (discovery.failure != null) {
+                throw new IllegalStateException("Directory discovery failed: " + discovery.failure.getMessage(), discovery.failure);
+            }
             
-        } catch (IOException e) {
-            logger.error("Failed to write CSV file: {}", outputCsvPath, e);
+            if (incremental != null && !"CANCELLED".equals(response.getStatus())) {
+                if (discovery.complete) {
+                    progress.recordDeletions();
+                } else {
+                    logger.warn("Directory scan {} did not see every file; deleted files are reported by the next complete scan", scanId);
+                }
+                if (pipeline != null && !progress.deletedDocumentIds.isEmpty()) {
+                    vectorStoreService.deleteDocuments(response.getIndexName(), progress.deletedDocumentIds);
+                }
+            }
+            
+            if (pipeline != null && !"CANCELLED".equals(response.getStatus())) {
+                // Wait until every document submitted has been indexed or has failed
+                pipeline.finish();
+                indexed = true;
+                progress.updateIndexing();
+            }
+            
+            if (!progress.duplicatePaths.isEmpty() && !"CANCELLED".equals(response.getStatus())) {
+                recordDuplicates(response, outputCsvPath != null ? outputCsvPath : blockOutputPath, progress);
+            }
+            
+            logger.info("Scan output written: CSV file {}, block file {}, index {}. Total files processed: {}, Total size: {} bytes ({} extraction workers, {} flushes)", 
+                outputCsvPath, blockOutputPath, response.getIndexName(), progress.processed, progress.totalSize, workers, writer.getFlushes());
+            if (deduplicator != null) {
+                logger.info("Directory scan {} found {} duplicate files, hashing {} files", 
+                    scanId, progress.duplicates, deduplicator.getFilesHashed());
+            }
+            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.setStatus("CANCELLED");
+        } catch (IOException | ExecutionException e) {
+            logger.error("Failed to write scan output: CSV file {}, block file {}, index {}", outputCsvPath, blockOutputPath,
+                response.getIndexName(), e);
             response.setStatus("FAILED");
             
             List<String> errors = response.getErrors();
@@ -317,10 +719,604 @@ public class DirectoryScanService {
                 errors = new ArrayList<>();
                 response.setErrors(errors);
             }
-            errors.add("Failed to write CSV file: " + e.getMessage());
+            errors.add("Failed to write scan output: " + e.getMessage());
+        } finally {
+            discoveryThread.interrupt();
+            lanes.shutdownNow();
+            if (pipeline != null && !indexed) {
+                pipeline.cancel();
+                if (incremental != null) {
+                    int restored = incremental.indexedDocuments.restoreUnindexed(incremental.manifest);
+                    if (restored > 0) {
+                        logger.info("Directory scan {} stopped before {} files were indexed; the next scan extracts them again",
+                            scanId, restored);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Opens the block files of a scan and notes them in the response
+     *
+     * @return the writer, or null if the scan writes no block files
+     */
+    private DocumentBlockWriter openBlockWriter(DirectoryScanResponse response, String blockOutputPath) throws IOException {
+        if (blockOutputPath == null) {
+            return null;
+        }
+        DocumentBlockWriter blockWriter = new DocumentBlockWriter(Paths.get(blockOutputPath), blockShards, blockSize);
+        response.setBlockOutputFiles(blockWriter.getFiles().stream().map(Path::toString).toList());
+        return blockWriter;
+    }
+    
+    /**
+     * Writes the paths of the duplicated files' copies next to the scan output and adds them to
+     * the indexed documents as their duplicate_paths metadata
+     */
+    private void recordDuplicates(DirectoryScanResponse response, String outputPath, ScanProgress progress) throws IOException {
+        if (outputPath != null) {
+            Path duplicatesFile = ContentDeduplicator.pathFor(outputPath);
+            ContentDeduplicator.write(duplicatesFile, progress.originalDocumentIds, progress.duplicatePaths);
+            response.setDuplicatesOutputPath(duplicatesFile.toString());
+        }
+        if (response.getIndexName() != null) {
+            Map<String, Map<String, Object>> metadata = new HashMap<>();
+            for (Map.Entry<String, List<String>> entry : progress.duplicatePaths.entrySet()) {
+                metadata.put(progress.originalDocumentIds.get(entry.getKey()), Map.of("duplicate_paths", entry.getValue()));
+            }
+            vectorStoreService.updateMetadata(response.getIndexName(), metadata);
+        }
+    }
+    
+    /**
+     * Writes the extraction results that are already available, without waiting
+     */
+    private void writeCompleted(ExtractionLanes lanes, ScanCsvWriter writer, ScanProgress progress)
+            throws IOException, ExecutionException, InterruptedException {
+        ScanCsvWriter.Extraction result;
+        while ((result = lanes.poll()) != null) {
+            write(result, writer, progress, lanes);
+        }
+    }
+    
+    private void write(ScanCsvWriter.Extraction result, ScanCsvWriter writer, ScanProgress progress, ExtractionLanes lanes)
+            throws IOException, InterruptedException {
+        write(writer.submit(result), progress, lanes);
+    }
+    
+    /**
+     * Counts the written results and lets the lanes submit the files that now fit
+     */
+    private void write(List<ScanCsvWriter.Extraction> written, ScanProgress progress, ExtractionLanes lanes)
+            throws IOException, InterruptedException {
+        progress.record(written);
+        lanes.written(written);
+        if (!written.isEmpty()) {
+            progress.response.setExtractionLanes(lanes.getStats());
+        }
+    }
+    
+    /**
+     * Runs on an extraction worker; failures are returned so they keep their place in the output order.
+     * Incremental scans hash the file first and only extract it if its content changed.
+     *
+     * @param previous the file's manifest entry, if an incremental scan extracted it before
+     * @param copy the file in the scan's deduplicator, or null if the scan does not deduplicate
+     * @param archiveReader reads the archives among the files, or null if the scan does not look into archives
+     */
+    private ScanCsvWriter.Extraction extract(long sequence, DiscoveredFile file, IncrementalScan incremental,
+                                             ScanManifest.FileEntry previous, ContentDeduplicator.Copy copy,
+                                             ArchiveReader archiveReader) {
+        boolean extracted = false;
+        try {
+            ScanCsvWriter.Extraction result = extractFile(sequence, file, incremental, previous, copy, archiveReader);
+            extracted = result.error() == null && result.duplicateOf() == null;
+            return result;
+        } finally {
+            if (copy != null) {
+                // Later copies of the file wait for this to find their original
+                copy.extracted(extracted);
+            }
         }
     }
     
+    private ScanCsvWriter.Extraction extractFile(long sequence, DiscoveredFile file, IncrementalScan incremental,
+                                                 ScanManifest.FileEntry previous, ContentDeduplicator.Copy copy,
+                                                 ArchiveReader archiveReader) {
+        Path filePath = file.path();
+        boolean archive = archiveReader != null && ArchiveReader.isArchive(filePath.getFileName().toString());
+        try {
+            // Skip a file that is too large before hashing it; archives have limits of their own
+            if (!archive) {
+                documentExtractionService.checkFileSize(filePath, file.size());
+            }
+            if (copy != null) {
+                Path original = copy.findOriginal();
+                if (original != null) {
+                    return ScanCsvWriter.Extraction.duplicate(sequence, filePath, original);
+                }
+            }
+            
+            String contentHash = null;
+            if (incremental != null) {
+                contentHash = copy != null ? copy.hash() : ScanManifestService.contentHash(filePath);
+                if (previous != null && contentHash.equals(previous.getContentHash())) {
+                    ScanManifest.FileEntry manifestEntry = new ScanManifest.FileEntry(file.size(), file.lastModified(),
+                        contentHash, previous.getDocumentId(), previous.getOutputCsvPath(), previous.getScanId());
+                    manifestEntry.setEntryDocumentIds(previous.getEntryDocumentIds());
+                    return ScanCsvWriter.Extraction.unchanged(sequence, filePath, manifestEntry);
+                }
+            }
+            
+            if (archive) {
+                return extractArchive(sequence, file, archiveReader, incremental, previous, contentHash);
+            }
+            
+            DocumentExtractionService.ExtractedDocument document = documentExtractionService.extractText(filePath);
+            ScanCsvWriter.Extraction extraction = ScanCsvWriter.Extraction.success(sequence, filePath, document,
+                convertMetadataToJson(document.getMetadata()));
+            if (incremental == null) {
+                return extraction;
+            }
+            return extraction.withChange(previous == null ? ScanManifest.CHANGE_ADDED : ScanManifest.CHANGE_MODIFIED,
+                new ScanManifest.FileEntry(file.size(), file.lastModified(), contentHash, extraction.documentId(),
+                    incremental.outputCsvPath, incremental.scanId));
+        } catch (Exception e) {
+            return ScanCsvWriter.Extraction.failure(sequence, filePath, e);
+        }
+    }
+    
+    /**
+     * Extracts the entries of an archive; each becomes a document of its own
+     */
+    private ScanCsvWriter.Extraction extractArchive(long sequence, DiscoveredFile file, ArchiveReader archiveReader,
+                                                    IncrementalScan incremental, ScanManifest.FileEntry previous,
+                                                    String contentHash) {
+        List<ScanCsvWriter.Extraction> entries = new ArrayList<>();
+        List<String> entryDocumentIds = new ArrayList<>();
+        boolean complete = true;
+        for (ArchiveReader.Entry entry : archiveReader.read(file.path())) {
+            Path location = Paths.get(entry.location());
+            if (location.equals(file.path())) {
+                // The archive itself was not read to the end
+                entries.add(ScanCsvWriter.Extraction.failure(sequence, location, entry.error()));
+                complete &= entry.error() instanceof ArchiveReader.LimitExceededException;
+                continue;
+            }
+            ScanCsvWriter.Extraction extraction = entry.error() == null
+                ? ScanCsvWriter.Extraction.success(sequence, location, entry.document(),
+                    convertMetadataToJson(entry.document().getMetadata()))
+                : ScanCsvWriter.Extraction.failure(sequence, location, entry.error());
+            entries.add(extraction);
+            entryDocumentIds.add(extraction.documentId());
+            complete &= entry.error() == null || entry.error() instanceof ArchiveReader.LimitExceededException;
+        }
+        
+        ScanCsvWriter.Extraction extraction = ScanCsvWriter.Extraction.archive(sequence, file.path(), entries);
+        if (incremental == null) {
+            return extraction;
+        }
+        // Without its hash, an archive that could not be extracted completely is read again by the next scan
+        ScanManifest.FileEntry manifestEntry = new ScanManifest.FileEntry(file.size(), complete ? file.lastModified() : 0,
+            complete ? contentHash : null, extraction.documentId(), incremental.outputCsvPath, incremental.scanId);
+        manifestEntry.setEntryDocumentIds(entryDocumentIds);
+        return extraction.withChange(previous == null ? ScanManifest.CHANGE_ADDED : ScanManifest.CHANGE_MODIFIED, manifestEntry);
+    }
+    
+    private int extractionWorkers(Integer requestedWorkers) {
+        int workers = requestedWorkers != null ? requestedWorkers : defaultExtractionWorkers;
+        return workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+    }
+    
+    private int scanWeight(Integer requestedWorkers) {
+        int defaultWorkers = extractionWorkers(null);
+        return Math.max(1, (extractionWorkers(requestedWorkers) + defaultWorkers - 1) / defaultWorkers);
+    }
+    
+    /**
+     * Receives the files found by the directory traversal
+     */
+    @FunctionalInterface
+    private interface FileSink {
+        void accept(DiscoveredFile file) throws InterruptedException;
+    }
+    
+    /**
+     * Walks the directory on its own thread and hands the files it finds to the extraction
+     * loop through a bounded queue, so extraction starts with the first file found and a slow
+     * file system is read while files are extracted. The queue ends with
+     * {@link #END_OF_DISCOVERY}.
+     */
+    private final class Discovery implements Runnable {
+        private final Path directoryPath;
+        private final DirectoryScanRequest request;
+        private final DirectoryScanResponse response;
+        private final BlockingQueue<DiscoveredFile> files;
+        private volatile Exception failure;
+        // Every file of the directory was found, so files that were not are gone
+        private volatile boolean complete;
+        
+        private Discovery(Path directoryPath, DirectoryScanRequest request, DirectoryScanResponse response, int capacity) {
+            this.directoryPath = directoryPath;
+            this.request = request;
+            this.response = response;
+            this.files = new ArrayBlockingQueue<>(capacity);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                AtomicInteger discovered = new AtomicInteger();
+                Traversal traversal = discoverSupportedFiles(directoryPath, request, file -> {
+                    files.put(file);
+                    response.setFilesDiscovered(discovered.incrementAndGet());
+                });
+                response.setTotalFilesFound(traversal.filesFound());
+                complete = traversal.complete();
+            } catch (InterruptedException e) {
+                // The scan was cancelled or failed and stopped reading the queue
+                return;
+            } catch (Exception e) {
+                logger.error("Directory discovery failed: {}", directoryPath, e);
+                failure = e;
+            }
+            try {
+                files.put(END_OF_DISCOVERY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Counts the results of a scan. Only the thread writing the CSV file updates it, so the
+     * counts match the output file even though files are extracted in parallel.
+     */
+    private final class ScanProgress {
+        private final DirectoryScanResponse response;
+        private final IncrementalScan incremental;
+        private final IngestionPipeline pipeline;
+        private final Set<String> processedExtensions = new HashSet<>();
+        private final List<String> errors = new ArrayList<>();
+        // Documents to remove from the index: deleted files, and files that turned out to be duplicates
+        private final List<String> deletedDocumentIds = new ArrayList<>();
+        // Copies of duplicated files by the path of the original, and the originals' document IDs
+        private final Map<String, List<String>> duplicatePaths = new LinkedHashMap<>();
+        private final Map<String, String> originalDocumentIds = new HashMap<>();
+        private int processed;
+        private int failed;
+        private int unchanged;
+        private int modified;
+        private int deleted;
+        private int duplicates;
+        private int skipped;
+        private int archives;
+        private long totalSize;
+        
+        private ScanProgress(DirectoryScanResponse response, IncrementalScan incremental, IngestionPipeline pipeline) {
+            this.response = response;
+            this.incremental = incremental;
+            this.pipeline = pipeline;
+        }
+        
+        /**
+         * Counts a file skipped because its size and modification time match the manifest
+         */
+        private void recordUnchanged() {
+            unchanged++;
+            response.setFilesUnchanged(unchanged);
+        }
+        
+        /**
+         * Writes tombstones for the manifest's files that were not found and drops them from the manifest
+         */
+        private void recordDeletions() throws IOException {
+            Iterator<Map.Entry<String, ScanManifest.FileEntry>> entries = incremental.manifest.getFiles().entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, ScanManifest.FileEntry> entry = entries.next();
+                if (!incremental.seen.contains(entry.getKey())) {
+                    recordDeletion(entry.getKey(), entry.getValue());
+                    entries.remove();
+                }
+            }
+            response.setFilesDeleted(deleted);
+        }
+        
+        private void recordDeletion(String key, ScanManifest.FileEntry entry) throws IOException {
+            if (entry.getEntryDocumentIds() != null) {
+                // An archive, whose entries were documents of their own
+                for (String documentId : entry.getEntryDocumentIds()) {
+                    recordDeletion(key, archiveEntry(entry, documentId));
+                }
+                return;
+            }
+            if (incremental.changeLog != null) {
+                incremental.changeLog.record(ScanManifest.CHANGE_DELETED, key, entry);
+            }
+            deletedDocumentIds.add(entry.getDocumentId());
+            deleted++;
+        }
+        
+        private void recordDuplicate(ScanCsvWriter.Extraction result) throws IOException {
+            String key = pathKey(result.path());
+            String originalKey = pathKey(result.duplicateOf());
+            duplicatePaths.computeIfAbsent(originalKey, k -> new ArrayList<>()).add(key);
+            originalDocumentIds.put(originalKey, result.documentId());
+            duplicates++;
+            
+            if (incremental != null) {
+                // A copy indexed as a document of its own by an earlier scan is now only a path of the original
+                ScanManifest.FileEntry entry = incremental.manifest.getFiles().remove(key);
+                if (entry != null) {
+                    recordDeletion(key, entry);
+                }
+            }
+        }
+        
+        private void updateIndexing() {
+            IngestionPipeline.PipelineStats stats = pipeline.getStats();
+            response.setDocumentsIndexed(stats.getDocumentsIndexed());
+            response.setDocumentsIndexFailed(stats.getDocumentsFailed());
+        }
+        
+        /**
+         * Counts the results written to the CSV file and hands their documents to the index
+         * pipeline, which blocks while the pipeline is saturated
+         */
+        private void record(List<ScanCsvWriter.Extraction> results) throws IOException, InterruptedException {
+            if (results.isEmpty()) {
+                return;
+            }
+            
+            for (ScanCsvWriter.Extraction result : results) {
+                if (result.duplicateOf() != null) {
+                    recordDuplicate(result);
+                } else if (ScanManifest.CHANGE_UNCHANGED.equals(result.change())) {
+                    // Same content; only the size or modification time in the manifest change
+                    incremental.manifest.getFiles().put(pathKey(result.path()), result.manifestEntry());
+                    unchanged++;
+                } else if (result.entries() != null) {
+                    recordArchive(result);
+                } else if (result.error() == null) {
+                    String key = null;
+                    ScanManifest.FileEntry replaced = null;
+                    if (result.change() != null) {
+                        key = pathKey(result.path());
+                        replaced = incremental.manifest.getFiles().put(key, result.manifestEntry());
+                        if (incremental.changeLog != null) {
+                            incremental.changeLog.record(result.change(), key, result.manifestEntry());
+                        }
+                        if (ScanManifest.CHANGE_MODIFIED.equals(result.change())) {
+                            modified++;
+                        }
+                    }
+                    recordDocument(result, key, replaced);
+                } else {
+                    recordFailure(result);
+                }
+            }
+            
+            // Update progress
+            response.setFilesProcessed(processed);
+            response.setArchivesRead(archives);
+            response.setFilesFailed(failed);
+            response.setFilesUnchanged(unchanged);
+            response.setFilesModified(modified);
+            response.setFilesDeleted(deleted);
+            response.setFilesDuplicate(duplicates);
+            response.setFilesSkipped(skipped);
+            if (pipeline != null) {
+                updateIndexing();
+            }
+            response.setProcessedExtensions(new ArrayList<>(processedExtensions));
+            
+            if (errors.size() <= 10) { // Limit error list size
+                response.setErrors(new ArrayList<>(errors));
+            }
+        }
+        
+        /**
+         * @param fileKey the manifest key of the file the document came from, if this scan wrote its entry
+         * @param replaced the manifest entry this scan replaced for the file, or null if the file is new
+         */
+        private void recordDocument(ScanCsvWriter.Extraction result, String fileKey, ScanManifest.FileEntry replaced)
+                throws InterruptedException {
+            Map<String, String> metadata = result.document().getMetadata();
+            String extension = documentExtractionService.getFileExtension(result.path().toString());
+            processedExtensions.add(extension.toLowerCase());
+            String fileSize = metadata.get("file_size");
+            if (fileSize != null) {
+                totalSize += Long.parseLong(fileSize);
+            }
+            if (pipeline != null) {
+                Document document = result.document().toDocument(result.documentId(), pathKey(result.path()), maxRecordSize);
+                if (document != null) {
+                    if (fileKey != null && incremental.indexedDocuments != null) {
+                        incremental.indexedDocuments.submitting(fileKey, replaced, document.getId());
+                    }
+                    pipeline.submit(document);
+                }
+            }
+            processed++;
+            logger.debug("Successfully processed file {}/{}: {}", 
+                       processed, response.getFilesDiscovered(), result.path().getFileName());
+        }
+        
+        private void recordFailure(ScanCsvWriter.Extraction result) {
+            if (result.error() instanceof DocumentExtractionService.FileTooLargeException
+                    || result.error() instanceof ArchiveReader.LimitExceededException) {
+                logger.info("Skipping file: {}", result.error().getMessage());
+                skipped++;
+            } else {
+                logger.warn("Failed to extract text from file: {}", result.path(), result.error());
+                failed++;
+                errors.add("Failed to process " + result.path() + ": " + result.error().getMessage());
+            }
+        }
+        
+        /**
+         * Counts the entries of an archive like files. Incremental scans log a change for each
+         * entry, and deletions for the documents of entries the archive no longer has.
+         */
+        private void recordArchive(ScanCsvWriter.Extraction result) throws IOException, InterruptedException {
+            archives++;
+            String key = null;
+            ScanManifest.FileEntry previous = null;
+            if (result.change() != null) {
+                key = pathKey(result.path());
+                previous = incremental.manifest.getFiles().put(key, result.manifestEntry());
+                Set<String> previousDocumentIds = previous != null && previous.getEntryDocumentIds() != null
+                    ? new LinkedHashSet<>(previous.getEntryDocumentIds()) : new LinkedHashSet<>();
+                for (ScanCsvWriter.Extraction entry : result.entries()) {
+                    boolean existed = previousDocumentIds.remove(entry.documentId());
+                    if (entry.error() != null) {
+                        continue;
+                    }
+                    if (incremental.changeLog != null) {
+                        incremental.changeLog.record(existed ? ScanManifest.CHANGE_MODIFIED : ScanManifest.CHANGE_ADDED,
+                            pathKey(entry.path()), archiveEntry(result.manifestEntry(), entry.documentId()));
+                    }
+                    if (existed) {
+                        modified++;
+                    }
+                }
+                for (String documentId : previousDocumentIds) {
+                    recordDeletion(key, archiveEntry(previous, documentId));
+                }
+            }
+            
+            for (ScanCsvWriter.Extraction entry : result.entries()) {
+                if (entry.error() == null) {
+                    recordDocument(entry, key, previous);
+                } else {
+                    recordFailure(entry);
+                }
+            }
+        }
+    }
+    
+    /**
+     * The manifest entry of an archive, standing for one of the documents of its entries
+     */
+    private static ScanManifest.FileEntry archiveEntry(ScanManifest.FileEntry archive, String documentId) {
+        return new ScanManifest.FileEntry(archive.getSize(), archive.getLastModified(), archive.getContentHash(), documentId,
+            archive.getOutputCsvPath(), archive.getScanId());
+    }
+    
+    /**
+     * State of an incremental scan. The manifest and the set of files seen are only used by
+     * the thread writing the CSV file; extraction workers get the manifest entry of their
+     * file handed to them.
+     */
+    private static final class IncrementalScan {
+        private final String scanId;
+        private final String outputCsvPath;
+        private final ScanManifest manifest;
+        private final Set<String> seen = new HashSet<>();
+        private ScanChangeLog changeLog;
+        // Set when the scan indexes directly
+        private IndexedDocuments indexedDocuments;
+        
+        private IncrementalScan(String scanId, String outputCsvPath, ScanManifest manifest) {
+            this.scanId = scanId;
+            this.outputCsvPath = outputCsvPath;
+            this.manifest = manifest;
+        }
+        
+        /**
+         * Notes a discovered file as present
+         *
+         * @return its manifest entry, or null if it is new
+         */
+        private ScanManifest.FileEntry see(DiscoveredFile file) {
+            String key = pathKey(file.path());
+            seen.add(key);
+            return manifest.getFiles().get(key);
+        }
+    }
+    
+    /**
+     * Follows the documents of an incremental scan through the index pipeline. A cancelled
+     * pipeline drops its queued batches without reporting them, so a cancelled scan puts back
+     * the manifest entries of files whose documents were not indexed or dead-lettered, and the
+     * next scan extracts those files again.
+     * <p>
+     * Documents are noted by the thread submitting them; a batch sealed during a submit holds
+     * every document noted since the previous batch.
+     */
+    private static final class IndexedDocuments implements IngestionPipeline.BatchListener {
+        // Per file whose documents were submitted: the manifest entry this scan replaced, and the documents
+        private final Map<String, ScanManifest.FileEntry> replacedEntries = new HashMap<>();
+        private final Map<String, List<String>> fileDocumentIds = new LinkedHashMap<>();
+        private final Map<Long, List<String>> sealedBatches = new ConcurrentHashMap<>();
+        private final Set<String> indexed = ConcurrentHashMap.newKeySet();
+        private List<String> unsealed = new ArrayList<>();
+        
+        /**
+         * Notes a document of a file that is about to be submitted to the pipeline
+         *
+         * @param replaced the file's manifest entry before this scan, or null if it is new
+         */
+        private void submitting(String fileKey, ScanManifest.FileEntry replaced, String documentId) {
+            if (!fileDocumentIds.containsKey(fileKey)) {
+                replacedEntries.put(fileKey, replaced);
+            }
+            fileDocumentIds.computeIfAbsent(fileKey, k -> new ArrayList<>(1)).add(documentId);
+            unsealed.add(documentId);
+        }
+        
+        @Override
+        public void onBatchSealed(long sequence) {
+            sealedBatches.put(sequence, unsealed);
+            unsealed = new ArrayList<>();
+        }
+        
+        /**
+         * OpenSearch answered for the batch; the documents it rejected were dead-lettered or fail
+         * the same way when submitted again
+         */
+        @Override
+        public void onBatchIndexed(long sequence, VectorStoreService.BulkIndexResult result) {
+            List<String> documentIds = sealedBatches.remove(sequence);
+            if (documentIds != null) {
+                indexed.addAll(documentIds);
+            }
+        }
+        
+        @Override
+        public void onBatchFailed(long sequence, List<Document> documents, Exception cause) {
+            // Neither indexed nor dead-lettered
+            sealedBatches.remove(sequence);
+        }
+        
+        /**
+         * Puts back the manifest entries of the files whose documents are not all indexed
+         *
+         * @return the number of files put back
+         */
+        private int restoreUnindexed(ScanManifest manifest) {
+            int restored = 0;
+            for (Map.Entry<String, List<String>> file : fileDocumentIds.entrySet()) {
+                if (indexed.containsAll(file.getValue())) {
+                    continue;
+                }
+                ScanManifest.FileEntry replaced = replacedEntries.get(file.getKey());
+                if (replaced != null) {
+                    manifest.getFiles().put(file.getKey(), replaced);
+                } else {
+                    manifest.getFiles().remove(file.getKey());
+                }
+                restored++;
+            }
+            return restored;
+        }
+    }
+    
+    private static String pathKey(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+    
     private String convertMetadataToJson(Map<String, String> metadata) {
         // Simple JSON conversion for metadata
         StringBuilder json = new StringBuilder();
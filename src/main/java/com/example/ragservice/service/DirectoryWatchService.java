@@ -0,0 +1,641 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.dto.DirectoryWatchRequest;
+import com.example.ragservice.dto.DirectoryWatchResponse;
+import com.example.ragservice.model.Document;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps an index up to date with a directory. Each watch runs on its own thread and receives
+ * file system events through a {@link WatchService}, or compares directory listings at an
+ * interval where the file system has no events (or the request asks for polling). Changed
+ * files are debounced, extracted, and upserted under the same document ID a directory scan
+ * gives them; deleted files are removed from the index.
+ */
+@Service
+public class DirectoryWatchService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryWatchService.class);
+    
+    static final String MODE_EVENTS = "events";
+    static final String MODE_POLLING = "polling";
+    
+    private static final int MAX_ERRORS = 20;
+    
+    @Autowired
+    private DocumentExtractionService documentExtractionService;
+    
+    @Autowired
+    private EmbeddingService embeddingService;
+    
+    @Autowired
+    private VectorStoreService vectorStoreService;
+    
+    @Autowired
+    private DeadLetterService deadLetterService;
+    
+    @Autowired
+    private JobProgressService jobProgressService;
+    
+    @Value("${document.processing.watch.debounce-ms:2000}")
+    private long defaultDebounceMs = 2000;
+    
+    @Value("${document.processing.watch.max-delay-ms:30000}")
+    private long maxDelayMs = 30000;
+    
+    @Value("${document.processing.watch.polling:false}")
+    private boolean defaultPolling = false;
+    
+    @Value("${document.processing.watch.poll-interval-ms:10000}")
+    private long defaultPollIntervalMs = 10000;
+    
+    @Value("${document.processing.watch.max-watches:10}")
+    private int maxWatches = 10;
+    
+    @Value("${document.processing.watch.max-text-size:1048576}")
+    private int maxTextSize = 1048576;
+    
+    @Value("${document.processing.watch.batch-size:50}")
+    private int batchSize = 50;
+    
+    @Value("${document.processing.watch.embedding-workers:2}")
+    private int embeddingWorkers = 2;
+    
+    @Value("${document.processing.csv.queue-capacity:8}")
+    private int queueCapacity = 8;
+    
+    @Value("${rag.default-index-name:documents}")
+    private String defaultIndexName = "documents";
+    
+    @Value("${document.processing.watch.cleanup-stopped-watches-after-hours:24}")
+    private long cleanupStoppedWatchesAfterHours = 24;
+    
+    @Value("${document.processing.jobs.registry.persistence-enabled:true}")
+    private boolean registryPersistenceEnabled = true;
+    
+    @Value("${document.processing.jobs.registry.directory:./data/jobs}")
+    private String registryDirectory = "./data/jobs";
+    
+    @Value("${document.processing.jobs.registry.max-finished-jobs:200}")
+    private int maxFinishedJobs = 200;
+    
+    @Value("${document.processing.jobs.registry.max-errors-per-job:20}")
+    private int maxErrorsPerJob = 20;
+    
+    // Running watches and, for a while, stopped ones
+    private JobRegistry<DirectoryWatchResponse> watchRegistry;
+    
+    private final Map<String, Watch> runningWatches = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    void initWatchRegistry() {
+        watchRegistry = new JobRegistry<>("directory watch", DirectoryWatchResponse.class,
+            registryPersistenceEnabled ? Paths.get(registryDirectory, "directory-watches.json") : null,
+            Duration.ofHours(cleanupStoppedWatchesAfterHours), maxFinishedJobs, maxErrorsPerJob);
+        // Watches do not survive a restart; the ones that were running show up as INTERRUPTED
+        watchRegistry.load(DirectoryWatchResponse::getWatchId);
+    }
+    
+    /**
+     * Compacts and evicts stopped watches and persists the watch registry
+     */
+    @Scheduled(fixedDelayString = "${document.processing.jobs.registry.sweep-interval-seconds:60}",
+               initialDelayString = "${document.processing.jobs.registry.sweep-interval-seconds:60}",
+               timeUnit = TimeUnit.SECONDS)
+    public void sweepWatchRegistry() {
+        watchRegistry.sweep();
+    }
+    
+    @PreDestroy
+    void stopWatches() {
+        for (Watch watch : runningWatches.values()) {
+            watch.thread.interrupt();
+        }
+        watchRegistry.sweep();
+    }
+    
+    /**
+     * Starts watching a directory
+     *
+     * @param request the watch request
+     * @return the watch status
+     * @throws IllegalArgumentException if the directory does not exist
+     * @throws IllegalStateException if the maximum number of watches is running
+     */
+    public synchronized DirectoryWatchResponse startWatch(DirectoryWatchRequest request) {
+        Path directory = Paths.get(request.getDirectoryPath());
+        if (!Files.isDirectory(directory)) {
+            throw new IllegalArgumentException("Invalid directory path: " + request.getDirectoryPath());
+        }
+        if (runningWatches.size() >= maxWatches) {
+            throw new IllegalStateException("Maximum number of directory watches (" + maxWatches + ") reached");
+        }
+        
+        String watchId = generateWatchId();
+        DirectoryWatchResponse response = new DirectoryWatchResponse(watchId, "STARTING");
+        response.setDirectoryPath(directory.toAbsolutePath().normalize().toString());
+        response.setIndexName(resolveIndexName(request.getIndexName()));
+        watchRegistry.register(watchId, response);
+        
+        Watch watch = new Watch(watchId, directory, request, response);
+        runningWatches.put(watchId, watch);
+        watch.thread.start();
+        
+        logger.info("Started watching {} into index {}. Watch ID: {}", directory, response.getIndexName(), watchId);
+        return response;
+    }
+    
+    /**
+     * Gets the status of a running or recently stopped watch
+     *
+     * @param watchId the watch ID
+     * @return the watch status, or null if unknown
+     */
+    public DirectoryWatchResponse getWatchStatus(String watchId) {
+        return watchRegistry.get(watchId);
+    }
+    
+    /**
+     * Opens a Server-Sent Events stream with the progress of a watch
+     *
+     * @param watchId the watch ID
+     * @return the event stream, or null if the watch is unknown
+     */
+    public SseEmitter streamProgress(String watchId) {
+        if (watchRegistry.get(watchId) == null) {
+            return null;
+        }
+        return jobProgressService.subscribe(watchId, () -> watchRegistry.get(watchId));
+    }
+    
+    /**
+     * Lists running watches and the stopped ones that have not been evicted yet
+     *
+     * @return map of watches by watch ID
+     */
+    public Map<String, DirectoryWatchResponse> getWatches() {
+        return watchRegistry.snapshot();
+    }
+    
+    /**
+     * Stops a running watch. Changes still waiting for their debounce time are dropped.
+     *
+     * @param watchId the watch ID
+     * @return true if stopped, false if not found or not running
+     */
+    public boolean stopWatch(String watchId) {
+        Watch watch = runningWatches.remove(watchId);
+        if (watch == null) {
+            return false;
+        }
+        watch.response.setEndTime(LocalDateTime.now());
+        watch.response.setStatus("CANCELLED");
+        watch.thread.interrupt();
+        return true;
+    }
+    
+    private String resolveIndexName(String indexName) {
+        if (indexName == null || indexName.trim().isEmpty()) {
+            return defaultIndexName;
+        }
+        return indexName.trim();
+    }
+    
+    private String generateWatchId() {
+        return "watch_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8);
+    }
+    
+    private record FileState(long size, long lastModified) {
+    }
+    
+    /**
+     * Follows the documents of one round of changes through the pipeline, to tell which were indexed
+     */
+    private static final class IndexedChanges implements IngestionPipeline.BatchListener {
+        private final Map<Long, List<Document>> sealedBatches = new ConcurrentHashMap<>();
+        private final Set<String> indexed = ConcurrentHashMap.newKeySet();
+        private List<Document> unsealed = new ArrayList<>();
+        
+        /**
+         * Notes a document that is about to be submitted to the pipeline
+         */
+        private void submitting(Document document) {
+            unsealed.add(document);
+        }
+        
+        @Override
+        public void onBatchSealed(long sequence) {
+            sealedBatches.put(sequence, unsealed);
+            unsealed = new ArrayList<>();
+        }
+        
+        @Override
+        public void onBatchIndexed(long sequence, VectorStoreService.BulkIndexResult result) {
+            List<Document> documents = sealedBatches.remove(sequence);
+            if (documents == null) {
+                return;
+            }
+            Set<String> rejected = new HashSet<>();
+            for (VectorStoreService.BulkItemFailure failure : result.getFailures()) {
+                rejected.add(failure.getDocument().getId());
+            }
+            for (Document document : documents) {
+                if (!rejected.contains(document.getId())) {
+                    indexed.add(document.getId());
+                }
+            }
+        }
+        
+        @Override
+        public void onBatchFailed(long sequence, List<Document> documents, Exception cause) {
+            sealedBatches.remove(sequence);
+        }
+    }
+    
+    /**
+     * One watched directory. Everything but the stop request happens on the watch thread.
+     */
+    private final class Watch implements Runnable {
+        private final String watchId;
+        private final Path directory;
+        private final DirectoryWatchRequest request;
+        private final DirectoryWatchResponse response;
+        private final Set<String> supportedExtensions = new HashSet<>();
+        private final ChangeDebouncer debouncer;
+        private final long pollIntervalMs;
+        private final Thread thread;
+        
+        // Content hash of every file this watch indexed, by path, to skip changes that keep the content
+        private final Map<String, String> indexedHashes = new HashMap<>();
+        private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+        private final List<String> errors = new ArrayList<>();
+        private WatchService watchService;
+        // Polling mode: the files of the last listing
+        private Map<Path, FileState> snapshot;
+        
+        private Watch(String watchId, Path directory, DirectoryWatchRequest request, DirectoryWatchResponse response) {
+            this.watchId = watchId;
+            this.directory = directory;
+            this.request = request;
+            this.response = response;
+            for (String extension : request.getSupportedExtensions()) {
+                supportedExtensions.add(extension.toLowerCase());
+            }
+            long debounceMs = request.getDebounceMs() != null ? request.getDebounceMs() : defaultDebounceMs;
+            this.debouncer = new ChangeDebouncer(debounceMs, maxDelayMs);
+            this.pollIntervalMs = request.getPollIntervalMs() != null ? request.getPollIntervalMs() : defaultPollIntervalMs;
+            this.thread = new Thread(this, "directory-watch-" + watchId);
+            this.thread.setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                vectorStoreService.createIndex(response.getIndexName());
+                
+                boolean polling = request.getPolling() != null ? request.getPolling() : defaultPolling;
+                if (!polling && !startEvents()) {
+                    polling = true;
+                }
+                response.setMode(polling ? MODE_POLLING : MODE_EVENTS);
+                
+                if (polling || request.isInitialSync()) {
+                    Map<Path, FileState> files = listFiles();
+                    snapshot = polling ? files : null;
+                    if (request.isInitialSync()) {
+                        long now = System.nanoTime();
+                        files.keySet().forEach(file -> debouncer.record(file, now));
+                    }
+                }
+                if (!"CANCELLED".equals(response.getStatus())) {
+                    response.setStatus("WATCHING");
+                }
+                
+                long nextPoll = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pollIntervalMs);
+                while (!Thread.currentThread().isInterrupted()) {
+                    long now = System.nanoTime();
+                    long untilDue = debouncer.nanosUntilNextDue(now);
+                    if (polling) {
+                        long untilPoll = Math.max(0, nextPoll - now);
+                        long wait = untilDue < 0 ? untilPoll : Math.min(untilDue, untilPoll);
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                        if (System.nanoTime() >= nextPoll) {
+                            pollChanges();
+                            nextPoll = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pollIntervalMs);
+                        }
+                    } else {
+                        // Wake up for the next due change, or at the poll interval to keep the counters fresh
+                        long wait = untilDue < 0 ? TimeUnit.MILLISECONDS.toNanos(pollIntervalMs) : untilDue;
+                        WatchKey key = watchService.poll(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)), TimeUnit.MILLISECONDS);
+                        while (key != null) {
+                            handleEvents(key);
+                            key = watchService.poll();
+                        }
+                    }
+                    applyDueChanges();
+                }
+            } catch (InterruptedException e) {
+                // Stopped
+            } catch (Exception e) {
+                logger.error("Directory watch failed. Watch ID: {}", watchId, e);
+                response.setEndTime(LocalDateTime.now());
+                addError("Watch failed: " + e.getMessage());
+                response.setStatus("FAILED");
+            } finally {
+                runningWatches.remove(watchId, this);
+                if (watchService != null) {
+                    try {
+                        watchService.close();
+                    } catch (IOException e) {
+                        logger.debug("Failed to close watch service of {}", watchId, e);
+                    }
+                }
+            }
+            logger.info("Directory watch {} stopped with status {}", watchId, response.getStatus());
+        }
+        
+        /**
+         * Registers the directory, and its subdirectories if recursive, for file system events
+         *
+         * @return false if the file system does not support them
+         */
+        private boolean startEvents() {
+            try {
+                watchService = directory.getFileSystem().newWatchService();
+                registerTree(directory);
+                return true;
+            } catch (IOException | UnsupportedOperationException e) {
+                logger.warn("File system events are not available for {}, polling every {} ms instead: {}",
+                    directory, pollIntervalMs, e.getMessage());
+                if (watchService != null) {
+                    try {
+                        watchService.close();
+                    } catch (IOException closeFailure) {
+                        logger.debug("Failed to close watch service of {}", watchId, closeFailure);
+                    }
+                    watchService = null;
+                }
+                watchedDirectories.clear();
+                return false;
+            }
+        }
+        
+        private void registerTree(Path start) throws IOException {
+            if (!request.isRecursive()) {
+                register(start);
+                return;
+            }
+            // Symbolic links are not followed, so links back into the tree cannot loop
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                    register(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+                
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    logger.debug("Skipping entry due to IO error: {}", file, e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        
+        private void register(Path dir) throws IOException {
+            WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.put(key, dir);
+            response.setDirectoriesWatched(watchedDirectories.size());
+        }
+        
+        private void handleEvents(WatchKey key) throws IOException {
+            Path dir = watchedDirectories.get(key);
+            long now = System.nanoTime();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                response.setEventsReceived(response.getEventsReceived() + 1);
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                    // Events were lost; look at every file again
+                    logger.warn("Directory watch {} lost events, rechecking all files", watchId);
+                    listFiles().keySet().forEach(file -> debouncer.record(file, now));
+                    indexedPaths(directory).forEach(file -> debouncer.record(file, now));
+                    continue;
+                }
+                
+                Path child = dir.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && request.isRecursive()
+                        && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    // Files may have been created before the new directory was registered
+                    registerTree(child);
+                    listFiles(child).keySet().forEach(file -> debouncer.record(file, now));
+                } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    // A deleted directory takes the files indexed from it along
+                    indexedPaths(child).forEach(file -> debouncer.record(file, now));
+                    if (isSupported(child)) {
+                        debouncer.record(child, now);
+                    }
+                } else if (isSupported(child)) {
+                    debouncer.record(child, now);
+                }
+            }
+            if (!key.reset()) {
+                watchedDirectories.remove(key);
+                response.setDirectoriesWatched(watchedDirectories.size());
+            }
+            response.setPendingChanges(debouncer.size());
+        }
+        
+        private void pollChanges() throws IOException {
+            Map<Path, FileState> current = listFiles();
+            long now = System.nanoTime();
+            for (Map.Entry<Path, FileState> file : current.entrySet()) {
+                if (!file.getValue().equals(snapshot.get(file.getKey()))) {
+                    debouncer.record(file.getKey(), now);
+                    response.setEventsReceived(response.getEventsReceived() + 1);
+                }
+            }
+            for (Path file : snapshot.keySet()) {
+                if (!current.containsKey(file)) {
+                    debouncer.record(file, now);
+                    response.setEventsReceived(response.getEventsReceived() + 1);
+                }
+            }
+            snapshot = current;
+            response.setPendingChanges(debouncer.size());
+        }
+        
+        private Map<Path, FileState> listFiles() throws IOException {
+            return listFiles(directory);
+        }
+        
+        private Map<Path, FileState> listFiles(Path start) throws IOException {
+            Map<Path, FileState> files = new HashMap<>();
+            Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), request.isRecursive() ? Integer.MAX_VALUE : 1,
+                new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        if (attributes.isRegularFile() && isSupported(file)) {
+                            files.put(file, new FileState(attributes.size(), attributes.lastModifiedTime().toMillis()));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                    
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        logger.debug("Skipping entry due to IO error: {}", file, e);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            return files;
+        }
+        
+        private List<Path> indexedPaths(Path under) {
+            String prefix = key(under);
+            return indexedHashes.keySet().stream()
+                .filter(path -> path.startsWith(prefix + under.getFileSystem().getSeparator()))
+                .map(Paths::get)
+                .toList();
+        }
+        
+        private boolean isSupported(Path file) {
+            String extension = documentExtractionService.getFileExtension(file.toString());
+            return supportedExtensions.contains(extension.toLowerCase());
+        }
+        
+        /**
+         * Extracts and upserts the files that are due and deletes the documents of those that are gone
+         */
+        private void applyDueChanges() throws IOException, InterruptedException {
+            List<Path> due = debouncer.takeDue(System.nanoTime());
+            response.setPendingChanges(debouncer.size());
+            if (due.isEmpty()) {
+                return;
+            }
+            
+            List<Document> upserts = new ArrayList<>();
+            Map<String, String> upsertHashes = new HashMap<>();
+            List<String> deletions = new ArrayList<>();
+            for (Path file : due) {
+                String key = key(file);
+                if (!Files.isRegularFile(file)) {
+                    if (!Files.exists(file)) {
+                        deletions.add(ScanManifestService.documentId(file));
+                        indexedHashes.remove(key);
+                    }
+                    continue;
+                }
+                
+                try {
+                    String contentHash = ScanManifestService.contentHash(file);
+                    if (contentHash.equals(indexedHashes.get(key))) {
+                        response.setFilesUnchanged(response.getFilesUnchanged() + 1);
+                        continue;
+                    }
+                    
+                    Document document = toDocument(file, key, contentHash);
+                    if (document == null) {
+                        // No text left, so nothing to find it by
+                        deletions.add(ScanManifestService.documentId(file));
+                        indexedHashes.remove(key);
+                    } else {
+                        upserts.add(document);
+                        upsertHashes.put(key, contentHash);
+                    }
+                } catch (Exception e) {
+                    logger.warn("Failed to extract text from changed file: {}", file, e);
+                    response.setFilesFailed(response.getFilesFailed() + 1);
+                    addError("Failed to process " + file + ": " + e.getMessage());
+                }
+            }
+            
+            if (!upserts.isEmpty()) {
+                // A document that did not make it into the index is indexed again on its next change
+                Set<String> indexedIds = index(upserts);
+                for (Document document : upserts) {
+                    if (indexedIds.contains(document.getId())) {
+                        indexedHashes.put(document.getSource(), upsertHashes.get(document.getSource()));
+                    }
+                }
+            }
+            if (!deletions.isEmpty()) {
+                vectorStoreService.deleteDocuments(response.getIndexName(), deletions);
+                response.setFilesDeleted(response.getFilesDeleted() + deletions.size());
+            }
+            response.setLastChangeApplied(LocalDateTime.now());
+            
+            logger.debug("Directory watch {} applied {} changes: {} upserted, {} deleted",
+                watchId, due.size(), upserts.size(), deletions.size());
+        }
+        
+        private Document toDocument(Path file, String key, String contentHash) throws Exception {
+            // Text beyond the maximum size is never collected
+            StringBuilder text = new StringBuilder();
+            Map<String, String> metadata = documentExtractionService.streamText(file, maxTextSize, text::append);
+            DocumentExtractionService.ExtractedDocument extracted =
+                new DocumentExtractionService.ExtractedDocument(text.toString(), metadata);
+            // Same ID as the file's row in a directory scan CSV, so both keep one document per file
+            Document document = extracted.toDocument(ScanManifestService.documentId(file), key, maxTextSize);
+            if (document != null) {
+                document.getMetadata().put("content_hash", contentHash);
+            }
+            return document;
+        }
+        
+        /**
+         * Embeds and indexes one round of changes. Rounds are small and far apart, so each gets
+         * its own short-lived pipeline; failed documents go to the dead-letter queue like those
+         * of a stream.
+         *
+         * @return the IDs of the documents OpenSearch indexed
+         */
+        private Set<String> index(List<Document> documents) throws InterruptedException {
+            IndexedChanges indexedChanges = new IndexedChanges();
+            IngestionPipeline pipeline = new IngestionPipeline(watchId, response.getIndexName(), embeddingService,
+                vectorStoreService, batchSize, embeddingWorkers, queueCapacity,
+                deadLetterService.batchListener(watchId, response.getIndexName(), indexedChanges));
+            try {
+                for (Document document : documents) {
+                    indexedChanges.submitting(document);
+                    pipeline.submit(document);
+                }
+                pipeline.finish();
+            } catch (InterruptedException e) {
+                pipeline.cancel();
+                throw e;
+            }
+            
+            IngestionPipeline.PipelineStats stats = pipeline.getStats();
+            response.setFilesIndexed(response.getFilesIndexed() + stats.getDocumentsIndexed());
+            response.setFilesFailed(response.getFilesFailed() + stats.getDocumentsFailed());
+            return indexedChanges.indexed;
+        }
+        
+        private void addError(String error) {
+            if (errors.size() >= MAX_ERRORS) {
+                errors.remove(0);
+            }
+            errors.add(error);
+            response.setErrors(new ArrayList<>(errors));
+        }
+        
+        private String key(Path file) {
+            return file.toAbsolutePath().normalize().toString();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.ragservice.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a block file written by {@link DocumentBlockWriter}. The file is memory-mapped and
+ * only its footer and index are read when it is opened; each block is decompressed straight
+ * from the mapping when it is read. Blocks can be read in any order and from several
+ * threads at once, and a record can be looked up by its number through the index.
+ */
+final class DocumentBlockReader implements Closeable {
+    
+    private final Path file;
+    private final FileChannel channel;
+    // The whole file, or null if it is too large for one mapping and each block is mapped on its own
+    private final MappedByteBuffer mapping;
+    private final long[] offsets;
+    private final int[] compressedLengths;
+    private final int[] uncompressedLengths;
+    private final long[] firstRecords;
+    private final int[] recordCounts;
+    private final long recordCount;
+    
+    DocumentBlockReader(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < DocumentBlockWriter.HEADER_SIZE + DocumentBlockWriter.FOOTER_SIZE) {
+                throw new IOException("Not a complete block file: " + file);
+            }
+            mapping = size <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+            
+            ByteBuffer header = region(0, DocumentBlockWriter.HEADER_SIZE);
+            ByteBuffer footer = region(size - DocumentBlockWriter.FOOTER_SIZE, DocumentBlockWriter.FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            int blockCount = footer.getInt();
+            recordCount = footer.getLong();
+            if (header.getInt() != DocumentBlockWriter.MAGIC || footer.getInt() != DocumentBlockWriter.MAGIC) {
+                throw new IOException("Not a complete block file: " + file);
+            }
+            int version = header.getInt();
+            if (version != DocumentBlockWriter.VERSION) {
+                throw new IOException("Unsupported block file version " + version + ": " + file);
+            }
+            
+            offsets = new long[blockCount];
+            compressedLengths = new int[blockCount];
+            uncompressedLengths = new int[blockCount];
+            firstRecords = new long[blockCount];
+            recordCounts = new int[blockCount];
+            ByteBuffer index = region(indexOffset, Math.multiplyExact(blockCount, DocumentBlockWriter.INDEX_ENTRY_SIZE));
+            for (int block = 0; block < blockCount; block++) {
+                offsets[block] = index.getLong();
+                compressedLengths[block] = index.getInt();
+                uncompressedLengths[block] = index.getInt();
+                firstRecords[block] = index.getLong();
+                recordCounts[block] = index.getInt();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e
+                : new IOException("Not a valid block file: " + file + ": " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * The files of a block output: the file itself, or its shards if it was split
+     */
+    static List<Path> outputFiles(Path file) throws IOException {
+        if (Files.exists(file)) {
+            return List.of(file);
+        }
+        List<Path> shards = new ArrayList<>();
+        for (int i = 0; ; i++) {
+            Path shard = DocumentBlockWriter.shardFiles(file, i + 2).get(i);
+            if (!Files.exists(shard)) {
+                break;
+            }
+            shards.add(shard);
+        }
+        if (shards.isEmpty()) {
+            throw new IOException("Block file does not exist: " + file);
+        }
+        return shards;
+    }
+    
+    Path getFile() {
+        return file;
+    }
+    
+    long getRecordCount() {
+        return recordCount;
+    }
+    
+    int getBlockCount() {
+        return offsets.length;
+    }
+    
+    /**
+     * Bytes the block takes in the file
+     */
+    long getBlockSize(int block) {
+        return DocumentBlockWriter.BLOCK_HEADER_SIZE + compressedLengths[block];
+    }
+    
+    /**
+     * Decompresses a block and decodes its records
+     */
+    List<Record> readBlock(int block) throws IOException {
+        ByteBuffer data = region(offsets[block], (int) getBlockSize(block));
+        int records = data.getInt();
+        int uncompressedLength = data.getInt();
+        int compressedLength = data.getInt();
+        int checksum = data.getInt();
+        if (records != recordCounts[block] || uncompressedLength != uncompressedLengths[block]
+                || compressedLength != compressedLengths[block]) {
+            throw new IOException("Block " + block + " does not match the index of " + file);
+        }
+        
+        byte[] bytes = new byte[uncompressedLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            int length = 0;
+            while (length < bytes.length && !inflater.finished()) {
+                int inflated = inflater.inflate(bytes, length, bytes.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != bytes.length) {
+                throw new IOException("Block " + block + " of " + file + " is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Block " + block + " of " + file + " is corrupt: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Block " + block + " of " + file + " fails its checksum");
+        }
+        
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        List<Record> result = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            int recordLength = in.getInt();
+            int end = in.position() + recordLength;
+            String documentId = readString(in);
+            String path = readString(in);
+            String text = readString(in);
+            int metadataSize = in.getInt();
+            Map<String, String> metadata = new HashMap<>(Math.max(4, metadataSize * 2));
+            for (int j = 0; j < metadataSize; j++) {
+                metadata.put(readString(in), readString(in));
+            }
+            // Later versions may add fields at the end of a record
+            in.position(end);
+            result.add(new Record(firstRecords[block] + i, documentId, path, text, metadata));
+        }
+        return result;
+    }
+    
+    /**
+     * Looks up a record by its number in this file, starting at 0
+     */
+    Record read(long recordNumber) throws IOException {
+        if (recordNumber < 0 || recordNumber >= recordCount) {
+            throw new IndexOutOfBoundsException("Record " + recordNumber + " of " + recordCount + " in " + file);
+        }
+        int found = Arrays.binarySearch(firstRecords, recordNumber);
+        int block = found >= 0 ? found : -found - 2;
+        // Every block holds at least one record, so no two blocks share a first record
+        return readBlock(block).get((int) (recordNumber - firstRecords[block]));
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    private ByteBuffer region(long offset, int length) throws IOException {
+        if (mapping != null) {
+            return mapping.slice(Math.toIntExact(offset), length);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+    
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+    
+    /**
+     * A document of a block file
+     *
+     * @param number the record's position in its file, starting at 0
+     */
+    record Record(long number, String documentId, String path, String text, Map<String, String> metadata) {
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.ragservice.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes extracted documents to block files, a compact alternative to the CSV file of a
+ * directory scan that {@link DocumentBlockReader} reads without parsing text.
+ * <p>
+ * Each record is length-prefixed and holds the document ID, the path, the text and the
+ * metadata; strings are length-prefixed UTF-8. Records are collected into blocks of about
+ * the block size, and each block is Deflate-compressed on its own. A file is laid out as:
+ * <pre>
+ * header   magic (int), version (int)
+ * blocks   per block: record count (int), uncompressed length (int), compressed length (int),
+ *          CRC-32 of the uncompressed data (int), compressed data
+ * index    per block: offset (long), compressed length (int), uncompressed length (int),
+ *          first record (long), record count (int)
+ * footer   index offset (long), block count (int), record count (long), magic (int)
+ * </pre>
+ * The output can be split into shards, files that each get every n-th block. Every shard
+ * compresses and writes its blocks on its own thread, so compression runs in parallel and
+ * off the thread that appends the records. With one shard the file is written to the given
+ * path; with more, shard i is written next to it with "-i" before the extension.
+ */
+final class DocumentBlockWriter implements Closeable {
+    
+    static final String EXTENSION = ".docblocks";
+    static final int MAGIC = 0x52444231; // "RDB1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int BLOCK_HEADER_SIZE = 16;
+    static final int INDEX_ENTRY_SIZE = 28;
+    static final int FOOTER_SIZE = 24;
+    
+    // Blocks a shard may have waiting for its thread before appending blocks
+    private static final int PENDING_BLOCKS_PER_SHARD = 2;
+    
+    private final List<Shard> shards = new ArrayList<>();
+    private final int blockSize;
+    private final ByteArrayOutputStream block;
+    private final DataOutputStream blockOut;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private int blockRecords;
+    private int nextShard;
+    private long records;
+    
+    /**
+     * @param blockSize uncompressed bytes after which a block is complete
+     */
+    DocumentBlockWriter(Path file, int shardCount, int blockSize) throws IOException {
+        this.blockSize = blockSize;
+        this.block = new ByteArrayOutputStream(blockSize + blockSize / 8);
+        this.blockOut = new DataOutputStream(block);
+        try {
+            for (Path shardFile : shardFiles(file, Math.max(1, shardCount))) {
+                shards.add(new Shard(shardFile));
+            }
+        } catch (IOException e) {
+            for (Shard shard : shards) {
+                shard.abort();
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * The files of an output split into the given number of shards
+     */
+    static List<Path> shardFiles(Path file, int shardCount) {
+        if (shardCount <= 1) {
+            return List.of(file);
+        }
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        List<Path> files = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            files.add(file.resolveSibling(base + "-" + i + extension));
+        }
+        return files;
+    }
+    
+    /**
+     * Appends a document; blocks that are complete are handed to their shard
+     */
+    void append(String documentId, String path, String text, Map<String, String> metadata) throws IOException {
+        record.reset();
+        writeString(recordOut, documentId);
+        writeString(recordOut, path);
+        writeString(recordOut, text);
+        recordOut.writeInt(metadata.size());
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            writeString(recordOut, entry.getKey());
+            writeString(recordOut, entry.getValue());
+        }
+        
+        blockOut.writeInt(record.size());
+        record.writeTo(blockOut);
+        blockRecords++;
+        records++;
+        if (block.size() >= blockSize) {
+            completeBlock();
+        }
+    }
+    
+    long getRecords() {
+        return records;
+    }
+    
+    List<Path> getFiles() {
+        return shards.stream().map(shard -> shard.file).toList();
+    }
+    
+    /**
+     * Writes the last block and the shards' indexes and waits until the shards are written
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        try {
+            if (blockRecords > 0) {
+                completeBlock();
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+        for (Shard shard : shards) {
+            try {
+                if (failure == null) {
+                    shard.finish();
+                } else {
+                    shard.abort();
+                }
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    private void completeBlock() throws IOException {
+        Shard shard = shards.get(nextShard);
+        nextShard = (nextShard + 1) % shards.size();
+        shard.submit(block.toByteArray(), blockRecords);
+        block.reset();
+        blockRecords = 0;
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    /**
+     * One file of the output, written by its own thread
+     */
+    private static final class Shard {
+        private final Path file;
+        private final DataOutputStream out;
+        private final ExecutorService thread;
+        private final Semaphore pending = new Semaphore(PENDING_BLOCKS_PER_SHARD);
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final CRC32 crc = new CRC32();
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        private final DataOutputStream indexOut = new DataOutputStream(index);
+        private byte[] compressed = new byte[0];
+        private long position;
+        private int blocks;
+        private long recordsWritten;
+        private volatile IOException failure;
+        
+        private Shard(Path file) throws IOException {
+            this.file = file;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+            this.thread = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "block-writer-" + file.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            position = HEADER_SIZE;
+        }
+        
+        /**
+         * Hands a block to the shard's thread, waiting while the shard is behind
+         */
+        private void submit(byte[] data, int recordCount) throws IOException {
+            checkFailure();
+            try {
+                pending.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to write to " + file);
+            }
+            thread.execute(() -> {
+                try {
+                    if (failure == null) {
+                        write(data, recordCount);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    pending.release();
+                }
+            });
+        }
+        
+        private void write(byte[] data, int recordCount) throws IOException {
+            deflater.reset();
+            deflater.setInput(data);
+            deflater.finish();
+            if (compressed.length < data.length + 64) {
+                compressed = new byte[data.length + data.length / 16 + 64];
+            }
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    byte[] larger = new byte[compressed.length * 2];
+                    System.arraycopy(compressed, 0, larger, 0, compressedLength);
+                    compressed = larger;
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+            crc.reset();
+            crc.update(data);
+            
+            out.writeInt(recordCount);
+            out.writeInt(data.length);
+            out.writeInt(compressedLength);
+            out.writeInt((int) crc.getValue());
+            out.write(compressed, 0, compressedLength);
+            
+            indexOut.writeLong(position);
+            indexOut.writeInt(compressedLength);
+            indexOut.writeInt(data.length);
+            indexOut.writeLong(recordsWritten);
+            indexOut.writeInt(recordCount);
+            position += BLOCK_HEADER_SIZE + compressedLength;
+            recordsWritten += recordCount;
+            blocks++;
+        }
+        
+        private void finish() throws IOException {
+            awaitThread();
+            try {
+                checkFailure();
+                long indexOffset = position;
+                index.writeTo(out);
+                out.writeLong(indexOffset);
+                out.writeInt(blocks);
+                out.writeLong(recordsWritten);
+                out.writeInt(MAGIC);
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+        
+        /**
+         * Stops writing; the file is left incomplete
+         */
+        private void abort() {
+            thread.shutdownNow();
+            try {
+                out.close();
+            } catch (IOException e) {
+                // The shard is incomplete anyway
+            }
+        }
+        
+        private void awaitThread() throws IOException {
+            thread.shutdown();
+            try {
+                thread.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                abort();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while finishing " + file);
+            }
+        }
+        
+        private void checkFailure() throws IOException {
+            if (failure != null) {
+                throw new IOException("Failed to write " + file + ": " + failure.getMessage(), failure);
+            }
+        }
+    }
+}
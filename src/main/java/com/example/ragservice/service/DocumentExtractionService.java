@@ -1,20 +1,29 @@
 package com.example.ragservice.service;
 
+import com.example.ragservice.model.Document;
 import org.apache.tika.Tika;
 import org.apache.tika.exception.TikaException;
+import org.apache.tika.exception.WriteLimitReachedException;
 import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.pdf.PDFParserConfig;
 import org.apache.tika.sax.BodyContentHandler;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.xml.sax.SAXException;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -31,7 +40,9 @@ public class DocumentExtractionService {
     
     private final Tika tika;
     private final AutoDetectParser parser;
-    private final ExecutorService executorService;
+    // Created on first use, once the configuration has been injected
+    private ExtractionExecutor executor;
+    private ForkedExtractionPool forkedPool;
     
     // Default timeout for document extraction (2 minutes)
     private static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(2);
@@ -42,12 +53,66 @@ public class DocumentExtractionService {
         "odt", "ods", "odp", "pptx", "ppt", "xlsx", "xls", "csv"
     );
     
+    // Files larger than max-file-size are skipped, or only their beginning is extracted
+    public static final String OVERSIZE_SKIP = "skip";
+    public static final String OVERSIZE_SAMPLE = "sample";
+    
+    @Value("${document.processing.extraction.max-file-size:104857600}")
+    private long maxFileSize = 104857600; // 0 = no limit
+    
+    @Value("${document.processing.extraction.oversize-policy:skip}")
+    private String oversizePolicy = OVERSIZE_SKIP;
+    
+    @Value("${document.processing.extraction.sample-chars:100000}")
+    private int sampleChars = 100000;
+    
+    // Extractions running in-process at the same time; callers wait for a free thread
+    @Value("${document.processing.extraction.threads:0}")
+    private int extractionThreads = 0; // 0 = number of available processors
+    
+    // Files with these extensions are extracted in child JVMs that are killed on timeout
+    @Value("${document.processing.extraction.forked.enabled:false}")
+    private boolean forkedEnabled = false;
+    
+    @Value("${document.processing.extraction.forked.extensions:pdf,doc,ppt,xls}")
+    private Set<String> forkedExtensions = Set.of("pdf", "doc", "ppt", "xls");
+    
+    @Value("${document.processing.extraction.forked.workers:2}")
+    private int forkedWorkers = 2;
+    
+    @Value("${document.processing.extraction.forked.max-heap-mb:512}")
+    private int forkedMaxHeapMb = 512;
+    
+    @Value("${document.processing.extraction.forked.max-extractions-per-process:200}")
+    private int forkedMaxExtractionsPerProcess = 200;
+    
+    // Characters passed to a TextConsumer at a time when text is streamed
+    @Value("${document.processing.extraction.segment-chars:8192}")
+    private int segmentChars = 8192;
+    
     public DocumentExtractionService() {
         this.tika = new Tika();
         this.parser = new AutoDetectParser();
         // Set maximum string length to handle large documents
         this.tika.setMaxStringLength(-1); // No limit
-        this.executorService = Executors.newCachedThreadPool();
+    }
+    
+    /**
+     * For the child JVMs of forked extraction, which run without the configuration
+     */
+    DocumentExtractionService(int sampleChars) {
+        this();
+        this.sampleChars = sampleChars;
+    }
+    
+    @PreDestroy
+    synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (forkedPool != null) {
+            forkedPool.close();
+        }
     }
     
     /**
@@ -70,6 +135,81 @@ public class DocumentExtractionService {
      * @throws DocumentExtractionException if extraction fails
      */
     public ExtractedDocument extractText(Path filePath, Duration timeout) throws DocumentExtractionException {
+        boolean sample = checkFile(filePath);
+        
+        // Parsers of these formats may run away; a child JVM can be killed when they do
+        if (isForked(filePath)) {
+            return forkedPool().extract(filePath, sample, timeout);
+        }
+        
+        return extractWithTimeout(() -> extractInProcess(filePath, sample), filePath.toString(), timeout);
+    }
+    
+    /**
+     * Extracts text content from a file with default timeout, passing it to the consumer in
+     * segments as the parser produces it rather than collecting it first
+     *
+     * @param filePath the path to the file
+     * @param maxChars the number of characters after which extraction stops; 0 = no limit
+     * @param consumer receives the text
+     * @return the file's metadata; {@code truncated} is set if extraction stopped at maxChars
+     * @throws DocumentExtractionException if extraction fails
+     */
+    public Map<String, String> streamText(Path filePath, long maxChars, TextConsumer consumer)
+            throws DocumentExtractionException {
+        return streamText(filePath, maxChars, consumer, DEFAULT_TIMEOUT);
+    }
+    
+    /**
+     * Extracts text content from a file with specified timeout, passing it to the consumer in
+     * segments of {@code document.processing.extraction.segment-chars} characters as the parser
+     * produces it. The consumer is called on an extraction thread, and no longer once this
+     * method has failed. The text is not trimmed.
+     * <p>
+     * Formats extracted in child JVMs arrive whole from the child and are passed on in
+     * segments all the same.
+     *
+     * @param filePath the path to the file
+     * @param maxChars the number of characters after which extraction stops; 0 = no limit
+     * @param consumer receives the text
+     * @param timeout the maximum time to spend on extraction
+     * @return the file's metadata; {@code truncated} is set if extraction stopped at maxChars
+     * @throws DocumentExtractionException if extraction fails, or the consumer does
+     */
+    public Map<String, String> streamText(Path filePath, long maxChars, TextConsumer consumer, Duration timeout)
+            throws DocumentExtractionException {
+        boolean sample = checkFile(filePath);
+        long limit = sample && (maxChars <= 0 || maxChars > sampleChars) ? sampleChars : maxChars;
+        TextSegmentWriter writer = new TextSegmentWriter(consumer, segmentChars, limit);
+        
+        if (isForked(filePath)) {
+            ExtractedDocument document = forkedPool().extract(filePath, sample, timeout);
+            try {
+                writeText(writer, document.getText());
+            } catch (IOException e) {
+                throw new DocumentExtractionException("Failed to pass on the text of file: " + filePath, e);
+            }
+            Map<String, String> metadata = document.getMetadata();
+            if (writer.isTruncated()) {
+                metadata.put("truncated", "true");
+            }
+            return metadata;
+        }
+        
+        try {
+            return extractWithTimeout(() -> streamInProcess(filePath, sample, writer), filePath.toString(), timeout);
+        } catch (DocumentExtractionException e) {
+            writer.cancel();
+            throw e;
+        }
+    }
+    
+    /**
+     * Checks that a file exists, is supported and is not too large
+     *
+     * @return true if only the beginning of the file is to be extracted
+     */
+    private boolean checkFile(Path filePath) throws DocumentExtractionException {
         if (!Files.exists(filePath)) {
             throw new DocumentExtractionException("File does not exist: " + filePath);
         }
@@ -84,46 +224,142 @@ public class DocumentExtractionService {
         }
         
         try {
-            // Create a callable for the extraction task
-            Callable<ExtractedDocument> extractionTask = () -> {
-                // Special handling for plain text files
-                if ("txt".equalsIgnoreCase(extension)) {
-                    return extractPlainText(filePath);
+            return checkFileSize(filePath, Files.size(filePath));
+        } catch (IOException e) {
+            throw new DocumentExtractionException("Failed to read the size of file: " + filePath, e);
+        }
+    }
+    
+    private boolean isForked(Path filePath) {
+        return forkedEnabled && forkedExtensions.contains(getFileExtension(filePath.toString()).toLowerCase());
+    }
+    
+    /**
+     * Extracts a file on the calling thread, without a timeout
+     */
+    ExtractedDocument extractInProcess(Path filePath, boolean sample) throws IOException, TikaException, SAXException {
+        // Special handling for plain text files
+        if ("txt".equalsIgnoreCase(getFileExtension(filePath.toString()))) {
+            return extractPlainText(filePath, sample);
+        }
+        
+        // Use Tika for other formats
+        return extractWithTika(filePath, sample);
+    }
+    
+    /**
+     * Streams a file's text into the writer on the calling thread, without a timeout
+     *
+     * @return the file's metadata
+     */
+    private Map<String, String> streamInProcess(Path filePath, boolean sample, TextSegmentWriter writer)
+            throws IOException, TikaException, SAXException {
+        Map<String, String> metadataMap = fileMetadata(filePath);
+        if ("txt".equalsIgnoreCase(getFileExtension(filePath.toString()))) {
+            try (Reader reader = Files.newBufferedReader(filePath, StandardCharsets.UTF_8)) {
+                reader.transferTo(writer);
+            } catch (TextSegmentWriter.LimitReachedException e) {
+                // Reading stops at the limit
+            }
+            writer.flush();
+            addPlainTextMetadata(metadataMap, sample);
+        } else {
+            try (InputStream inputStream = new FileInputStream(filePath.toFile())) {
+                Metadata metadata = new Metadata();
+                try {
+                    parser.parse(inputStream, new BodyContentHandler(writer), metadata, parseContext());
+                } catch (IOException | SAXException | TikaException e) {
+                    // Parsing stops at the limit
+                    if (!writer.isTruncated()) {
+                        throw e;
+                    }
                 }
-                
-                // Use Tika for other formats
-                return extractWithTika(filePath);
-            };
-            
-            // Execute with timeout
-            Future<ExtractedDocument> future = executorService.submit(extractionTask);
-            
+                writer.flush();
+                addTikaMetadata(metadata, metadataMap, writer.getWritten(), sample);
+            }
+        }
+        if (writer.isTruncated()) {
+            metadataMap.put("truncated", "true");
+        }
+        return metadataMap;
+    }
+    
+    private static void writeText(TextSegmentWriter writer, String text) throws IOException {
+        if (text != null) {
             try {
-                return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
-            } catch (TimeoutException e) {
-                future.cancel(true); // Interrupt the extraction task
-                logger.warn("Document extraction timed out after {} seconds for file: {}", 
-                           timeout.getSeconds(), filePath);
-                throw new DocumentExtractionException(
-                    String.format("Document extraction timed out after %d seconds for file: %s", 
-                                 timeout.getSeconds(), filePath), e);
-            } catch (ExecutionException e) {
-                Throwable cause = e.getCause();
-                if (cause instanceof DocumentExtractionException) {
-                    throw (DocumentExtractionException) cause;
-                }
-                throw new DocumentExtractionException("Failed to extract text from file: " + filePath, cause);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new DocumentExtractionException("Document extraction was interrupted for file: " + filePath, e);
+                writer.write(text);
+            } catch (TextSegmentWriter.LimitReachedException e) {
+                // The rest of the text is not wanted
             }
-            
-        } catch (DocumentExtractionException e) {
-            throw e; // Re-throw our custom exception
-        } catch (Exception e) {
-            logger.error("Failed to extract text from file: {}", filePath, e);
-            throw new DocumentExtractionException("Failed to extract text from file: " + filePath, e);
         }
+        writer.flush();
+    }
+    
+    /**
+     * Extracts text content from a stream, such as an entry of an archive, with default timeout.
+     * The stream is read but not closed.
+     *
+     * @param inputStream the content
+     * @param location where the content comes from, recorded as its file path; its extension selects the parser
+     * @param size the size of the content in bytes, or -1 if it is not known
+     * @return ExtractedDocument containing text and metadata
+     * @throws DocumentExtractionException if extraction fails
+     */
+    public ExtractedDocument extractText(InputStream inputStream, String location, long size) throws DocumentExtractionException {
+        String extension = getFileExtension(location);
+        if (!isSupportedExtension(extension)) {
+            throw new DocumentExtractionException("Unsupported file extension: " + extension);
+        }
+        
+        boolean sample = size >= 0 && checkFileSize(Path.of(location), size);
+        
+        Callable<ExtractedDocument> extractionTask = () -> {
+            if ("txt".equalsIgnoreCase(extension)) {
+                return extractPlainText(inputStream, location, size, sample);
+            }
+            return extractWithTika(inputStream, location, size, sample);
+        };
+        
+        return extractWithTimeout(extractionTask, location, DEFAULT_TIMEOUT);
+    }
+    
+    private <T> T extractWithTimeout(Callable<T> extractionTask, String filePath, Duration timeout)
+            throws DocumentExtractionException {
+        return executor().run(extractionTask, filePath, timeout);
+    }
+    
+    private synchronized ExtractionExecutor executor() {
+        if (executor == null) {
+            executor = new ExtractionExecutor(extractionThreads > 0 ? extractionThreads : Runtime.getRuntime().availableProcessors());
+        }
+        return executor;
+    }
+    
+    private synchronized ForkedExtractionPool forkedPool() {
+        if (forkedPool == null) {
+            forkedPool = new ForkedExtractionPool(forkedWorkers, forkedMaxHeapMb, forkedMaxExtractionsPerProcess, sampleChars);
+            logger.info("Extracting {} files in up to {} child processes with {} MB heap each",
+                       forkedExtensions, forkedPool.getWorkers(), forkedMaxHeapMb);
+        }
+        return forkedPool;
+    }
+    
+    /**
+     * Checks a file's size against document.processing.extraction.max-file-size
+     *
+     * @param size the size of the file in bytes
+     * @return true if the file is too large and only its beginning is to be extracted
+     * @throws FileTooLargeException if the file is too large and oversized files are skipped
+     */
+    public boolean checkFileSize(Path filePath, long size) throws FileTooLargeException {
+        if (maxFileSize <= 0 || size <= maxFileSize) {
+            return false;
+        }
+        if (OVERSIZE_SAMPLE.equalsIgnoreCase(oversizePolicy)) {
+            return true;
+        }
+        throw new FileTooLargeException(
+            String.format("File exceeds the maximum size of %d bytes (%d bytes): %s", maxFileSize, size, filePath));
     }
     
     /**
@@ -167,55 +403,128 @@ public class DocumentExtractionService {
         return SUPPORTED_EXTENSIONS;
     }
     
-    private ExtractedDocument extractPlainText(Path filePath) throws IOException {
-        String content = Files.readString(filePath, StandardCharsets.UTF_8);
+    private ExtractedDocument extractPlainText(Path filePath, boolean sample) throws IOException {
+        String content;
+        if (sample) {
+            try (BufferedReader reader = Files.newBufferedReader(filePath, StandardCharsets.UTF_8)) {
+                content = readSample(reader);
+            }
+        } else {
+            content = Files.readString(filePath, StandardCharsets.UTF_8);
+        }
+        return plainTextDocument(content, fileMetadata(filePath), sample);
+    }
+    
+    private ExtractedDocument extractPlainText(InputStream inputStream, String location, long size, boolean sample)
+            throws IOException {
+        String content = sample
+            ? readSample(new InputStreamReader(inputStream, StandardCharsets.UTF_8))
+            : new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        return plainTextDocument(content, streamMetadata(location, size), sample);
+    }
+    
+    private String readSample(Reader reader) throws IOException {
+        char[] buffer = new char[sampleChars];
+        int length = 0;
+        int read;
+        while (length < buffer.length && (read = reader.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+        }
+        return new String(buffer, 0, length);
+    }
+    
+    private ExtractedDocument plainTextDocument(String content, Map<String, String> metadata, boolean sample) {
+        addPlainTextMetadata(metadata, sample);
         
-        Map<String, String> metadata = new HashMap<>();
-        metadata.put("file_name", filePath.getFileName().toString());
-        metadata.put("file_path", filePath.toString());
-        metadata.put("file_size", String.valueOf(Files.size(filePath)));
+        return new ExtractedDocument(content, metadata);
+    }
+    
+    private void addPlainTextMetadata(Map<String, String> metadata, boolean sample) {
         metadata.put("content_type", "text/plain");
         metadata.put("extraction_method", "direct_read");
-        
-        return new ExtractedDocument(content, metadata);
+        if (sample) {
+            metadata.put("sampled", "true");
+        }
     }
     
-    private ExtractedDocument extractWithTika(Path filePath) throws IOException, TikaException, SAXException {
+    private ExtractedDocument extractWithTika(Path filePath, boolean sample) throws IOException, TikaException, SAXException {
         File file = filePath.toFile();
         
-        // Create metadata object to capture document properties
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            return parseWithTika(inputStream, new Metadata(), fileMetadata(filePath), sample);
+        }
+    }
+    
+    private ExtractedDocument extractWithTika(InputStream inputStream, String location, long size, boolean sample)
+            throws IOException, TikaException, SAXException {
+        // Without a file, Tika detects the type from the content and the entry's name
         Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, fileName(location));
+        return parseWithTika(inputStream, metadata, streamMetadata(location, size), sample);
+    }
+    
+    private ExtractedDocument parseWithTika(InputStream inputStream, Metadata metadata, Map<String, String> metadataMap,
+                                            boolean sample) throws IOException, TikaException, SAXException {
+        // Create content handler with no limit on string length, unless only a sample is wanted
+        BodyContentHandler handler = new BodyContentHandler(sample ? sampleChars : -1);
         
-        // Create content handler with no limit on string length
-        BodyContentHandler handler = new BodyContentHandler(-1);
+        try {
+            parser.parse(inputStream, handler, metadata, parseContext());
+        } catch (SAXException | TikaException e) {
+            // Parsing stops once the sample is complete
+            if (!sample || !WriteLimitReachedException.isWriteLimitReached(e)) {
+                throw e;
+            }
+        }
         
+        String extractedText = handler.toString().trim();
+        addTikaMetadata(metadata, metadataMap, extractedText.length(), sample);
+        
+        return new ExtractedDocument(extractedText, metadataMap);
+    }
+    
+    private ParseContext parseContext() {
         // Configure Tika to disable OCR for PDFs (avoids expensive OCR on scanned images)
         PDFParserConfig pdfConfig = new PDFParserConfig();
         pdfConfig.setOcrStrategy(PDFParserConfig.OCR_STRATEGY.NO_OCR);
         ParseContext parseContext = new ParseContext();
         parseContext.set(PDFParserConfig.class, pdfConfig);
-        
-        try (FileInputStream inputStream = new FileInputStream(file)) {
-            parser.parse(inputStream, handler, metadata, parseContext);
-        }
-        
-        String extractedText = handler.toString().trim();
-        
-        // Convert Tika metadata to our format
-        Map<String, String> metadataMap = new HashMap<>();
-        metadataMap.put("file_name", filePath.getFileName().toString());
-        metadataMap.put("file_path", filePath.toString());
-        metadataMap.put("file_size", String.valueOf(Files.size(filePath)));
-        
+        return parseContext;
+    }
+    
+    private void addTikaMetadata(Metadata metadata, Map<String, String> metadataMap, long textLength, boolean sample) {
         // Add Tika metadata
         for (String name : metadata.names()) {
             metadataMap.put(name, metadata.get(name));
         }
         
         metadataMap.put("extraction_method", "apache_tika");
-        metadataMap.put("text_length", String.valueOf(extractedText.length()));
-        
-        return new ExtractedDocument(extractedText, metadataMap);
+        metadataMap.put("text_length", String.valueOf(textLength));
+        if (sample) {
+            metadataMap.put("sampled", "true");
+        }
+    }
+    
+    private Map<String, String> fileMetadata(Path filePath) throws IOException {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("file_name", filePath.getFileName().toString());
+        metadata.put("file_path", filePath.toString());
+        metadata.put("file_size", String.valueOf(Files.size(filePath)));
+        return metadata;
+    }
+    
+    private Map<String, String> streamMetadata(String location, long size) {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("file_name", fileName(location));
+        metadata.put("file_path", location);
+        if (size >= 0) {
+            metadata.put("file_size", String.valueOf(size));
+        }
+        return metadata;
+    }
+    
+    private static String fileName(String location) {
+        return location.substring(location.lastIndexOf('/') + 1);
     }
     
     /**
@@ -241,6 +550,38 @@ public class DocumentExtractionService {
         public boolean isEmpty() {
             return text == null || text.trim().isEmpty();
         }
+        
+        /**
+         * Builds the document to index for the extracted file: the trimmed text, cut at
+         * {@code maxTextSize} characters, with the extraction metadata and the file's path
+         *
+         * @return the document, or null if there is no text
+         */
+        public Document toDocument(String documentId, String path, int maxTextSize) {
+            if (isEmpty()) {
+                return null;
+            }
+            String content = text.trim();
+            if (content.length() > maxTextSize) {
+                logger.warn("Text of {} exceeds maximum size, truncating", path);
+                content = content.substring(0, maxTextSize);
+            }
+            
+            Map<String, Object> documentMetadata = new HashMap<>(metadata);
+            documentMetadata.put("path", path);
+            
+            Document document = new Document(documentId, content, documentMetadata);
+            document.setSource(path);
+            return document;
+        }
+    }
+    
+    /**
+     * Receives the text of a document in segments, in order
+     */
+    @FunctionalInterface
+    public interface TextConsumer {
+        void accept(String segment) throws IOException;
     }
     
     /**
@@ -255,4 +596,13 @@ public class DocumentExtractionService {
             super(message, cause);
         }
     }
+    
+    /**
+     * Exception thrown for a file that is larger than the maximum file size and is skipped
+     */
+    public static class FileTooLargeException extends DocumentExtractionException {
+        public FileTooLargeException(String message) {
+            super(message);
+        }
+    }
 }
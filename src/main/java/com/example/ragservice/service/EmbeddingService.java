@@ -6,9 +6,17 @@ import org.springframework.ai.embedding.EmbeddingClient;
 import org.springframework.ai.embedding.EmbeddingRequest;
 import org.springframework.ai.embedding.EmbeddingResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 @Service
@@ -18,17 +26,87 @@ public class EmbeddingService {
     
     private final EmbeddingClient embeddingClient;
     
+    // Pending embedding calls keyed by (model, text); identical concurrent requests share one future
+    private final Map<InFlightKey, CompletableFuture<List<Double>>> inFlightRequests = new ConcurrentHashMap<>();
+    
+    @Value("${spring.ai.ollama.embedding.model:llama2}")
+    private String embeddingModel = "llama2";
+    
     @Autowired
     public EmbeddingService(EmbeddingClient embeddingClient) {
         this.embeddingClient = embeddingClient;
     }
     
     /**
-     * Generate embeddings for a single text
+     * Generate embeddings for a single text.
+     * Concurrent calls for the same text are collapsed into a single request to the
+     * embedding model; every caller receives its own copy of the shared result.
      * @param text The text to generate embeddings for
      * @return List of embedding values
      */
     public List<Double> generateEmbedding(String text) {
+        InFlightKey key = new InFlightKey(embeddingModel, text);
+        
+        while (true) {
+            CompletableFuture<List<Double>> pending = new CompletableFuture<>();
+            CompletableFuture<List<Double>> existing = inFlightRequests.putIfAbsent(key, pending);
+            
+            if (existing == null) {
+                return executeInFlight(key, pending, text);
+            }
+            
+            logger.debug("Joining in-flight embedding request for text: {}", text.substring(0, Math.min(100, text.length())));
+            try {
+                // Followers get a private copy so callers mutating their embedding cannot affect each other
+                return new ArrayList<>(existing.get());
+            } catch (CancellationException e) {
+                // The leading caller was interrupted; the request is still wanted, so retry (possibly as leader)
+                logger.debug("In-flight embedding request was abandoned by its leader, retrying");
+            } catch (InterruptedException e) {
+                // Only this waiter gives up; the shared request keeps running for the other callers
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for embedding", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException("Failed to generate embedding", cause);
+            }
+        }
+    }
+    
+    /**
+     * Number of distinct embedding requests currently in flight
+     */
+    public int getInFlightRequestCount() {
+        return inFlightRequests.size();
+    }
+    
+    private List<Double> executeInFlight(InFlightKey key, CompletableFuture<List<Double>> pending, String text) {
+        try {
+            List<Double> embedding = computeEmbedding(text);
+            pending.complete(List.copyOf(embedding));
+            return embedding;
+        } catch (RuntimeException | Error e) {
+            // Errors too, or the callers waiting on this request would never wake up
+            if (Thread.currentThread().isInterrupted()) {
+                // Our own cancellation must not surface as a failure to the callers sharing this request
+                pending.cancel(false);
+            } else {
+                pending.completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            // Remove only our own entry so a newer request for the same text is not evicted
+            inFlightRequests.remove(key, pending);
+        }
+    }
+    
+    private List<Double> computeEmbedding(String text) {
         try {
             logger.debug("Generating embedding for text: {}", text.substring(0, Math.min(100, text.length())));
             
@@ -105,4 +183,13 @@ public class EmbeddingService {
         
         return dotProduct / (Math.sqrt(norm1) * Math.sqrt(norm2));
     }
+    
+    /**
+     * Identity of an embedding request: the same text embedded by a different model is a different request
+     */
+    private record InFlightKey(String model, String text) {
+        InFlightKey {
+            Objects.requireNonNull(text, "text");
+        }
+    }
 }
@@ -0,0 +1,189 @@
+package com.example.ragservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads that run in-process extractions, a fixed number of them. A caller waits for a
+ * free thread before its extraction starts, so extractions never queue up behind each other
+ * and the timeout covers the extraction alone. If no thread becomes free within the timeout,
+ * the extraction fails without running.
+ * <p>
+ * A timed-out extraction is interrupted, but parsers often ignore interrupts. Such an
+ * extraction keeps its thread until it ends on its own; it is counted as stuck meanwhile.
+ * Runaway parsers therefore take threads away from the pool instead of adding threads to it.
+ * Formats prone to that are better extracted by the {@link ForkedExtractionPool}.
+ */
+final class ExtractionExecutor {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ExtractionExecutor.class);
+    
+    private final int threads;
+    private final ExecutorService executor;
+    // One permit per thread that is not running an extraction
+    private final Semaphore free;
+    private final AtomicInteger stuck = new AtomicInteger();
+    
+    ExtractionExecutor(int threads) {
+        this.threads = Math.max(1, threads);
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "document-extraction-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.free = new Semaphore(this.threads);
+    }
+    
+    /**
+     * Runs an extraction on a free thread and waits for it
+     *
+     * @param location the file, for messages
+     */
+    <T> T run(Callable<T> extraction, String location, Duration timeout)
+            throws DocumentExtractionService.DocumentExtractionException {
+        try {
+            if (!free.tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new DocumentExtractionService.DocumentExtractionException(String.format(
+                    "No extraction thread became free within %d seconds (%d of %d stuck) for file: %s",
+                    timeout.getSeconds(), stuck.get(), threads, location), new TimeoutException());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DocumentExtractionService.DocumentExtractionException(
+                "Document extraction was interrupted for file: " + location, e);
+        }
+        
+        Attempt attempt = new Attempt();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                if (!attempt.start()) {
+                    return null;
+                }
+                try {
+                    return extraction.call();
+                } finally {
+                    if (attempt.end()) {
+                        stuck.decrementAndGet();
+                        logger.info("Timed-out extraction of {} ended; its thread is free again", location);
+                    }
+                    free.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            free.release();
+            throw new DocumentExtractionService.DocumentExtractionException(
+                "Failed to start the extraction of file: " + location, e);
+        }
+        
+        try {
+            return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true); // Interrupt the extraction task
+            if (giveUp(attempt)) {
+                int stuckNow = stuck.incrementAndGet();
+                logger.warn("Document extraction timed out after {} seconds for file: {}; {} of {} extraction threads are stuck",
+                           timeout.getSeconds(), location, stuckNow, threads);
+            }
+            throw new DocumentExtractionService.DocumentExtractionException(
+                String.format("Document extraction timed out after %d seconds for file: %s",
+                             timeout.getSeconds(), location), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DocumentExtractionService.DocumentExtractionException) {
+                throw (DocumentExtractionService.DocumentExtractionException) cause;
+            }
+            throw new DocumentExtractionService.DocumentExtractionException("Failed to extract text from file: " + location, cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            if (giveUp(attempt)) {
+                stuck.incrementAndGet();
+            }
+            Thread.currentThread().interrupt();
+            throw new DocumentExtractionService.DocumentExtractionException(
+                "Document extraction was interrupted for file: " + location, e);
+        }
+    }
+    
+    int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Threads still running an extraction that timed out
+     */
+    int getStuck() {
+        return stuck.get();
+    }
+    
+    void shutdownNow() {
+        executor.shutdownNow();
+    }
+    
+    /**
+     * Gives up waiting for an extraction
+     *
+     * @return true if it is still running and now counts as stuck
+     */
+    private boolean giveUp(Attempt attempt) {
+        Attempt.State state = attempt.abandon();
+        if (state == Attempt.State.NOT_STARTED) {
+            // It never started, so its thread was not taken
+            free.release();
+        }
+        return state == Attempt.State.STUCK;
+    }
+    
+    /**
+     * The state of one extraction, shared by the caller that may give up on it and the thread
+     * that runs it
+     */
+    private static final class Attempt {
+        
+        enum State { NOT_STARTED, ENDED, STUCK }
+        
+        private boolean started;
+        private boolean ended;
+        private boolean abandoned;
+        private boolean stuck;
+        
+        /**
+         * @return false if the caller gave up before the extraction started; it is then skipped
+         */
+        synchronized boolean start() {
+            started = !abandoned;
+            return started;
+        }
+        
+        /**
+         * @return true if the extraction counted as stuck
+         */
+        synchronized boolean end() {
+            ended = true;
+            return stuck;
+        }
+        
+        synchronized State abandon() {
+            abandoned = true;
+            if (!started) {
+                return State.NOT_STARTED;
+            }
+            stuck = !ended;
+            return stuck ? State.STUCK : State.ENDED;
+        }
+    }
+}
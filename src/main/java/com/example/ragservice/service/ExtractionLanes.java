@@ -0,0 +1,260 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.dto.ExtractionLaneStats;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * The extraction threads of a directory scan, split by file size. Small files go to the
+ * fast lane; files of at least the heavy file size go to the heavy lane, which has its own,
+ * smaller number of threads. A few huge files therefore occupy only the heavy lane while the
+ * fast lane keeps working through the small ones.
+ * <p>
+ * The fast lane limits the files submitted to it but not yet written. The scan stops handing
+ * out files while the fast lane is full, which also stops discovery. Heavy files are numbered
+ * from {@link #HEAVY_SEQUENCE_BASE}, so ordered output holds their results back until
+ * discovery has ended. The heavy lane therefore limits the files being extracted and,
+ * separately, the text of the results taken but not yet written. Heavy files that do not fit
+ * wait in the heavy lane until finished extractions or written results make room.
+ * <p>
+ * Owned by the scan's dispatch thread; only the throughput counters are updated by the
+ * extraction threads.
+ */
+final class ExtractionLanes {
+    
+    static final long HEAVY_SEQUENCE_BASE = Long.MAX_VALUE / 2;
+    
+    private final BlockingQueue<Future<ScanCsvWriter.Extraction>> completed = new LinkedBlockingQueue<>();
+    private final Lane fast;
+    private final Lane heavy;
+    private final long heavyFileSize;
+    // Files submitted to a lane whose result has not been taken yet
+    private int extracting;
+    
+    /**
+     * @param heavyFileSize files of at least this many bytes go to the heavy lane; 0 = no heavy lane
+     * @param heavyHeldBackChars characters of heavy results taken but not yet written after which
+     *                           the heavy lane starts no more extractions
+     */
+    ExtractionLanes(String scanId, int fastWorkers, int fastWindow, int heavyWorkers, int heavyWindow, long heavyFileSize,
+                    long heavyHeldBackChars) {
+        this.fast = new Lane("fast", scanId, fastWorkers, fastWindow, 0, 0);
+        this.heavyFileSize = heavyFileSize;
+        this.heavy = heavyFileSize > 0
+            ? new Lane("heavy", scanId, heavyWorkers, heavyWindow, HEAVY_SEQUENCE_BASE, Math.max(1, heavyHeldBackChars))
+            : null;
+    }
+    
+    /**
+     * Submits the extraction of a file to the lane for its size, or lets it wait there
+     *
+     * @param extraction creates the extraction task for the sequence number the file is given
+     */
+    void submit(long size, LongFunction<Callable<ScanCsvWriter.Extraction>> extraction) {
+        Lane lane = heavy != null && size >= heavyFileSize ? heavy : fast;
+        lane.offer(size, extraction.apply(lane.nextSequence++));
+    }
+    
+    /**
+     * Whether the fast lane has as many files in flight or held back as it may have
+     */
+    boolean isFastFull() {
+        return fast.isFull();
+    }
+    
+    /**
+     * The sequence number after the last fast file; ordered output continues with the heavy files there
+     */
+    long getFastSequenceEnd() {
+        return fast.nextSequence;
+    }
+    
+    /**
+     * Waits for the next finished extraction
+     */
+    ScanCsvWriter.Extraction take() throws InterruptedException, ExecutionException {
+        ScanCsvWriter.Extraction result = completed.take().get();
+        extracting--;
+        laneOf(result).taken(result);
+        return result;
+    }
+    
+    /**
+     * The next finished extraction, or null if none has finished
+     */
+    ScanCsvWriter.Extraction poll() throws InterruptedException, ExecutionException {
+        Future<ScanCsvWriter.Extraction> done = completed.poll();
+        if (done == null) {
+            return null;
+        }
+        extracting--;
+        ScanCsvWriter.Extraction result = done.get();
+        laneOf(result).taken(result);
+        return result;
+    }
+    
+    /**
+     * Counts results as written, which makes room for waiting files
+     */
+    void written(List<ScanCsvWriter.Extraction> results) {
+        for (ScanCsvWriter.Extraction result : results) {
+            laneOf(result).written(result);
+        }
+    }
+    
+    /**
+     * Whether every submitted file has been taken and none is waiting
+     */
+    boolean isIdle() {
+        return extracting == 0 && (heavy == null || heavy.waiting.isEmpty());
+    }
+    
+    List<ExtractionLaneStats> getStats() {
+        return heavy != null ? List.of(fast.stats(), heavy.stats()) : List.of(fast.stats());
+    }
+    
+    private Lane laneOf(ScanCsvWriter.Extraction result) {
+        return heavy != null && result.sequence() >= HEAVY_SEQUENCE_BASE ? heavy : fast;
+    }
+    
+    /**
+     * Characters of text a result holds in memory until it is written
+     */
+    private static long textLength(ScanCsvWriter.Extraction result) {
+        if (result.entries() != null) {
+            return result.entries().stream().mapToLong(ExtractionLanes::textLength).sum();
+        }
+        return result.document() != null && result.document().getText() != null ? result.document().getText().length() : 0;
+    }
+    
+    void shutdownNow() {
+        fast.pool.shutdownNow();
+        if (heavy != null) {
+            heavy.pool.shutdownNow();
+        }
+    }
+    
+    private final class Lane {
+        private final String name;
+        private final int workers;
+        private final int window;
+        private final ExecutorService pool;
+        private final CompletionService<ScanCsvWriter.Extraction> completions;
+        // Limits the text of results taken but not written, whose files then leave the window; 0 = results
+        // count against the window until they are written
+        private final long maxHeldBackChars;
+        private final Deque<Runnable> waiting = new ArrayDeque<>();
+        private long nextSequence;
+        private long submitted;
+        private long taken;
+        private long written;
+        private long heldBackChars;
+        
+        private final AtomicLong filesExtracted = new AtomicLong();
+        private final AtomicLong bytesExtracted = new AtomicLong();
+        private final AtomicLong extractionNanos = new AtomicLong();
+        private final AtomicLong firstStartNanos = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicLong lastEndNanos = new AtomicLong(Long.MIN_VALUE);
+        
+        private Lane(String name, String scanId, int workers, int window, long firstSequence, long maxHeldBackChars) {
+            this.name = name;
+            this.workers = workers;
+            this.window = Math.max(workers, window);
+            this.nextSequence = firstSequence;
+            this.maxHeldBackChars = maxHeldBackChars;
+            AtomicInteger threadCounter = new AtomicInteger();
+            this.pool = Executors.newFixedThreadPool(workers, runnable -> {
+                Thread thread = new Thread(runnable, "scan-" + name + "-" + scanId + "-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.completions = new ExecutorCompletionService<>(pool, completed);
+        }
+        
+        private boolean isFull() {
+            if (maxHeldBackChars > 0) {
+                return submitted - taken >= window || heldBackChars >= maxHeldBackChars;
+            }
+            return submitted - written >= window;
+        }
+        
+        private void offer(long size, Callable<ScanCsvWriter.Extraction> extraction) {
+            Runnable submission = () -> {
+                completions.submit(() -> timed(size, extraction));
+                submitted++;
+                extracting++;
+            };
+            if (isFull()) {
+                waiting.add(submission);
+            } else {
+                submission.run();
+            }
+        }
+        
+        private void taken(ScanCsvWriter.Extraction result) {
+            taken++;
+            if (maxHeldBackChars > 0) {
+                heldBackChars += textLength(result);
+                startWaiting();
+            }
+        }
+        
+        private void written(ScanCsvWriter.Extraction result) {
+            written++;
+            if (maxHeldBackChars > 0) {
+                heldBackChars -= textLength(result);
+            }
+            startWaiting();
+        }
+        
+        private void startWaiting() {
+            while (!waiting.isEmpty() && !isFull()) {
+                waiting.poll().run();
+            }
+        }
+        
+        private ScanCsvWriter.Extraction timed(long size, Callable<ScanCsvWriter.Extraction> extraction) throws Exception {
+            long start = System.nanoTime();
+            firstStartNanos.compareAndSet(Long.MIN_VALUE, start);
+            try {
+                return extraction.call();
+            } finally {
+                long end = System.nanoTime();
+                extractionNanos.addAndGet(end - start);
+                lastEndNanos.accumulateAndGet(end, Math::max);
+                bytesExtracted.addAndGet(size);
+                filesExtracted.incrementAndGet();
+            }
+        }
+        
+        private ExtractionLaneStats stats() {
+            ExtractionLaneStats stats = new ExtractionLaneStats(name, workers);
+            long files = filesExtracted.get();
+            long bytes = bytesExtracted.get();
+            stats.setFilesExtracted(files);
+            stats.setBytesExtracted(bytes);
+            stats.setFilesWaiting(waiting.size());
+            stats.setExtractionMs(extractionNanos.get() / 1_000_000);
+            long elapsedNanos = files > 0 ? lastEndNanos.get() - firstStartNanos.get() : 0;
+            if (elapsedNanos > 0) {
+                stats.setFilesPerSecond(files * 1e9 / elapsedNanos);
+                stats.setBytesPerSecond(bytes * 1e9 / elapsedNanos);
+            }
+            return stats;
+        }
+    }
+}
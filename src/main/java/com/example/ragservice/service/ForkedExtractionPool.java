@@ -0,0 +1,288 @@
+package com.example.ragservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarFile;
+
+/**
+ * Extracts documents in child JVMs, for formats whose parsers may run away. A child that
+ * exceeds the timeout is killed; one that runs out of heap exits. Either way the extraction
+ * fails, the child is replaced by a fresh one on demand, and the service itself is
+ * unaffected. Children are also replaced after a number of extractions, which releases
+ * whatever the parsers leaked.
+ * <p>
+ * Children are started when needed, up to the number of workers, and reused. A caller waits
+ * for a free worker, or fails if none becomes free within the timeout. The parent and a
+ * child talk over the child's standard input and output; see {@link ForkedExtractionWorker}.
+ */
+final class ForkedExtractionPool implements Closeable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ForkedExtractionPool.class);
+    
+    // The exit code of a JVM stopped by -XX:+ExitOnOutOfMemoryError
+    private static final int OUT_OF_MEMORY_EXIT_CODE = 3;
+    private static final String SPRING_BOOT_LAUNCHER = "org.springframework.boot.loader.launch.PropertiesLauncher";
+    
+    private final int workers;
+    private final int maxHeapMb;
+    private final int maxExtractionsPerProcess;
+    private final List<String> command;
+    private final BlockingDeque<Child> idle = new LinkedBlockingDeque<>();
+    // One permit per worker that is not extracting
+    private final Semaphore free;
+    private final ScheduledExecutorService watchdog;
+    private final AtomicLong processesStarted = new AtomicLong();
+    private final AtomicLong processesKilled = new AtomicLong();
+    private volatile boolean closed;
+    
+    /**
+     * @param maxExtractionsPerProcess extractions after which a child is replaced; 0 = no limit
+     * @param sampleChars characters extracted from oversized files that are sampled
+     */
+    ForkedExtractionPool(int workers, int maxHeapMb, int maxExtractionsPerProcess, int sampleChars) {
+        this.workers = Math.max(1, workers);
+        this.maxHeapMb = maxHeapMb;
+        this.maxExtractionsPerProcess = maxExtractionsPerProcess;
+        this.command = childCommand(maxHeapMb, sampleChars);
+        this.free = new Semaphore(this.workers);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "forked-extraction-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Extracts a file in a child JVM
+     *
+     * @param sample whether only the beginning of the file is extracted
+     */
+    DocumentExtractionService.ExtractedDocument extract(Path file, boolean sample, Duration timeout)
+            throws DocumentExtractionService.DocumentExtractionException {
+        try {
+            if (!free.tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new DocumentExtractionService.DocumentExtractionException(String.format(
+                    "No extraction process became free within %d seconds for file: %s", timeout.getSeconds(), file),
+                    new TimeoutException());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DocumentExtractionService.DocumentExtractionException(
+                "Document extraction was interrupted for file: " + file, e);
+        }
+        try {
+            Child child = idle.pollFirst();
+            // A child may have died while it was idle
+            while (child != null && !child.process.isAlive()) {
+                child.destroy();
+                child = idle.pollFirst();
+            }
+            if (child == null) {
+                child = start();
+            }
+            return extract(child, file, sample, timeout);
+        } finally {
+            free.release();
+        }
+    }
+    
+    private DocumentExtractionService.ExtractedDocument extract(Child child, Path file, boolean sample, Duration timeout)
+            throws DocumentExtractionService.DocumentExtractionException {
+        AtomicBoolean killed = new AtomicBoolean();
+        ScheduledFuture<?> kill = watchdog.schedule(() -> {
+            killed.set(true);
+            child.process.destroyForcibly();
+        }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        boolean reusable = false;
+        try {
+            ForkedExtractionWorker.writeString(child.out, file.toString());
+            child.out.writeBoolean(sample);
+            child.out.flush();
+            
+            byte answer = child.in.readByte();
+            if (answer != ForkedExtractionWorker.DOCUMENT && answer != ForkedExtractionWorker.ERROR) {
+                throw new IOException("Unexpected output from the extraction process");
+            }
+            if (answer == ForkedExtractionWorker.ERROR) {
+                String message = ForkedExtractionWorker.readString(child.in);
+                reusable = true;
+                throw new DocumentExtractionService.DocumentExtractionException(message);
+            }
+            String text = ForkedExtractionWorker.readString(child.in);
+            int metadataSize = child.in.readInt();
+            Map<String, String> metadata = new HashMap<>();
+            for (int i = 0; i < metadataSize; i++) {
+                metadata.put(ForkedExtractionWorker.readString(child.in), ForkedExtractionWorker.readString(child.in));
+            }
+            metadata.put("extraction_process", "forked");
+            reusable = true;
+            return new DocumentExtractionService.ExtractedDocument(text, metadata);
+        } catch (IOException e) {
+            if (killed.get()) {
+                processesKilled.incrementAndGet();
+                logger.warn("Document extraction timed out after {} seconds for file: {}; its process was killed",
+                           timeout.getSeconds(), file);
+                throw new DocumentExtractionService.DocumentExtractionException(
+                    String.format("Document extraction timed out after %d seconds for file: %s",
+                                 timeout.getSeconds(), file), new TimeoutException());
+            }
+            throw new DocumentExtractionService.DocumentExtractionException(
+                "Extraction process " + describeExit(child) + " for file: " + file, e);
+        } finally {
+            kill.cancel(false);
+            child.extractions++;
+            if (reusable && !killed.get() && !closed
+                    && (maxExtractionsPerProcess <= 0 || child.extractions < maxExtractionsPerProcess)) {
+                idle.addFirst(child);
+            } else {
+                child.destroy();
+            }
+        }
+    }
+    
+    private Child start() throws DocumentExtractionService.DocumentExtractionException {
+        if (closed) {
+            throw new DocumentExtractionService.DocumentExtractionException("Forked extraction has been shut down");
+        }
+        try {
+            Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+            long started = processesStarted.incrementAndGet();
+            logger.debug("Started extraction process {} ({} started so far)", process.pid(), started);
+            return new Child(process);
+        } catch (IOException e) {
+            throw new DocumentExtractionService.DocumentExtractionException(
+                "Failed to start an extraction process: " + e.getMessage(), e);
+        }
+    }
+    
+    private String describeExit(Child child) {
+        try {
+            if (!child.process.waitFor(1, TimeUnit.SECONDS)) {
+                return "stopped responding";
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "stopped responding";
+        }
+        int exitCode = child.process.exitValue();
+        return exitCode == OUT_OF_MEMORY_EXIT_CODE
+            ? "ran out of memory (" + maxHeapMb + " MB)"
+            : "exited with code " + exitCode;
+    }
+    
+    /**
+     * The command that starts a child with the service's own classes. From a Spring Boot jar,
+     * the worker is started through the jar's launcher, which can load the nested jars.
+     */
+    private static List<String> childCommand(int maxHeapMb, int sampleChars) {
+        String java = ProcessHandle.current().info().command()
+            .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        String classPath = System.getProperty("java.class.path");
+        // The JVM's own messages would otherwise mix with the answers on standard output
+        List<String> command = new ArrayList<>(List.of(java, "-Xmx" + maxHeapMb + "m", "-XX:+ExitOnOutOfMemoryError",
+            "-XX:+DisplayVMOutputToStderr", "-Djava.awt.headless=true"));
+        if (isSpringBootJar(classPath)) {
+            command.addAll(List.of("-Dloader.main=" + ForkedExtractionWorker.class.getName(), "-cp", classPath,
+                SPRING_BOOT_LAUNCHER));
+        } else {
+            command.addAll(List.of("-cp", classPath, ForkedExtractionWorker.class.getName()));
+        }
+        command.add(String.valueOf(sampleChars));
+        return command;
+    }
+    
+    private static boolean isSpringBootJar(String classPath) {
+        if (classPath.contains(File.pathSeparator) || !classPath.endsWith(".jar")) {
+            return false;
+        }
+        try (JarFile jar = new JarFile(classPath)) {
+            return jar.getManifest() != null && jar.getManifest().getMainAttributes().getValue("Spring-Boot-Classes") != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    int getWorkers() {
+        return workers;
+    }
+    
+    long getProcessesStarted() {
+        return processesStarted.get();
+    }
+    
+    /**
+     * Children killed because an extraction timed out
+     */
+    long getProcessesKilled() {
+        return processesKilled.get();
+    }
+    
+    /**
+     * Stops the idle children; the busy ones are stopped when their extraction ends
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Child child;
+        while ((child = idle.pollFirst()) != null) {
+            child.destroy();
+        }
+        watchdog.shutdownNow();
+    }
+    
+    /**
+     * A child JVM and its end of the pipes
+     */
+    private static final class Child {
+        private final Process process;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        private int extractions;
+        
+        private Child(Process process) {
+            this.process = process;
+            this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+        
+        private void destroy() {
+            process.destroyForcibly();
+            try {
+                out.close();
+            } catch (IOException e) {
+                // The process is gone
+            }
+            try {
+                in.close();
+            } catch (IOException e) {
+                // The process is gone
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.ragservice.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * The main class of the child JVMs of the {@link ForkedExtractionPool}. Reads requests from
+ * standard input and answers each on standard output until its input ends; anything else
+ * printed goes to standard error.
+ * <p>
+ * A request is the file's path and whether to sample it. The answer is {@link #DOCUMENT},
+ * the text and the metadata, or {@link #ERROR} and the error message. Strings are
+ * length-prefixed UTF-8.
+ */
+final class ForkedExtractionWorker {
+    
+    static final byte DOCUMENT = 'D';
+    static final byte ERROR = 'E';
+    
+    private ForkedExtractionWorker() {
+    }
+    
+    /**
+     * @param args the number of characters extracted from a sampled file
+     */
+    public static void main(String[] args) throws IOException {
+        // Standard output carries the answers only
+        PrintStream answers = System.out;
+        System.setOut(System.err);
+        
+        DocumentExtractionService extractionService = new DocumentExtractionService(Integer.parseInt(args[0]));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(answers));
+        while (true) {
+            String file;
+            boolean sample;
+            try {
+                file = readString(in);
+                sample = in.readBoolean();
+            } catch (EOFException e) {
+                return;
+            }
+            
+            DocumentExtractionService.ExtractedDocument document;
+            try {
+                document = extractionService.extractInProcess(Path.of(file), sample);
+            } catch (Exception e) {
+                out.writeByte(ERROR);
+                writeString(out, "Failed to extract text from file: " + file + ": " + e);
+                out.flush();
+                continue;
+            }
+            out.writeByte(DOCUMENT);
+            writeString(out, document.getText());
+            out.writeInt(document.getMetadata().size());
+            for (Map.Entry<String, String> entry : document.getMetadata().entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+            out.flush();
+        }
+    }
+    
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
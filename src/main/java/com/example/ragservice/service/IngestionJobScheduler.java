@@ -0,0 +1,312 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.dto.ScheduledJobInfo;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs long ingestion jobs (CSV and NDJSON streams, directory scans) on a dedicated,
+ * bounded pool of threads instead of the common fork-join pool.
+ * <p>
+ * Every job has a weight in capacity units. Queued jobs start in priority order, first come
+ * first served within a priority, while the weights of the running jobs fit into the capacity
+ * ({@code document.processing.csv.max-concurrent-streams} unless configured otherwise). A job
+ * that does not fit holds back the jobs behind it, so heavy jobs are not starved by light ones.
+ * <p>
+ * Long jobs share the capacity by cooperative time slicing: they call {@link Job#yieldSlice}
+ * between units of work. Once a job has run for a full slice while another job is waiting,
+ * it gives its capacity back and queues again behind the jobs of its priority. A paused job
+ * keeps its thread, which is why the pool has more threads than capacity units.
+ */
+@Service
+public class IngestionJobScheduler {
+    
+    private static final Logger logger = LoggerFactory.getLogger(IngestionJobScheduler.class);
+    
+    public static final String STATE_QUEUED = "QUEUED";
+    public static final String STATE_RUNNING = "RUNNING";
+    public static final String STATE_CANCELLED = "CANCELLED";
+    
+    // Higher priority first, then in order of (re)queueing
+    private static final Comparator<Job> QUEUE_ORDER = Comparator
+        .comparingInt((Job job) -> -job.priority)
+        .thenComparingLong(job -> job.sequence);
+    
+    @Value("${document.processing.jobs.max-concurrent:${document.processing.csv.max-concurrent-streams:5}}")
+    private int capacity = 5;
+    
+    @Value("${document.processing.jobs.max-threads:0}")
+    private int maxThreads = 0; // 0 = twice the capacity
+    
+    @Value("${document.processing.jobs.time-slice-seconds:60}")
+    private long timeSliceSeconds = 60;
+    
+    private final PriorityQueue<Job> queue = new PriorityQueue<>(QUEUE_ORDER);
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private int threads;
+    private int runningWeight;
+    private int threadsInUse;
+    private long nextSequence;
+    private ExecutorService executor;
+    
+    @PostConstruct
+    void start() {
+        capacity = Math.max(1, capacity);
+        threads = maxThreads > 0 ? Math.max(maxThreads, capacity) : 2 * capacity;
+        
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "ingestion-job-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+        
+        logger.info("Ingestion job scheduler started (capacity={}, threads={}, timeSlice={}s)", capacity, threads, timeSliceSeconds);
+    }
+    
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+    
+    /**
+     * Queues a job and starts it as soon as there is capacity for it
+     *
+     * @param jobId unique ID of the job, e.g. the stream or scan ID
+     * @param type kind of job, shown in the job list
+     * @param priority jobs with a higher priority start first
+     * @param weight capacity units the job occupies while running; capped at the total capacity
+     * @param task the work; receives the job so it can yield its time slice
+     */
+    public Job submit(String jobId, String type, int priority, int weight, Consumer<Job> task) {
+        Job job = new Job(jobId, type, priority, Math.max(1, Math.min(weight, capacity)), task);
+        synchronized (this) {
+            job.sequence = nextSequence++;
+            jobs.put(jobId, job);
+            queue.add(job);
+            logger.debug("Queued {} job {} (priority={}, weight={})", type, jobId, priority, job.weight);
+            dispatch();
+        }
+        return job;
+    }
+    
+    /**
+     * Removes a queued job. A job that is paused in {@link Job#yieldSlice} is woken up and is
+     * expected to notice that it was cancelled. Running jobs are stopped by their owners.
+     *
+     * @return true if the job was waiting in the queue
+     */
+    public synchronized boolean cancel(String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null || !STATE_QUEUED.equals(job.state)) {
+            return false;
+        }
+        queue.remove(job);
+        job.state = STATE_CANCELLED;
+        if (!job.started) {
+            jobs.remove(jobId, job);
+        }
+        notifyAll();
+        dispatch();
+        return true;
+    }
+    
+    /**
+     * Lists queued and running jobs, running jobs first and queued jobs in the order they will start
+     */
+    public synchronized List<ScheduledJobInfo> getJobs() {
+        List<ScheduledJobInfo> result = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            if (STATE_RUNNING.equals(job.state)) {
+                result.add(job.toInfo(null));
+            }
+        }
+        List<Job> queued = new ArrayList<>(queue);
+        queued.sort(QUEUE_ORDER);
+        for (int i = 0; i < queued.size(); i++) {
+            result.add(queued.get(i).toInfo(i + 1));
+        }
+        return result;
+    }
+    
+    /**
+     * @return true if the job is queued, or a thread still runs it; a cancelled job keeps
+     *         running until it notices
+     */
+    public synchronized boolean isActive(String jobId) {
+        return jobs.containsKey(jobId);
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    public synchronized int getRunningWeight() {
+        return runningWeight;
+    }
+    
+    /**
+     * Starts or resumes queued jobs while the head of the queue fits
+     */
+    private void dispatch() {
+        while (!queue.isEmpty()) {
+            Job head = queue.peek();
+            if (runningWeight + head.weight > capacity || (!head.started && threadsInUse >= threads)) {
+                return;
+            }
+            queue.poll();
+            runningWeight += head.weight;
+            head.state = STATE_RUNNING;
+            head.sliceStartNanos = System.nanoTime();
+            
+            if (head.started) {
+                notifyAll(); // Resumes the job waiting in awaitTurn
+            } else {
+                head.started = true;
+                head.startedAt = LocalDateTime.now();
+                threadsInUse++;
+                executor.execute(() -> run(head));
+            }
+        }
+    }
+    
+    private void run(Job job) {
+        try {
+            job.task.accept(job);
+        } catch (RuntimeException e) {
+            logger.error("Ingestion job {} failed", job.jobId, e);
+        } finally {
+            synchronized (this) {
+                if (STATE_RUNNING.equals(job.state)) {
+                    runningWeight -= job.weight;
+                }
+                threadsInUse--;
+                jobs.remove(job.jobId, job);
+                dispatch();
+            }
+        }
+    }
+    
+    /**
+     * Gives the capacity of a job back if its slice is used up and a waiting job could take it
+     *
+     * @return true if the job was queued again and must wait for its turn
+     */
+    private synchronized boolean pauseIfDue(Job job, Runnable onPause) {
+        Job head = queue.peek();
+        if (head == null || !STATE_RUNNING.equals(job.state)
+                || System.nanoTime() - job.sliceStartNanos < TimeUnit.SECONDS.toNanos(timeSliceSeconds)) {
+            return false;
+        }
+        // Pausing only helps if the next job has at least the same priority and can use the capacity
+        if (head.priority < job.priority || runningWeight - job.weight + head.weight > capacity
+                || (!head.started && threadsInUse >= threads)) {
+            return false;
+        }
+        
+        onPause.run();
+        runningWeight -= job.weight;
+        job.state = STATE_QUEUED;
+        job.sequence = nextSequence++;
+        job.slices++;
+        queue.add(job);
+        logger.debug("Job {} yields its time slice to {}", job.jobId, head.jobId);
+        dispatch();
+        return true;
+    }
+    
+    private synchronized void awaitTurn(Job job) throws InterruptedException {
+        try {
+            while (STATE_QUEUED.equals(job.state)) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            if (STATE_QUEUED.equals(job.state)) {
+                queue.remove(job);
+                job.state = STATE_CANCELLED;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * A job handed to the scheduler
+     */
+    public final class Job {
+        private final String jobId;
+        private final String type;
+        private final int priority;
+        private final int weight;
+        private final Consumer<Job> task;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        
+        // Guarded by the scheduler
+        private String state = STATE_QUEUED;
+        private long sequence;
+        private boolean started;
+        private LocalDateTime startedAt;
+        private long sliceStartNanos;
+        private int slices;
+        
+        private Job(String jobId, String type, int priority, int weight, Consumer<Job> task) {
+            this.jobId = jobId;
+            this.type = type;
+            this.priority = priority;
+            this.weight = weight;
+            this.task = task;
+        }
+        
+        public String getJobId() {
+            return jobId;
+        }
+        
+        /**
+         * Called by the running job between units of work. If its time slice is used up and
+         * another job is waiting, the job is queued again and this call blocks until it is its
+         * turn or it was cancelled.
+         *
+         * @param onPause run before the capacity is given away, e.g. to show the job as queued;
+         *                runs while the scheduler is locked and must be quick
+         * @return true if the job was paused
+         */
+        public boolean yieldSlice(Runnable onPause) throws InterruptedException {
+            if (!pauseIfDue(this, onPause)) {
+                return false;
+            }
+            awaitTurn(this);
+            return true;
+        }
+        
+        private ScheduledJobInfo toInfo(Integer queuePosition) {
+            ScheduledJobInfo info = new ScheduledJobInfo(jobId, type, state);
+            info.setPriority(priority);
+            info.setWeight(weight);
+            info.setQueuePosition(queuePosition);
+            info.setSubmittedAt(submittedAt);
+            info.setStartedAt(startedAt);
+            info.setTimeSlices(slices);
+            return info;
+        }
+    }
+}
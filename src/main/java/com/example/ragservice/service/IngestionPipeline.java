@@ -0,0 +1,503 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.model.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staged ingestion pipeline used by the streaming ingestion paths.
+ * <p>
+ * The producing (parser) thread submits documents, which are grouped into batches,
+ * embedded by a pool of parallel workers and bulk indexed by a single writer thread.
+ * Bounded queues between the stages provide backpressure, so a fast parser never
+ * buffers more than {@code queueCapacity} batches ahead of the slowest stage.
+ * <p>
+ * A pipeline is single use: {@link #submit(Document)} and {@link #finish()} must be
+ * called from the producing thread, while {@link #cancel()} and {@link #getStats()}
+ * may be called from any thread. An optional {@link BatchListener} is told when each
+ * batch is sealed and when it has been settled. With an {@link AdaptiveBatchSizer} the
+ * size of each batch follows the latency and throttling feedback of both stages instead
+ * of being fixed.
+ */
+public class IngestionPipeline {
+    
+    private static final Logger logger = LoggerFactory.getLogger(IngestionPipeline.class);
+    
+    private static final int MAX_ERRORS = 100;
+    
+    private static final int TOO_MANY_REQUESTS = 429;
+    
+    // Marks the end of the stream in the stage queues
+    private static final Batch END_OF_STREAM = new Batch(-1, List.of(), 0);
+    
+    private final String pipelineId;
+    private final String indexName;
+    private final EmbeddingService embeddingService;
+    private final VectorStoreService vectorStoreService;
+    private final int batchSize;
+    private final int embeddingWorkers;
+    private final BatchListener batchListener;
+    private final AdaptiveBatchSizer batchSizer;
+    
+    private final BlockingQueue<Batch> embeddingQueue;
+    private final BlockingQueue<Batch> indexingQueue;
+    private final ExecutorService executor;
+    private final CountDownLatch indexerFinished = new CountDownLatch(1);
+    private final AtomicInteger runningEmbeddingWorkers;
+    
+    private final AtomicLong documentsSubmitted = new AtomicLong();
+    private final AtomicLong documentsEmbedded = new AtomicLong();
+    private final AtomicLong documentsIndexed = new AtomicLong();
+    private final AtomicLong documentsFailed = new AtomicLong();
+    private final AtomicLong batchesSubmitted = new AtomicLong();
+    private final AtomicLong batchesIndexed = new AtomicLong();
+    private final AtomicLong embeddingNanos = new AtomicLong();
+    private final AtomicLong indexingNanos = new AtomicLong();
+    private final Queue<String> errors = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger errorCount = new AtomicInteger();
+    
+    private final long startNanos = System.nanoTime();
+    private volatile boolean cancelled;
+    private boolean finished;
+    
+    // Owned by the producing thread
+    private List<Document> currentBatch;
+    private long nextBatchSequence;
+    
+    /**
+     * Creates and starts a pipeline. The target index must already exist.
+     */
+    public IngestionPipeline(String pipelineId, String indexName, EmbeddingService embeddingService,
+                             VectorStoreService vectorStoreService, int batchSize, int embeddingWorkers,
+                             int queueCapacity) {
+        this(pipelineId, indexName, embeddingService, vectorStoreService, batchSize, embeddingWorkers, queueCapacity, null);
+    }
+    
+    /**
+     * Creates and starts a pipeline that reports batch progress to a listener. The target index must already exist.
+     */
+    public IngestionPipeline(String pipelineId, String indexName, EmbeddingService embeddingService,
+                             VectorStoreService vectorStoreService, int batchSize, int embeddingWorkers,
+                             int queueCapacity, BatchListener batchListener) {
+        this(pipelineId, indexName, embeddingService, vectorStoreService, batchSize, embeddingWorkers, queueCapacity,
+             batchListener, null);
+    }
+    
+    /**
+     * Creates and starts a pipeline. With a batch sizer, {@code batchSize} is ignored and every
+     * batch is sealed at the size the sizer currently chooses. The target index must already exist.
+     */
+    public IngestionPipeline(String pipelineId, String indexName, EmbeddingService embeddingService,
+                             VectorStoreService vectorStoreService, int batchSize, int embeddingWorkers,
+                             int queueCapacity, BatchListener batchListener, AdaptiveBatchSizer batchSizer) {
+        this.pipelineId = pipelineId;
+        this.indexName = indexName;
+        this.embeddingService = embeddingService;
+        this.vectorStoreService = vectorStoreService;
+        this.batchSize = Math.max(1, batchSize);
+        this.embeddingWorkers = Math.max(1, embeddingWorkers);
+        this.batchListener = batchListener;
+        this.batchSizer = batchSizer;
+        this.embeddingQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.indexingQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.runningEmbeddingWorkers = new AtomicInteger(this.embeddingWorkers);
+        this.currentBatch = new ArrayList<>(targetBatchSize());
+        this.executor = Executors.newFixedThreadPool(this.embeddingWorkers + 1, namedThreadFactory(pipelineId));
+        
+        for (int i = 0; i < this.embeddingWorkers; i++) {
+            executor.execute(this::runEmbeddingWorker);
+        }
+        executor.execute(this::runIndexer);
+        
+        logger.debug("Started ingestion pipeline {} for index {} (batchSize={}, adaptive={}, embeddingWorkers={}, queueCapacity={})",
+                    pipelineId, indexName, targetBatchSize(), batchSizer != null, this.embeddingWorkers, queueCapacity);
+    }
+    
+    /**
+     * Adds a document to the pipeline, blocking while the downstream stages are saturated.
+     *
+     * @return false if the pipeline has been cancelled and the document was dropped
+     */
+    public boolean submit(Document document) throws InterruptedException {
+        if (cancelled) {
+            return false;
+        }
+        
+        currentBatch.add(document);
+        documentsSubmitted.incrementAndGet();
+        
+        if (currentBatch.size() >= targetBatchSize()) {
+            flushCurrentBatch();
+        }
+        return !cancelled;
+    }
+    
+    /**
+     * Flushes the last partial batch and waits until every submitted document has been
+     * indexed or has failed.
+     */
+    public void finish() throws InterruptedException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        
+        try {
+            flushCurrentBatch();
+            for (int i = 0; i < embeddingWorkers; i++) {
+                enqueue(embeddingQueue, END_OF_STREAM);
+            }
+            indexerFinished.await();
+        } finally {
+            executor.shutdown();
+        }
+        
+        PipelineStats stats = getStats();
+        logger.info("Ingestion pipeline {} finished: {} submitted, {} indexed, {} failed in {}ms",
+                   pipelineId, stats.getDocumentsSubmitted(), stats.getDocumentsIndexed(),
+                   stats.getDocumentsFailed(), stats.getElapsedMs());
+    }
+    
+    /**
+     * Stops all stages and discards queued batches. Batches already sent to OpenSearch may still complete.
+     */
+    public void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        embeddingQueue.clear();
+        indexingQueue.clear();
+        executor.shutdownNow();
+        indexerFinished.countDown();
+        logger.info("Ingestion pipeline {} cancelled", pipelineId);
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    public PipelineStats getStats() {
+        return new PipelineStats(
+            documentsSubmitted.get(),
+            documentsEmbedded.get(),
+            documentsIndexed.get(),
+            documentsFailed.get(),
+            batchesSubmitted.get(),
+            batchesIndexed.get(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+            TimeUnit.NANOSECONDS.toMillis(embeddingNanos.get()),
+            TimeUnit.NANOSECONDS.toMillis(indexingNanos.get()),
+            targetBatchSize(),
+            new ArrayList<>(errors)
+        );
+    }
+    
+    private void flushCurrentBatch() throws InterruptedException {
+        if (currentBatch.isEmpty()) {
+            return;
+        }
+        
+        Batch batch = new Batch(nextBatchSequence++, currentBatch, 0);
+        if (batchSizer != null) {
+            batchSizer.batchSealed(batch.sequence());
+        }
+        currentBatch = new ArrayList<>(targetBatchSize());
+        batchesSubmitted.incrementAndGet();
+        if (batchListener != null) {
+            batchListener.onBatchSealed(batch.sequence());
+        }
+        enqueue(embeddingQueue, batch);
+    }
+    
+    private int targetBatchSize() {
+        return batchSizer != null ? batchSizer.getCurrentSize() : batchSize;
+    }
+    
+    private void enqueue(BlockingQueue<Batch> queue, Batch batch) throws InterruptedException {
+        // Poll instead of put() so a cancelled pipeline never leaves the producer blocked
+        while (!cancelled) {
+            if (queue.offer(batch, 200, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+    
+    private void runEmbeddingWorker() {
+        try {
+            while (!cancelled) {
+                Batch batch = embeddingQueue.take();
+                if (batch == END_OF_STREAM) {
+                    break;
+                }
+                
+                Batch embedded = embedBatch(batch);
+                if (embedded != null) {
+                    enqueue(indexingQueue, embedded);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // The last embedding worker to finish tells the indexer that no more batches are coming
+            if (runningEmbeddingWorkers.decrementAndGet() == 0 && !cancelled) {
+                try {
+                    enqueue(indexingQueue, END_OF_STREAM);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return the batch with its embedding time, or null if embedding failed
+     */
+    private Batch embedBatch(Batch batch) {
+        List<Document> pending = new ArrayList<>();
+        for (Document document : batch.documents()) {
+            if (document.getEmbedding() == null || document.getEmbedding().isEmpty()) {
+                pending.add(document);
+            }
+        }
+        
+        long start = System.nanoTime();
+        try {
+            if (!pending.isEmpty()) {
+                List<String> texts = new ArrayList<>(pending.size());
+                for (Document document : pending) {
+                    texts.add(document.getContent());
+                }
+                
+                List<List<Double>> embeddings = embeddingService.generateEmbeddings(texts);
+                if (embeddings.size() != pending.size()) {
+                    throw new IllegalStateException("Expected " + pending.size() + " embeddings but received " + embeddings.size());
+                }
+                for (int i = 0; i < pending.size(); i++) {
+                    pending.get(i).setEmbedding(embeddings.get(i));
+                }
+            }
+            documentsEmbedded.addAndGet(batch.documents().size());
+            long elapsed = System.nanoTime() - start;
+            if (batchSizer != null) {
+                batchSizer.embeddingCompleted(batch.sequence(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+            }
+            return new Batch(batch.sequence(), batch.documents(), elapsed);
+            
+        } catch (Exception e) {
+            logger.warn("Pipeline {} failed to embed batch {}: {}", pipelineId, batch.sequence(), e.getMessage());
+            documentsFailed.addAndGet(batch.documents().size());
+            recordError("Embedding failed for batch " + batch.sequence() + ": " + e.getMessage());
+            if (batchSizer != null) {
+                batchSizer.batchFailed(batch.sequence(), e);
+            }
+            notifyFailed(batch, e);
+            return null;
+        } finally {
+            embeddingNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+    
+    private void runIndexer() {
+        try {
+            while (!cancelled) {
+                Batch batch = indexingQueue.take();
+                if (batch == END_OF_STREAM) {
+                    break;
+                }
+                indexBatch(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            indexerFinished.countDown();
+        }
+    }
+    
+    private void indexBatch(Batch batch) {
+        long start = System.nanoTime();
+        try {
+            VectorStoreService.BulkIndexResult result = vectorStoreService.bulkIndexDocuments(indexName, batch.documents());
+            documentsIndexed.addAndGet(result.getSuccessCount());
+            documentsFailed.addAndGet(result.getFailureCount());
+            boolean throttled = false;
+            for (VectorStoreService.BulkItemFailure failure : result.getFailures()) {
+                recordError("Failed to index document " + failure.getDocument().getId() + ": " + failure.getMessage());
+                throttled |= failure.getStatus() == TOO_MANY_REQUESTS;
+            }
+            if (batchSizer != null) {
+                batchSizer.indexingCompleted(batch.sequence(), batch.documents().size(),
+                    TimeUnit.NANOSECONDS.toMillis(batch.embeddingNanos()),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), throttled);
+            }
+            notifyListener(batch, () -> batchListener.onBatchIndexed(batch.sequence(), result));
+        } catch (Exception e) {
+            logger.warn("Pipeline {} failed to index batch {}: {}", pipelineId, batch.sequence(), e.getMessage());
+            documentsFailed.addAndGet(batch.documents().size());
+            recordError("Bulk indexing failed for batch " + batch.sequence() + ": " + e.getMessage());
+            if (batchSizer != null) {
+                batchSizer.batchFailed(batch.sequence(), e);
+            }
+            notifyFailed(batch, e);
+        } finally {
+            indexingNanos.addAndGet(System.nanoTime() - start);
+            batchesIndexed.incrementAndGet();
+        }
+    }
+    
+    private void notifyFailed(Batch batch, Exception cause) {
+        notifyListener(batch, () -> batchListener.onBatchFailed(batch.sequence(), batch.documents(), cause));
+    }
+    
+    private void notifyListener(Batch batch, Runnable notification) {
+        if (batchListener == null || cancelled) {
+            return;
+        }
+        try {
+            notification.run();
+        } catch (RuntimeException e) {
+            logger.warn("Batch listener of pipeline {} failed for batch {}: {}", pipelineId, batch.sequence(), e.getMessage());
+        }
+    }
+    
+    private void recordError(String message) {
+        if (errorCount.incrementAndGet() <= MAX_ERRORS) {
+            errors.add(message);
+        }
+    }
+    
+    private static ThreadFactory namedThreadFactory(String pipelineId) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "ingest-" + pipelineId + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    private record Batch(long sequence, List<Document> documents, long embeddingNanos) {}
+    
+    /**
+     * Follows batches through the pipeline. Sequence numbers start at 0 and follow the
+     * order in which documents were submitted.
+     */
+    public interface BatchListener {
+        
+        /**
+         * Called on the producing thread when a batch is formed from the submitted documents
+         */
+        void onBatchSealed(long sequence);
+        
+        /**
+         * Called on the indexer thread once OpenSearch has answered the bulk request of a batch.
+         * Batches may complete out of order; the result lists the documents it rejected.
+         */
+        void onBatchIndexed(long sequence, VectorStoreService.BulkIndexResult result);
+        
+        /**
+         * Called on a pipeline thread when embedding or bulk indexing failed for a whole batch
+         */
+        void onBatchFailed(long sequence, List<Document> documents, Exception cause);
+    }
+    
+    /**
+     * Point-in-time view of the pipeline counters
+     */
+    public static class PipelineStats {
+        private final long documentsSubmitted;
+        private final long documentsEmbedded;
+        private final long documentsIndexed;
+        private final long documentsFailed;
+        private final long batchesSubmitted;
+        private final long batchesIndexed;
+        private final long elapsedMs;
+        private final long embeddingTimeMs;
+        private final long indexingTimeMs;
+        private final int batchSize;
+        private final List<String> errors;
+        
+        public PipelineStats(long documentsSubmitted, long documentsEmbedded, long documentsIndexed,
+                             long documentsFailed, long batchesSubmitted, long batchesIndexed, long elapsedMs,
+                             long embeddingTimeMs, long indexingTimeMs, int batchSize, List<String> errors) {
+            this.documentsSubmitted = documentsSubmitted;
+            this.documentsEmbedded = documentsEmbedded;
+            this.documentsIndexed = documentsIndexed;
+            this.documentsFailed = documentsFailed;
+            this.batchesSubmitted = batchesSubmitted;
+            this.batchesIndexed = batchesIndexed;
+            this.elapsedMs = elapsedMs;
+            this.embeddingTimeMs = embeddingTimeMs;
+            this.indexingTimeMs = indexingTimeMs;
+            this.batchSize = batchSize;
+            this.errors = errors;
+        }
+        
+        public long getDocumentsSubmitted() {
+            return documentsSubmitted;
+        }
+        
+        public long getDocumentsEmbedded() {
+            return documentsEmbedded;
+        }
+        
+        public long getDocumentsIndexed() {
+            return documentsIndexed;
+        }
+        
+        public long getDocumentsFailed() {
+            return documentsFailed;
+        }
+        
+        public long getBatchesSubmitted() {
+            return batchesSubmitted;
+        }
+        
+        public long getBatchesIndexed() {
+            return batchesIndexed;
+        }
+        
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+        
+        public long getEmbeddingTimeMs() {
+            return embeddingTimeMs;
+        }
+        
+        public long getIndexingTimeMs() {
+            return indexingTimeMs;
+        }
+        
+        /**
+         * Size at which the next batch will be sealed; changes over time with adaptive batching
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+        
+        public List<String> getErrors() {
+            return errors;
+        }
+        
+        /**
+         * Throughput of a stage in documents per second of wall-clock time
+         */
+        public double rate(long documents) {
+            return elapsedMs > 0 ? (documents * 1000.0) / elapsedMs : 0.0;
+        }
+    }
+}
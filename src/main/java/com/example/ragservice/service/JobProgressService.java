@@ -0,0 +1,195 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.dto.TrackedJobResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Pushes the progress of scans and streams to clients as Server-Sent Events.
+ * <p>
+ * Subscribers are not notified on every change. On a fixed interval, each subscription reads the
+ * current status of its job and sends only the fields that changed since its last event. Errors are
+ * sent once, as {@code new_errors}. However fast a job progresses, a client gets at most one event
+ * per interval. The first event carries the full status. When the job has finished, a final
+ * {@code end} event is sent and the connection is closed.
+ */
+@Service
+public class JobProgressService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(JobProgressService.class);
+    
+    static final String EVENT_PROGRESS = "progress";
+    static final String EVENT_END = "end";
+    
+    @Value("${document.processing.jobs.progress.emitter-timeout-minutes:30}")
+    private long emitterTimeoutMinutes = 30;
+    
+    @Value("${document.processing.jobs.progress.max-subscribers:100}")
+    private int maxSubscribers = 100;
+    
+    private final ObjectMapper objectMapper;
+    
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    
+    public JobProgressService() {
+        this.objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+    
+    /**
+     * Opens an event stream for a job and sends its current status right away
+     *
+     * @param jobId ID of the scan or stream, used in log messages
+     * @param source reads the current status of the job; returns null once the job is gone
+     * @throws IllegalStateException if the maximum number of subscribers is reached
+     */
+    public SseEmitter subscribe(String jobId, Supplier<? extends TrackedJobResponse> source) {
+        if (subscriptions.size() >= maxSubscribers) {
+            throw new IllegalStateException("Too many progress subscribers (" + maxSubscribers + ")");
+        }
+        
+        SseEmitter emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(emitterTimeoutMinutes));
+        Subscription subscription = new Subscription(jobId, emitter, source);
+        emitter.onCompletion(() -> subscriptions.remove(subscription));
+        emitter.onTimeout(() -> subscriptions.remove(subscription));
+        emitter.onError(e -> subscriptions.remove(subscription));
+        subscriptions.add(subscription);
+        
+        subscription.publish();
+        logger.debug("Progress subscriber added for job {} ({} subscribers)", jobId, subscriptions.size());
+        return emitter;
+    }
+    
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+    
+    /**
+     * Sends the changes since the last event to every subscriber
+     */
+    @Scheduled(fixedDelayString = "${document.processing.jobs.progress.interval-ms:1000}")
+    public void publishProgress() {
+        for (Subscription subscription : subscriptions) {
+            subscription.publish();
+        }
+    }
+    
+    /**
+     * Fields of the current status that differ from the last sent one, plus the errors added
+     * since the last event
+     *
+     * @param current the current status without its errors
+     */
+    ObjectNode delta(ObjectNode previous, ObjectNode current, JsonNode errors, int errorsSent) {
+        ObjectNode delta = objectMapper.createObjectNode();
+        
+        Iterator<Map.Entry<String, JsonNode>> fields = current.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!Objects.equals(previous.get(field.getKey()), field.getValue())) {
+                delta.set(field.getKey(), field.getValue());
+            }
+        }
+        
+        // A finished job may have been compacted to fewer errors than were already sent
+        if (errors instanceof ArrayNode errorArray && errorArray.size() > errorsSent) {
+            ArrayNode newErrors = delta.putArray("new_errors");
+            for (int i = errorsSent; i < errorArray.size(); i++) {
+                newErrors.add(errorArray.get(i));
+            }
+        }
+        return delta;
+    }
+    
+    private final class Subscription {
+        private final String jobId;
+        private final SseEmitter emitter;
+        private final Supplier<? extends TrackedJobResponse> source;
+        
+        // Guarded by this
+        private ObjectNode lastSent;
+        private int errorsSent;
+        private long eventId;
+        private boolean closed;
+        
+        private Subscription(String jobId, SseEmitter emitter, Supplier<? extends TrackedJobResponse> source) {
+            this.jobId = jobId;
+            this.emitter = emitter;
+            this.source = source;
+            this.lastSent = objectMapper.createObjectNode();
+        }
+        
+        private synchronized void publish() {
+            if (closed) {
+                return;
+            }
+            
+            TrackedJobResponse job = source.get();
+            if (job == null) {
+                // Evicted from the job registry while the client was listening
+                close();
+                return;
+            }
+            
+            ObjectNode current;
+            try {
+                current = objectMapper.valueToTree(job);
+            } catch (RuntimeException e) {
+                // The job thread changed its error list while it was read; try again on the next tick
+                return;
+            }
+            
+            JsonNode errors = current.remove("errors");
+            ObjectNode delta = delta(lastSent, current, errors, errorsSent);
+            boolean finished = JobRegistry.isFinished(job.getStatus());
+            try {
+                if (!delta.isEmpty()) {
+                    emitter.send(SseEmitter.event()
+                        .id(String.valueOf(eventId++))
+                        .name(EVENT_PROGRESS)
+                        .data(delta, MediaType.APPLICATION_JSON));
+                    lastSent = current;
+                    errorsSent = Math.max(errorsSent, errors != null ? errors.size() : 0);
+                }
+                if (finished) {
+                    emitter.send(SseEmitter.event()
+                        .id(String.valueOf(eventId++))
+                        .name(EVENT_END)
+                        .data(Map.of("status", job.getStatus()), MediaType.APPLICATION_JSON));
+                    close();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client went away; the emitter cannot be used anymore
+                logger.debug("Progress subscriber of job {} disconnected: {}", jobId, e.getMessage());
+                closed = true;
+                subscriptions.remove(this);
+            }
+        }
+        
+        private void close() {
+            closed = true;
+            subscriptions.remove(this);
+            emitter.complete();
+        }
+    }
+}
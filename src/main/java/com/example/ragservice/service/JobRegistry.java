@@ -0,0 +1,277 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.dto.TrackedJobResponse;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the status of the scans or streams of one service.
+ * <p>
+ * Running jobs are kept as the live objects their threads update. Once a job has finished,
+ * has its end time and its thread has exited, {@link #sweep()} replaces it by a compact copy
+ * with a bounded error list, and drops it
+ * when it is older than the retention or when more finished jobs are kept than allowed,
+ * oldest first. The registry is written to a local JSON file on every sweep and read back
+ * on startup; jobs that were still running at shutdown come back as {@code INTERRUPTED}.
+ */
+class JobRegistry<R extends TrackedJobResponse> {
+    
+    private static final Logger logger = LoggerFactory.getLogger(JobRegistry.class);
+    
+    static final String STATUS_INTERRUPTED = "INTERRUPTED";
+    
+    private static final Set<String> FINISHED_STATUSES = Set.of("COMPLETED", "FAILED", "CANCELLED", STATUS_INTERRUPTED);
+    
+    private final String name;
+    private final Class<R> type;
+    private final Path file;
+    private final Duration retention;
+    private final int maxFinishedJobs;
+    private final int maxErrorsPerJob;
+    private final ObjectMapper objectMapper;
+    // Whether a thread still runs a job; a cancelled job goes on updating its counters until it stops
+    private final Predicate<String> running;
+    
+    private final Map<String, Entry<R>> entries = new ConcurrentHashMap<>();
+    
+    /**
+     * @param name name of the kind of job, used in log messages
+     * @param file file the registry is persisted to; null keeps it in memory only
+     * @param retention how long finished jobs are kept
+     * @param maxFinishedJobs number of finished jobs kept at most
+     * @param maxErrorsPerJob errors kept in the compact copy of a finished job
+     */
+    JobRegistry(String name, Class<R> type, Path file, Duration retention, int maxFinishedJobs, int maxErrorsPerJob) {
+        this(name, type, file, retention, maxFinishedJobs, maxErrorsPerJob, jobId -> false);
+    }
+    
+    /**
+     * @param running tells whether a thread still runs the job with the given ID
+     */
+    JobRegistry(String name, Class<R> type, Path file, Duration retention, int maxFinishedJobs, int maxErrorsPerJob,
+                Predicate<String> running) {
+        this.name = name;
+        this.type = type;
+        this.file = file;
+        this.retention = retention;
+        this.maxFinishedJobs = Math.max(0, maxFinishedJobs);
+        this.maxErrorsPerJob = Math.max(0, maxErrorsPerJob);
+        this.objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.running = running;
+    }
+    
+    static boolean isFinished(String status) {
+        return status != null && FINISHED_STATUSES.contains(status);
+    }
+    
+    /**
+     * Adds a job, replacing a previous job with the same ID
+     */
+    void register(String jobId, R job) {
+        entries.put(jobId, new Entry<>(job, null));
+    }
+    
+    R get(String jobId) {
+        Entry<R> entry = entries.get(jobId);
+        return entry != null ? entry.job() : null;
+    }
+    
+    /**
+     * Running and retained finished jobs, in order of their IDs
+     */
+    Map<String, R> snapshot() {
+        Map<String, R> result = new LinkedHashMap<>();
+        entries.entrySet().stream()
+            .sorted(Map.Entry.comparingByKey())
+            .forEach(e -> result.put(e.getKey(), e.getValue().job()));
+        return result;
+    }
+    
+    int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Compacts jobs that have finished since the last sweep, evicts expired and excess
+     * finished jobs and persists the registry
+     */
+    synchronized void sweep() {
+        Instant now = Instant.now();
+        int evicted = 0;
+        
+        for (Map.Entry<String, Entry<R>> e : entries.entrySet()) {
+            Entry<R> entry = e.getValue();
+            if (entry.finishedAt() == null && isFinished(entry.job().getStatus())
+                    && entry.job().getEndTime() != null && !running.test(e.getKey())) {
+                // Nothing updates the original anymore
+                R compact = compact(entry.job());
+                if (compact != null) {
+                    entries.replace(e.getKey(), entry, new Entry<>(compact, finishedAt(compact, now)));
+                }
+            }
+        }
+        
+        Instant expiry = now.minus(retention);
+        List<Map.Entry<String, Entry<R>>> finished = new ArrayList<>();
+        for (Map.Entry<String, Entry<R>> e : entries.entrySet()) {
+            Instant finishedAt = e.getValue().finishedAt();
+            if (finishedAt == null) {
+                continue;
+            }
+            if (finishedAt.isBefore(expiry)) {
+                if (entries.remove(e.getKey(), e.getValue())) {
+                    evicted++;
+                }
+            } else {
+                finished.add(e);
+            }
+        }
+        
+        if (finished.size() > maxFinishedJobs) {
+            finished.sort(Comparator.comparing(e -> e.getValue().finishedAt()));
+            for (Map.Entry<String, Entry<R>> e : finished.subList(0, finished.size() - maxFinishedJobs)) {
+                if (entries.remove(e.getKey(), e.getValue())) {
+                    evicted++;
+                }
+            }
+        }
+        
+        if (evicted > 0) {
+            logger.debug("Evicted {} finished {} jobs, {} remain", evicted, name, entries.size());
+        }
+        save();
+    }
+    
+    /**
+     * Writes all jobs to the registry file. Running jobs are written as compact copies of
+     * their current state.
+     */
+    synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        
+        List<R> jobs = new ArrayList<>();
+        for (Entry<R> entry : entries.values()) {
+            R job = entry.finishedAt() != null ? entry.job() : compact(entry.job());
+            if (job != null) {
+                jobs.add(job);
+            }
+        }
+        
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try {
+                objectMapper.writeValue(temp.toFile(), jobs);
+                try {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to persist {} jobs to {}: {}", name, file, e.getMessage());
+        }
+    }
+    
+    /**
+     * Reads the jobs persisted by a previous run. Jobs that had not finished are marked as
+     * interrupted, as no thread runs them anymore.
+     *
+     * @param idOf extracts the job ID from a persisted job
+     */
+    synchronized void load(Function<R, String> idOf) {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        
+        JavaType listType = objectMapper.getTypeFactory().constructCollectionType(List.class, type);
+        List<R> jobs;
+        try {
+            jobs = objectMapper.readValue(file.toFile(), listType);
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable {} job registry {}: {}", name, file, e.getMessage());
+            return;
+        }
+        
+        Instant now = Instant.now();
+        int interrupted = 0;
+        for (R job : jobs) {
+            String jobId = idOf.apply(job);
+            if (jobId == null) {
+                continue;
+            }
+            if (!isFinished(job.getStatus())) {
+                job.setStatus(STATUS_INTERRUPTED);
+                job.setEndTime(LocalDateTime.now());
+                interrupted++;
+            }
+            entries.putIfAbsent(jobId, new Entry<>(job, finishedAt(job, now)));
+        }
+        logger.info("Loaded {} {} jobs from {} ({} interrupted by the restart)", jobs.size(), name, file, interrupted);
+    }
+    
+    /**
+     * Copy of a job with at most {@code maxErrorsPerJob} errors, or null if the job is being
+     * changed too quickly to be copied
+     */
+    private R compact(R job) {
+        R copy;
+        try {
+            copy = objectMapper.convertValue(job, type);
+        } catch (RuntimeException e) {
+            // E.g. a concurrent modification of the error list of a running job
+            logger.debug("Could not copy {} job: {}", name, e.getMessage());
+            return null;
+        }
+        
+        List<String> errors = copy.getErrors();
+        if (errors != null && errors.size() > maxErrorsPerJob) {
+            List<String> kept = new ArrayList<>(errors.subList(0, maxErrorsPerJob));
+            kept.add("... and " + (errors.size() - maxErrorsPerJob) + " more errors");
+            copy.setErrors(kept);
+        }
+        return copy;
+    }
+    
+    private static Instant finishedAt(TrackedJobResponse job, Instant fallback) {
+        LocalDateTime endTime = job.getEndTime();
+        return endTime != null ? endTime.atZone(ZoneId.systemDefault()).toInstant() : fallback;
+    }
+    
+    /**
+     * A job and, once it was compacted, the time it finished
+     */
+    private record Entry<R>(R job, Instant finishedAt) {
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.model.Document;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Turns the lines of a JSON Lines file into documents. The text and the optional ID are
+ * selected by JSON pointer. The metadata is either the object at a metadata pointer or the
+ * rest of the record without its text and ID fields; nested objects and arrays are kept as
+ * nested maps and lists, which OpenSearch maps as object fields.
+ */
+final class NdjsonDocumentMapper {
+    
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<LinkedHashMap<String, Object>> METADATA_TYPE = new TypeReference<>() {};
+    
+    private final JsonPointer textPointer;
+    private final JsonPointer idPointer;
+    private final JsonPointer metadataPointer;
+    private final int maxRecordSize;
+    
+    /**
+     * @param textPointer pointer to the text of a record
+     * @param idPointer pointer to the document ID, or null to derive IDs from the record position
+     * @param metadataPointer pointer to the object holding the metadata, or null to use the whole record
+     * @throws IllegalArgumentException if a pointer is not a valid JSON pointer
+     */
+    NdjsonDocumentMapper(String textPointer, String idPointer, String metadataPointer, int maxRecordSize) {
+        this.textPointer = compile(textPointer);
+        this.idPointer = compile(idPointer);
+        this.metadataPointer = compile(metadataPointer);
+        this.maxRecordSize = maxRecordSize;
+        if (this.textPointer == null || this.textPointer.matches()) {
+            throw new IllegalArgumentException("Text pointer must select a field of the record");
+        }
+    }
+    
+    /**
+     * Maps one line of the file
+     *
+     * @return the document, or null if the record has no text
+     * @throws IOException if the line is not valid JSON
+     * @throws IllegalArgumentException if the line is not a JSON object
+     */
+    Document map(String line) throws IOException {
+        JsonNode record = OBJECT_MAPPER.readTree(line);
+        if (record == null || !record.isObject()) {
+            throw new IllegalArgumentException("Record is not a JSON object");
+        }
+        
+        String text = scalarValue(record.at(textPointer));
+        if (text == null || text.trim().isEmpty()) {
+            return null; // Skip records without text
+        }
+        if (text.length() > maxRecordSize) {
+            text = text.substring(0, maxRecordSize);
+        }
+        
+        String id = idPointer != null ? scalarValue(record.at(idPointer)) : null;
+        
+        ObjectNode metadataNode;
+        if (metadataPointer != null) {
+            JsonNode selected = record.at(metadataPointer);
+            metadataNode = selected.isObject() ? (ObjectNode) selected : OBJECT_MAPPER.createObjectNode();
+        } else {
+            // The record is parsed for this call only, so the fields can be removed in place
+            metadataNode = (ObjectNode) record;
+            remove(metadataNode, textPointer);
+            remove(metadataNode, idPointer);
+        }
+        Map<String, Object> metadata = OBJECT_MAPPER.convertValue(metadataNode, METADATA_TYPE);
+        
+        return new Document(id, text.trim(), metadata);
+    }
+    
+    private static JsonPointer compile(String pointer) {
+        if (pointer == null || pointer.isEmpty()) {
+            return null;
+        }
+        return JsonPointer.compile(pointer);
+    }
+    
+    /**
+     * @return the text of a string, number or boolean node, or null for anything else
+     */
+    private static String scalarValue(JsonNode node) {
+        if (node.isMissingNode() || node.isNull() || !node.isValueNode()) {
+            return null;
+        }
+        return node.asText();
+    }
+    
+    private static void remove(ObjectNode root, JsonPointer pointer) {
+        if (pointer == null) {
+            return;
+        }
+        JsonNode parent = root.at(pointer.head());
+        if (parent.isObject()) {
+            ((ObjectNode) parent).remove(pointer.last().getMatchingProperty());
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.example.ragservice.service;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses a UTF-8 CSV file on several threads.
+ * <p>
+ * The file is memory-mapped and cut into fixed-size byte ranges. Each range is first
+ * scanned for record boundaries (see {@link CsvBoundaryScanner}); the boundaries are
+ * then resolved in file order, which makes the split safe for quoted fields that
+ * contain line breaks. The resulting record-aligned spans are parsed concurrently on a
+ * {@link ForkJoinPool}, including the caller supplied record mapping, and delivered to
+ * the sink in file order with stable record numbers and byte offsets.
+ * <p>
+ * Only a bounded window of ranges is in flight at any time, so memory use depends on
+ * the range size and parallelism, not on the file size.
+ */
+public class ParallelCsvReader {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ParallelCsvReader.class);
+    
+    private static final int HEADER_PROBE_BYTES = 64 * 1024;
+    
+    private final Path file;
+    private final CSVFormat format;
+    private final int parallelism;
+    private final int rangeSize;
+    private final CsvBoundaryScanner scanner;
+    
+    private List<String> headerNames;
+    private long dataStart;
+    private long rangeBase;
+    
+    public ParallelCsvReader(Path file, CSVFormat format, int parallelism, int rangeSize) {
+        if (!supports(format)) {
+            throw new IllegalArgumentException("Parallel CSV parsing requires single-byte quote and escape characters");
+        }
+        this.file = file;
+        this.format = format;
+        this.parallelism = Math.max(1, parallelism);
+        this.rangeSize = Math.max(1024, rangeSize);
+        this.scanner = new CsvBoundaryScanner(format.getQuoteCharacter(), format.getEscapeCharacter());
+    }
+    
+    /**
+     * Whether record boundaries of the given format can be located at byte level
+     */
+    public static boolean supports(CSVFormat format) {
+        return CsvBoundaryScanner.supports(format.getQuoteCharacter(), format.getEscapeCharacter());
+    }
+    
+    /**
+     * Reads the header record, if the format has one.
+     *
+     * @return the header names, or an empty list for formats without a header
+     */
+    public List<String> readHeaderNames() throws IOException {
+        if (headerNames == null) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                dataStart = readHeader(channel, channel.size());
+            }
+        }
+        return headerNames;
+    }
+    
+    /**
+     * Parses the whole file. The mapper runs concurrently on the pool and must be thread-safe;
+     * the sink is called on the calling thread, in file order.
+     *
+     * @return the number of records delivered to the sink
+     */
+    public <T> long read(RecordMapper<T> mapper, RecordSink<T> sink) throws IOException, InterruptedException {
+        return read(0, 0, mapper, sink);
+    }
+    
+    /**
+     * Parses the file from a record boundary found by an earlier read, e.g. a checkpoint.
+     * The header is still read from the start of the file.
+     *
+     * @param startOffset byte offset of the first record to read; offsets inside the header start after it
+     * @param recordsBefore number of data records before {@code startOffset}, so record numbers continue from there
+     * @return the number of records delivered to the sink
+     */
+    public <T> long read(long startOffset, long recordsBefore, RecordMapper<T> mapper, RecordSink<T> sink)
+            throws IOException, InterruptedException {
+        readHeaderNames();
+        rangeBase = Math.max(dataStart, startOffset);
+        
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (rangeBase > channel.size()) {
+                throw new IOException("Start offset " + startOffset + " lies beyond the end of " + file);
+            }
+            return readRanges(pool, channel, channel.size(), recordsBefore, mapper, sink);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    private long readHeader(FileChannel channel, long fileSize) throws IOException {
+        if (!hasHeaderRecord(format)) {
+            String[] header = format.getHeader();
+            headerNames = header != null ? List.of(header) : List.of();
+            return 0;
+        }
+        
+        // Grow the probe until it contains the complete (possibly multi-line) header record
+        long probe = Math.min(fileSize, HEADER_PROBE_BYTES);
+        while (true) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, probe);
+            int boundary = scanner.findBoundary(buffer, 0, (int) probe, false);
+            
+            if (boundary != CsvBoundaryScanner.NONE || probe == fileSize) {
+                int end = boundary != CsvBoundaryScanner.NONE ? boundary : (int) probe;
+                String headerText = StandardCharsets.UTF_8.decode(buffer.slice(0, end)).toString();
+                try (CSVParser parser = CSVParser.parse(headerText, format)) {
+                    headerNames = new ArrayList<>(parser.getHeaderNames());
+                }
+                return end;
+            }
+            
+            if (probe >= Integer.MAX_VALUE / 4) {
+                throw new IOException("CSV header record of " + file + " is too large");
+            }
+            probe = Math.min(fileSize, probe * 4);
+        }
+    }
+    
+    /**
+     * Whether the first record of a file in this format is a header line (read for its names or skipped)
+     */
+    static boolean hasHeaderRecord(CSVFormat format) {
+        String[] header = format.getHeader();
+        return header != null && (header.length == 0 || format.getSkipHeaderRecord());
+    }
+    
+    private CSVFormat rangeFormat() {
+        if (!hasHeaderRecord(format)) {
+            return format;
+        }
+        // Ranges never contain the header line, so they are parsed against the already known names
+        return format.withHeader(headerNames.toArray(new String[0])).withSkipHeaderRecord(false);
+    }
+    
+    private <T> long readRanges(ForkJoinPool pool, FileChannel channel, long fileSize, long recordsBefore,
+                                RecordMapper<T> mapper, RecordSink<T> sink) throws IOException, InterruptedException {
+        long dataLength = fileSize - rangeBase;
+        if (dataLength <= 0) {
+            return 0;
+        }
+        
+        CSVFormat rangeFormat = rangeFormat();
+        int rangeCount = (int) ((dataLength + rangeSize - 1) / rangeSize);
+        int window = parallelism + 1;
+        
+        List<ForkJoinTask<CsvBoundaryScanner.RangeScan>> scans = new ArrayList<>(rangeCount);
+        Deque<ForkJoinTask<List<ParsedRecord<T>>>> parses = new ArrayDeque<>();
+        RecordCounter counter = new RecordCounter();
+        counter.lastRecordNumber = recordsBefore;
+        
+        for (int i = 0; i < Math.min(window, rangeCount); i++) {
+            scans.add(submitScan(pool, channel, i, fileSize));
+        }
+        
+        // Range 0 starts at a record boundary (just after the header or at the resume offset)
+        boolean inQuotes = false;
+        boolean precededByEscape = false;
+        long spanStart = rangeBase;
+        
+        for (int i = 0; i < rangeCount; i++) {
+            CsvBoundaryScanner.RangeScan scan = await(scans.get(i));
+            scans.set(i, null);
+            if (precededByEscape) {
+                // Rare: the previous range ended on an escape character, so this range was scanned with the wrong state
+                scan = scanRange(channel, i, fileSize, true);
+            }
+            
+            if (i > 0) {
+                int boundary = inQuotes ? scan.boundaryIfInside() : scan.boundaryIfOutside();
+                if (boundary != CsvBoundaryScanner.NONE) {
+                    long recordStart = rangeStart(i) + boundary;
+                    parses.add(submitParse(pool, channel, spanStart, recordStart, rangeFormat, mapper));
+                    spanStart = recordStart;
+                }
+                // Without a boundary the range lies inside one long record, which continues into the next span
+            }
+            
+            inQuotes ^= scan.oddQuotes();
+            precededByEscape = scan.endsEscaped();
+            
+            if (i + window < rangeCount) {
+                scans.add(submitScan(pool, channel, i + window, fileSize));
+            }
+            
+            if (!drain(parses, window, sink, counter)) {
+                return counter.delivered;
+            }
+        }
+        
+        if (spanStart < fileSize) {
+            parses.add(submitParse(pool, channel, spanStart, fileSize, rangeFormat, mapper));
+        }
+        drain(parses, 0, sink, counter);
+        
+        logger.debug("Parsed {} records from {} in {} ranges using {} threads", counter.delivered, file, rangeCount, parallelism);
+        return counter.delivered;
+    }
+    
+    private long rangeStart(int index) {
+        return rangeBase + (long) index * rangeSize;
+    }
+    
+    private ForkJoinTask<CsvBoundaryScanner.RangeScan> submitScan(ForkJoinPool pool, FileChannel channel, int index, long fileSize) {
+        return pool.submit(() -> scanRange(channel, index, fileSize, false));
+    }
+    
+    private CsvBoundaryScanner.RangeScan scanRange(FileChannel channel, int index, long fileSize, boolean precededByEscape)
+            throws IOException {
+        long start = rangeStart(index);
+        int length = (int) Math.min(rangeSize, fileSize - start);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        return scanner.scan(buffer, 0, length, precededByEscape);
+    }
+    
+    private <T> ForkJoinTask<List<ParsedRecord<T>>> submitParse(ForkJoinPool pool, FileChannel channel, long start, long end,
+                                                              CSVFormat rangeFormat, RecordMapper<T> mapper) {
+        return pool.submit(() -> parseSpan(channel, start, end, rangeFormat, mapper));
+    }
+    
+    private <T> List<ParsedRecord<T>> parseSpan(FileChannel channel, long start, long end, CSVFormat rangeFormat,
+                                               RecordMapper<T> mapper) throws IOException {
+        long length = end - start;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("CSV record span of " + length + " bytes at offset " + start + " is too large to parse");
+        }
+        
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        String text = StandardCharsets.UTF_8.decode(buffer).toString();
+        
+        List<ParsedRecord<T>> records = new ArrayList<>();
+        int charPosition = 0;
+        long bytePosition = start;
+        
+        try (CSVParser parser = CSVParser.parse(text, rangeFormat)) {
+            for (CSVRecord record : parser) {
+                // Translate the parser's character position into a byte offset in the file
+                int recordStart = (int) record.getCharacterPosition();
+                bytePosition += utf8Length(text, charPosition, recordStart);
+                charPosition = recordStart;
+                
+                ParsedRecord<T> parsed = new ParsedRecord<>(bytePosition);
+                try {
+                    parsed.value = mapper.map(record);
+                } catch (Exception e) {
+                    parsed.error = e;
+                }
+                records.add(parsed);
+            }
+        } catch (UncheckedIOException e) {
+            throw new IOException("Malformed CSV between byte offsets " + start + " and " + end + ": " + e.getMessage(), e);
+        }
+        
+        // Every record ends where the next one starts; the last one at the end of the span
+        for (int i = 0; i < records.size(); i++) {
+            records.get(i).nextByteOffset = i + 1 < records.size() ? records.get(i + 1).byteOffset : end;
+        }
+        return records;
+    }
+    
+    private <T> boolean drain(Deque<ForkJoinTask<List<ParsedRecord<T>>>> parses, int keep, RecordSink<T> sink,
+                              RecordCounter counter) throws IOException, InterruptedException {
+        while (parses.size() > keep) {
+            for (ParsedRecord<T> record : await(parses.poll())) {
+                record.recordNumber = ++counter.lastRecordNumber;
+                counter.delivered++;
+                if (!sink.accept(record)) {
+                    parses.forEach(task -> task.cancel(true));
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    private static <V> V await(ForkJoinTask<V> task) throws IOException, InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Parallel CSV parsing failed", cause);
+        }
+    }
+    
+    /**
+     * Number of bytes the UTF-8 encoding of {@code text[from, to)} occupies
+     */
+    static long utf8Length(String text, int from, int to) {
+        long bytes = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+    
+    private static class RecordCounter {
+        private long delivered;
+        private long lastRecordNumber;
+    }
+    
+    /**
+     * Maps a parsed record to the caller's representation. Called concurrently.
+     */
+    @FunctionalInterface
+    public interface RecordMapper<T> {
+        T map(CSVRecord record) throws Exception;
+    }
+    
+    /**
+     * Receives records in file order on the reading thread.
+     */
+    @FunctionalInterface
+    public interface RecordSink<T> {
+        /**
+         * @return false to stop reading
+         */
+        boolean accept(ParsedRecord<T> record) throws InterruptedException;
+    }
+    
+    /**
+     * A record in file order together with its position
+     */
+    public static class ParsedRecord<T> {
+        private final long byteOffset;
+        private long nextByteOffset;
+        private long recordNumber;
+        private T value;
+        private Exception error;
+        
+        ParsedRecord(long byteOffset) {
+            this.byteOffset = byteOffset;
+        }
+        
+        /**
+         * 1-based number of the data record in the file (the header is not counted)
+         */
+        public long getRecordNumber() {
+            return recordNumber;
+        }
+        
+        /**
+         * Byte offset of the first byte of this record
+         */
+        public long getByteOffset() {
+            return byteOffset;
+        }
+        
+        /**
+         * Byte offset just past this record, i.e. where the next record starts
+         */
+        public long getNextByteOffset() {
+            return nextByteOffset;
+        }
+        
+        /**
+         * The mapped value, or null if the mapper returned null or failed
+         */
+        public T getValue() {
+            return value;
+        }
+        
+        /**
+         * The exception thrown by the mapper, if any
+         */
+        public Exception getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.ragservice.service;
+
+import org.apache.commons.csv.CSVFormat;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Creates {@link ParallelCsvReader}s from the configured parallel parsing settings and
+ * decides when a file is large enough to be worth parsing in parallel.
+ */
+@Component
+public class ParallelCsvReaderFactory {
+    
+    private static final long MB = 1024L * 1024L;
+    
+    @Value("${document.processing.csv.parallel-parsing.enabled:true}")
+    private boolean enabled = true;
+    
+    @Value("${document.processing.csv.parallel-parsing.threads:0}")
+    private int threads;
+    
+    @Value("${document.processing.csv.parallel-parsing.range-size-mb:8}")
+    private int rangeSizeMb = 8;
+    
+    @Value("${document.processing.csv.parallel-parsing.min-file-size-mb:64}")
+    private long minFileSizeMb = 64;
+    
+    /**
+     * Whether the file should be parsed with a {@link ParallelCsvReader}
+     *
+     * @param requested explicit choice from the request, or null to decide by file size
+     */
+    public boolean shouldUse(Path csvFile, CSVFormat format, Boolean requested) throws IOException {
+        if (!ParallelCsvReader.supports(format)) {
+            return false;
+        }
+        if (requested != null) {
+            return requested;
+        }
+        return enabled && Files.size(csvFile) >= minFileSizeMb * MB;
+    }
+    
+    public ParallelCsvReader create(Path csvFile, CSVFormat format) {
+        return create(csvFile, format, true);
+    }
+    
+    /**
+     * @param parallel whether to parse on the configured number of threads or on a single one;
+     *                 a single-threaded reader is still useful for its byte offsets
+     */
+    public ParallelCsvReader create(Path csvFile, CSVFormat format, boolean parallel) {
+        return new ParallelCsvReader(csvFile, format, parallel ? getParallelism() : 1,
+            (int) Math.min(Integer.MAX_VALUE, rangeSizeMb * MB));
+    }
+    
+    public int getParallelism() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.model.ScanManifest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The changes an incremental directory scan found, one JSON object per line: added and
+ * modified files as their rows are written to the CSV file, and deleted files once the
+ * whole directory has been walked. Deleted files carry the document ID they were indexed
+ * under, so they can be removed from the index.
+ */
+final class ScanChangeLog implements Closeable {
+    
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    
+    private final BufferedWriter out;
+    private final String scanId;
+    
+    ScanChangeLog(Path file, String scanId) throws IOException {
+        this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        this.scanId = scanId;
+    }
+    
+    void record(String change, String path, ScanManifest.FileEntry entry) throws IOException {
+        ObjectNode line = objectMapper.createObjectNode();
+        line.put("change", change);
+        line.put("path", path);
+        line.put("doc_id", entry.getDocumentId());
+        line.put("content_hash", entry.getContentHash());
+        line.put("size", entry.getSize());
+        line.put("last_modified", entry.getLastModified());
+        line.put("scan_id", scanId);
+        out.write(objectMapper.writeValueAsString(line));
+        out.newLine();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+    
+    /**
+     * Change log of a scan that writes its CSV file to the given path
+     */
+    static Path pathFor(String outputCsvPath) {
+        String base = outputCsvPath.endsWith(".csv")
+            ? outputCsvPath.substring(0, outputCsvPath.length() - ".csv".length())
+            : outputCsvPath;
+        return Path.of(base + ".changes.jsonl");
+    }
+    
+    /**
+     * Document IDs of the files a change log records as deleted
+     */
+    static List<String> deletedDocumentIds(Path file) throws IOException {
+        List<String> documentIds = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode change = objectMapper.readTree(line);
+                if (ScanManifest.CHANGE_DELETED.equals(change.path("change").asText())) {
+                    documentIds.add(change.path("doc_id").asText());
+                }
+            }
+        }
+        return documentIds;
+    }
+}
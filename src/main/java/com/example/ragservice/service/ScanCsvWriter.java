@@ -0,0 +1,262 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.model.ScanManifest;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes the extraction results of a directory scan to its CSV file, its block files, or
+ * both, from a single thread. Scans that index directly and write neither still use it to put
+ * the results in order.
+ * <p>
+ * Results arrive in the order the extraction workers finish them. In ordered mode they are
+ * held back until all results of files discovered earlier have been written, so the output
+ * has the same order as a sequential scan. Failed extractions and files an incremental scan
+ * found unchanged are not written but still take their turn. Large files, which are extracted
+ * in a lane of their own, are numbered separately and follow the other files; see
+ * {@link #continueAt}. An archive is one result whose entries are written one row each. The printer is flushed once enough bytes were written or enough time has passed
+ * since the last flush, instead of after every record.
+ */
+final class ScanCsvWriter implements Closeable {
+    
+    static final String[] HEADER = {"path", "file_name", "file_path", "file_size", "content_type", "text", "metadata", "doc_id"};
+    
+    private final CSVPrinter csvPrinter;
+    private final DocumentBlockWriter blockWriter;
+    private final boolean ordered;
+    private final long flushIntervalNanos;
+    private final long flushBytes;
+    
+    // Results that finished before an earlier file, by sequence
+    private final TreeMap<Long, Extraction> pending = new TreeMap<>();
+    private long nextSequence;
+    // Once nextSequence reaches sequenceEnd, the order continues at sequenceContinuation
+    private long sequenceEnd = -1;
+    private long sequenceContinuation;
+    private long handled;
+    private long bytesSinceFlush;
+    private long lastFlushNanos = System.nanoTime();
+    private long flushes;
+    
+    /**
+     * @param out the CSV file, or null to only order the results
+     */
+    ScanCsvWriter(Writer out, boolean ordered, long flushIntervalMs, long flushBytes) throws IOException {
+        this(out, null, ordered, flushIntervalMs, flushBytes);
+    }
+    
+    /**
+     * @param out the CSV file, or null
+     * @param blockWriter the block files, or null; closed with this writer
+     */
+    ScanCsvWriter(Writer out, DocumentBlockWriter blockWriter, boolean ordered, long flushIntervalMs,
+                  long flushBytes) throws IOException {
+        this.csvPrinter = out != null ? new CSVPrinter(out, CSVFormat.DEFAULT.withHeader(HEADER)) : null;
+        this.blockWriter = blockWriter;
+        this.ordered = ordered;
+        this.flushIntervalNanos = flushIntervalMs * 1_000_000;
+        this.flushBytes = flushBytes;
+    }
+    
+    /**
+     * Hands over the result of one file and writes every result that is due
+     *
+     * @return the results handled by this call, in the order they were written
+     */
+    List<Extraction> submit(Extraction extraction) throws IOException {
+        List<Extraction> written = new ArrayList<>(1);
+        if (!ordered) {
+            write(extraction);
+            written.add(extraction);
+        } else {
+            pending.put(extraction.sequence(), extraction);
+            writeDue(written);
+        }
+        handled += written.size();
+        flushIfDue();
+        return written;
+    }
+    
+    /**
+     * Lets the order jump from {@code end}, the sequence after the last one of the first
+     * series, to {@code continuation}, the first sequence of the second series
+     *
+     * @return the results written by this call, in the order they were written
+     */
+    List<Extraction> continueAt(long end, long continuation) throws IOException {
+        sequenceEnd = end;
+        sequenceContinuation = continuation;
+        List<Extraction> written = new ArrayList<>();
+        if (ordered) {
+            writeDue(written);
+            handled += written.size();
+            flushIfDue();
+        }
+        return written;
+    }
+    
+    private void writeDue(List<Extraction> written) throws IOException {
+        while (true) {
+            if (nextSequence == sequenceEnd) {
+                nextSequence = sequenceContinuation;
+            }
+            Extraction next = pending.remove(nextSequence);
+            if (next == null) {
+                return;
+            }
+            write(next);
+            written.add(next);
+            nextSequence++;
+        }
+    }
+    
+    /**
+     * Flushes the printer if the byte or time threshold has been reached
+     */
+    void flushIfDue() throws IOException {
+        if (bytesSinceFlush == 0) {
+            return;
+        }
+        if (bytesSinceFlush >= flushBytes || System.nanoTime() - lastFlushNanos >= flushIntervalNanos) {
+            flush();
+        }
+    }
+    
+    /**
+     * Flushes the CSV file; the block files are written a block at a time
+     */
+    void flush() throws IOException {
+        if (csvPrinter != null) {
+            csvPrinter.flush();
+        }
+        bytesSinceFlush = 0;
+        lastFlushNanos = System.nanoTime();
+        flushes++;
+    }
+    
+    /**
+     * Number of results written or skipped as failed
+     */
+    long getHandled() {
+        return handled;
+    }
+    
+    /**
+     * Number of results held back until earlier files are done
+     */
+    int getPending() {
+        return pending.size();
+    }
+    
+    long getFlushes() {
+        return flushes;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            if (csvPrinter != null) {
+                csvPrinter.close();
+            }
+        } finally {
+            if (blockWriter != null) {
+                blockWriter.close();
+            }
+        }
+    }
+    
+    private void write(Extraction extraction) throws IOException {
+        if (extraction.entries() != null) {
+            for (Extraction entry : extraction.entries()) {
+                write(entry);
+            }
+            return;
+        }
+        if (extraction.document() == null) {
+            return;
+        }
+        Map<String, String> metadata = extraction.document().getMetadata();
+        String text = extraction.document().getText();
+        if (blockWriter != null) {
+            // The path as documents indexed by the scan itself carry it
+            blockWriter.append(extraction.documentId(), extraction.path().toAbsolutePath().normalize().toString(), text,
+                metadata);
+        }
+        if (csvPrinter == null) {
+            return;
+        }
+        csvPrinter.printRecord(
+            extraction.path().toString(),
+            metadata.get("file_name"),
+            metadata.get("file_path"),
+            metadata.get("file_size"),
+            metadata.get("content_type"),
+            text,
+            extraction.metadataJson(),
+            extraction.documentId()
+        );
+        // Characters rather than encoded bytes; close enough to pace the flushes
+        bytesSinceFlush += (text != null ? text.length() : 0) + extraction.metadataJson().length();
+    }
+    
+    /**
+     * The result of extracting one file: a document or the failure
+     *
+     * @param sequence position of the file in discovery order
+     * @param change for incremental scans, whether the file was added, modified or unchanged
+     * @param manifestEntry for incremental scans, the file's manifest entry once the result is written
+     * @param entries for archives, the results of the entries, whose paths are their locations in the archive
+     */
+    record Extraction(long sequence, Path path, String documentId, DocumentExtractionService.ExtractedDocument document,
+                      String metadataJson, Exception error, String change, ScanManifest.FileEntry manifestEntry,
+                      Path duplicateOf, List<Extraction> entries) {
+        
+        static Extraction success(long sequence, Path path, DocumentExtractionService.ExtractedDocument document,
+                                  String metadataJson) {
+            return new Extraction(sequence, path, ScanManifestService.documentId(path), document, metadataJson, null,
+                null, null, null, null);
+        }
+        
+        static Extraction failure(long sequence, Path path, Exception error) {
+            return new Extraction(sequence, path, ScanManifestService.documentId(path), null, null, error, null, null, null,
+                null);
+        }
+        
+        static Extraction archive(long sequence, Path path, List<Extraction> entries) {
+            return new Extraction(sequence, path, ScanManifestService.documentId(path), null, null, null, null, null, null,
+                entries);
+        }
+        
+        /**
+         * A file whose content hash matches the manifest although its size or modification time changed
+         */
+        static Extraction unchanged(long sequence, Path path, ScanManifest.FileEntry manifestEntry) {
+            return new Extraction(sequence, path, manifestEntry.getDocumentId(), null, null, null,
+                ScanManifest.CHANGE_UNCHANGED, manifestEntry, null, null);
+        }
+        
+        /**
+         * A file with the same content as a file found earlier in the scan; it is not extracted
+         * and carries the document ID of that file
+         */
+        static Extraction duplicate(long sequence, Path path, Path original) {
+            return new Extraction(sequence, path, ScanManifestService.documentId(original), null, null, null, null, null,
+                original, null);
+        }
+        
+        Extraction withChange(String change, ScanManifest.FileEntry manifestEntry) {
+            return new Extraction(sequence, path, documentId, document, metadataJson, error, change, manifestEntry,
+                duplicateOf, entries);
+        }
+    }
+}
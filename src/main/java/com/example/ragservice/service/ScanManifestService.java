@@ -0,0 +1,118 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.model.ScanManifest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Stores the manifests of incremental directory scans, one JSON file per scanned directory.
+ * Files are replaced atomically, like checkpoints.
+ */
+@Service
+public class ScanManifestService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ScanManifestService.class);
+    
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+    
+    @Value("${document.processing.directory-scan.manifest.directory:./data/scan-manifests}")
+    private String directory = "./data/scan-manifests";
+    
+    private final ObjectMapper objectMapper;
+    
+    public ScanManifestService() {
+        this.objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+    
+    /**
+     * Loads the manifest of a directory, or an empty one if it was never scanned incrementally
+     */
+    public ScanManifest load(Path scannedDirectory) throws IOException {
+        String key = directoryKey(scannedDirectory);
+        Path file = manifestFile(key);
+        if (!Files.exists(file)) {
+            return new ScanManifest(key);
+        }
+        return objectMapper.readValue(file.toFile(), ScanManifest.class);
+    }
+    
+    public void save(ScanManifest manifest) throws IOException {
+        manifest.setUpdatedAt(Instant.now());
+        
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        Path target = manifestFile(manifest.getDirectoryPath());
+        Path temp = Files.createTempFile(dir, "manifest", ".tmp");
+        try {
+            objectMapper.writeValue(temp.toFile(), manifest);
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        
+        logger.debug("Saved scan manifest of {} with {} files", manifest.getDirectoryPath(), manifest.getFiles().size());
+    }
+    
+    /**
+     * Document ID of a scanned file. It only depends on the path, so indexing a modified file
+     * again overwrites its document and a deleted file can be removed by ID.
+     */
+    public static String documentId(Path file) {
+        String key = "scan#" + file.toAbsolutePath().normalize();
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+    
+    /**
+     * SHA-256 of the file content, hex encoded
+     */
+    public static String contentHash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+    
+    private static String directoryKey(Path scannedDirectory) {
+        return scannedDirectory.toAbsolutePath().normalize().toString();
+    }
+    
+    private Path manifestFile(String directoryKey) {
+        String name = UUID.nameUUIDFromBytes(directoryKey.getBytes(StandardCharsets.UTF_8)).toString();
+        return Paths.get(directory).resolve(name + ".json");
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.ragservice.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+
+/**
+ * Writer that passes the text written to it on to a {@link DocumentExtractionService.TextConsumer}
+ * in segments of a fixed number of characters, so no more than one segment is held at a time.
+ * Writing past the character limit passes on the text up to the limit and then fails with
+ * {@link LimitReachedException}, which stops the parser that writes.
+ */
+final class TextSegmentWriter extends Writer {
+    
+    private final DocumentExtractionService.TextConsumer consumer;
+    private final long maxChars;
+    private final char[] segment;
+    private int length;
+    private long written;
+    private boolean truncated;
+    private boolean cancelled;
+    
+    /**
+     * @param maxChars the characters after which writing fails; 0 = no limit
+     */
+    TextSegmentWriter(DocumentExtractionService.TextConsumer consumer, int segmentChars, long maxChars) {
+        this.consumer = consumer;
+        this.segment = new char[Math.max(1, segmentChars)];
+        this.maxChars = maxChars;
+    }
+    
+    @Override
+    public void write(char[] chars, int offset, int count) throws IOException {
+        if (truncated) {
+            throw new LimitReachedException(maxChars);
+        }
+        boolean limitReached = maxChars > 0 && written + count > maxChars;
+        if (limitReached) {
+            count = (int) (maxChars - written);
+        }
+        while (count > 0) {
+            int copied = Math.min(count, segment.length - length);
+            System.arraycopy(chars, offset, segment, length, copied);
+            length += copied;
+            written += copied;
+            offset += copied;
+            count -= copied;
+            if (length == segment.length) {
+                emit();
+            }
+        }
+        if (limitReached) {
+            truncated = true;
+            emit();
+            throw new LimitReachedException(maxChars);
+        }
+    }
+    
+    /**
+     * Passes on the text of the current segment, however short
+     */
+    @Override
+    public void flush() throws IOException {
+        emit();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        emit();
+    }
+    
+    /**
+     * Stops passing text on, for an extraction that was given up. Waits for a segment that is
+     * being passed on; writing afterwards fails.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+    }
+    
+    /**
+     * @return the characters passed on, or about to be
+     */
+    long getWritten() {
+        return written;
+    }
+    
+    /**
+     * @return true if writing stopped at the character limit
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+    
+    private synchronized void emit() throws IOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Text is no longer wanted");
+        }
+        if (length > 0) {
+            String text = new String(segment, 0, length);
+            length = 0;
+            consumer.accept(text);
+        }
+    }
+    
+    /**
+     * Thrown when text beyond the character limit is written
+     */
+    static final class LimitReachedException extends IOException {
+        LimitReachedException(long maxChars) {
+            super("Text exceeds " + maxChars + " characters");
+        }
+    }
+}
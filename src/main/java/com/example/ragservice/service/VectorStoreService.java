@@ -5,13 +5,19 @@ import com.example.ragservice.model.SearchResult;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.opensearch.client.indices.CreateIndexRequest;
 import org.opensearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.opensearch.action.DocWriteResponse;
+import org.opensearch.action.bulk.BulkItemResponse;
+import org.opensearch.action.bulk.BulkRequest;
+import org.opensearch.action.bulk.BulkResponse;
 import org.opensearch.client.indices.GetIndexRequest;
+import org.opensearch.action.delete.DeleteRequest;
 import org.opensearch.action.get.GetRequest;
 import org.opensearch.action.get.GetResponse;
 import org.opensearch.action.index.IndexRequest;
 import org.opensearch.action.index.IndexResponse;
 import org.opensearch.action.search.SearchRequest;
 import org.opensearch.action.search.SearchResponse;
+import org.opensearch.action.update.UpdateRequest;
 import org.opensearch.client.RequestOptions;
 import org.opensearch.client.RestHighLevelClient;
 import org.opensearch.common.xcontent.XContentType;
@@ -176,18 +182,9 @@ public class VectorStoreService {
         // Ensure index exists
         createIndex(indexName);
         
-        // Prepare document for indexing
-        Map<String, Object> jsonMap = new HashMap<>();
-        jsonMap.put("id", document.getId());
-        jsonMap.put("content", document.getContent());
-        jsonMap.put("metadata", document.getMetadata());
-        jsonMap.put("embedding", document.getEmbedding());
-        jsonMap.put("timestamp", document.getTimestamp());
-        jsonMap.put("source", document.getSource());
-        
         IndexRequest request = new IndexRequest(indexName)
             .id(document.getId())
-            .source(jsonMap);
+            .source(toSourceMap(document));
         
         IndexResponse response = client.index(request, RequestOptions.DEFAULT);
         logger.debug("Stored document {} in index {}", document.getId(), indexName);
@@ -197,19 +194,132 @@ public class VectorStoreService {
     
     /**
      * Store multiple documents in batch
+     * @return the number of stored documents and the documents that could not be stored
      */
-    public void storeDocuments(String indexName, List<Document> documents) throws IOException {
+    public BulkIndexResult storeDocuments(String indexName, List<Document> documents) throws IOException {
         logger.info("Storing {} documents in index {}", documents.size(), indexName);
         
+        List<BulkItemFailure> failures = new ArrayList<>();
         for (Document document : documents) {
             try {
                 storeDocument(indexName, document);
             } catch (Exception e) {
                 logger.error("Failed to store document {}: {}", document.getId(), e.getMessage());
+                failures.add(new BulkItemFailure(document, e.getMessage(), 0, e.getClass().getName()));
             }
         }
         
         logger.info("Completed storing documents in index {}", indexName);
+        return new BulkIndexResult(documents.size() - failures.size(), failures);
+    }
+    
+    /**
+     * Index a batch of documents that already carry their embeddings with a single bulk request.
+     * The index is expected to exist; per-document failures are reported rather than thrown.
+     */
+    public BulkIndexResult bulkIndexDocuments(String indexName, List<Document> documents) throws IOException {
+        if (documents.isEmpty()) {
+            return new BulkIndexResult(0, List.of());
+        }
+        
+        BulkRequest bulkRequest = new BulkRequest();
+        for (Document document : documents) {
+            bulkRequest.add(new IndexRequest(indexName)
+                .id(document.getId())
+                .source(toSourceMap(document)));
+        }
+        
+        BulkResponse bulkResponse = client.bulk(bulkRequest, RequestOptions.DEFAULT);
+        
+        List<BulkItemFailure> failures = new ArrayList<>();
+        if (bulkResponse.hasFailures()) {
+            for (BulkItemResponse item : bulkResponse.getItems()) {
+                if (item.isFailed()) {
+                    Exception cause = item.getFailure().getCause();
+                    failures.add(new BulkItemFailure(
+                        documents.get(item.getItemId()),
+                        item.getFailureMessage(),
+                        item.status().getStatus(),
+                        cause != null ? cause.getClass().getName() : null
+                    ));
+                }
+            }
+        }
+        
+        logger.debug("Bulk indexed {} documents into {} in {}ms ({} failed)", 
+                    documents.size(), indexName, bulkResponse.getTook().millis(), failures.size());
+        
+        return new BulkIndexResult(documents.size() - failures.size(), failures);
+    }
+    
+    /**
+     * Delete documents by ID with a single bulk request. Documents that do not exist are
+     * not counted as failures.
+     * @return the number of documents deleted
+     */
+    public int deleteDocuments(String indexName, List<String> documentIds) throws IOException {
+        if (documentIds.isEmpty()) {
+            return 0;
+        }
+        
+        BulkRequest bulkRequest = new BulkRequest();
+        for (String documentId : documentIds) {
+            bulkRequest.add(new DeleteRequest(indexName, documentId));
+        }
+        
+        BulkResponse bulkResponse = client.bulk(bulkRequest, RequestOptions.DEFAULT);
+        
+        int deleted = 0;
+        List<String> failures = new ArrayList<>();
+        for (BulkItemResponse item : bulkResponse.getItems()) {
+            if (item.isFailed()) {
+                failures.add(item.getId() + ": " + item.getFailureMessage());
+            } else if (item.getResponse().getResult() == DocWriteResponse.Result.DELETED) {
+                deleted++;
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new IOException("Failed to delete " + failures.size() + " documents from " + indexName + ": " + failures.get(0));
+        }
+        
+        logger.debug("Deleted {} of {} documents from {}", deleted, documentIds.size(), indexName);
+        return deleted;
+    }
+    
+    /**
+     * Set metadata fields of existing documents with a single bulk request, without
+     * reindexing them. Documents that do not exist are skipped.
+     * @param metadataByDocumentId the fields to set, by document ID
+     * @return the number of documents updated
+     */
+    public int updateMetadata(String indexName, Map<String, Map<String, Object>> metadataByDocumentId) throws IOException {
+        if (metadataByDocumentId.isEmpty()) {
+            return 0;
+        }
+        
+        BulkRequest bulkRequest = new BulkRequest();
+        for (Map.Entry<String, Map<String, Object>> entry : metadataByDocumentId.entrySet()) {
+            bulkRequest.add(new UpdateRequest(indexName, entry.getKey())
+                .doc(Map.of("metadata", entry.getValue())));
+        }
+        
+        BulkResponse bulkResponse = client.bulk(bulkRequest, RequestOptions.DEFAULT);
+        
+        int updated = 0;
+        List<String> failures = new ArrayList<>();
+        for (BulkItemResponse item : bulkResponse.getItems()) {
+            if (!item.isFailed()) {
+                updated++;
+            } else if (item.status().getStatus() != 404) {
+                failures.add(item.getId() + ": " + item.getFailureMessage());
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new IOException("Failed to update " + failures.size() + " documents in " + indexName + ": " + failures.get(0));
+        }
+        
+        logger.debug("Updated metadata of {} of {} documents in {}", updated, metadataByDocumentId.size(), indexName);
+        return updated;
     }
     
     /**
@@ -339,6 +449,20 @@ public class VectorStoreService {
         return results;
     }
     
+    /**
+     * Build the OpenSearch source for a document
+     */
+    private Map<String, Object> toSourceMap(Document document) {
+        Map<String, Object> jsonMap = new HashMap<>();
+        jsonMap.put("id", document.getId());
+        jsonMap.put("content", document.getContent());
+        jsonMap.put("metadata", document.getMetadata());
+        jsonMap.put("embedding", document.getEmbedding());
+        jsonMap.put("timestamp", document.getTimestamp());
+        jsonMap.put("source", document.getSource());
+        return jsonMap;
+    }
+    
     /**
      * Map OpenSearch source to Document object (excludes embedding by default)
      */
@@ -370,4 +494,69 @@ public class VectorStoreService {
         
         return document;
     }
+    
+    /**
+     * Outcome of a bulk indexing request
+     */
+    public static class BulkIndexResult {
+        private final int successCount;
+        private final List<BulkItemFailure> failures;
+        
+        public BulkIndexResult(int successCount, List<BulkItemFailure> failures) {
+            this.successCount = successCount;
+            this.failures = failures;
+        }
+        
+        public int getSuccessCount() {
+            return successCount;
+        }
+        
+        public int getFailureCount() {
+            return failures.size();
+        }
+        
+        public List<BulkItemFailure> getFailures() {
+            return failures;
+        }
+    }
+    
+    /**
+     * A single document rejected by a bulk request
+     */
+    public static class BulkItemFailure {
+        private final Document document;
+        private final String message;
+        private final int status;
+        private final String errorClass;
+        
+        public BulkItemFailure(Document document, String message, int status) {
+            this(document, message, status, null);
+        }
+        
+        /**
+         * @param status HTTP status of the rejected item, or 0 if the document never reached OpenSearch
+         */
+        public BulkItemFailure(Document document, String message, int status, String errorClass) {
+            this.document = document;
+            this.message = message;
+            this.status = status;
+            this.errorClass = errorClass;
+        }
+        
+        public Document getDocument() {
+            return document;
+        }
+        
+        public String getMessage() {
+            return message;
+        }
+        
+        public int getStatus() {
+            return status;
+        }
+        
+        public String getErrorClass() {
+            return errorClass;
+        }
+    }
 }
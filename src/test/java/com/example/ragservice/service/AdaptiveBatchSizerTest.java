@@ -0,0 +1,134 @@
+package com.example.ragservice.service;
+
+import org.junit.jupiter.api.Test;
+import org.opensearch.OpenSearchStatusException;
+import org.opensearch.core.rest.RestStatus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveBatchSizerTest {
+
+    private AdaptiveBatchSizer sizer(int initialSize) {
+        return new AdaptiveBatchSizer(initialSize, 10, 200, 10, 0.5, 1000, 500);
+    }
+
+    @Test
+    void testGrowsAdditivelyWhileFullBatchesMeetTargets() {
+        // Given
+        AdaptiveBatchSizer sizer = sizer(100);
+
+        // When
+        sizer.batchSealed(0);
+        sizer.indexingCompleted(0, 100, 200, 100, false);
+        sizer.batchSealed(1);
+        sizer.indexingCompleted(1, 110, 200, 100, false);
+
+        // Then
+        assertEquals(120, sizer.getCurrentSize());
+        assertEquals(2, sizer.getIncreases());
+    }
+
+    @Test
+    void testPartialBatchDoesNotGrowSize() {
+        // Given
+        AdaptiveBatchSizer sizer = sizer(100);
+
+        // When
+        sizer.batchSealed(0);
+        sizer.indexingCompleted(0, 40, 200, 100, false);
+
+        // Then
+        assertEquals(100, sizer.getCurrentSize());
+    }
+
+    @Test
+    void testBacksOffMultiplicativelyOnThrottlingAndSlowResponses() {
+        // Given
+        AdaptiveBatchSizer sizer = sizer(100);
+
+        // When
+        sizer.batchSealed(0);
+        sizer.indexingCompleted(0, 100, 200, 100, true);
+        sizer.batchSealed(1);
+        sizer.embeddingCompleted(1, 5000);
+
+        // Then
+        assertEquals(25, sizer.getCurrentSize());
+        assertEquals(2, sizer.getDecreases());
+    }
+
+    @Test
+    void testBatchesSealedBeforeDecreaseDoNotShrinkOrGrowAgain() {
+        // Given
+        AdaptiveBatchSizer sizer = sizer(100);
+        sizer.batchSealed(0);
+        sizer.batchSealed(1);
+        sizer.batchSealed(2);
+
+        // When
+        sizer.indexingCompleted(0, 100, 200, 900, false);
+        sizer.indexingCompleted(1, 100, 200, 900, false);
+        sizer.indexingCompleted(2, 100, 200, 100, false);
+
+        // Then
+        assertEquals(50, sizer.getCurrentSize());
+        assertEquals(1, sizer.getDecreases());
+        assertEquals(0, sizer.getIncreases());
+    }
+
+    @Test
+    void testStaysWithinBounds() {
+        // Given
+        AdaptiveBatchSizer sizer = sizer(500);
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            sizer.batchSealed(i);
+            sizer.indexingCompleted(i, 500, 200, 100, false);
+        }
+
+        // Then
+        assertEquals(200, sizer.getCurrentSize());
+
+        // When
+        for (int i = 10; i < 20; i++) {
+            sizer.batchSealed(i);
+            sizer.indexingCompleted(i, 200, 200, 100, true);
+        }
+
+        // Then
+        assertEquals(10, sizer.getCurrentSize());
+    }
+
+    @Test
+    void testOnlyOverloadFailuresShrinkSize() {
+        // Given
+        AdaptiveBatchSizer sizer = sizer(100);
+        sizer.batchSealed(0);
+        sizer.batchSealed(1);
+
+        // When
+        sizer.batchFailed(0, new IllegalStateException("mapping conflict"));
+
+        // Then
+        assertEquals(100, sizer.getCurrentSize());
+
+        // When
+        sizer.batchFailed(1, new UncheckedIOException(new SocketTimeoutException("Read timed out")));
+
+        // Then
+        assertEquals(50, sizer.getCurrentSize());
+    }
+
+    @Test
+    void testIsOverload() {
+        assertTrue(AdaptiveBatchSizer.isOverload(new OpenSearchStatusException("rejected", RestStatus.TOO_MANY_REQUESTS)));
+        assertTrue(AdaptiveBatchSizer.isOverload(new IOException(new SocketTimeoutException("timeout"))));
+        assertFalse(AdaptiveBatchSizer.isOverload(new OpenSearchStatusException("bad request", RestStatus.BAD_REQUEST)));
+        assertFalse(AdaptiveBatchSizer.isOverload(new IOException("connection refused")));
+    }
+}
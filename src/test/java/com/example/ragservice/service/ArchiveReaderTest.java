@@ -0,0 +1,136 @@
+package com.example.ragservice.service;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testEntriesOfNestedArchivesAreExtractedWithTheirLocation() throws IOException {
+        // Given
+        byte[] inner = tarGz(entries("notes/inner.txt", "inner text"));
+        Path archive = Files.write(tempDir.resolve("bundle.zip"),
+            zip(entries("outer.txt", "outer text", "image.png", "not a document", "inner.tar.gz", inner)));
+        ArchiveReader reader = reader(3, 0, 0);
+
+        // When
+        List<ArchiveReader.Entry> entries = reader.read(archive);
+
+        // Then
+        assertEquals(2, entries.size());
+        assertEquals(archive + "!/outer.txt", entries.get(0).location());
+        assertEquals("outer text", entries.get(0).document().getText());
+        assertEquals(archive + "!/inner.tar.gz!/notes/inner.txt", entries.get(1).location());
+        assertEquals("inner text", entries.get(1).document().getText());
+        assertEquals(archive.toString(), entries.get(1).document().getMetadata().get("archive_path"));
+        assertEquals("notes/inner.txt", entries.get(1).document().getMetadata().get("archive_entry"));
+    }
+
+    @Test
+    void testArchivesNestedTooDeepAndEntriesTooLargeAreSkipped() throws IOException {
+        // Given
+        byte[] inner = zip(entries("inner.txt", "inner text"));
+        Path archive = Files.write(tempDir.resolve("bundle.zip"),
+            zip(entries("large.txt", "x".repeat(100), "inner.zip", inner, "small.txt", "small text")));
+        ArchiveReader reader = reader(1, 50, 0);
+
+        // When
+        List<ArchiveReader.Entry> entries = reader.read(archive);
+
+        // Then
+        assertEquals(3, entries.size());
+        assertTrue(entries.get(0).error() instanceof ArchiveReader.LimitExceededException);
+        assertTrue(entries.get(1).error() instanceof ArchiveReader.LimitExceededException);
+        assertEquals(archive + "!/inner.zip", entries.get(1).location());
+        assertEquals("small text", entries.get(2).document().getText());
+    }
+
+    @Test
+    void testRestOfArchiveIsSkippedBeyondTotalSize() throws IOException {
+        // Given
+        Path archive = Files.write(tempDir.resolve("bundle.tar.gz"),
+            tarGz(entries("a.txt", "a".repeat(60), "b.txt", "b".repeat(60), "c.txt", "c")));
+        ArchiveReader reader = reader(3, 0, 100);
+
+        // When
+        List<ArchiveReader.Entry> entries = reader.read(archive);
+
+        // Then
+        assertEquals(2, entries.size());
+        assertEquals(archive + "!/a.txt", entries.get(0).location());
+        assertNull(entries.get(0).error());
+        assertEquals(archive.toString(), entries.get(1).location());
+        assertTrue(entries.get(1).error() instanceof ArchiveReader.LimitExceededException);
+    }
+
+    @Test
+    void testEntryNamesLeavingTheArchiveAreRejected() {
+        // When
+        String absolute = ArchiveReader.entryName("/docs/a.txt");
+        String escaping = ArchiveReader.entryName("docs/../../a.txt");
+
+        // Then
+        assertEquals("docs/a.txt", absolute);
+        assertNull(escaping);
+    }
+
+    private ArchiveReader reader(int maxDepth, long maxEntrySize, long maxTotalSize) {
+        return new ArchiveReader(new DocumentExtractionService(), name -> name.endsWith(".txt"), maxDepth,
+            maxEntrySize, maxTotalSize, 0);
+    }
+
+    private static Map<String, byte[]> entries(Object... namesAndContents) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndContents.length; i += 2) {
+            Object content = namesAndContents[i + 1];
+            entries.put((String) namesAndContents[i], content instanceof String text
+                ? text.getBytes(StandardCharsets.UTF_8) : (byte[]) content);
+        }
+        return entries;
+    }
+
+    private static byte[] zip(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] tarGz(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(new GzipCompressorOutputStream(bytes))) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                TarArchiveEntry tarEntry = new TarArchiveEntry(entry.getKey());
+                tarEntry.setSize(entry.getValue().length);
+                out.putArchiveEntry(tarEntry);
+                out.write(entry.getValue());
+                out.closeArchiveEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
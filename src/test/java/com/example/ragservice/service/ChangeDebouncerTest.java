@@ -0,0 +1,56 @@
+package com.example.ragservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeDebouncerTest {
+
+    private static final long MS = 1_000_000;
+
+    private final Path a = Paths.get("/docs/a.txt");
+    private final Path b = Paths.get("/docs/b.txt");
+
+    @Test
+    void testBurstOfChangesIsDueOnceAfterQuietPeriod() {
+        // Given
+        ChangeDebouncer debouncer = new ChangeDebouncer(100, 10_000);
+        debouncer.record(a, 0);
+        debouncer.record(a, 50 * MS);
+        debouncer.record(a, 90 * MS);
+
+        // When
+        List<Path> early = debouncer.takeDue(150 * MS);
+        long wait = debouncer.nanosUntilNextDue(150 * MS);
+        List<Path> due = debouncer.takeDue(190 * MS);
+
+        // Then
+        assertTrue(early.isEmpty());
+        assertEquals(40 * MS, wait);
+        assertEquals(List.of(a), due);
+        assertEquals(0, debouncer.size());
+        assertEquals(-1, debouncer.nanosUntilNextDue(190 * MS));
+    }
+
+    @Test
+    void testFileThatKeepsChangingIsDueAfterMaxDelay() {
+        // Given
+        ChangeDebouncer debouncer = new ChangeDebouncer(100, 300);
+        for (long t = 0; t <= 300; t += 50) {
+            debouncer.record(a, t * MS);
+        }
+        debouncer.record(b, 250 * MS);
+
+        // When
+        List<Path> due = debouncer.takeDue(300 * MS);
+
+        // Then
+        assertEquals(List.of(a), due);
+        assertEquals(1, debouncer.size());
+        assertEquals(50 * MS, debouncer.nanosUntilNextDue(300 * MS));
+    }
+}
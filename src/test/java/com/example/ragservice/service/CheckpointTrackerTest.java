@@ -0,0 +1,129 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.model.IngestionCheckpoint;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointTrackerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private CsvCheckpointService checkpointService;
+    private Path csvFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        checkpointService = new CsvCheckpointService();
+        ReflectionTestUtils.setField(checkpointService, "directory", tempDir.resolve("checkpoints").toString());
+        ReflectionTestUtils.setField(checkpointService, "intervalSeconds", 0L);
+
+        csvFile = tempDir.resolve("data.csv");
+        Files.writeString(csvFile, "id,text\n1,a\n2,b\n3,c\n");
+    }
+
+    @Test
+    void testCheckpointAdvancesOnlyOverContiguousAcknowledgedBatches() throws IOException {
+        // Given - three sealed batches
+        CheckpointTracker tracker = new CheckpointTracker(checkpointService, newCheckpoint());
+        sealBatch(tracker, 0, 10, 100);
+        sealBatch(tracker, 1, 20, 200);
+        sealBatch(tracker, 2, 30, 300);
+
+        // When - batch 1 is acknowledged before batch 0
+        tracker.batchAcknowledged(1, 10, 0);
+
+        // Then
+        assertEquals(0, tracker.getCheckpoint().getRecordNumber());
+        assertEquals(-1, tracker.getCheckpoint().getLastAcknowledgedBatch());
+
+        // When
+        tracker.batchAcknowledged(0, 9, 1);
+
+        // Then - both batches are covered now
+        IngestionCheckpoint saved = checkpointService.load("job_1").orElseThrow();
+        assertEquals(20, saved.getRecordNumber());
+        assertEquals(200, saved.getByteOffset());
+        assertEquals(1, saved.getLastAcknowledgedBatch());
+        assertEquals(19, saved.getDocumentsIndexed());
+        assertEquals(1, saved.getDocumentsFailed());
+    }
+
+    @Test
+    void testFailedBatchStopsCheckpoint() throws IOException {
+        // Given
+        CheckpointTracker tracker = new CheckpointTracker(checkpointService, newCheckpoint());
+        sealBatch(tracker, 0, 10, 100);
+        sealBatch(tracker, 1, 20, 200);
+        sealBatch(tracker, 2, 30, 300);
+
+        // When - batch 1 fails as a whole
+        tracker.batchAcknowledged(0, 10, 0);
+        tracker.onBatchFailed(1, List.of(), new IOException("connection refused"));
+        tracker.batchAcknowledged(2, 10, 0);
+        tracker.flush();
+
+        // Then - a resume starts again at batch 1
+        IngestionCheckpoint saved = checkpointService.load("job_1").orElseThrow();
+        assertEquals(10, saved.getRecordNumber());
+        assertEquals(100, saved.getByteOffset());
+        assertEquals(0, saved.getLastAcknowledgedBatch());
+    }
+
+    @Test
+    void testBatchNumbersContinueAcrossResumes() {
+        // Given - a checkpoint from an earlier run that acknowledged batches 0 to 4
+        IngestionCheckpoint checkpoint = newCheckpoint();
+        checkpoint.setLastAcknowledgedBatch(4);
+        checkpoint.setRecordNumber(50);
+        CheckpointTracker tracker = new CheckpointTracker(checkpointService, checkpoint);
+
+        // When
+        sealBatch(tracker, 0, 60, 600);
+        tracker.batchAcknowledged(0, 10, 0);
+
+        // Then
+        assertEquals(5, tracker.getCheckpoint().getLastAcknowledgedBatch());
+        assertEquals(60, tracker.getCheckpoint().getRecordNumber());
+    }
+
+    @Test
+    void testCheckpointServiceRejectsUnsafeJobIds() {
+        assertThrows(IllegalArgumentException.class, () -> checkpointService.load("../etc/passwd"));
+        assertThrows(IllegalArgumentException.class, () -> checkpointService.delete("a/b"));
+    }
+
+    @Test
+    void testVerifyUnchangedDetectsModifiedFile() throws IOException {
+        // Given
+        IngestionCheckpoint checkpoint = newCheckpoint();
+
+        // When
+        Files.writeString(csvFile, "id,text\n1,changed\n");
+
+        // Then
+        assertThrows(IllegalStateException.class, () -> checkpointService.verifyUnchanged(checkpoint));
+    }
+
+    private IngestionCheckpoint newCheckpoint() {
+        try {
+            return checkpointService.createCheckpoint("job_1", IngestionCheckpoint.TYPE_CSV_FILE, csvFile);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void sealBatch(CheckpointTracker tracker, long sequence, long lastRecord, long nextByteOffset) {
+        tracker.recordConsumed(lastRecord, nextByteOffset);
+        tracker.onBatchSealed(sequence);
+    }
+}
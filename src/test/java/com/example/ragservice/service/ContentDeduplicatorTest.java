@@ -0,0 +1,130 @@
+package com.example.ragservice.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentDeduplicatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testCopyIsDuplicateOfFirstFileWithSameContent() throws IOException {
+        // Given
+        Path original = write("a.txt", "same content");
+        Path other = write("b.txt", "diff content");
+        Path copy = write("c.txt", "same content");
+        ContentDeduplicator deduplicator = new ContentDeduplicator();
+        ContentDeduplicator.Copy first = deduplicator.register(original, Files.size(original));
+        ContentDeduplicator.Copy second = deduplicator.register(other, Files.size(other));
+        ContentDeduplicator.Copy third = deduplicator.register(copy, Files.size(copy));
+        first.extracted(true);
+
+        // When
+        Path thirdOriginal = third.findOriginal();
+        Path secondOriginal = second.findOriginal();
+
+        // Then
+        assertNull(first.findOriginal());
+        assertNull(secondOriginal);
+        assertEquals(original, thirdOriginal);
+        assertEquals(3, deduplicator.getFilesHashed());
+    }
+
+    @Test
+    void testFilesOfDifferentSizeAreNotHashed() throws IOException {
+        // Given
+        Path small = write("small.txt", "abc");
+        Path large = write("large.txt", "abcdef");
+        ContentDeduplicator deduplicator = new ContentDeduplicator();
+        ContentDeduplicator.Copy first = deduplicator.register(small, Files.size(small));
+        ContentDeduplicator.Copy second = deduplicator.register(large, Files.size(large));
+
+        // When
+        Path original = second.findOriginal();
+
+        // Then
+        assertTrue(first.isFirstOfSize());
+        assertTrue(second.isFirstOfSize());
+        assertNull(original);
+        assertEquals(0, deduplicator.getFilesHashed());
+    }
+
+    @Test
+    void testKnownHashIsNotRecomputed() throws IOException {
+        // Given
+        Path original = write("a.txt", "same content");
+        Path copy = write("b.txt", "same content");
+        ContentDeduplicator deduplicator = new ContentDeduplicator();
+        deduplicator.register(original, Files.size(original), ScanManifestService.contentHash(original)).extracted(true);
+        ContentDeduplicator.Copy second = deduplicator.register(copy, Files.size(copy));
+
+        // When
+        Path found = second.findOriginal();
+
+        // Then
+        assertEquals(original, found);
+        assertEquals(1, deduplicator.getFilesHashed());
+    }
+
+    @Test
+    void testCopyOfFailedOriginalIsExtractedInstead() throws IOException {
+        // Given
+        Path broken = write("a.txt", "same content");
+        Path firstCopy = write("b.txt", "same content");
+        Path secondCopy = write("c.txt", "same content");
+        ContentDeduplicator deduplicator = new ContentDeduplicator();
+        ContentDeduplicator.Copy first = deduplicator.register(broken, Files.size(broken));
+        ContentDeduplicator.Copy second = deduplicator.register(firstCopy, Files.size(firstCopy));
+        ContentDeduplicator.Copy third = deduplicator.register(secondCopy, Files.size(secondCopy));
+        first.extracted(false);
+
+        // When
+        Path secondOriginal = second.findOriginal();
+        second.extracted(true);
+        Path thirdOriginal = third.findOriginal();
+
+        // Then
+        assertNull(secondOriginal);
+        assertEquals(firstCopy, thirdOriginal);
+    }
+
+    @Test
+    void testCopyWaitsForTheExtractionOfItsOriginal() throws Exception {
+        // Given
+        Path original = write("a.txt", "same content");
+        Path copy = write("b.txt", "same content");
+        ContentDeduplicator deduplicator = new ContentDeduplicator();
+        ContentDeduplicator.Copy first = deduplicator.register(original, Files.size(original));
+        ContentDeduplicator.Copy second = deduplicator.register(copy, Files.size(copy));
+        CompletableFuture<Path> found = CompletableFuture.supplyAsync(() -> {
+            try {
+                return second.findOriginal();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        // When
+        Thread.sleep(100);
+        boolean doneBeforeExtraction = found.isDone();
+        first.extracted(true);
+
+        // Then
+        assertFalse(doneBeforeExtraction);
+        assertEquals(original, found.get(5, TimeUnit.SECONDS));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.writeString(tempDir.resolve(name), content);
+    }
+}
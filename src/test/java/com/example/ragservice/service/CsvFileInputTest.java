@@ -0,0 +1,82 @@
+package com.example.ragservice.service;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvFileInputTest {
+
+    private static final String CSV = "id,text\n1,first\n2,second\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testOpen_DecompressesGzip() throws Exception {
+        // Given - two concatenated gzip members
+        Path gzipFile = tempDir.resolve("data.csv.gz");
+        try (OutputStream out = Files.newOutputStream(gzipFile)) {
+            out.write(gzip("id,text\n1,first\n"));
+            out.write(gzip("2,second\n"));
+        }
+
+        // When
+        String content;
+        long bytesRead;
+        try (CsvFileInput input = CsvFileInput.open(gzipFile)) {
+            content = new String(input.getStream().readAllBytes(), StandardCharsets.UTF_8);
+            bytesRead = input.getBytesRead();
+        }
+
+        // Then - progress is measured in compressed bytes
+        assertEquals(CSV, content);
+        assertEquals(Files.size(gzipFile), bytesRead);
+    }
+
+    @Test
+    void testOpen_DecompressesBzip2() throws Exception {
+        // Given
+        Path bzip2File = tempDir.resolve("data.csv.bz2");
+        try (OutputStream out = new BZip2CompressorOutputStream(Files.newOutputStream(bzip2File))) {
+            out.write(CSV.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // When
+        try (CsvFileInput input = CsvFileInput.open(bzip2File)) {
+
+            // Then
+            assertEquals(CsvFileInput.Codec.BZIP2, input.getCodec());
+            assertEquals(CSV, new String(input.getStream().readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testDetect_UsesContentNotFileName() throws Exception {
+        // Given - plain CSV files, one of them named like an archive and one starting like a bzip2 header
+        Path misnamed = tempDir.resolve("data.csv.gz");
+        Files.writeString(misnamed, CSV, StandardCharsets.UTF_8);
+        Path bzLike = tempDir.resolve("bz.csv");
+        Files.writeString(bzLike, "BZhang,text\n1,a\n", StandardCharsets.UTF_8);
+
+        // When & Then
+        assertEquals(CsvFileInput.Codec.NONE, CsvFileInput.detect(misnamed));
+        assertEquals(CsvFileInput.Codec.NONE, CsvFileInput.detect(bzLike));
+    }
+
+    private byte[] gzip(String content) throws IOException {
+        Path file = Files.createTempFile(tempDir, "member", ".gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return Files.readAllBytes(file);
+    }
+}
@@ -1,12 +1,24 @@
 package com.example.ragservice.service;
 
+import com.example.ragservice.dto.CsvUploadResponse;
 import com.example.ragservice.model.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class CsvProcessingServiceTest {
 
@@ -190,4 +202,51 @@ class CsvProcessingServiceTest {
         assertEquals("Content with \"quotes\" and, comma", doc.getContent());
         assertEquals("Document with, comma", doc.getMetadata().get("title"));
     }
+
+    @Test
+    void testIngestCsvStream_IndexesInBatchesAndReturnsHeaders() throws Exception {
+        // Given
+        EmbeddingService embeddingService = mock(EmbeddingService.class);
+        VectorStoreService vectorStoreService = mock(VectorStoreService.class);
+        ReflectionTestUtils.setField(csvProcessingService, "embeddingService", embeddingService);
+        ReflectionTestUtils.setField(csvProcessingService, "vectorStoreService", vectorStoreService);
+        
+        when(embeddingService.generateEmbeddings(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            List<List<Double>> embeddings = new ArrayList<>();
+            texts.forEach(text -> embeddings.add(List.of(0.1, 0.2)));
+            return embeddings;
+        });
+        when(vectorStoreService.bulkIndexDocuments(eq("test-index"), anyList())).thenAnswer(invocation -> {
+            List<Document> batch = invocation.getArgument(1);
+            return new VectorStoreService.BulkIndexResult(batch.size(), List.of());
+        });
+        
+        StringBuilder csv = new StringBuilder("title,content\n");
+        for (int i = 0; i < 250; i++) {
+            csv.append("Doc ").append(i).append(",Content ").append(i).append("\n");
+        }
+        csv.append("Empty,\n");
+        InputStream inputStream = new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        // When
+        CsvUploadResponse response = csvProcessingService.ingestCsvStream(inputStream, "test-index", "content", "doc_id", "upload", 100);
+
+        // Then
+        assertTrue(response.isSuccess());
+        assertEquals(250, response.getDocumentsIndexed());
+        assertEquals(List.of("title", "content"), response.getCsvHeaders());
+        verify(vectorStoreService).createIndex("test-index");
+        verify(vectorStoreService, times(3)).bulkIndexDocuments(eq("test-index"), anyList());
+    }
+
+    @Test
+    void testIngestCsvStream_MissingContentColumn() {
+        // Given
+        InputStream inputStream = new ByteArrayInputStream("title,body\nDoc,Text\n".getBytes(StandardCharsets.UTF_8));
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class,
+            () -> csvProcessingService.ingestCsvStream(inputStream, "test-index", "content", null, null, null));
+    }
 }
@@ -0,0 +1,128 @@
+package com.example.ragservice.service;
+
+import org.apache.commons.csv.CSVFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvRecordCountEstimatorTest {
+
+    private static final CSVFormat FORMAT = CSVFormat.DEFAULT.withFirstRecordAsHeader();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testEstimate_SmallFileIsCountedExactly() throws Exception {
+        // Given - quoted fields with line breaks count as one record each
+        Path csvFile = writeCsv(100, "id,text\n");
+        CsvRecordCountEstimator estimator = new CsvRecordCountEstimator(FORMAT, 4, 64 * 1024);
+
+        // When
+        long estimate = estimator.estimate(csvFile);
+
+        // Then
+        assertEquals(100, estimate);
+    }
+
+    @Test
+    void testEstimate_CountsUnterminatedLastRecord() throws Exception {
+        // Given
+        Path csvFile = tempDir.resolve("unterminated.csv");
+        Files.writeString(csvFile, "id,text\n1,a\n2,b", StandardCharsets.UTF_8);
+        CsvRecordCountEstimator estimator = new CsvRecordCountEstimator(FORMAT, 4, 1024);
+
+        // When
+        long estimate = estimator.estimate(csvFile);
+
+        // Then
+        assertEquals(2, estimate);
+    }
+
+    @Test
+    void testEstimate_LargeFileIsExtrapolatedFromSamples() throws Exception {
+        // Given - a file many times larger than the combined samples, where samples may start inside quotes
+        Path csvFile = writeCsv(40000, "id,text\n");
+        CsvRecordCountEstimator estimator = new CsvRecordCountEstimator(FORMAT, 4, 8 * 1024);
+
+        // When
+        long estimate = estimator.estimate(csvFile);
+
+        // Then
+        assertEquals(40000, estimate, 40000 * 0.05);
+    }
+
+    @Test
+    void testEstimate_WithoutHeader() throws Exception {
+        // Given
+        Path csvFile = writeCsv(10, "");
+        CsvRecordCountEstimator estimator = new CsvRecordCountEstimator(CSVFormat.DEFAULT, 4, 1024);
+
+        // When & Then
+        assertEquals(10, estimator.estimate(csvFile));
+    }
+
+    @Test
+    void testEstimate_HeaderOnly() throws Exception {
+        // Given
+        Path csvFile = tempDir.resolve("empty.csv");
+        Files.writeString(csvFile, "id,text\n", StandardCharsets.UTF_8);
+        CsvRecordCountEstimator estimator = new CsvRecordCountEstimator(FORMAT, 4, 1024);
+
+        // When & Then
+        assertEquals(0, estimator.estimate(csvFile));
+    }
+
+    @Test
+    void testEstimate_SmallGzipFileIsCountedExactly() throws Exception {
+        // Given
+        Path gzipFile = gzip(writeCsv(100, "id,text\n"));
+        CsvRecordCountEstimator estimator = new CsvRecordCountEstimator(FORMAT, 4, 64 * 1024);
+
+        // When & Then
+        assertEquals(100, estimator.estimate(gzipFile));
+    }
+
+    @Test
+    void testEstimate_LargeGzipFileIsExtrapolatedFromPrefix() throws Exception {
+        // Given
+        Path gzipFile = gzip(writeCsv(100000, "id,text\n"));
+        CsvRecordCountEstimator estimator = new CsvRecordCountEstimator(FORMAT, 4, 16 * 1024);
+
+        // When
+        long estimate = estimator.estimate(gzipFile);
+
+        // Then
+        assertEquals(100000, estimate, 100000 * 0.15);
+    }
+
+    private Path gzip(Path csvFile) throws IOException {
+        Path gzipFile = tempDir.resolve(csvFile.getFileName() + ".gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipFile))) {
+            Files.copy(csvFile, out);
+        }
+        return gzipFile;
+    }
+
+    private Path writeCsv(int records, String header) throws IOException {
+        StringBuilder csv = new StringBuilder(header);
+        for (int i = 0; i < records; i++) {
+            if (i % 2 == 0) {
+                csv.append(i).append(",\"first line\nsecond line ").append(i).append("\"\n");
+            } else {
+                csv.append(i).append(",single line ").append(i).append("\n");
+            }
+        }
+        Path csvFile = tempDir.resolve("records.csv");
+        Files.writeString(csvFile, csv.toString(), StandardCharsets.UTF_8);
+        return csvFile;
+    }
+}
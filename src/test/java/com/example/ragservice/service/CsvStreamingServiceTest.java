@@ -0,0 +1,88 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.dto.CsvStreamingResponse;
+import com.example.ragservice.dto.NdjsonStreamingRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class CsvStreamingServiceTest {
+
+    private static final String INDEX = "test-index";
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    @Mock
+    private VectorStoreService vectorStoreService;
+
+    @TempDir
+    Path tempDir;
+
+    private CsvStreamingService streamingService;
+    private IngestionJobScheduler jobScheduler;
+
+    @BeforeEach
+    void setUp() {
+        jobScheduler = new IngestionJobScheduler();
+        ReflectionTestUtils.invokeMethod(jobScheduler, "start");
+        DeadLetterService deadLetterService = new DeadLetterService();
+        ReflectionTestUtils.setField(deadLetterService, "enabled", false);
+
+        streamingService = new CsvStreamingService();
+        ReflectionTestUtils.setField(streamingService, "embeddingService", embeddingService);
+        ReflectionTestUtils.setField(streamingService, "vectorStoreService", vectorStoreService);
+        ReflectionTestUtils.setField(streamingService, "deadLetterService", deadLetterService);
+        ReflectionTestUtils.setField(streamingService, "jobScheduler", jobScheduler);
+        ReflectionTestUtils.setField(streamingService, "jobProgressService", new JobProgressService());
+        ReflectionTestUtils.setField(streamingService, "registryPersistenceEnabled", false);
+        ReflectionTestUtils.invokeMethod(streamingService, "initStreamRegistry");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(jobScheduler, "stop");
+    }
+
+    @Test
+    void testFailedReadStopsThePipelineWorkers() throws Exception {
+        // Given
+        // A gzip header with an unknown compression method fails as soon as the stream is read
+        Path file = Files.write(tempDir.resolve("records.ndjson.gz"), new byte[] {0x1f, (byte) 0x8b, 0x63, 0, 0, 0, 0, 0, 0, 0});
+        NdjsonStreamingRequest request = new NdjsonStreamingRequest(file.toString(), INDEX);
+        request.setEmbeddingWorkers(2);
+
+        // When
+        String streamId = streamingService.startNdjsonStreaming(request).getStreamId();
+        assertTrue(waitUntil(() -> "FAILED".equals(streamingService.getStreamStatus(streamId).getStatus())));
+
+        // Then
+        CsvStreamingResponse status = streamingService.getStreamStatus(streamId);
+        assertTrue(status.getErrors().get(0).startsWith("Streaming failed"));
+        assertTrue(waitUntil(() -> Thread.getAllStackTraces().keySet().stream()
+            .noneMatch(thread -> thread.getName().startsWith("ingest-" + streamId + "-"))));
+    }
+
+    private static boolean waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+}
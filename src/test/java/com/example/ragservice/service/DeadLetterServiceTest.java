@@ -0,0 +1,174 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.model.DeadLetterEntry;
+import com.example.ragservice.model.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DeadLetterServiceTest {
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    @Mock
+    private VectorStoreService vectorStoreService;
+
+    @TempDir
+    Path tempDir;
+
+    private DeadLetterService deadLetterService;
+
+    @BeforeEach
+    void setUp() {
+        deadLetterService = new DeadLetterService();
+        ReflectionTestUtils.setField(deadLetterService, "embeddingService", embeddingService);
+        ReflectionTestUtils.setField(deadLetterService, "vectorStoreService", vectorStoreService);
+        ReflectionTestUtils.setField(deadLetterService, "directory", tempDir.toString());
+        ReflectionTestUtils.setField(deadLetterService, "maxAttempts", 3);
+    }
+
+    @Test
+    void testRecordFailures_AppendsEntriesWithoutEmbeddings() throws IOException {
+        // Given
+        Document document = document("doc-1");
+        document.setEmbedding(List.of(0.1, 0.2));
+
+        // When
+        boolean recorded = deadLetterService.recordFailures("job_1", "test-index", List.of(document), new ConnectException("refused"));
+
+        // Then
+        assertTrue(recorded);
+        List<DeadLetterEntry> entries = deadLetterService.list(null);
+        assertEquals(1, entries.size());
+        assertEquals("doc-1", entries.get(0).getDocument().getId());
+        assertNull(entries.get(0).getDocument().getEmbedding());
+        assertEquals(ConnectException.class.getName(), entries.get(0).getErrorClass());
+        assertEquals(1, entries.get(0).getAttempts());
+        assertEquals(DeadLetterEntry.STATUS_PENDING, entries.get(0).getStatus());
+        assertEquals(List.of(0.1, 0.2), document.getEmbedding());
+    }
+
+    @Test
+    void testRetry_ResolvesIndexedAndReschedulesRejectedDocuments() throws Exception {
+        // Given
+        deadLetterService.recordFailures("job_1", "test-index", List.of(document("doc-1"), document("doc-2")),
+            new ConnectException("refused"));
+        when(embeddingService.generateEmbeddings(anyList())).thenReturn(List.of(List.of(0.1), List.of(0.2)));
+        when(vectorStoreService.bulkIndexDocuments(eq("test-index"), anyList())).thenAnswer(invocation -> {
+            List<Document> batch = invocation.getArgument(1);
+            assertNotNull(batch.get(0).getEmbedding());
+            return new VectorStoreService.BulkIndexResult(1,
+                List.of(new VectorStoreService.BulkItemFailure(batch.get(1), "mapping conflict", 400, "OpenSearchException")));
+        });
+
+        // When
+        DeadLetterService.RetrySummary summary = deadLetterService.retry(true);
+
+        // Then
+        assertEquals(2, summary.getAttempted());
+        assertEquals(1, summary.getResolved());
+        assertEquals(1, summary.getRescheduled());
+        List<DeadLetterEntry> remaining = deadLetterService.list(null);
+        assertEquals(1, remaining.size());
+        assertEquals("doc-2", remaining.get(0).getDocument().getId());
+        assertEquals(2, remaining.get(0).getAttempts());
+        assertEquals("mapping conflict", remaining.get(0).getErrorMessage());
+
+        // Compaction keeps only the latest state of the remaining entry
+        assertEquals(1, Files.readAllLines(tempDir.resolve("dead-letter.jsonl")).size());
+    }
+
+    @Test
+    void testRetry_SkipsEntriesThatAreNotDue() throws IOException {
+        // Given
+        deadLetterService.recordFailures("job_1", "test-index", List.of(document("doc-1")), new ConnectException("refused"));
+
+        // When
+        DeadLetterService.RetrySummary summary = deadLetterService.retry(false);
+
+        // Then
+        assertEquals(0, summary.getAttempted());
+    }
+
+    @Test
+    void testRetry_GivesUpAfterMaxAttempts() throws Exception {
+        // Given
+        deadLetterService.recordFailures("job_1", "test-index", List.of(document("doc-1")), new ConnectException("refused"));
+        when(embeddingService.generateEmbeddings(anyList())).thenThrow(new IllegalStateException("Ollama unavailable"));
+
+        // When
+        deadLetterService.retry(true);
+        DeadLetterService.RetrySummary summary = deadLetterService.retry(true);
+
+        // Then
+        assertEquals(1, summary.getExhausted());
+        assertTrue(deadLetterService.list(DeadLetterEntry.STATUS_PENDING).isEmpty());
+        List<DeadLetterEntry> exhausted = deadLetterService.list(DeadLetterEntry.STATUS_EXHAUSTED);
+        assertEquals(1, exhausted.size());
+        assertEquals(3, exhausted.get(0).getAttempts());
+        assertEquals(IllegalStateException.class.getName(), exhausted.get(0).getErrorClass());
+    }
+
+    @Test
+    void testBackoffDoublesUpToMaximum() {
+        assertEquals(Duration.ofSeconds(30), deadLetterService.backoff(1));
+        assertEquals(Duration.ofSeconds(60), deadLetterService.backoff(2));
+        assertEquals(Duration.ofSeconds(240), deadLetterService.backoff(4));
+        assertEquals(Duration.ofMinutes(60), deadLetterService.backoff(20));
+    }
+
+    @Test
+    void testBatchListener_ReportsDeadLetteredBatchAsIndexed() {
+        // Given
+        List<Long> indexed = new ArrayList<>();
+        List<Long> failed = new ArrayList<>();
+        IngestionPipeline.BatchListener delegate = new IngestionPipeline.BatchListener() {
+            @Override
+            public void onBatchSealed(long sequence) {
+            }
+
+            @Override
+            public void onBatchIndexed(long sequence, VectorStoreService.BulkIndexResult result) {
+                assertEquals(2, result.getFailureCount());
+                indexed.add(sequence);
+            }
+
+            @Override
+            public void onBatchFailed(long sequence, List<Document> documents, Exception cause) {
+                failed.add(sequence);
+            }
+        };
+        IngestionPipeline.BatchListener listener = deadLetterService.batchListener("stream_1", "test-index", delegate);
+
+        // When
+        listener.onBatchFailed(3, List.of(document("doc-1"), document("doc-2")), new ConnectException("refused"));
+
+        // Then
+        assertEquals(List.of(3L), indexed);
+        assertTrue(failed.isEmpty());
+    }
+
+    private Document document(String id) {
+        return new Document(id, "content of " + id, Map.of("source_row", id));
+    }
+}
@@ -0,0 +1,427 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.dto.DirectoryScanRequest;
+import com.example.ragservice.dto.DirectoryScanResponse;
+import com.example.ragservice.model.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DirectoryScanServiceTest {
+
+    private static final String INDEX = "test-index";
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    @Mock
+    private VectorStoreService vectorStoreService;
+
+    @TempDir
+    Path tempDir;
+
+    private DirectoryScanService scanService;
+    private IngestionJobScheduler jobScheduler;
+    private DocumentExtractionService documentExtractionService;
+
+    @BeforeEach
+    void setUp() {
+        jobScheduler = new IngestionJobScheduler();
+        ReflectionTestUtils.invokeMethod(jobScheduler, "start");
+        documentExtractionService = new DocumentExtractionService();
+        ScanManifestService scanManifestService = new ScanManifestService();
+        ReflectionTestUtils.setField(scanManifestService, "directory", tempDir.resolve("manifests").toString());
+        DeadLetterService deadLetterService = new DeadLetterService();
+        ReflectionTestUtils.setField(deadLetterService, "enabled", false);
+
+        scanService = new DirectoryScanService();
+        ReflectionTestUtils.setField(scanService, "documentExtractionService", documentExtractionService);
+        ReflectionTestUtils.setField(scanService, "jobScheduler", jobScheduler);
+        ReflectionTestUtils.setField(scanService, "jobProgressService", new JobProgressService());
+        ReflectionTestUtils.setField(scanService, "scanManifestService", scanManifestService);
+        ReflectionTestUtils.setField(scanService, "vectorStoreService", vectorStoreService);
+        ReflectionTestUtils.setField(scanService, "embeddingService", embeddingService);
+        ReflectionTestUtils.setField(scanService, "deadLetterService", deadLetterService);
+        ReflectionTestUtils.setField(scanService, "registryPersistenceEnabled", false);
+        ReflectionTestUtils.setField(scanService, "defaultExtractionWorkers", 1);
+        ReflectionTestUtils.setField(scanService, "defaultBatchSize", 1);
+        ReflectionTestUtils.setField(scanService, "defaultEmbeddingWorkers", 1);
+        ReflectionTestUtils.setField(scanService, "queueCapacity", 1);
+        ReflectionTestUtils.invokeMethod(scanService, "initScanRegistry");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(jobScheduler, "stop");
+        documentExtractionService.shutdown();
+    }
+
+    @Test
+    void testCancelledScanExtractsTheFilesItDidNotIndexAgain() throws Exception {
+        // Given
+        Path directory = Files.createDirectory(tempDir.resolve("docs"));
+        Set<String> allPaths = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            Path file = Files.writeString(directory.resolve(String.format("doc-%02d.txt", i)), "content of document " + i);
+            allPaths.add(file.toAbsolutePath().normalize().toString());
+        }
+        when(embeddingService.generateEmbeddings(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            return texts.stream().map(text -> List.of(1.0)).toList();
+        });
+        AtomicBoolean firstScan = new AtomicBoolean(true);
+        AtomicInteger firstScanRequests = new AtomicInteger();
+        CountDownLatch indexingStuck = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        List<String> firstScanIndexed = new CopyOnWriteArrayList<>();
+        List<String> secondScanIndexed = new CopyOnWriteArrayList<>();
+        when(vectorStoreService.bulkIndexDocuments(eq(INDEX), anyList())).thenAnswer(invocation -> {
+            List<Document> batch = invocation.getArgument(1);
+            if (firstScan.get() && firstScanRequests.incrementAndGet() > 2) {
+                // The index stops answering until the scan is cancelled
+                indexingStuck.countDown();
+                cancelled.await(10, TimeUnit.SECONDS);
+                throw new IOException("connection reset");
+            }
+            for (Document document : batch) {
+                (firstScan.get() ? firstScanIndexed : secondScanIndexed).add((String) document.getMetadata().get("path"));
+            }
+            return new VectorStoreService.BulkIndexResult(batch.size(), List.of());
+        });
+
+        // When
+        String scanId = scanService.startDirectoryScan(incrementalRequest(directory)).getScanId();
+        assertTrue(indexingStuck.await(10, TimeUnit.SECONDS));
+        assertTrue(scanService.cancelScan(scanId));
+        cancelled.countDown();
+        assertTrue(waitUntil(() -> !jobScheduler.isActive(scanId)));
+        firstScan.set(false);
+        DirectoryScanResponse rescan = scanService.startDirectoryScan(incrementalRequest(directory));
+        assertTrue(waitUntil(() -> JobRegistry.isFinished(scanService.getScanStatus(rescan.getScanId()).getStatus())));
+
+        // Then
+        assertEquals("CANCELLED", scanService.getScanStatus(scanId).getStatus());
+        assertEquals(2, firstScanIndexed.size());
+        DirectoryScanResponse status = scanService.getScanStatus(rescan.getScanId());
+        assertEquals("COMPLETED", status.getStatus());
+        assertEquals(2, status.getFilesUnchanged());
+        assertEquals(18, status.getFilesProcessed());
+        Set<String> dropped = new HashSet<>(allPaths);
+        firstScanIndexed.forEach(dropped::remove);
+        assertEquals(dropped, new HashSet<>(secondScanIndexed));
+    }
+
+    @Test
+    void testFilesAreFoundInTheOrderOfASequentialBreadthFirstWalk() throws Exception {
+        // Given
+        Path directory = tempDir.resolve("docs");
+        for (String subdirectory : List.of("a/x/deep", "a/y", "b/z", "c")) {
+            Files.createDirectories(directory.resolve(subdirectory));
+        }
+        int fileNumber = 0;
+        for (String subdirectory : List.of("", "a", "b", "c", "a/x", "a/y", "b/z", "a/x/deep")) {
+            for (int i = 0; i < 3; i++) {
+                Files.writeString(directory.resolve(subdirectory).resolve("file-" + fileNumber++ + ".txt"), "text");
+            }
+        }
+        Files.writeString(directory.resolve("a/image.bin"), "not a document");
+        ReflectionTestUtils.setField(scanService, "discoveryThreads", 4);
+        List<String> indexedPaths = stubIndexing();
+
+        // When
+        DirectoryScanResponse first = runScan(indexRequest(directory));
+        List<String> firstOrder = new ArrayList<>(indexedPaths);
+        indexedPaths.clear();
+        runScan(indexRequest(directory));
+
+        // Then
+        assertEquals(24, first.getTotalFilesFound());
+        assertEquals(sequentialBreadthFirstWalk(directory), firstOrder);
+        assertEquals(firstOrder, indexedPaths);
+    }
+
+    @Test
+    void testDirectoriesReachedThroughSymbolicLinksAreWalkedOnce() throws Exception {
+        // Given
+        Path directory = tempDir.resolve("docs");
+        Files.createDirectories(directory.resolve("a/b"));
+        Files.writeString(directory.resolve("root.txt"), "root");
+        Files.writeString(directory.resolve("a/one.txt"), "one");
+        Files.writeString(directory.resolve("a/b/two.txt"), "two");
+        // A cycle back to the top, and a second path to a/b
+        Files.createSymbolicLink(directory.resolve("a/b/loop"), directory);
+        Files.createSymbolicLink(directory.resolve("a/again"), directory.resolve("a/b"));
+        List<String> indexedPaths = stubIndexing();
+
+        // When
+        DirectoryScanResponse response = runScan(indexRequest(directory));
+
+        // Then
+        assertEquals("COMPLETED", response.getStatus());
+        assertEquals(3, response.getTotalFilesFound());
+        assertEquals(3, indexedPaths.size());
+        assertEquals(Set.of("root.txt", "one.txt", "two.txt"),
+            indexedPaths.stream().map(path -> Path.of(path).getFileName().toString()).collect(Collectors.toSet()));
+        assertTrue(indexedPaths.stream().noneMatch(path -> path.contains("loop")));
+    }
+
+    @Test
+    void testDiscoveryStopsAtMaxFiles() throws Exception {
+        // Given
+        Path directory = Files.createDirectory(tempDir.resolve("docs"));
+        for (int i = 0; i < 10; i++) {
+            Files.writeString(directory.resolve("file-" + i + ".txt"), "text " + i);
+        }
+        List<String> indexedPaths = stubIndexing();
+        DirectoryScanRequest request = indexRequest(directory);
+        request.setMaxFiles(4);
+
+        // When
+        DirectoryScanResponse response = runScan(request);
+
+        // Then
+        assertEquals("COMPLETED", response.getStatus());
+        assertEquals(4, response.getTotalFilesFound());
+        assertEquals(4, response.getFilesProcessed());
+        assertEquals(4, indexedPaths.size());
+    }
+
+    @Test
+    void testIncompleteWalkReportsNoDeletions() throws Exception {
+        // Given
+        Path directory = Files.createDirectory(tempDir.resolve("docs"));
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(directory.resolve("file-" + i + ".txt"), "text " + i);
+        }
+        stubIndexing();
+        AtomicInteger deleteRequests = new AtomicInteger();
+        when(vectorStoreService.deleteDocuments(eq(INDEX), anyList())).thenAnswer(invocation -> {
+            deleteRequests.incrementAndGet();
+            List<String> documentIds = invocation.getArgument(1);
+            return documentIds.size();
+        });
+        runScan(incrementalRequest(directory));
+        Files.delete(directory.resolve("file-0.txt"));
+        DirectoryScanRequest limited = incrementalRequest(directory);
+        limited.setMaxFiles(2);
+
+        // When
+        DirectoryScanResponse limitedScan = runScan(limited);
+        int deletesAfterLimitedScan = deleteRequests.get();
+        DirectoryScanResponse fullScan = runScan(incrementalRequest(directory));
+
+        // Then
+        assertEquals("COMPLETED", limitedScan.getStatus());
+        assertEquals(0, limitedScan.getFilesDeleted());
+        assertEquals(0, deletesAfterLimitedScan);
+        assertEquals(1, fullScan.getFilesDeleted());
+        assertEquals(1, deleteRequests.get());
+    }
+
+    @Test
+    void testDiscoveredFilesAreCounted() throws Exception {
+        // Given
+        Path directory = Files.createDirectories(tempDir.resolve("docs/nested"));
+        for (int i = 0; i < 7; i++) {
+            Files.writeString((i % 2 == 0 ? directory : directory.getParent()).resolve("file-" + i + ".txt"), "text " + i);
+        }
+        Files.writeString(directory.resolve("archive.bin"), "not a document");
+        DirectoryScanRequest request = new DirectoryScanRequest(directory.getParent().toString(),
+            tempDir.resolve("out.csv").toString());
+        request.setSupportedExtensions(new ArrayList<>(List.of("txt")));
+
+        // When
+        DirectoryScanResponse response = runScan(request);
+
+        // Then
+        assertEquals("COMPLETED", response.getStatus());
+        assertEquals(7, response.getFilesDiscovered());
+        assertEquals(7, response.getTotalFilesFound());
+        assertEquals(7, response.getFilesProcessed());
+    }
+
+    @Test
+    void testScanFailsWhenDiscoveryFails() throws Exception {
+        // Given
+        Path directory = Files.createDirectory(tempDir.resolve("docs"));
+        Files.writeString(directory.resolve("first.txt"), "text");
+        Files.writeString(directory.resolve("stale.txt"), "text");
+        useExtractionService(new DocumentExtractionService() {
+            @Override
+            public String getFileExtension(String fileName) {
+                if (fileName.equals("stale.txt")) {
+                    throw new IllegalStateException("Stale file handle");
+                }
+                return super.getFileExtension(fileName);
+            }
+        });
+        DirectoryScanRequest request = new DirectoryScanRequest(directory.toString(), tempDir.resolve("out.csv").toString());
+        request.setSupportedExtensions(new ArrayList<>(List.of("txt")));
+
+        // When
+        DirectoryScanResponse response = runScan(request);
+
+        // Then
+        assertEquals("FAILED", response.getStatus());
+        assertNotNull(response.getEndTime());
+        assertTrue(response.getErrors().stream().anyMatch(error -> error.contains("Directory discovery failed")
+            && error.contains("Stale file handle")));
+    }
+
+    @Test
+    void testCancellingInterruptsDiscoveryBlockedOnAFullQueue() throws Exception {
+        // Given
+        Path directory = Files.createDirectory(tempDir.resolve("docs"));
+        for (int i = 0; i < 30; i++) {
+            Files.writeString(directory.resolve("file-" + i + ".txt"), "text " + i);
+        }
+        CountDownLatch extractionStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        useExtractionService(new DocumentExtractionService() {
+            @Override
+            public ExtractedDocument extractText(Path filePath) throws DocumentExtractionException {
+                extractionStarted.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.extractText(filePath);
+            }
+        });
+        ReflectionTestUtils.setField(scanService, "discoveryQueueCapacity", 1);
+        DirectoryScanRequest request = new DirectoryScanRequest(directory.toString(), tempDir.resolve("out.csv").toString());
+        request.setSupportedExtensions(new ArrayList<>(List.of("txt")));
+        String scanId = scanService.startDirectoryScan(request).getScanId();
+        assertTrue(extractionStarted.await(10, TimeUnit.SECONDS));
+        assertTrue(waitUntil(() -> discoveryThread(scanId) != null
+            && discoveryThread(scanId).getState() == Thread.State.WAITING));
+
+        // When
+        assertTrue(scanService.cancelScan(scanId));
+        release.countDown();
+
+        // Then
+        assertTrue(waitUntil(() -> discoveryThread(scanId) == null && !jobScheduler.isActive(scanId)));
+        DirectoryScanResponse response = scanService.getScanStatus(scanId);
+        assertEquals("CANCELLED", response.getStatus());
+        assertTrue(response.getFilesDiscovered() < 30);
+    }
+
+    private void useExtractionService(DocumentExtractionService service) {
+        documentExtractionService.shutdown();
+        documentExtractionService = service;
+        ReflectionTestUtils.setField(scanService, "documentExtractionService", service);
+    }
+
+    private static Thread discoveryThread(String scanId) {
+        return Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> thread.getName().equals("scan-discovery-" + scanId))
+            .findFirst()
+            .orElse(null);
+    }
+
+    /**
+     * Stubs the embedding and indexing of documents
+     *
+     * @return the paths of the indexed documents, in the order they were indexed
+     */
+    private List<String> stubIndexing() throws IOException {
+        when(embeddingService.generateEmbeddings(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            return texts.stream().map(text -> List.of(1.0)).toList();
+        });
+        List<String> indexedPaths = new CopyOnWriteArrayList<>();
+        when(vectorStoreService.bulkIndexDocuments(eq(INDEX), anyList())).thenAnswer(invocation -> {
+            List<Document> batch = invocation.getArgument(1);
+            batch.forEach(document -> indexedPaths.add((String) document.getMetadata().get("path")));
+            return new VectorStoreService.BulkIndexResult(batch.size(), List.of());
+        });
+        return indexedPaths;
+    }
+
+    /**
+     * Runs a scan and waits until its thread has stopped
+     */
+    private DirectoryScanResponse runScan(DirectoryScanRequest request) throws InterruptedException {
+        String scanId = scanService.startDirectoryScan(request).getScanId();
+        assertTrue(waitUntil(() -> JobRegistry.isFinished(scanService.getScanStatus(scanId).getStatus())
+            && !jobScheduler.isActive(scanId)));
+        return scanService.getScanStatus(scanId);
+    }
+
+    /**
+     * The supported files of a directory tree as a breadth-first walk on one thread finds them
+     */
+    private static List<String> sequentialBreadthFirstWalk(Path directory) throws IOException {
+        List<String> files = new ArrayList<>();
+        List<Path> level = List.of(directory);
+        while (!level.isEmpty()) {
+            List<Path> nextLevel = new ArrayList<>();
+            for (Path current : level) {
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(current)) {
+                    for (Path entry : entries) {
+                        if (Files.isDirectory(entry)) {
+                            nextLevel.add(entry);
+                        } else if (entry.getFileName().toString().endsWith(".txt")) {
+                            files.add(entry.toAbsolutePath().normalize().toString());
+                        }
+                    }
+                }
+            }
+            level = nextLevel;
+        }
+        return files;
+    }
+
+    private DirectoryScanRequest indexRequest(Path directory) {
+        DirectoryScanRequest request = new DirectoryScanRequest(directory.toString(), null);
+        request.setSupportedExtensions(new ArrayList<>(List.of("txt")));
+        request.setIndexName(INDEX);
+        return request;
+    }
+
+    private DirectoryScanRequest incrementalRequest(Path directory) {
+        DirectoryScanRequest request = indexRequest(directory);
+        request.setIncremental(true);
+        return request;
+    }
+
+    private static boolean waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+}
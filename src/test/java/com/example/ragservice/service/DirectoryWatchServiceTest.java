@@ -0,0 +1,331 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.dto.DirectoryWatchRequest;
+import com.example.ragservice.dto.DirectoryWatchResponse;
+import com.example.ragservice.model.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.Watchable;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DirectoryWatchServiceTest {
+
+    private static final String INDEX = "test-index";
+    private static final long DEBOUNCE_MS = 50;
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    @Mock
+    private VectorStoreService vectorStoreService;
+
+    @TempDir
+    Path tempDir;
+
+    private DirectoryWatchService watchService;
+    private DocumentExtractionService documentExtractionService;
+
+    @BeforeEach
+    void setUp() {
+        documentExtractionService = new DocumentExtractionService();
+        DeadLetterService deadLetterService = new DeadLetterService();
+        ReflectionTestUtils.setField(deadLetterService, "enabled", false);
+
+        watchService = new DirectoryWatchService();
+        ReflectionTestUtils.setField(watchService, "documentExtractionService", documentExtractionService);
+        ReflectionTestUtils.setField(watchService, "embeddingService", embeddingService);
+        ReflectionTestUtils.setField(watchService, "vectorStoreService", vectorStoreService);
+        ReflectionTestUtils.setField(watchService, "deadLetterService", deadLetterService);
+        ReflectionTestUtils.setField(watchService, "jobProgressService", new JobProgressService());
+        ReflectionTestUtils.setField(watchService, "registryPersistenceEnabled", false);
+        ReflectionTestUtils.setField(watchService, "batchSize", 1);
+        ReflectionTestUtils.setField(watchService, "embeddingWorkers", 1);
+        ReflectionTestUtils.invokeMethod(watchService, "initWatchRegistry");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(watchService, "stopWatches");
+        documentExtractionService.shutdown();
+    }
+
+    @Test
+    void testPollingPicksUpNewAndChangedFiles() throws Exception {
+        // Given
+        Path directory = Files.createDirectory(tempDir.resolve("docs"));
+        List<Document> indexed = stubIndexing();
+        String watchId = watchService.startWatch(watchRequest(directory, false)).getWatchId();
+        assertTrue(waitUntil(() -> "WATCHING".equals(watchService.getWatchStatus(watchId).getStatus())));
+
+        // When
+        Path file = Files.writeString(directory.resolve("notes.txt"), "first draft");
+        assertTrue(waitUntil(() -> indexed.size() == 1));
+        Files.writeString(file, "second, longer draft");
+        assertTrue(waitUntil(() -> indexed.size() == 2));
+
+        // Then
+        DirectoryWatchResponse status = watchService.getWatchStatus(watchId);
+        assertEquals(DirectoryWatchService.MODE_POLLING, status.getMode());
+        assertEquals(List.of("first draft", "second, longer draft"),
+            indexed.stream().map(Document::getContent).toList());
+        assertEquals(List.of(ScanManifestService.documentId(file), ScanManifestService.documentId(file)),
+            indexed.stream().map(Document::getId).toList());
+        assertEquals(2, status.getFilesIndexed());
+        assertEquals(0, status.getFilesUnchanged());
+    }
+
+    @Test
+    void testChangeThatKeepsTheContentIsSkipped() throws Exception {
+        // Given
+        Path directory = Files.createDirectory(tempDir.resolve("docs"));
+        Path file = Files.writeString(directory.resolve("notes.txt"), "same content");
+        List<Document> indexed = stubIndexing();
+        String watchId = watchService.startWatch(watchRequest(directory, true)).getWatchId();
+        assertTrue(waitUntil(() -> indexed.size() == 1));
+
+        // When
+        Files.writeString(file, "same content");
+        touch(file);
+        assertTrue(waitUntil(() -> watchService.getWatchStatus(watchId).getFilesUnchanged() == 1));
+
+        // Then
+        assertEquals(1, indexed.size());
+        assertEquals(1, watchService.getWatchStatus(watchId).getFilesIndexed());
+    }
+
+    @Test
+    void testDeletedFileDeletesItsDocument() throws Exception {
+        // Given
+        Path directory = Files.createDirectory(tempDir.resolve("docs"));
+        Path kept = Files.writeString(directory.resolve("kept.txt"), "kept");
+        Path deleted = Files.writeString(directory.resolve("deleted.txt"), "deleted");
+        List<Document> indexed = stubIndexing();
+        List<String> deletedIds = stubDeletion();
+        String watchId = watchService.startWatch(watchRequest(directory, true)).getWatchId();
+        assertTrue(waitUntil(() -> indexed.size() == 2));
+
+        // When
+        Files.delete(deleted);
+        assertTrue(waitUntil(() -> watchService.getWatchStatus(watchId).getFilesDeleted() == 1));
+
+        // Then
+        assertEquals(List.of(ScanManifestService.documentId(deleted)), deletedIds);
+        assertTrue(Files.exists(kept));
+        assertEquals(2, indexed.size());
+    }
+
+    @Test
+    void testDeletedDirectoryDeletesTheDocumentsOfItsFiles() throws Exception {
+        // Given
+        Path directory = Files.createDirectory(tempDir.resolve("docs"));
+        Path subdirectory = Files.createDirectory(directory.resolve("archive"));
+        Path first = Files.writeString(subdirectory.resolve("first.txt"), "first");
+        Path second = Files.writeString(subdirectory.resolve("second.txt"), "second");
+        Files.writeString(directory.resolve("current.txt"), "current");
+        List<Document> indexed = stubIndexing();
+        List<String> deletedIds = stubDeletion();
+        String watchId = watchService.startWatch(watchRequest(directory, true)).getWatchId();
+        assertTrue(waitUntil(() -> indexed.size() == 3));
+
+        // When
+        Files.delete(first);
+        Files.delete(second);
+        Files.delete(subdirectory);
+        assertTrue(waitUntil(() -> watchService.getWatchStatus(watchId).getFilesDeleted() == 2));
+
+        // Then
+        assertEquals(Set.of(ScanManifestService.documentId(first), ScanManifestService.documentId(second)),
+            Set.copyOf(deletedIds));
+        assertEquals(3, indexed.size());
+    }
+
+    @Test
+    void testLostEventsRecheckEveryFile() throws Exception {
+        // Given
+        Path directory = Files.createDirectory(tempDir.resolve("docs"));
+        Path changed = Files.writeString(directory.resolve("changed.txt"), "old text");
+        Path unchanged = Files.writeString(directory.resolve("unchanged.txt"), "unchanged");
+        Path deleted = Files.writeString(directory.resolve("deleted.txt"), "deleted");
+        List<Document> indexed = stubIndexing();
+        List<String> deletedIds = stubDeletion();
+        String watchId = watchService.startWatch(watchRequest(directory, true)).getWatchId();
+        assertTrue(waitUntil(() -> indexed.size() == 3));
+        // Stop the watch thread so the lost events are handled on this one
+        Object watch = runningWatches().get(watchId);
+        assertTrue(watchService.stopWatch(watchId));
+        ((Thread) ReflectionTestUtils.getField(watch, "thread")).join(5000);
+        Files.writeString(changed, "new text");
+        Files.delete(deleted);
+
+        // When
+        ReflectionTestUtils.invokeMethod(watch, "handleEvents", overflowKey(directory));
+        Thread.sleep(DEBOUNCE_MS * 2);
+        ReflectionTestUtils.invokeMethod(watch, "applyDueChanges");
+
+        // Then
+        assertEquals(4, indexed.size());
+        assertEquals(ScanManifestService.documentId(changed), indexed.get(3).getId());
+        assertEquals("new text", indexed.get(3).getContent());
+        assertEquals(List.of(ScanManifestService.documentId(deleted)), deletedIds);
+        DirectoryWatchResponse status = watchService.getWatchStatus(watchId);
+        assertEquals(1, status.getFilesUnchanged());
+        assertTrue(Files.exists(unchanged));
+    }
+
+    @Test
+    void testFileThatFailedToIndexIsIndexedAgainWithTheSameContent() throws Exception {
+        // Given
+        Path directory = Files.createDirectory(tempDir.resolve("docs"));
+        Path file = Files.writeString(directory.resolve("notes.txt"), "same content");
+        stubEmbeddings();
+        AtomicBoolean indexUnavailable = new AtomicBoolean(true);
+        List<Document> indexed = new CopyOnWriteArrayList<>();
+        when(vectorStoreService.bulkIndexDocuments(eq(INDEX), anyList())).thenAnswer(invocation -> {
+            if (indexUnavailable.getAndSet(false)) {
+                throw new IOException("connection refused");
+            }
+            List<Document> batch = invocation.getArgument(1);
+            indexed.addAll(batch);
+            return new VectorStoreService.BulkIndexResult(batch.size(), List.of());
+        });
+        String watchId = watchService.startWatch(watchRequest(directory, true)).getWatchId();
+        assertTrue(waitUntil(() -> watchService.getWatchStatus(watchId).getFilesFailed() == 1));
+
+        // When
+        touch(file);
+        assertTrue(waitUntil(() -> indexed.size() == 1));
+
+        // Then
+        DirectoryWatchResponse status = watchService.getWatchStatus(watchId);
+        assertEquals(1, status.getFilesIndexed());
+        assertEquals(0, status.getFilesUnchanged());
+    }
+
+    private List<Document> stubIndexing() throws IOException {
+        stubEmbeddings();
+        List<Document> indexed = new CopyOnWriteArrayList<>();
+        when(vectorStoreService.bulkIndexDocuments(eq(INDEX), anyList())).thenAnswer(invocation -> {
+            List<Document> batch = invocation.getArgument(1);
+            indexed.addAll(batch);
+            return new VectorStoreService.BulkIndexResult(batch.size(), List.of());
+        });
+        return indexed;
+    }
+
+    private void stubEmbeddings() {
+        when(embeddingService.generateEmbeddings(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            return texts.stream().map(text -> List.of(1.0)).toList();
+        });
+    }
+
+    private List<String> stubDeletion() throws IOException {
+        List<String> deletedIds = new CopyOnWriteArrayList<>();
+        when(vectorStoreService.deleteDocuments(eq(INDEX), anyList())).thenAnswer(invocation -> {
+            List<String> documentIds = invocation.getArgument(1);
+            deletedIds.addAll(documentIds);
+            return documentIds.size();
+        });
+        return deletedIds;
+    }
+
+    private DirectoryWatchRequest watchRequest(Path directory, boolean initialSync) {
+        DirectoryWatchRequest request = new DirectoryWatchRequest(directory.toString(), INDEX);
+        request.setSupportedExtensions(List.of("txt"));
+        request.setPolling(true);
+        request.setPollIntervalMs(DEBOUNCE_MS);
+        request.setDebounceMs(DEBOUNCE_MS);
+        request.setInitialSync(initialSync);
+        return request;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> runningWatches() {
+        return (Map<String, Object>) ReflectionTestUtils.getField(watchService, "runningWatches");
+    }
+
+    private static void touch(Path file) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 10000));
+    }
+
+    private static WatchKey overflowKey(Path directory) {
+        WatchEvent<Object> overflow = new WatchEvent<>() {
+            @Override
+            public Kind<Object> kind() {
+                return StandardWatchEventKinds.OVERFLOW;
+            }
+
+            @Override
+            public int count() {
+                return 1;
+            }
+
+            @Override
+            public Object context() {
+                return null;
+            }
+        };
+        return new WatchKey() {
+            @Override
+            public boolean isValid() {
+                return true;
+            }
+
+            @Override
+            public List<WatchEvent<?>> pollEvents() {
+                return List.of(overflow);
+            }
+
+            @Override
+            public boolean reset() {
+                return true;
+            }
+
+            @Override
+            public void cancel() {
+            }
+
+            @Override
+            public Watchable watchable() {
+                return directory;
+            }
+        };
+    }
+
+    private static boolean waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+}
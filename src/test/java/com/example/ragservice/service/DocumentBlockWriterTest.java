@@ -0,0 +1,130 @@
+package com.example.ragservice.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentBlockWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRecordsAreReadBackFromEveryShard() throws IOException {
+        // Given
+        Path file = tempDir.resolve("scan.docblocks");
+        try (DocumentBlockWriter writer = new DocumentBlockWriter(file, 2, 200)) {
+            for (int i = 0; i < 50; i++) {
+                writer.append("doc-" + i, "/docs/" + i + ".txt", "text of document " + i + " with \"quotes\",\ncommas and \u00fc",
+                    Map.of("file_name", i + ".txt", "content_type", "text/plain"));
+            }
+            writer.append("empty", "/docs/empty.txt", null, Map.of());
+        }
+
+        // When
+        List<Path> files = DocumentBlockReader.outputFiles(file);
+        List<DocumentBlockReader.Record> records = new ArrayList<>();
+        int blocks = 0;
+        for (Path shard : files) {
+            try (DocumentBlockReader reader = new DocumentBlockReader(shard)) {
+                blocks += reader.getBlockCount();
+                for (int block = 0; block < reader.getBlockCount(); block++) {
+                    records.addAll(reader.readBlock(block));
+                }
+            }
+        }
+
+        // Then
+        assertEquals(List.of(tempDir.resolve("scan-0.docblocks"), tempDir.resolve("scan-1.docblocks")), files);
+        assertTrue(blocks > 2);
+        assertEquals(51, records.size());
+        DocumentBlockReader.Record record = records.stream()
+            .filter(r -> r.documentId().equals("doc-7")).findFirst().orElseThrow();
+        assertEquals("/docs/7.txt", record.path());
+        assertEquals("text of document 7 with \"quotes\",\ncommas and \u00fc", record.text());
+        assertEquals(Map.of("file_name", "7.txt", "content_type", "text/plain"), record.metadata());
+        assertTrue(records.stream().anyMatch(r -> r.documentId().equals("empty") && r.text() == null));
+    }
+
+    @Test
+    void testRecordIsLookedUpByNumber() throws IOException {
+        // Given
+        Path file = tempDir.resolve("scan.docblocks");
+        try (DocumentBlockWriter writer = new DocumentBlockWriter(file, 1, 100)) {
+            for (int i = 0; i < 30; i++) {
+                writer.append("doc-" + i, "/docs/" + i + ".txt", "text " + i, Map.of());
+            }
+        }
+
+        // When
+        DocumentBlockReader.Record first;
+        DocumentBlockReader.Record middle;
+        DocumentBlockReader.Record last;
+        long recordCount;
+        try (DocumentBlockReader reader = new DocumentBlockReader(file)) {
+            recordCount = reader.getRecordCount();
+            first = reader.read(0);
+            middle = reader.read(17);
+            last = reader.read(29);
+        }
+
+        // Then
+        assertEquals(30, recordCount);
+        assertEquals("doc-0", first.documentId());
+        assertEquals("doc-17", middle.documentId());
+        assertEquals(17, middle.number());
+        assertEquals("text 29", last.text());
+    }
+
+    @Test
+    void testCorruptBlockIsRejected() throws IOException {
+        // Given
+        Path file = tempDir.resolve("scan.docblocks");
+        try (DocumentBlockWriter writer = new DocumentBlockWriter(file, 1, 1 << 20)) {
+            writer.append("doc-1", "/docs/1.txt", "some text that is compressed into the only block", Map.of());
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            // The first byte of compressed data follows the file and block headers
+            raf.seek(DocumentBlockWriter.HEADER_SIZE + DocumentBlockWriter.BLOCK_HEADER_SIZE + 2);
+            int b = raf.read();
+            raf.seek(DocumentBlockWriter.HEADER_SIZE + DocumentBlockWriter.BLOCK_HEADER_SIZE + 2);
+            raf.write(b ^ 0xFF);
+        }
+
+        // When
+        IOException error;
+        try (DocumentBlockReader reader = new DocumentBlockReader(file)) {
+            error = assertThrows(IOException.class, () -> reader.readBlock(0));
+        }
+
+        // Then
+        assertTrue(error.getMessage().contains("Block 0"));
+    }
+
+    @Test
+    void testTruncatedFileIsRejected() throws IOException {
+        // Given
+        Path file = tempDir.resolve("scan.docblocks");
+        try (DocumentBlockWriter writer = new DocumentBlockWriter(file, 1, 1 << 20)) {
+            writer.append("doc-1", "/docs/1.txt", "text", Map.of());
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 4));
+
+        // When
+        IOException error = assertThrows(IOException.class, () -> new DocumentBlockReader(file));
+
+        // Then
+        assertTrue(error.getMessage().contains("Not a complete block file"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.ragservice.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentExtractionServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testTextIsStreamedInSegments() throws Exception {
+        // Given
+        Path file = Files.writeString(tempDir.resolve("notes.txt"), "x".repeat(20000));
+        DocumentExtractionService service = new DocumentExtractionService();
+        List<String> segments = new ArrayList<>();
+
+        // When
+        Map<String, String> metadata = service.streamText(file, 0, segments::add);
+        service.shutdown();
+
+        // Then
+        assertEquals(List.of(8192, 8192, 3616), segments.stream().map(String::length).toList());
+        assertEquals("notes.txt", metadata.get("file_name"));
+        assertEquals("direct_read", metadata.get("extraction_method"));
+        assertNull(metadata.get("truncated"));
+    }
+
+    @Test
+    void testStreamingStopsAtTheMaximumCharacters() throws Exception {
+        // Given
+        Path file = Files.writeString(tempDir.resolve("dump.txt"), "0123456789".repeat(5000));
+        DocumentExtractionService service = new DocumentExtractionService();
+        StringBuilder text = new StringBuilder();
+
+        // When
+        Map<String, String> metadata = service.streamText(file, 25, text::append);
+        service.shutdown();
+
+        // Then
+        assertEquals("0123456789012345678901234", text.toString());
+        assertEquals("true", metadata.get("truncated"));
+    }
+}
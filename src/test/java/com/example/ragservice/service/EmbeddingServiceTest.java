@@ -10,11 +10,18 @@ import org.springframework.ai.embedding.EmbeddingRequest;
 import org.springframework.ai.embedding.EmbeddingResponse;
 import org.springframework.ai.embedding.Embedding;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -50,6 +57,113 @@ class EmbeddingServiceTest {
         assertEquals(4, result.size());
     }
 
+    @Test
+    void testGenerateEmbedding_ConcurrentIdenticalRequestsShareOneCall() throws Exception {
+        // Given
+        List<Double> expectedEmbedding = Arrays.asList(0.5, 0.6, 0.7);
+        CountDownLatch callStarted = new CountDownLatch(1);
+        CountDownLatch releaseCall = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        
+        when(embeddingClient.call(any(EmbeddingRequest.class))).thenAnswer(invocation -> {
+            calls.incrementAndGet();
+            callStarted.countDown();
+            releaseCall.await(5, TimeUnit.SECONDS);
+            return new EmbeddingResponse(List.of(new Embedding(new ArrayList<>(expectedEmbedding), 0)));
+        });
+        
+        List<List<Double>> results = new CopyOnWriteArrayList<>();
+        Thread leader = new Thread(() -> results.add(embeddingService.generateEmbedding("popular query")));
+        leader.start();
+        assertTrue(callStarted.await(5, TimeUnit.SECONDS));
+        
+        List<Thread> followers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Thread follower = new Thread(() -> results.add(embeddingService.generateEmbedding("popular query")));
+            followers.add(follower);
+            follower.start();
+        }
+        
+        // Wait until every follower is parked on the shared future
+        for (Thread follower : followers) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (follower.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(Thread.State.WAITING, follower.getState());
+        }
+
+        // When
+        releaseCall.countDown();
+        leader.join(5000);
+        for (Thread follower : followers) {
+            follower.join(5000);
+        }
+
+        // Then
+        assertEquals(1, calls.get());
+        assertEquals(4, results.size());
+        results.forEach(result -> assertEquals(expectedEmbedding, result));
+        assertEquals(0, embeddingService.getInFlightRequestCount());
+    }
+
+    @Test
+    void testGenerateEmbedding_FailureIsPropagatedAndNotRetained() {
+        // Given
+        when(embeddingClient.call(any(EmbeddingRequest.class)))
+            .thenThrow(new IllegalStateException("Ollama unavailable"));
+
+        // When & Then
+        assertThrows(RuntimeException.class, () -> embeddingService.generateEmbedding("failing text"));
+        assertThrows(RuntimeException.class, () -> embeddingService.generateEmbedding("failing text"));
+        
+        // A failed request is not cached: the second call reaches the model again
+        verify(embeddingClient, times(2)).call(any(EmbeddingRequest.class));
+        assertEquals(0, embeddingService.getInFlightRequestCount());
+    }
+
+    @Test
+    void testGenerateEmbedding_ErrorReachesTheWaitingCallers() throws Exception {
+        // Given
+        CountDownLatch callStarted = new CountDownLatch(1);
+        CountDownLatch releaseCall = new CountDownLatch(1);
+        when(embeddingClient.call(any(EmbeddingRequest.class))).thenAnswer(invocation -> {
+            callStarted.countDown();
+            releaseCall.await(5, TimeUnit.SECONDS);
+            throw new NoClassDefFoundError("org/example/MissingClass");
+        });
+
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        Runnable caller = () -> {
+            try {
+                embeddingService.generateEmbedding("unlucky query");
+            } catch (Throwable t) {
+                failures.add(t);
+            }
+        };
+        Thread leader = new Thread(caller);
+        leader.start();
+        assertTrue(callStarted.await(5, TimeUnit.SECONDS));
+        Thread follower = new Thread(caller);
+        follower.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (follower.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(Thread.State.WAITING, follower.getState());
+
+        // When
+        releaseCall.countDown();
+        leader.join(5000);
+        follower.join(5000);
+
+        // Then
+        assertFalse(follower.isAlive());
+        assertEquals(2, failures.size());
+        failures.forEach(failure -> assertInstanceOf(NoClassDefFoundError.class, failure));
+        assertEquals(0, embeddingService.getInFlightRequestCount());
+    }
+
     @Test
     void testGenerateEmbeddings_MultipleTexts() {
         // Given
@@ -0,0 +1,74 @@
+package com.example.ragservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExtractionExecutorTest {
+
+    @Test
+    void testTimedOutExtractionKeepsItsThreadUntilItEnds() throws Exception {
+        // Given
+        ExtractionExecutor executor = new ExtractionExecutor(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch ended = new CountDownLatch(1);
+
+        // When
+        DocumentExtractionService.DocumentExtractionException timedOut = assertThrows(
+            DocumentExtractionService.DocumentExtractionException.class,
+            () -> executor.run(() -> {
+                // A parser that ignores interrupts
+                while (true) {
+                    try {
+                        release.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        // Keep going
+                    }
+                }
+                ended.countDown();
+                return new DocumentExtractionService.ExtractedDocument("late", Map.of());
+            }, "runaway.pdf", Duration.ofMillis(200)));
+        int stuckAfterTimeout = executor.getStuck();
+        DocumentExtractionService.DocumentExtractionException busy = assertThrows(
+            DocumentExtractionService.DocumentExtractionException.class,
+            () -> executor.run(() -> new DocumentExtractionService.ExtractedDocument("text", Map.of()),
+                "next.txt", Duration.ofMillis(200)));
+        release.countDown();
+        assertTrue(ended.await(5, TimeUnit.SECONDS));
+        DocumentExtractionService.ExtractedDocument document = executor.run(
+            () -> new DocumentExtractionService.ExtractedDocument("text", Map.of()), "next.txt", Duration.ofSeconds(5));
+        executor.shutdownNow();
+
+        // Then
+        assertTrue(timedOut.getMessage().contains("timed out"));
+        assertEquals(1, stuckAfterTimeout);
+        assertTrue(busy.getMessage().contains("No extraction thread became free"));
+        assertEquals(0, executor.getStuck());
+        assertEquals("text", document.getText());
+    }
+
+    @Test
+    void testFailureIsReportedWithItsCause() {
+        // Given
+        ExtractionExecutor executor = new ExtractionExecutor(2);
+
+        // When
+        DocumentExtractionService.DocumentExtractionException error = assertThrows(
+            DocumentExtractionService.DocumentExtractionException.class,
+            () -> executor.run(() -> {
+                throw new IllegalStateException("broken file");
+            }, "broken.doc", Duration.ofSeconds(5)));
+        executor.shutdownNow();
+
+        // Then
+        assertTrue(error.getMessage().contains("broken.doc"));
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+        assertEquals(0, executor.getStuck());
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.ragservice.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExtractionLanesTest {
+
+    private ExtractionLanes lanes;
+
+    @AfterEach
+    void tearDown() {
+        if (lanes != null) {
+            lanes.shutdownNow();
+        }
+    }
+
+    private Callable<ScanCsvWriter.Extraction> task(long sequence, CountDownLatch release) {
+        return () -> {
+            release.await(10, TimeUnit.SECONDS);
+            return ScanCsvWriter.Extraction.failure(sequence, Paths.get("/docs/" + sequence), new Exception("done"));
+        };
+    }
+
+    private Callable<ScanCsvWriter.Extraction> document(long sequence, String text) {
+        return () -> ScanCsvWriter.Extraction.success(sequence, Paths.get("/docs/" + sequence),
+            new DocumentExtractionService.ExtractedDocument(text, Map.of()), "{}");
+    }
+
+    @Test
+    void testFilesAreNumberedByLane() throws Exception {
+        // Given
+        lanes = new ExtractionLanes("scan", 2, 4, 1, 2, 1000, 1000);
+        CountDownLatch release = new CountDownLatch(0);
+
+        // When
+        lanes.submit(10, sequence -> task(sequence, release));
+        lanes.submit(5000, sequence -> task(sequence, release));
+        lanes.submit(20, sequence -> task(sequence, release));
+        List<Long> sequences = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            sequences.add(lanes.take().sequence());
+        }
+
+        // Then
+        assertTrue(sequences.containsAll(List.of(0L, 1L, ExtractionLanes.HEAVY_SEQUENCE_BASE)));
+        assertEquals(2, lanes.getFastSequenceEnd());
+        assertTrue(lanes.isIdle());
+    }
+
+    @Test
+    void testHeavyFilesWaitWithoutBlockingFastLane() throws Exception {
+        // Given
+        lanes = new ExtractionLanes("scan", 2, 4, 1, 1, 1000, 1000);
+        CountDownLatch heavyRelease = new CountDownLatch(1);
+        CountDownLatch fastRelease = new CountDownLatch(0);
+
+        // When
+        lanes.submit(5000, sequence -> task(sequence, heavyRelease));
+        lanes.submit(6000, sequence -> task(sequence, heavyRelease));
+        lanes.submit(10, sequence -> task(sequence, fastRelease));
+        ScanCsvWriter.Extraction first = lanes.take();
+        lanes.written(List.of(first));
+        boolean fastFull = lanes.isFastFull();
+        int heavyWaiting = lanes.getStats().get(1).getFilesWaiting();
+        heavyRelease.countDown();
+        ScanCsvWriter.Extraction heavy = lanes.take();
+        lanes.written(List.of(heavy));
+        ScanCsvWriter.Extraction secondHeavy = lanes.take();
+
+        // Then
+        assertEquals(0L, first.sequence());
+        assertFalse(fastFull);
+        assertEquals(1, heavyWaiting);
+        assertEquals(ExtractionLanes.HEAVY_SEQUENCE_BASE, heavy.sequence());
+        assertEquals(ExtractionLanes.HEAVY_SEQUENCE_BASE + 1, secondHeavy.sequence());
+        assertTrue(lanes.isIdle());
+        assertEquals(2, lanes.getStats().get(1).getFilesExtracted());
+    }
+
+    @Test
+    @Timeout(10)
+    void testHeavyResultsHeldBackForOrderedOutputDoNotStallTheHeavyLane() throws Exception {
+        // Given
+        lanes = new ExtractionLanes("scan", 2, 4, 1, 2, 1000, 1000);
+        ScanCsvWriter writer = new ScanCsvWriter(null, true, 1000, 1_000_000);
+        lanes.submit(10, sequence -> document(sequence, "fast"));
+        for (int i = 0; i < 5; i++) {
+            lanes.submit(5000, sequence -> document(sequence, "heavy"));
+        }
+
+        // When
+        List<Long> written = new ArrayList<>();
+        while (!lanes.isIdle()) {
+            List<ScanCsvWriter.Extraction> results = writer.submit(lanes.take());
+            results.forEach(result -> written.add(result.sequence()));
+            lanes.written(results);
+        }
+        int heldBack = writer.getPending();
+        List<ScanCsvWriter.Extraction> rest = writer.continueAt(lanes.getFastSequenceEnd(),
+            ExtractionLanes.HEAVY_SEQUENCE_BASE);
+        rest.forEach(result -> written.add(result.sequence()));
+        lanes.written(rest);
+
+        // Then
+        assertEquals(5, heldBack);
+        assertEquals(5, lanes.getStats().get(1).getFilesExtracted());
+        long base = ExtractionLanes.HEAVY_SEQUENCE_BASE;
+        assertEquals(List.of(0L, base, base + 1, base + 2, base + 3, base + 4), written);
+        assertTrue(lanes.isIdle());
+    }
+
+    @Test
+    void testHeavyLanePausesWhileHeldBackTextIsAtTheLimit() throws Exception {
+        // Given
+        lanes = new ExtractionLanes("scan", 2, 4, 1, 2, 1000, 6);
+        for (int i = 0; i < 4; i++) {
+            lanes.submit(5000, sequence -> document(sequence, "sixchr"));
+        }
+        List<ScanCsvWriter.Extraction> heldBack = new ArrayList<>();
+
+        // When
+        heldBack.add(lanes.take());
+        int waitingAtLimit = lanes.getStats().get(1).getFilesWaiting();
+        heldBack.add(lanes.take());
+        lanes.written(heldBack);
+        int waitingAfterWrite = lanes.getStats().get(1).getFilesWaiting();
+        lanes.take();
+        lanes.take();
+
+        // Then
+        assertEquals(2, waitingAtLimit);
+        assertEquals(0, waitingAfterWrite);
+        assertTrue(lanes.isIdle());
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.dto.ScheduledJobInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestionJobSchedulerTest {
+
+    private IngestionJobScheduler scheduler;
+
+    private IngestionJobScheduler scheduler(int capacity, long timeSliceSeconds) {
+        scheduler = new IngestionJobScheduler();
+        ReflectionTestUtils.setField(scheduler, "capacity", capacity);
+        ReflectionTestUtils.setField(scheduler, "timeSliceSeconds", timeSliceSeconds);
+        scheduler.start();
+        return scheduler;
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    void testQueuesJobsBeyondCapacity() throws InterruptedException {
+        // Given
+        scheduler(2, 60);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch finished = new CountDownLatch(3);
+
+        // When
+        for (int i = 1; i <= 3; i++) {
+            scheduler.submit("job-" + i, "test", 0, 1, job -> {
+                started.countDown();
+                await(release);
+                finished.countDown();
+            });
+        }
+
+        // Then
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        List<ScheduledJobInfo> jobs = scheduler.getJobs();
+        assertEquals(3, jobs.size());
+        assertEquals(IngestionJobScheduler.STATE_RUNNING, jobs.get(0).getState());
+        assertEquals(IngestionJobScheduler.STATE_RUNNING, jobs.get(1).getState());
+        assertEquals("job-3", jobs.get(2).getJobId());
+        assertEquals(IngestionJobScheduler.STATE_QUEUED, jobs.get(2).getState());
+        assertEquals(1, jobs.get(2).getQueuePosition());
+        assertEquals(2, scheduler.getRunningWeight());
+
+        release.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testStartsQueuedJobsByPriorityThenArrival() throws InterruptedException {
+        // Given
+        scheduler(1, 60);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(4);
+        List<String> order = new CopyOnWriteArrayList<>();
+        scheduler.submit("blocker", "test", 0, 1, job -> {
+            await(release);
+            finished.countDown();
+        });
+
+        // When
+        for (String[] spec : new String[][] {{"low-1", "0"}, {"high", "5"}, {"low-2", "0"}}) {
+            scheduler.submit(spec[0], "test", Integer.parseInt(spec[1]), 1, job -> {
+                order.add(spec[0]);
+                finished.countDown();
+            });
+        }
+        release.countDown();
+
+        // Then
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("high", "low-1", "low-2"), order);
+    }
+
+    @Test
+    void testHeavyJobWaitsForEnoughCapacity() throws InterruptedException {
+        // Given
+        scheduler(3, 60);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit("light", "test", 0, 2, job -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // When
+        CountDownLatch heavyStarted = new CountDownLatch(1);
+        scheduler.submit("heavy", "test", 0, 2, job -> heavyStarted.countDown());
+
+        // Then
+        assertFalse(heavyStarted.await(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(heavyStarted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testLongJobYieldsItsTimeSliceToWaitingJob() throws InterruptedException {
+        // Given
+        scheduler(1, 0);
+        List<String> events = new CopyOnWriteArrayList<>();
+        CountDownLatch longStarted = new CountDownLatch(1);
+        CountDownLatch shortQueued = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(2);
+        scheduler.submit("long", "test", 0, 1, job -> {
+            longStarted.countDown();
+            await(shortQueued);
+            try {
+                boolean paused = job.yieldSlice(() -> events.add("long paused"));
+                events.add(paused ? "long resumed" : "long continued");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished.countDown();
+        });
+        assertTrue(longStarted.await(5, TimeUnit.SECONDS));
+
+        // When
+        scheduler.submit("short", "test", 0, 1, job -> {
+            events.add("short ran");
+            finished.countDown();
+        });
+        shortQueued.countDown();
+
+        // Then
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("long paused", "short ran", "long resumed"), events);
+    }
+
+    @Test
+    void testYieldWithoutWaitingJobsKeepsRunning() throws InterruptedException {
+        // Given
+        scheduler(1, 0);
+        CountDownLatch finished = new CountDownLatch(1);
+        List<Boolean> paused = new CopyOnWriteArrayList<>();
+
+        // When
+        scheduler.submit("alone", "test", 0, 1, job -> {
+            try {
+                paused.add(job.yieldSlice(() -> { }));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished.countDown();
+        });
+
+        // Then
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(false), paused);
+    }
+
+    @Test
+    void testCancelRemovesQueuedJob() throws InterruptedException {
+        // Given
+        scheduler(1, 60);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        List<String> ran = new CopyOnWriteArrayList<>();
+        scheduler.submit("running", "test", 0, 1, job -> {
+            await(release);
+            finished.countDown();
+        });
+        scheduler.submit("queued", "test", 0, 1, job -> ran.add("queued"));
+
+        // When
+        boolean cancelled = scheduler.cancel("queued");
+        release.countDown();
+
+        // Then
+        assertTrue(cancelled);
+        assertFalse(scheduler.cancel("running"));
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertTrue(ran.isEmpty());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.model.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class IngestionPipelineTest {
+
+    private static final String INDEX = "test-index";
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    @Mock
+    private VectorStoreService vectorStoreService;
+
+    @Test
+    void testDocumentsAreBatchedEmbeddedAndIndexedInOrder() throws Exception {
+        // Given
+        List<List<String>> indexedBatches = new CopyOnWriteArrayList<>();
+        stubEmbeddings();
+        when(vectorStoreService.bulkIndexDocuments(eq(INDEX), anyList())).thenAnswer(invocation -> {
+            List<Document> batch = invocation.getArgument(1);
+            assertTrue(batch.stream().allMatch(document -> document.getEmbedding() != null));
+            indexedBatches.add(batch.stream().map(Document::getId).toList());
+            return new VectorStoreService.BulkIndexResult(batch.size(), List.of());
+        });
+        RecordingListener listener = new RecordingListener();
+        IngestionPipeline pipeline = new IngestionPipeline("test", INDEX, embeddingService, vectorStoreService,
+            3, 1, 2, listener);
+
+        // When
+        for (int i = 0; i < 7; i++) {
+            assertTrue(pipeline.submit(document("doc-" + i)));
+        }
+        pipeline.finish();
+
+        // Then
+        assertEquals(List.of(List.of("doc-0", "doc-1", "doc-2"), List.of("doc-3", "doc-4", "doc-5"), List.of("doc-6")),
+            indexedBatches);
+        assertEquals(List.of(0L, 1L, 2L), listener.sealed);
+        assertEquals(List.of(0L, 1L, 2L), listener.indexed);
+        assertTrue(listener.failed.isEmpty());
+        IngestionPipeline.PipelineStats stats = pipeline.getStats();
+        assertEquals(7, stats.getDocumentsSubmitted());
+        assertEquals(7, stats.getDocumentsEmbedded());
+        assertEquals(7, stats.getDocumentsIndexed());
+        assertEquals(0, stats.getDocumentsFailed());
+        assertEquals(3, stats.getBatchesSubmitted());
+        assertEquals(3, stats.getBatchesIndexed());
+    }
+
+    @Test
+    void testFinishWaitsForEveryBatch() throws Exception {
+        // Given
+        List<String> indexedIds = new CopyOnWriteArrayList<>();
+        stubEmbeddings();
+        when(vectorStoreService.bulkIndexDocuments(eq(INDEX), anyList())).thenAnswer(invocation -> {
+            List<Document> batch = invocation.getArgument(1);
+            Thread.sleep(20);
+            batch.forEach(document -> indexedIds.add(document.getId()));
+            return new VectorStoreService.BulkIndexResult(batch.size(), List.of());
+        });
+        RecordingListener listener = new RecordingListener();
+        IngestionPipeline pipeline = new IngestionPipeline("test", INDEX, embeddingService, vectorStoreService,
+            2, 3, 1, listener);
+
+        // When
+        for (int i = 0; i < 20; i++) {
+            pipeline.submit(document("doc-" + i));
+        }
+        pipeline.finish();
+
+        // Then
+        assertEquals(20, indexedIds.size());
+        assertEquals(20, Set.copyOf(indexedIds).size());
+        assertEquals(Set.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), Set.copyOf(listener.indexed));
+        assertEquals(20, pipeline.getStats().getDocumentsIndexed());
+        assertEquals(10, pipeline.getStats().getBatchesIndexed());
+    }
+
+    @Test
+    void testCancelStopsTheWorkersAndDiscardsQueuedBatches() throws Exception {
+        // Given
+        CountDownLatch embeddingStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(embeddingService.generateEmbeddings(anyList())).thenAnswer(invocation -> {
+            embeddingStarted.countDown();
+            release.await();
+            return List.of(List.of(1.0));
+        });
+        RecordingListener listener = new RecordingListener();
+        IngestionPipeline pipeline = new IngestionPipeline("cancel-test", INDEX, embeddingService, vectorStoreService,
+            1, 1, 1, listener);
+        List<Boolean> accepted = new CopyOnWriteArrayList<>();
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 5; i++) {
+                    accepted.add(pipeline.submit(document("doc-" + i)));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        assertTrue(embeddingStarted.await(5, TimeUnit.SECONDS));
+
+        // When
+        pipeline.cancel();
+        producer.join(5000);
+
+        // Then
+        assertFalse(producer.isAlive());
+        assertTrue(pipeline.isCancelled());
+        assertTrue(accepted.contains(false));
+        assertFalse(pipeline.submit(document("late")));
+        assertTrue(waitUntil(() -> Thread.getAllStackTraces().keySet().stream()
+            .noneMatch(thread -> thread.getName().startsWith("ingest-cancel-test-"))));
+        verify(embeddingService, times(1)).generateEmbeddings(anyList());
+        verify(vectorStoreService, never()).bulkIndexDocuments(eq(INDEX), anyList());
+        assertTrue(listener.indexed.isEmpty());
+        assertTrue(listener.failed.isEmpty());
+    }
+
+    @Test
+    void testFailedBatchesReachTheListener() throws Exception {
+        // Given
+        when(embeddingService.generateEmbeddings(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            if (texts.contains("text of doc-0")) {
+                throw new IllegalStateException("embedding model unavailable");
+            }
+            return texts.stream().map(text -> List.of(1.0)).toList();
+        });
+        when(vectorStoreService.bulkIndexDocuments(eq(INDEX), anyList())).thenAnswer(invocation -> {
+            List<Document> batch = invocation.getArgument(1);
+            if (batch.get(0).getId().equals("doc-2")) {
+                throw new IOException("connection refused");
+            }
+            return new VectorStoreService.BulkIndexResult(batch.size() - 1,
+                List.of(new VectorStoreService.BulkItemFailure(batch.get(1), "mapping error", 400)));
+        });
+        RecordingListener listener = new RecordingListener();
+        IngestionPipeline pipeline = new IngestionPipeline("test", INDEX, embeddingService, vectorStoreService,
+            2, 1, 2, listener);
+
+        // When
+        for (int i = 0; i < 6; i++) {
+            pipeline.submit(document("doc-" + i));
+        }
+        pipeline.finish();
+
+        // Then
+        assertEquals(List.of(0L, 1L), listener.failed);
+        assertEquals(List.of(List.of("doc-0", "doc-1"), List.of("doc-2", "doc-3")), listener.failedDocuments);
+        assertInstanceOf(IllegalStateException.class, listener.causes.get(0));
+        assertInstanceOf(IOException.class, listener.causes.get(1));
+        assertEquals(List.of(2L), listener.indexed);
+        IngestionPipeline.PipelineStats stats = pipeline.getStats();
+        assertEquals(1, stats.getDocumentsIndexed());
+        assertEquals(5, stats.getDocumentsFailed());
+        assertEquals(3, stats.getErrors().size());
+    }
+
+    private void stubEmbeddings() {
+        when(embeddingService.generateEmbeddings(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            return texts.stream().map(text -> List.of((double) text.length())).collect(Collectors.toList());
+        });
+    }
+
+    private static Document document(String id) {
+        return new Document(id, "text of " + id, new HashMap<>());
+    }
+
+    private static boolean waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+
+    private static class RecordingListener implements IngestionPipeline.BatchListener {
+        final List<Long> sealed = new CopyOnWriteArrayList<>();
+        final List<Long> indexed = new CopyOnWriteArrayList<>();
+        final List<Long> failed = new CopyOnWriteArrayList<>();
+        final List<List<String>> failedDocuments = new CopyOnWriteArrayList<>();
+        final List<Exception> causes = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onBatchSealed(long sequence) {
+            sealed.add(sequence);
+        }
+
+        @Override
+        public void onBatchIndexed(long sequence, VectorStoreService.BulkIndexResult result) {
+            indexed.add(sequence);
+        }
+
+        @Override
+        public void onBatchFailed(long sequence, List<Document> documents, Exception cause) {
+            failed.add(sequence);
+            failedDocuments.add(documents.stream().map(Document::getId).toList());
+            causes.add(cause);
+        }
+    }
+}
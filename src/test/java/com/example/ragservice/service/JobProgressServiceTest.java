@@ -0,0 +1,74 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.dto.CsvStreamingResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobProgressServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final JobProgressService jobProgressService = new JobProgressService();
+
+    @Test
+    void testDeltaContainsOnlyChangedFieldsAndNewErrors() throws Exception {
+        // Given
+        ObjectNode previous = (ObjectNode) objectMapper.readTree("{\"status\":\"PROCESSING\",\"records_processed\":100,\"index_name\":\"docs\"}");
+        ObjectNode current = (ObjectNode) objectMapper.readTree("{\"status\":\"PROCESSING\",\"records_processed\":250,\"index_name\":\"docs\"}");
+
+        // When
+        ObjectNode delta = jobProgressService.delta(previous, current,
+            objectMapper.valueToTree(List.of("error 1", "error 2", "error 3")), 1);
+
+        // Then
+        assertEquals(objectMapper.readTree("{\"records_processed\":250,\"new_errors\":[\"error 2\",\"error 3\"]}"), delta);
+    }
+
+    @Test
+    void testDeltaIsEmptyWithoutChanges() throws Exception {
+        // Given
+        ObjectNode status = (ObjectNode) objectMapper.readTree("{\"status\":\"SCANNING\",\"files_processed\":3}");
+
+        // When
+        ObjectNode delta = jobProgressService.delta(status, status.deepCopy(), objectMapper.valueToTree(List.of("error 1")), 1);
+
+        // Then
+        assertTrue(delta.isEmpty());
+    }
+
+    @Test
+    void testRunningJobKeepsSubscriptionAndFinishedJobClosesIt() {
+        // Given
+        CsvStreamingResponse stream = new CsvStreamingResponse("stream-1", "PROCESSING", "docs");
+
+        // When
+        jobProgressService.subscribe("stream-1", () -> stream);
+
+        // Then
+        assertEquals(1, jobProgressService.getSubscriberCount());
+
+        // When
+        stream.setStatus("COMPLETED");
+        jobProgressService.publishProgress();
+
+        // Then
+        assertEquals(0, jobProgressService.getSubscriberCount());
+    }
+
+    @Test
+    void testRejectsSubscribersBeyondLimit() {
+        // Given
+        ReflectionTestUtils.setField(jobProgressService, "maxSubscribers", 1);
+        CsvStreamingResponse stream = new CsvStreamingResponse("stream-1", "PROCESSING", "docs");
+        jobProgressService.subscribe("stream-1", () -> stream);
+
+        // When / Then
+        assertThrows(IllegalStateException.class, () -> jobProgressService.subscribe("stream-1", () -> stream));
+    }
+}
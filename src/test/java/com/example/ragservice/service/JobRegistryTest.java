@@ -0,0 +1,128 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.dto.DirectoryScanResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobRegistryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private JobRegistry<DirectoryScanResponse> registry(Path file, int maxFinishedJobs) {
+        return new JobRegistry<>("test", DirectoryScanResponse.class, file, Duration.ofHours(1), maxFinishedJobs, 2);
+    }
+
+    private DirectoryScanResponse scan(String scanId, String status, LocalDateTime endTime) {
+        DirectoryScanResponse scan = new DirectoryScanResponse(scanId, status);
+        scan.setEndTime(endTime);
+        return scan;
+    }
+
+    @Test
+    void testCompactsFinishedJobsAndKeepsRunningJobsLive() {
+        // Given
+        JobRegistry<DirectoryScanResponse> registry = registry(null, 10);
+        DirectoryScanResponse running = scan("running", "SCANNING", null);
+        DirectoryScanResponse finished = scan("finished", "FAILED", LocalDateTime.now());
+        finished.setErrors(new ArrayList<>(List.of("error 1", "error 2", "error 3", "error 4")));
+        registry.register("running", running);
+        registry.register("finished", finished);
+
+        // When
+        registry.sweep();
+
+        // Then
+        assertSame(running, registry.get("running"));
+        DirectoryScanResponse compact = registry.get("finished");
+        assertNotSame(finished, compact);
+        assertEquals("FAILED", compact.getStatus());
+        assertEquals(List.of("error 1", "error 2", "... and 2 more errors"), compact.getErrors());
+    }
+
+    @Test
+    void testKeepsFinishedJobsLiveUntilTheyEndAndTheirThreadHasExited() {
+        // Given
+        Set<String> running = ConcurrentHashMap.newKeySet();
+        JobRegistry<DirectoryScanResponse> registry = new JobRegistry<>("test", DirectoryScanResponse.class, null,
+            Duration.ofHours(1), 10, 2, running::contains);
+        DirectoryScanResponse cancelled = scan("cancelled", "CANCELLED", LocalDateTime.now());
+        DirectoryScanResponse completing = scan("completing", "COMPLETED", null);
+        running.add("cancelled");
+        running.add("completing");
+        registry.register("cancelled", cancelled);
+        registry.register("completing", completing);
+
+        // When
+        registry.sweep();
+        DirectoryScanResponse cancelledWhileRunning = registry.get("cancelled");
+        DirectoryScanResponse completedWithoutEndTime = registry.get("completing");
+        // The job threads go on updating their jobs until they exit
+        cancelled.setFilesProcessed(7);
+        running.remove("cancelled");
+        completing.setEndTime(LocalDateTime.now());
+        completing.setDurationMs(1234);
+        running.remove("completing");
+        registry.sweep();
+
+        // Then
+        assertSame(cancelled, cancelledWhileRunning);
+        assertSame(completing, completedWithoutEndTime);
+        assertNotSame(cancelled, registry.get("cancelled"));
+        assertEquals(7, registry.get("cancelled").getFilesProcessed());
+        assertNotSame(completing, registry.get("completing"));
+        assertEquals(1234, registry.get("completing").getDurationMs());
+        assertNotNull(registry.get("completing").getEndTime());
+    }
+
+    @Test
+    void testEvictsExpiredAndExcessFinishedJobs() {
+        // Given
+        JobRegistry<DirectoryScanResponse> registry = registry(null, 2);
+        LocalDateTime now = LocalDateTime.now();
+        registry.register("expired", scan("expired", "COMPLETED", now.minusHours(2)));
+        registry.register("oldest", scan("oldest", "COMPLETED", now.minusMinutes(30)));
+        registry.register("older", scan("older", "CANCELLED", now.minusMinutes(20)));
+        registry.register("newest", scan("newest", "COMPLETED", now.minusMinutes(10)));
+        registry.register("running", scan("running", "SCANNING", null));
+
+        // When
+        registry.sweep();
+
+        // Then
+        assertEquals(List.of("newest", "older", "running"), new ArrayList<>(registry.snapshot().keySet()));
+    }
+
+    @Test
+    void testRestoresPersistedJobsAndMarksUnfinishedOnesInterrupted() {
+        // Given
+        Path file = tempDir.resolve("jobs/directory-scans.json");
+        JobRegistry<DirectoryScanResponse> registry = registry(file, 10);
+        DirectoryScanResponse finished = scan("finished", "COMPLETED", LocalDateTime.now());
+        finished.setFilesProcessed(42);
+        registry.register("finished", finished);
+        registry.register("running", scan("running", "SCANNING", null));
+        registry.sweep();
+
+        // When
+        JobRegistry<DirectoryScanResponse> restored = registry(file, 10);
+        restored.load(DirectoryScanResponse::getScanId);
+
+        // Then
+        assertEquals(2, restored.size());
+        assertEquals(42, restored.get("finished").getFilesProcessed());
+        assertEquals("COMPLETED", restored.get("finished").getStatus());
+        assertEquals(JobRegistry.STATUS_INTERRUPTED, restored.get("running").getStatus());
+        assertNotNull(restored.get("running").getEndTime());
+    }
+}
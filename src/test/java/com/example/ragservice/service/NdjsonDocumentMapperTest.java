@@ -0,0 +1,84 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.model.Document;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NdjsonDocumentMapperTest {
+
+    @Test
+    void testMap_SelectsNestedTextAndIdAndKeepsRemainingFieldsAsMetadata() throws IOException {
+        // Given
+        NdjsonDocumentMapper mapper = new NdjsonDocumentMapper("/body/text", "/meta/id", null, 1024);
+        String line = "{\"body\":{\"text\":\"  Hello\\nworld  \",\"lang\":\"en\"},"
+            + "\"meta\":{\"id\":42,\"tags\":[\"a\",\"b\"]},\"score\":0.5}";
+
+        // When
+        Document document = mapper.map(line);
+
+        // Then
+        assertEquals("42", document.getId());
+        assertEquals("Hello\nworld", document.getContent());
+        Map<String, Object> metadata = document.getMetadata();
+        assertEquals(Map.of("lang", "en"), metadata.get("body"));
+        assertEquals(Map.of("tags", List.of("a", "b")), metadata.get("meta"));
+        assertEquals(0.5, metadata.get("score"));
+    }
+
+    @Test
+    void testMap_UsesObjectAtMetadataPointer() throws IOException {
+        // Given
+        NdjsonDocumentMapper mapper = new NdjsonDocumentMapper("/text", null, "/attributes", 1024);
+
+        // When
+        Document document = mapper.map("{\"text\":\"content\",\"attributes\":{\"author\":\"x\",\"pages\":3},\"raw\":\"ignored\"}");
+
+        // Then
+        assertNull(document.getId());
+        assertEquals(Map.of("author", "x", "pages", 3), document.getMetadata());
+    }
+
+    @Test
+    void testMap_SkipsRecordsWithoutText() throws IOException {
+        // Given
+        NdjsonDocumentMapper mapper = new NdjsonDocumentMapper("/text", null, null, 1024);
+
+        // When / Then
+        assertNull(mapper.map("{\"title\":\"no text\"}"));
+        assertNull(mapper.map("{\"text\":\"   \"}"));
+        assertNull(mapper.map("{\"text\":{\"nested\":\"object\"}}"));
+    }
+
+    @Test
+    void testMap_RejectsInvalidRecords() {
+        // Given
+        NdjsonDocumentMapper mapper = new NdjsonDocumentMapper("/text", null, null, 1024);
+
+        // When / Then
+        assertThrows(IOException.class, () -> mapper.map("{\"text\":\"unterminated"));
+        assertThrows(IllegalArgumentException.class, () -> mapper.map("[\"text\"]"));
+    }
+
+    @Test
+    void testConstructor_RejectsInvalidPointers() {
+        assertThrows(IllegalArgumentException.class, () -> new NdjsonDocumentMapper("text", null, null, 1024));
+        assertThrows(IllegalArgumentException.class, () -> new NdjsonDocumentMapper("", null, null, 1024));
+    }
+
+    @Test
+    void testMap_TruncatesOversizedText() throws IOException {
+        // Given
+        NdjsonDocumentMapper mapper = new NdjsonDocumentMapper("/text", null, null, 5);
+
+        // When
+        Document document = mapper.map("{\"text\":\"abcdefghij\"}");
+
+        // Then
+        assertEquals("abcde", document.getContent());
+    }
+}
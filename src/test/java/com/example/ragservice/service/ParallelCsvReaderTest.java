@@ -0,0 +1,170 @@
+package com.example.ragservice.service;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelCsvReaderTest {
+
+    private static final CSVFormat FORMAT = CSVFormat.DEFAULT.withFirstRecordAsHeader();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRead_MatchesSequentialParsing() throws Exception {
+        // Given - quoted fields with line breaks, doubled quotes and multi-byte characters across many ranges
+        Path csvFile = writeCsv(2000);
+
+        // When
+        List<ParallelCsvReader.ParsedRecord<String>> parsed = readAll(csvFile, 4);
+
+        // Then
+        List<String> expected = parseSequentially(csvFile);
+        assertEquals(expected.size(), parsed.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(i + 1, parsed.get(i).getRecordNumber());
+            assertEquals(expected.get(i), parsed.get(i).getValue());
+        }
+    }
+
+    @Test
+    void testRead_ByteOffsetsPointAtRecordStarts() throws Exception {
+        // Given
+        Path csvFile = writeCsv(500);
+        byte[] bytes = Files.readAllBytes(csvFile);
+
+        // When
+        List<ParallelCsvReader.ParsedRecord<String>> parsed = readAll(csvFile, 3);
+
+        // Then - each record re-parsed from its own byte span yields the same record
+        for (ParallelCsvReader.ParsedRecord<String> record : parsed) {
+            String span = new String(bytes, (int) record.getByteOffset(),
+                (int) (record.getNextByteOffset() - record.getByteOffset()), StandardCharsets.UTF_8);
+            try (CSVParser parser = CSVParser.parse(span, CSVFormat.DEFAULT.withHeader("id", "text", "note"))) {
+                assertEquals(record.getValue(), describe(parser.getRecords().get(0)));
+            }
+        }
+        assertEquals(bytes.length, parsed.get(parsed.size() - 1).getNextByteOffset());
+    }
+
+    @Test
+    void testRead_ResumesAtByteOffset() throws Exception {
+        // Given - the position after record 700 of a full read
+        Path csvFile = writeCsv(2000);
+        List<ParallelCsvReader.ParsedRecord<String>> all = readAll(csvFile, 4);
+        ParallelCsvReader.ParsedRecord<String> checkpoint = all.get(699);
+        List<ParallelCsvReader.ParsedRecord<String>> resumed = new ArrayList<>();
+
+        // When
+        long delivered = new ParallelCsvReader(csvFile, FORMAT, 4, 1024)
+            .read(checkpoint.getNextByteOffset(), checkpoint.getRecordNumber(), this::describe, resumed::add);
+
+        // Then - the remaining records with their original numbers
+        assertEquals(1300, delivered);
+        for (int i = 0; i < resumed.size(); i++) {
+            assertEquals(all.get(700 + i).getRecordNumber(), resumed.get(i).getRecordNumber());
+            assertEquals(all.get(700 + i).getValue(), resumed.get(i).getValue());
+        }
+    }
+
+    @Test
+    void testRead_StopsWhenSinkDeclines() throws Exception {
+        // Given
+        Path csvFile = writeCsv(1000);
+        ParallelCsvReader reader = new ParallelCsvReader(csvFile, FORMAT, 4, 1024);
+
+        // When
+        long delivered = reader.read(this::describe, record -> record.getRecordNumber() < 10);
+
+        // Then
+        assertEquals(10, delivered);
+    }
+
+    @Test
+    void testRead_MapperFailuresAreReportedPerRecord() throws Exception {
+        // Given
+        Path csvFile = writeCsv(50);
+        ParallelCsvReader reader = new ParallelCsvReader(csvFile, FORMAT, 2, 1024);
+        List<ParallelCsvReader.ParsedRecord<String>> parsed = new ArrayList<>();
+
+        // When
+        reader.read(record -> {
+            if (record.get("id").equals("7")) {
+                throw new IllegalStateException("bad record");
+            }
+            return record.get("id");
+        }, parsed::add);
+
+        // Then
+        assertEquals(50, parsed.size());
+        assertNotNull(parsed.get(7).getError());
+        assertNull(parsed.get(7).getValue());
+        assertNull(parsed.get(8).getError());
+    }
+
+    @Test
+    void testReadHeaderNames() throws Exception {
+        // Given
+        Path csvFile = writeCsv(5);
+
+        // When
+        List<String> headers = new ParallelCsvReader(csvFile, FORMAT, 2, 1024).readHeaderNames();
+
+        // Then
+        assertEquals(List.of("id", "text", "note"), headers);
+    }
+
+    @Test
+    void testSupports() {
+        assertTrue(ParallelCsvReader.supports(CSVFormat.DEFAULT));
+        assertTrue(ParallelCsvReader.supports(CSVFormat.DEFAULT.withEscape('\\')));
+        assertFalse(ParallelCsvReader.supports(CSVFormat.DEFAULT.withQuote('«')));
+    }
+
+    private List<ParallelCsvReader.ParsedRecord<String>> readAll(Path csvFile, int parallelism) throws Exception {
+        List<ParallelCsvReader.ParsedRecord<String>> parsed = new ArrayList<>();
+        new ParallelCsvReader(csvFile, FORMAT, parallelism, 1024).read(this::describe, parsed::add);
+        return parsed;
+    }
+
+    private List<String> parseSequentially(Path csvFile) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (CSVParser parser = FORMAT.parse(Files.newBufferedReader(csvFile))) {
+            for (CSVRecord record : parser) {
+                records.add(describe(record));
+            }
+        }
+        return records;
+    }
+
+    private String describe(CSVRecord record) {
+        return record.get(0) + "|" + record.get(1) + "|" + record.get(2);
+    }
+
+    private Path writeCsv(int records) throws IOException {
+        StringBuilder csv = new StringBuilder("id,text,note\n");
+        for (int i = 0; i < records; i++) {
+            switch (i % 4) {
+                case 0 -> csv.append(i).append(",plain text ").append(i).append(",none\n");
+                case 1 -> csv.append(i).append(",\"spans\nseveral\nlines ").append(i).append("\",multi\n");
+                case 2 -> csv.append(i).append(",\"says \"\"hi\"\", then\n,leaves\",quoted\n");
+                default -> csv.append(i).append(",café € 😀 ").append(i).append(",unicode\r\n");
+            }
+        }
+        Path csvFile = tempDir.resolve("records.csv");
+        Files.writeString(csvFile, csv.toString(), StandardCharsets.UTF_8);
+        return csvFile;
+    }
+}
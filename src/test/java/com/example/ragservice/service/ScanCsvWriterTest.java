@@ -0,0 +1,100 @@
+package com.example.ragservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScanCsvWriterTest {
+
+    private ScanCsvWriter.Extraction success(long sequence, String name) {
+        Path path = Paths.get("/docs", name);
+        DocumentExtractionService.ExtractedDocument document = new DocumentExtractionService.ExtractedDocument(
+            "text of " + name, Map.of("file_name", name, "file_size", "10"));
+        return ScanCsvWriter.Extraction.success(sequence, path, document, "{}");
+    }
+
+    private List<Long> sequences(List<ScanCsvWriter.Extraction> extractions) {
+        return extractions.stream().map(ScanCsvWriter.Extraction::sequence).toList();
+    }
+
+    @Test
+    void testOrderedModeHoldsBackResultsUntilEarlierFilesAreDone() throws IOException {
+        // Given
+        StringWriter out = new StringWriter();
+        ScanCsvWriter writer = new ScanCsvWriter(out, true, 60_000, Long.MAX_VALUE);
+
+        // When
+        List<ScanCsvWriter.Extraction> afterThird = writer.submit(success(2, "c.txt"));
+        List<ScanCsvWriter.Extraction> afterSecond = writer.submit(
+            ScanCsvWriter.Extraction.failure(1, Paths.get("/docs/b.txt"), new IOException("unreadable")));
+        List<ScanCsvWriter.Extraction> afterFirst = writer.submit(success(0, "a.txt"));
+        writer.close();
+
+        // Then
+        assertTrue(afterThird.isEmpty());
+        assertTrue(afterSecond.isEmpty());
+        assertEquals(List.of(0L, 1L, 2L), sequences(afterFirst));
+        assertEquals(3, writer.getHandled());
+        assertEquals(0, writer.getPending());
+
+        String csv = out.toString();
+        assertTrue(csv.indexOf("a.txt") < csv.indexOf("c.txt"));
+        assertFalse(csv.contains("b.txt"));
+    }
+
+    @Test
+    void testOrderContinuesWithSecondSeriesOnceFirstIsWritten() throws IOException {
+        // Given
+        long base = ExtractionLanes.HEAVY_SEQUENCE_BASE;
+        ScanCsvWriter writer = new ScanCsvWriter(new StringWriter(), true, 60_000, Long.MAX_VALUE);
+
+        // When
+        List<ScanCsvWriter.Extraction> afterHeavy = writer.submit(success(base, "big.pdf"));
+        List<ScanCsvWriter.Extraction> afterSmall = writer.submit(success(0, "a.txt"));
+        List<ScanCsvWriter.Extraction> afterContinue = writer.continueAt(1, base);
+        List<ScanCsvWriter.Extraction> afterSecondHeavy = writer.submit(success(base + 1, "huge.pdf"));
+
+        // Then
+        assertTrue(afterHeavy.isEmpty());
+        assertEquals(List.of(0L), sequences(afterSmall));
+        assertEquals(List.of(base), sequences(afterContinue));
+        assertEquals(List.of(base + 1), sequences(afterSecondHeavy));
+        assertEquals(0, writer.getPending());
+    }
+
+    @Test
+    void testUnorderedModeWritesResultsAsTheyArrive() throws IOException {
+        // Given
+        ScanCsvWriter writer = new ScanCsvWriter(new StringWriter(), false, 60_000, Long.MAX_VALUE);
+
+        // When
+        List<ScanCsvWriter.Extraction> written = writer.submit(success(5, "f.txt"));
+
+        // Then
+        assertEquals(List.of(5L), sequences(written));
+        assertEquals(1, writer.getHandled());
+    }
+
+    @Test
+    void testFlushesOnceByteThresholdIsReached() throws IOException {
+        // Given
+        ScanCsvWriter writer = new ScanCsvWriter(new StringWriter(), false, 60_000, 30);
+
+        // When
+        writer.submit(success(0, "a.txt"));
+        long flushesAfterFirst = writer.getFlushes();
+        writer.submit(success(1, "b.txt"));
+        writer.submit(success(2, "c.txt"));
+
+        // Then
+        assertEquals(0, flushesAfterFirst);
+        assertEquals(1, writer.getFlushes());
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.ragservice.service;
+
+import com.example.ragservice.model.ScanManifest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScanManifestServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ScanManifestService service() {
+        ScanManifestService service = new ScanManifestService();
+        ReflectionTestUtils.setField(service, "directory", tempDir.resolve("manifests").toString());
+        return service;
+    }
+
+    @Test
+    void testLoadsEmptyManifestForDirectoryNeverScanned() throws IOException {
+        // Given
+        ScanManifestService service = service();
+
+        // When
+        ScanManifest manifest = service.load(tempDir.resolve("docs"));
+
+        // Then
+        assertEquals(tempDir.resolve("docs").toAbsolutePath().normalize().toString(), manifest.getDirectoryPath());
+        assertTrue(manifest.getFiles().isEmpty());
+    }
+
+    @Test
+    void testSavedManifestIsLoadedBack() throws IOException {
+        // Given
+        ScanManifestService service = service();
+        Path docs = tempDir.resolve("docs");
+        ScanManifest manifest = service.load(docs);
+        manifest.setLastScanId("scan_1");
+        manifest.getFiles().put("/docs/a.txt",
+            new ScanManifest.FileEntry(10, 1000, "abc", "id-a", "/out/scan_1.csv", "scan_1"));
+
+        // When
+        service.save(manifest);
+        ScanManifest loaded = service.load(docs);
+
+        // Then
+        assertEquals("scan_1", loaded.getLastScanId());
+        assertNotNull(loaded.getUpdatedAt());
+        ScanManifest.FileEntry entry = loaded.getFiles().get("/docs/a.txt");
+        assertEquals(10, entry.getSize());
+        assertEquals(1000, entry.getLastModified());
+        assertEquals("abc", entry.getContentHash());
+        assertEquals("id-a", entry.getDocumentId());
+        assertEquals("/out/scan_1.csv", entry.getOutputCsvPath());
+        assertTrue(service.load(tempDir.resolve("other")).getFiles().isEmpty());
+    }
+
+    @Test
+    void testDocumentIdDependsOnlyOnNormalizedPath() {
+        // Given
+        Path file = tempDir.resolve("docs/a.txt");
+
+        // When
+        String id = ScanManifestService.documentId(file);
+
+        // Then
+        assertEquals(id, ScanManifestService.documentId(tempDir.resolve("docs/sub/../a.txt")));
+        assertNotEquals(id, ScanManifestService.documentId(tempDir.resolve("docs/b.txt")));
+    }
+
+    @Test
+    void testContentHashChangesWithContent() throws IOException {
+        // Given
+        Path file = tempDir.resolve("a.txt");
+        Files.writeString(file, "hello");
+
+        // When
+        String hash = ScanManifestService.contentHash(file);
+        Files.writeString(file, "hello!");
+
+        // Then
+        assertEquals("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824", hash);
+        assertNotEquals(hash, ScanManifestService.contentHash(file));
+    }
+
+    @Test
+    void testChangeLogListsDeletedDocumentIds() throws IOException {
+        // Given
+        Path changes = ScanChangeLog.pathFor(tempDir.resolve("scan.csv").toString());
+        try (ScanChangeLog log = new ScanChangeLog(changes, "scan_2")) {
+            log.record(ScanManifest.CHANGE_MODIFIED, "/docs/a.txt",
+                new ScanManifest.FileEntry(11, 2000, "abd", "id-a", "/out/scan_2.csv", "scan_2"));
+            log.record(ScanManifest.CHANGE_DELETED, "/docs/b.txt",
+                new ScanManifest.FileEntry(5, 900, "bcd", "id-b", "/out/scan_1.csv", "scan_1"));
+        }
+
+        // When
+        List<String> deleted = ScanChangeLog.deletedDocumentIds(changes);
+
+        // Then
+        assertEquals(tempDir.resolve("scan.changes.jsonl"), changes);
+        assertEquals(List.of("id-b"), deleted);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.ragservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextSegmentWriterTest {
+
+    @Test
+    void testTextIsPassedOnInSegments() throws IOException {
+        // Given
+        List<String> segments = new ArrayList<>();
+        TextSegmentWriter writer = new TextSegmentWriter(segments::add, 4, 0);
+
+        // When
+        writer.write("abcdef");
+        writer.write("ghi");
+        writer.flush();
+
+        // Then
+        assertEquals(List.of("abcd", "efgh", "i"), segments);
+        assertEquals(9, writer.getWritten());
+        assertFalse(writer.isTruncated());
+    }
+
+    @Test
+    void testWritingStopsAtTheLimit() throws IOException {
+        // Given
+        List<String> segments = new ArrayList<>();
+        TextSegmentWriter writer = new TextSegmentWriter(segments::add, 4, 6);
+        writer.write("abc");
+
+        // When
+        assertThrows(TextSegmentWriter.LimitReachedException.class, () -> writer.write("defgh"));
+        assertThrows(TextSegmentWriter.LimitReachedException.class, () -> writer.write("ijk"));
+
+        // Then
+        assertEquals(List.of("abcd", "ef"), segments);
+        assertEquals(6, writer.getWritten());
+        assertTrue(writer.isTruncated());
+    }
+
+    @Test
+    void testNothingIsPassedOnOnceCancelled() throws IOException {
+        // Given
+        List<String> segments = new ArrayList<>();
+        TextSegmentWriter writer = new TextSegmentWriter(segments::add, 4, 0);
+        writer.write("ab");
+
+        // When
+        writer.cancel();
+        assertThrows(IOException.class, () -> writer.write("cdef"));
+
+        // Then
+        assertTrue(segments.isEmpty());
+    }
+}